@@ -1,18 +1,25 @@
+import sys
+sys.path.insert(0, '/home/dipp/Github/Master-Thesis-dipp/scripts')
+
 import pandas as pd
 import matplotlib.pyplot as plt
+from results import read_result
 
 
 print('**********************************START********************************************************')
-#file_path_all = '/global/D1/projects/umod/dipp/playground/result_graph/degree_all.csv'
-#file_path_in = '/global/D1/projects/umod/dipp/playground/result_graph/degree_in.csv'
-file_path_out = '/global/D1/projects/umod/dipp/playground/result_graph/degree_out.csv'
+# The *_hist files are written by GraphUtils.writeDegreePlotData
+# (degree,count) when the analysis runs with -net, so there is no
+# per-user preprocessing left to do here.
+#file_path_all = '/global/D1/projects/umod/dipp/Test/result_01/degree_all_hist.csv'
+#file_path_in = '/global/D1/projects/umod/dipp/Test/result_01/degree_in_hist.csv'
+file_path_out = '/global/D1/projects/umod/dipp/Test/result_01/degree_out_hist.csv'
 
-#ds = pd.read_csv(file_path_all)
-#ds = pd.read_csv(file_path_in)
-ds = pd.read_csv(file_path_out)
+#ds = read_result(file_path_all)
+#ds = read_result(file_path_in)
+ds = read_result(file_path_out)
 print('**********************************DATAFRAME DONE********************************************************')
 
-plt.hist(ds.iloc[:, 1], bins=45)
+plt.hist(ds['degree'], bins=45, weights=ds['count'])
 plt.yscale('log')
 plt.xlabel('Degree')
 plt.ylabel('Count')
@@ -1,8 +1,12 @@
+import sys
+sys.path.insert(0, '/home/dipp/Github/Master-Thesis-dipp/scripts')
+
 import pandas as pd
 import time
 from geopy.geocoders import Nominatim 
 import folium
 from numerize import numerize 
+from results import read_result
 
 def geocode_country(country_name):
     geolocator = Nominatim(user_agent="your_app_name")
@@ -54,7 +58,7 @@ def data_format(df):
 
 def __main__():
     csv_file = '/home/dipp/Github/Master-Thesis-dipp/Geo_Map_Final/Data/Country_Data_V2_Latest.csv'
-    data = pd.read_csv(csv_file)
+    data = read_result(csv_file)
     data = data_format(data)
     world_map = create_map(data)
     #world_map.save('/home/dipp/Github/Master-Thesis-dipp/Geo_Map_Final/Result/world_map_final.html')
@@ -0,0 +1,60 @@
+package bench;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Runs the selected benchmarks with 1, 2, 4, .. threads up
+// to the number of cpus (or -Pthreads=N) and prints one
+// table of throughput per thread count, e.g.
+//   gradle jmh -PjmhMain=bench.ThreadSweep -Pjmh='ConcurrentMapBenchmark.read -p keys=1024'
+// Every other argument is a plain JMH option.
+public class ThreadSweep {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        final var cmd = new CommandLineOptions(args);
+        final int max = Integer.getInteger("threads", Runtime.getRuntime().availableProcessors());
+        final var threads = new ArrayList<Integer>();
+        for (int t = 1; t < max; t <<= 1) threads.add(t);
+        threads.add(max);
+
+        final var results = new ArrayList<List<RunResult>>();
+        for (int t : threads) {
+            final var options = new OptionsBuilder().parent(cmd).threads(t).build();
+            results.add(new ArrayList<>(new Runner(options).run()));
+        }
+        print(threads, results);
+    }
+
+    private static void print(List<Integer> threads, List<List<RunResult>> results) {
+        final var header = new StringBuilder(String.format("%-60s", "Benchmark"));
+        for (int t : threads) header.append(String.format("%14s", t + " thr"));
+        System.out.println();
+        System.out.println(header);
+        final var first = results.get(0);
+        for (int r = 0; r < first.size(); r++) {
+            final var params = first.get(r).getParams();
+            final var row = new StringBuilder(String.format("%-60s", label(params)));
+            for (var run : results) {
+                final var score = r < run.size() ? run.get(r).getPrimaryResult() : null;
+                row.append(score == null ? String.format("%14s", "-") : String.format("%14.3f", score.getScore()));
+            }
+            System.out.println(row + "  " + first.get(r).getPrimaryResult().getScoreUnit());
+        }
+    }
+
+    // Class.method and the parameters.
+    private static String label(BenchmarkParams params) {
+        final var benchmark = params.getBenchmark();
+        final var result = new StringBuilder(benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1));
+        for (var key : params.getParamsKeys()) result.append(' ').append(key).append('=').append(params.getParam(key));
+        return result.toString();
+    }
+}
@@ -0,0 +1,424 @@
+package bench;
+
+import model.Model.Status;
+import model.TagDictionary;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import static magma.exa.base.contract.Require.isTrue;
+
+// Synthetic twitter data for the benchmarks, so the hot
+// paths can be measured without the real dataset. Users,
+// hashtags and locations are drawn from Zipf distributions
+// like in the crawled corona tweets: a few tags and places
+// make up most of the volume, the tail is long. Tweets come
+// as twitter v1.1 json lines (what Transformer.toMinTweet
+// reads from the xz files) or directly as Status objects.
+// Everything is derived from the seed, two generators with
+// the same seed and settings produce the same data.
+public class TweetGenerator {
+
+    // ----------------------------------------------
+    //  VOCABULARY.
+    // ----------------------------------------------
+
+    static final String[] TAGS = {
+            "COVID19", "coronavirus", "Covid_19", "covid19", "StayHome", "lockdown",
+            "SocialDistancing", "pandemic", "WearAMask", "vaccine", "Wuhan", "China",
+            "StayAtHomeAndStaySafe", "BREAKING", "news", "Trump", "masks", "quarantine",
+            "COVID", "CoronaVirusUpdate", "Italy", "NHS", "health", "FlattenTheCurve",
+    };
+
+    static final String[] WORDS = {
+            "the", "a", "to", "of", "and", "in", "is", "for", "on", "we", "you", "it",
+            "this", "that", "are", "with", "be", "have", "not", "all", "people", "cases",
+            "new", "virus", "deaths", "today", "now", "home", "stay", "safe", "please",
+            "hospital", "test", "positive", "world", "government", "week", "number",
+            "lockdown", "spread", "health", "workers", "thank", "masks", "school", "news",
+            "reported", "confirmed", "outbreak", "first", "second", "wave", "covid",
+            "Über", "más", "médicos", "😷", "🙏", "❤️", "&amp;", "…",
+    };
+
+    // Places with their resolution as country code,
+    // country, state and city, '' if unknown.
+    static final String[][] PLACES = {
+            {"United States", "US", "United States", "", ""},
+            {"USA", "US", "United States", "", ""},
+            {"New York, NY", "US", "United States", "NY", "New York"},
+            {"Los Angeles, CA", "US", "United States", "CA", "Los Angeles"},
+            {"Washington, DC", "US", "United States", "DC", "Washington"},
+            {"Texas, USA", "US", "United States", "TX", ""},
+            {"Chicago, IL", "US", "United States", "IL", "Chicago"},
+            {"London, England", "GB", "United Kingdom", "England", "London"},
+            {"London", "GB", "United Kingdom", "England", "London"},
+            {"United Kingdom", "GB", "United Kingdom", "", ""},
+            {"India", "IN", "India", "", ""},
+            {"Mumbai, India", "IN", "India", "Maharashtra", "Mumbai"},
+            {"New Delhi, India", "IN", "India", "Delhi", "New Delhi"},
+            {"Lagos, Nigeria", "NG", "Nigeria", "Lagos", "Lagos"},
+            {"Nairobi, Kenya", "KE", "Kenya", "Nairobi", "Nairobi"},
+            {"Toronto, Ontario", "CA", "Canada", "Ontario", "Toronto"},
+            {"Sydney, New South Wales", "AU", "Australia", "New South Wales", "Sydney"},
+            {"Berlin, Deutschland", "DE", "Germany", "Berlin", "Berlin"},
+            {"München, Bayern", "DE", "Germany", "Bayern", "München"},
+            {"Paris, France", "FR", "France", "Île-de-France", "Paris"},
+            {"Madrid, España", "ES", "Spain", "Madrid", "Madrid"},
+            {"Roma, Lazio", "IT", "Italy", "Lazio", "Roma"},
+            {"São Paulo, Brasil", "BR", "Brazil", "São Paulo", "São Paulo"},
+            {"Johannesburg, South Africa", "ZA", "South Africa", "Gauteng", "Johannesburg"},
+            {"Manila, Philippines", "PH", "Philippines", "", "Manila"},
+    };
+
+    // Locations nobody can resolve.
+    static final String[] NOWHERE = {
+            "", "Earth", "Worldwide", "she/her", "in your heart", "🌍", "Everywhere",
+            "somewhere over the rainbow", "my couch", "Planet Earth", "he/him", "ig: @someone",
+    };
+
+    static final String DATE_PATTERN = "EEE MMM dd HH:mm:ss Z yyyy";
+
+    // 2020-03-01T00:00:00Z
+    static final long START = 1583020800000L;
+    static final long USER_BASE = 1_000_000_000L;
+    static final long TWEET_BASE = 1_234_000_000_000_000_000L;
+
+    // ----------------------------------------------
+
+    private final SplittableRandom random;
+    private final String[] hashtags;
+    private final String[] locations;
+    private final String[][] resolutions;
+    private final Zipf tagRank, userRank, locationRank;
+    private final SimpleDateFormat format = new SimpleDateFormat(DATE_PATTERN);
+    private final int users;
+
+    private double retweets = 0.6;
+    private int maxWords = 30;
+    // average milliseconds between two tweets
+    private long interval = 50;
+    private long tweetId = TWEET_BASE;
+    private long time = START;
+    // recent originals, retweets point to them
+    private final long[] recentIds = new long[1024];
+    private final long[] recentUsers = new long[1024];
+    private final String[] recentTexts = new String[1024];
+    private int recent;
+
+    public TweetGenerator(long seed) {
+        this(seed, 100_000, 10_000, 5_000);
+    }
+
+    public TweetGenerator(long seed, int users, int hashtags, int locations) {
+        isTrue(users > 0 && hashtags > 0 && locations > 0);
+        this.random = new SplittableRandom(seed);
+        this.users = users;
+        this.hashtags = new String[hashtags];
+        for (int i = 0; i < hashtags; i++) {
+            this.hashtags[i] = i < TAGS.length ? TAGS[i] : tagName(i);
+        }
+        this.locations = new String[locations];
+        this.resolutions = new String[locations][];
+        for (int i = 0; i < locations; i++) {
+            if (i < PLACES.length) {
+                this.locations[i] = PLACES[i][0];
+                this.resolutions[i] = Arrays.copyOfRange(PLACES[i], 1, 5);
+            }
+            else if (i % 3 == 0) {
+                this.locations[i] = NOWHERE[i / 3 % NOWHERE.length] + (i < 3 * NOWHERE.length ? "" : " " + i);
+            }
+            else {
+                // towns of the known places, resolved
+                final var place = PLACES[i % PLACES.length];
+                final var town = "Town" + i;
+                this.locations[i] = town + ", " + place[2];
+                this.resolutions[i] = new String[]{place[1], place[2], place[3], town};
+            }
+        }
+        this.tagRank = new Zipf(hashtags, 1.0);
+        this.userRank = new Zipf(users, 0.8);
+        this.locationRank = new Zipf(locations, 1.1);
+    }
+
+    // Share of retweets, 0.6 in the crawled data.
+    public TweetGenerator retweets(double share) {
+        isTrue(share >= 0 && share <= 1);
+        this.retweets = share;
+        return this;
+    }
+
+    public TweetGenerator maxWords(int words) {
+        isTrue(words > 0);
+        this.maxWords = words;
+        return this;
+    }
+
+    public TweetGenerator interval(long millis) {
+        isTrue(millis > 0);
+        this.interval = millis;
+        return this;
+    }
+
+    // ----------------------------------------------
+    //  SAMPLES.
+    // ----------------------------------------------
+
+    public String hashtag() {
+        final var tag = hashtags[tagRank.sample(random)];
+        // the same tag is written in different cases
+        return switch (random.nextInt(8)) {
+            case 0 -> tag.toLowerCase();
+            case 1 -> tag.toUpperCase();
+            default -> tag;
+        };
+    }
+
+    public String location() {
+        final var loc = locations[locationRank.sample(random)];
+        return random.nextInt(10) == 0 ? loc.toLowerCase() : loc;
+    }
+
+    public long user() {
+        return USER_BASE + userRank.sample(random);
+    }
+
+    public String text() {
+        return text(tags());
+    }
+
+    // Text with the hashtags, a mention or an url now and
+    // then and the odd double or trailing blank.
+    public String text(Set<String> tags) {
+        final var result = new StringBuilder(256);
+        if (random.nextInt(5) == 0) result.append('@').append(screenName(user())).append(' ');
+        final int words = 3 + random.nextInt(Math.max(1, maxWords - 2));
+        final var tagList = new ArrayList<>(tags);
+        for (int w = 0; w < words; w++) {
+            if (!tagList.isEmpty() && random.nextInt(words) < tagList.size())
+                result.append('#').append(tagList.remove(tagList.size() - 1)).append(' ');
+            result.append(WORDS[random.nextInt(WORDS.length)]);
+            result.append(random.nextInt(20) == 0 ? "  " : " ");
+        }
+        for (var tag : tagList) result.append('#').append(tag).append(' ');
+        if (random.nextInt(3) == 0) result.append("https://t.co/").append(Long.toString(random.nextLong() >>> 4, 36));
+        if (random.nextInt(4) == 0) result.append(' ');
+        return result.toString();
+    }
+
+    // Hashtags of a tweet, mostly none or one.
+    public Set<String> tags() {
+        final int n = switch (random.nextInt(10)) {
+            case 0, 1, 2, 3, 4 -> 0;
+            case 5, 6, 7 -> 1;
+            case 8 -> 2;
+            default -> 3 + random.nextInt(4);
+        };
+        final var result = new LinkedHashSet<String>(n * 2);
+        for (int i = 0; i < n; i++) result.add(hashtag());
+        return result;
+    }
+
+    // ----------------------------------------------
+    //  TWEETS.
+    // ----------------------------------------------
+
+    // Next tweet as a json line of the twitter api.
+    public String json() {
+        final long id = ++tweetId;
+        final long usr = user();
+        time += 1 + random.nextLong(2 * interval);
+        final boolean retweet = recent > 0 && random.nextDouble() < retweets;
+        final var json = new StringBuilder(1024);
+        json.append("{\"created_at\":\"").append(format.format(new Date(time))).append('"');
+        json.append(",\"id\":").append(id);
+        json.append(",\"id_str\":\"").append(id).append('"');
+        final Set<String> tags;
+        final String text;
+        final int source = retweet ? random.nextInt(Math.min(recent, recentIds.length)) : -1;
+        if (retweet) {
+            text = "RT @" + screenName(recentUsers[source]) + ": " + recentTexts[source];
+            tags = hashtagsOf(recentTexts[source]);
+        }
+        else {
+            tags = tags();
+            text = text(tags);
+        }
+        json.append(",\"full_text\":\"").append(escape(text)).append('"');
+        json.append(",\"truncated\":false");
+        json.append(",\"entities\":{\"hashtags\":[");
+        int at = 0;
+        for (var tag : tags) {
+            final int pos = text.indexOf('#' + tag);
+            if (at++ > 0) json.append(',');
+            json.append("{\"text\":\"").append(escape(tag)).append("\",\"indices\":[")
+                .append(pos).append(',').append(pos + tag.length() + 1).append("]}");
+        }
+        json.append("],\"symbols\":[],\"user_mentions\":[],\"urls\":[]}");
+        json.append(",\"in_reply_to_status_id\":null");
+        json.append(",\"user\":");
+        user(json, usr);
+        json.append(",\"is_quote_status\":false");
+        if (retweet) {
+            json.append(",\"retweeted_status\":{\"id\":").append(recentIds[source]);
+            json.append(",\"id_str\":\"").append(recentIds[source]).append('"');
+            json.append(",\"full_text\":\"").append(escape(recentTexts[source])).append('"');
+            json.append(",\"user\":");
+            user(json, recentUsers[source]);
+            json.append('}');
+        }
+        json.append(",\"retweet_count\":").append(retweet ? 0 : random.nextInt(10) == 0 ? random.nextInt(5000) : 0);
+        json.append(",\"favorite_count\":").append(random.nextInt(100));
+        json.append(",\"lang\":\"en\"}");
+        if (!retweet) remember(id, usr, text);
+        return json.toString();
+    }
+
+    public List<String> json(int n) {
+        final var result = new ArrayList<String>(n);
+        for (int i = 0; i < n; i++) result.add(json());
+        return result;
+    }
+
+    // Next tweet as the Status that Transformer makes of
+    // it, without location.
+    public Status status() {
+        final long id = ++tweetId;
+        time += 1 + random.nextLong(2 * interval);
+        final boolean retweet = recent > 0 && random.nextDouble() < retweets;
+        final Status result;
+        if (retweet) {
+            final int source = random.nextInt(Math.min(recent, recentIds.length));
+            result = new Status(id, "RT @" + screenName(recentUsers[source]) + ": " + recentTexts[source]);
+            result.hashtags.addAll(hashtagsOf(recentTexts[source]));
+            result.isRetweet = true;
+            result.rtwId = recentIds[source];
+            result.rtuId = recentUsers[source];
+        }
+        else {
+            final var tags = tags();
+            result = new Status(id, text(tags));
+            result.hashtags.addAll(tags);
+            result.retweetCnt = random.nextInt(10) == 0 ? random.nextInt(5000) : 0;
+        }
+        result.usrId = user();
+        result.date = new Date(time);
+        result.tags = TagDictionary.HASHTAGS.encode(result.hashtags);
+        if (!retweet) remember(id, result.usrId, result.txt);
+        return result;
+    }
+
+    public List<Status> statuses(int n) {
+        final var result = new ArrayList<Status>(n);
+        for (int i = 0; i < n; i++) result.add(status());
+        return result;
+    }
+
+    // ----------------------------------------------
+    //  LOCATIONS.
+    // ----------------------------------------------
+
+    // Writes the resolvable locations in the format of
+    // Locator.readJohannesLocations: one location per line
+    // and the same line of 'resolved' as a python list.
+    public void writeLocations(Path locations, Path resolved) throws IOException {
+        final var loc = new ArrayList<String>();
+        final var slv = new ArrayList<String>();
+        for (int i = 0; i < this.locations.length; i++) {
+            final var r = resolutions[i];
+            if (r == null) continue;
+            loc.add(this.locations[i]);
+            slv.add("['" + r[0] + "', '" + r[1] + "', '" + r[2] + "', '" + r[3] + "', None]");
+        }
+        Files.write(locations, loc, StandardCharsets.UTF_8);
+        Files.write(resolved, slv, StandardCharsets.UTF_8);
+    }
+
+    public int resolvable() {
+        int result = 0;
+        for (var r : resolutions) if (r != null) result++;
+        return result;
+    }
+
+    // ----------------------------------------------
+
+    private void user(StringBuilder json, long usr) {
+        json.append("{\"id\":").append(usr);
+        json.append(",\"id_str\":\"").append(usr).append('"');
+        json.append(",\"screen_name\":\"").append(screenName(usr)).append('"');
+        json.append(",\"location\":\"").append(escape(locations[locationRank.rank(usr)])).append('"');
+        json.append(",\"followers_count\":").append(usr % 5000);
+        json.append('}');
+    }
+
+    private void remember(long id, long usr, String text) {
+        final int i = recent++ & (recentIds.length - 1);
+        recentIds[i] = id;
+        recentUsers[i] = usr;
+        recentTexts[i] = text;
+    }
+
+    private static Set<String> hashtagsOf(String text) {
+        final var result = new LinkedHashSet<String>();
+        int pos = 0;
+        while ((pos = text.indexOf('#', pos)) >= 0) {
+            int end = ++pos;
+            while (end < text.length() && text.charAt(end) != ' ') end++;
+            if (end > pos) result.add(text.substring(pos, end));
+            pos = end;
+        }
+        return result;
+    }
+
+    private static String screenName(long usr) {
+        return "user" + Long.toString(usr - USER_BASE, 36);
+    }
+
+    private static String tagName(int rank) {
+        return (rank % 7 == 0 ? "Covid" : "tag") + Integer.toString(rank, 36);
+    }
+
+    static String escape(String str) {
+        if (str.indexOf('"') < 0 && str.indexOf('\\') < 0) return str;
+        return str.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    // ----------------------------------------------
+    //  ZIPF.
+    // ----------------------------------------------
+
+    // Ranks 0 .. n - 1 with p(k) ~ 1 / (k + 1)^s,
+    // sampled by a binary search of the cdf.
+    static final class Zipf {
+        final double[] cdf;
+
+        Zipf(int n, double s) {
+            cdf = new double[n];
+            double sum = 0;
+            for (int k = 0; k < n; k++) cdf[k] = sum += 1 / Math.pow(k + 1, s);
+            for (int k = 0; k < n; k++) cdf[k] /= sum;
+        }
+
+        int sample(SplittableRandom random) {
+            final int i = Arrays.binarySearch(cdf, random.nextDouble());
+            return Math.min(i < 0 ? -i - 1 : i, cdf.length - 1);
+        }
+
+        // Deterministic rank for a key, e.g. the home
+        // location of a user.
+        int rank(long key) {
+            final double u = (Long.hashCode(key * 0x9E3779B97F4A7C15L) & 0x7fffffff) / (double) Integer.MAX_VALUE;
+            final int i = Arrays.binarySearch(cdf, u);
+            return Math.min(i < 0 ? -i - 1 : i, cdf.length - 1);
+        }
+    }
+}
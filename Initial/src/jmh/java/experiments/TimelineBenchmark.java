@@ -0,0 +1,51 @@
+package experiments;
+
+import bench.TweetGenerator;
+import magma.system.Log;
+import magma.utils.TimeUtils;
+import model.Model.Status;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Sorting the tweets into a Timeline and splitting it
+// into hour and day buckets.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class TimelineBenchmark {
+
+    @Param({"100000", "1000000"})
+    int tweets;
+
+    List<Status> statuses;
+    Timeline timeline;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // every Timeline logs when it is done
+        Log.level(Log.Level.WARN);
+        // about 15 days of tweets for 1M
+        statuses = new TweetGenerator(3).interval(650).statuses(tweets);
+        timeline = new Timeline(statuses);
+    }
+
+    @Benchmark
+    public Timeline build() {
+        return new Timeline(statuses);
+    }
+
+    @Benchmark
+    public Timeline splitByHour() {
+        return timeline.split(TimeUtils::addHour);
+    }
+
+    @Benchmark
+    public Timeline splitByDay() {
+        return timeline.split(TimeUtils::addDay);
+    }
+}
@@ -0,0 +1,43 @@
+package experiments;
+
+import bench.TweetGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Tweets.prepareTxt, the text normalization in front of
+// the duplicate detection, once per tweet.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TweetsBenchmark {
+
+    static final int SAMPLES = 1 << 12;
+
+    @Param({"10", "50"})
+    int maxWords;
+
+    @Param({"0.0", "0.6"})
+    double retweets;
+
+    String[] texts;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final var generator = new TweetGenerator(11).maxWords(maxWords).retweets(retweets);
+        texts = generator.statuses(SAMPLES).stream().map(s -> s.txt).toArray(String[]::new);
+    }
+
+    @Benchmark
+    public String prepareTxt(Cursor cursor) {
+        return Tweets.prepareTxt(texts[cursor.next++ & (SAMPLES - 1)]);
+    }
+}
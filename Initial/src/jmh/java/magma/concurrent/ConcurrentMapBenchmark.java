@@ -0,0 +1,174 @@
+package magma.concurrent;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMaps;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// The non-blocking maps against ConcurrentHashMap and a
+// synchronized fastutil map, with long keys, all threads
+// on one shared map:
+//   read   get of present keys
+//   write  put over present keys, no resize
+//   mixed  90% read, 10% write
+//   churn  put of a new key, remove of the key 'keys'
+//          puts before: constant size, but dead slots
+//          force the NB tables to copy over and over
+//   grow   put of new keys into a fresh map every
+//          GROW puts per thread: resize after resize
+// 'nb' and 'nbLong' are NBHashMap<Long, V> and
+// NBHashMapLong, the *Vh variants their VarHandle ports
+// in magma.concurrent.vh. Run with -t or bench.ThreadSweep
+// for 1..N threads.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConcurrentMapBenchmark {
+
+    static final Object VALUE = new Object();
+    static final int GROW = 1 << 16;
+
+    @Param({"nb", "nbVh", "nbLong", "nbLongVh", "chm", "fastutil"})
+    String impl;
+
+    @Param({"1024", "1048576"})
+    int keys;
+
+    LongMap map;
+    volatile LongMap grow;
+    int window;
+    final AtomicInteger ids = new AtomicInteger();
+
+    // ----------------------------------------------
+    //  MAPS.
+    // ----------------------------------------------
+
+    interface LongMap {
+        Object get(long key);
+        Object put(long key, Object val);
+        Object remove(long key);
+
+        static LongMap of(String impl, int size) {
+            return switch (impl) {
+                case "nb" -> boxed(new NBHashMap<>(size));
+                case "nbVh" -> boxed(new magma.concurrent.vh.NBHashMap<>(size));
+                case "nbLong" -> {
+                    final var m = new NBHashMapLong<Object>(size);
+                    yield new LongMap() {
+                        public Object get(long key) { return m.get(key); }
+                        public Object put(long key, Object val) { return m.put(key, val); }
+                        public Object remove(long key) { return m.remove(key); }
+                    };
+                }
+                case "nbLongVh" -> {
+                    final var m = new magma.concurrent.vh.NBHashMapLong<Object>(size);
+                    yield new LongMap() {
+                        public Object get(long key) { return m.get(key); }
+                        public Object put(long key, Object val) { return m.put(key, val); }
+                        public Object remove(long key) { return m.remove(key); }
+                    };
+                }
+                case "chm" -> boxed(new ConcurrentHashMap<>(size));
+                case "fastutil" -> {
+                    final var m = Long2ObjectMaps.synchronize(new Long2ObjectOpenHashMap<>(size));
+                    yield new LongMap() {
+                        public Object get(long key) { return m.get(key); }
+                        public Object put(long key, Object val) { return m.put(key, val); }
+                        public Object remove(long key) { return m.remove(key); }
+                    };
+                }
+                default -> throw new IllegalArgumentException(impl);
+            };
+        }
+
+        private static LongMap boxed(Map<Long, Object> m) {
+            return new LongMap() {
+                public Object get(long key) { return m.get(key); }
+                public Object put(long key, Object val) { return m.put(key, val); }
+                public Object remove(long key) { return m.remove(key); }
+            };
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup(BenchmarkParams params) {
+        map = LongMap.of(impl, keys);
+        for (int i = 0; i < keys; i++) map.put(key(i), VALUE);
+        grow = LongMap.of(impl, 1);
+        window = Math.max(1, keys / params.getThreads());
+    }
+
+    // Keys 1 .. keys, the NB long maps keep key 0 apart.
+    static long key(int i) { return i + 1; }
+
+    // ----------------------------------------------
+    //  THREAD.
+    // ----------------------------------------------
+
+    @State(Scope.Thread)
+    public static class Local {
+        long seed;
+        // prefix of the keys only this thread inserts
+        long prefix;
+        long next;
+
+        @Setup(Level.Trial)
+        public void setup(ConcurrentMapBenchmark shared) {
+            final int id = shared.ids.getAndIncrement();
+            seed = 0x9E3779B97F4A7C15L * (id + 1);
+            prefix = (long) (id + 1) << 40;
+            next = 0;
+        }
+
+        // xorshift, uniform in [0, n)
+        int random(int n) {
+            seed ^= seed << 13;
+            seed ^= seed >>> 7;
+            seed ^= seed << 17;
+            return (int) ((seed >>> 33) % n);
+        }
+    }
+
+    // ----------------------------------------------
+    //  WORKLOADS.
+    // ----------------------------------------------
+
+    @Benchmark
+    public Object read(Local local) {
+        return map.get(key(local.random(keys)));
+    }
+
+    @Benchmark
+    public Object write(Local local) {
+        return map.put(key(local.random(keys)), VALUE);
+    }
+
+    @Benchmark
+    public Object mixed(Local local) {
+        final long key = key(local.random(keys));
+        return local.random(10) == 0 ? map.put(key, VALUE) : map.get(key);
+    }
+
+    @Benchmark
+    public Object churn(Local local) {
+        final long n = local.next++;
+        map.put(local.prefix | n, VALUE);
+        return n < window ? null : map.remove(local.prefix | (n - window));
+    }
+
+    @Benchmark
+    public Object grow(Local local) {
+        final long n = local.next++;
+        final var result = grow.put(local.prefix | n, VALUE);
+        if ((n & (GROW - 1)) == GROW - 1) grow = LongMap.of(impl, 1);
+        return result;
+    }
+}
@@ -0,0 +1,89 @@
+package magma.concurrent;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// The striped NBCounter (ConcurrentAutoTable) and its
+// VarHandle port against LongAdder and a plain AtomicLong,
+// all threads on one counter: increment, sum and 99/1
+// increments and sums.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CounterBenchmark {
+
+    @Param({"nb", "nbVh", "adder", "atomic"})
+    String impl;
+
+    Counter counter;
+
+    interface Counter {
+        void increment();
+        long get();
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        counter = switch (impl) {
+            case "nb" -> {
+                final var c = new NBCounter();
+                yield new Counter() {
+                    public void increment() { c.increment(); }
+                    public long get() { return c.get(); }
+                };
+            }
+            case "nbVh" -> {
+                final var c = new magma.concurrent.vh.NBCounter();
+                yield new Counter() {
+                    public void increment() { c.increment(); }
+                    public long get() { return c.get(); }
+                };
+            }
+            case "adder" -> {
+                final var c = new LongAdder();
+                yield new Counter() {
+                    public void increment() { c.increment(); }
+                    public long get() { return c.sum(); }
+                };
+            }
+            case "atomic" -> {
+                final var c = new AtomicLong();
+                yield new Counter() {
+                    public void increment() { c.incrementAndGet(); }
+                    public long get() { return c.get(); }
+                };
+            }
+            default -> throw new IllegalArgumentException(impl);
+        };
+    }
+
+    @State(Scope.Thread)
+    public static class Local {
+        int n;
+    }
+
+    @Benchmark
+    public void increment() {
+        counter.increment();
+    }
+
+    @Benchmark
+    public long get() {
+        return counter.get();
+    }
+
+    @Benchmark
+    public long mixed(Local local) {
+        if (++local.n % 100 != 0) {
+            counter.increment();
+            return 0;
+        }
+        return counter.get();
+    }
+}
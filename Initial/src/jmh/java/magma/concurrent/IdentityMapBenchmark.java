@@ -0,0 +1,85 @@
+package magma.concurrent;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// NBIdentityHashMap and its VarHandle port against
+// ConcurrentHashMap (the keys keep the identity hashCode,
+// so it compares by identity too) and a synchronized
+// IdentityHashMap. Read, write and 90/10 mixed on one
+// shared map, see ConcurrentMapBenchmark.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IdentityMapBenchmark {
+
+    static final Object VALUE = new Object();
+
+    @Param({"nb", "nbVh", "chm", "sync"})
+    String impl;
+
+    @Param({"1024", "1048576"})
+    int keys;
+
+    Map<Object, Object> map;
+    Object[] objects;
+    final AtomicInteger ids = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        map = switch (impl) {
+            case "nb" -> new NBIdentityHashMap<>(keys);
+            case "nbVh" -> new magma.concurrent.vh.NBIdentityHashMap<>(keys);
+            case "chm" -> new ConcurrentHashMap<>(keys);
+            case "sync" -> Collections.synchronizedMap(new IdentityHashMap<>(keys));
+            default -> throw new IllegalArgumentException(impl);
+        };
+        objects = new Object[keys];
+        for (int i = 0; i < keys; i++) {
+            objects[i] = new Object();
+            map.put(objects[i], VALUE);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Local {
+        long seed;
+
+        @Setup(Level.Trial)
+        public void setup(IdentityMapBenchmark shared) {
+            seed = 0x9E3779B97F4A7C15L * (shared.ids.getAndIncrement() + 1);
+        }
+
+        int random(int n) {
+            seed ^= seed << 13;
+            seed ^= seed >>> 7;
+            seed ^= seed << 17;
+            return (int) ((seed >>> 33) % n);
+        }
+    }
+
+    @Benchmark
+    public Object read(Local local) {
+        return map.get(objects[local.random(keys)]);
+    }
+
+    @Benchmark
+    public Object write(Local local) {
+        return map.put(objects[local.random(keys)], VALUE);
+    }
+
+    @Benchmark
+    public Object mixed(Local local) {
+        final var key = objects[local.random(keys)];
+        return local.random(10) == 0 ? map.put(key, VALUE) : map.get(key);
+    }
+}
@@ -0,0 +1,130 @@
+package magma.concurrent;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSets;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// NBHashSetLong and its VarHandle port against a key set
+// of ConcurrentHashMap and a synchronized fastutil set,
+// read, write, 90/10 mixed and churn (add new, remove old)
+// on one shared set, see ConcurrentMapBenchmark.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LongSetBenchmark {
+
+    @Param({"nb", "nbVh", "chm", "fastutil"})
+    String impl;
+
+    @Param({"1024", "1048576"})
+    int keys;
+
+    LongSet set;
+    int window;
+    final AtomicInteger ids = new AtomicInteger();
+
+    interface LongSet {
+        boolean contains(long key);
+        boolean add(long key);
+        boolean remove(long key);
+
+        static LongSet of(String impl) {
+            return switch (impl) {
+                case "nb" -> {
+                    final var s = new NBHashSetLong();
+                    yield new LongSet() {
+                        public boolean contains(long key) { return s.contains(key); }
+                        public boolean add(long key) { return s.add(key); }
+                        public boolean remove(long key) { return s.remove(key); }
+                    };
+                }
+                case "nbVh" -> {
+                    final var s = new magma.concurrent.vh.NBHashSetLong();
+                    yield new LongSet() {
+                        public boolean contains(long key) { return s.contains(key); }
+                        public boolean add(long key) { return s.add(key); }
+                        public boolean remove(long key) { return s.remove(key); }
+                    };
+                }
+                case "chm" -> {
+                    final Set<Long> s = ConcurrentHashMap.newKeySet();
+                    yield new LongSet() {
+                        public boolean contains(long key) { return s.contains(key); }
+                        public boolean add(long key) { return s.add(key); }
+                        public boolean remove(long key) { return s.remove(key); }
+                    };
+                }
+                case "fastutil" -> {
+                    final var s = LongSets.synchronize(new LongOpenHashSet());
+                    yield new LongSet() {
+                        public boolean contains(long key) { return s.contains(key); }
+                        public boolean add(long key) { return s.add(key); }
+                        public boolean remove(long key) { return s.remove(key); }
+                    };
+                }
+                default -> throw new IllegalArgumentException(impl);
+            };
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup(BenchmarkParams params) {
+        set = LongSet.of(impl);
+        for (int i = 0; i < keys; i++) set.add(i + 1);
+        window = Math.max(1, keys / params.getThreads());
+    }
+
+    @State(Scope.Thread)
+    public static class Local {
+        long seed;
+        long prefix;
+        long next;
+
+        @Setup(Level.Trial)
+        public void setup(LongSetBenchmark shared) {
+            final int id = shared.ids.getAndIncrement();
+            seed = 0x9E3779B97F4A7C15L * (id + 1);
+            prefix = (long) (id + 1) << 40;
+            next = 0;
+        }
+
+        int random(int n) {
+            seed ^= seed << 13;
+            seed ^= seed >>> 7;
+            seed ^= seed << 17;
+            return (int) ((seed >>> 33) % n);
+        }
+    }
+
+    @Benchmark
+    public boolean read(Local local) {
+        return set.contains(local.random(keys) + 1);
+    }
+
+    @Benchmark
+    public boolean write(Local local) {
+        return set.add(local.random(keys) + 1);
+    }
+
+    @Benchmark
+    public boolean mixed(Local local) {
+        final long key = local.random(keys) + 1;
+        return local.random(10) == 0 ? set.add(key) : set.contains(key);
+    }
+
+    @Benchmark
+    public boolean churn(Local local) {
+        final long n = local.next++;
+        set.add(local.prefix | n);
+        return n >= window && set.remove(local.prefix | (n - window));
+    }
+}
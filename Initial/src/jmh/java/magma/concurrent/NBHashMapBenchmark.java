@@ -0,0 +1,121 @@
+package magma.concurrent;
+
+import bench.TweetGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Counting and lookups in the non-blocking maps with the
+// key skew of the data (user ids and hashtags), next to
+// ConcurrentHashMap as the baseline. All threads share
+// the maps, run with -t to measure contention.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NBHashMapBenchmark {
+
+    static final int SAMPLES = 1 << 16;
+
+    @Param({"1000", "1000000"})
+    int keys;
+
+    long[] users;
+    String[] tags;
+
+    NBHashMapLong2Int long2Int;
+    NBHashMapLong2Long long2Long;
+    NBHashMapUtf8 utf8;
+    NBHashMap<String, Long> objects;
+    ConcurrentHashMap<Long, Integer> chmLong;
+    ConcurrentHashMap<String, Long> chmString;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            next = new SplittableRandom().nextInt(SAMPLES);
+        }
+
+        int next() { return next++ & (SAMPLES - 1); }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final var generator = new TweetGenerator(13, keys, keys, 1_000);
+        users = new long[SAMPLES];
+        tags = new String[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            users[i] = generator.user();
+            tags[i] = generator.hashtag();
+        }
+        long2Int = new NBHashMapLong2Int();
+        long2Long = new NBHashMapLong2Long();
+        utf8 = new NBHashMapUtf8();
+        objects = new NBHashMap<>();
+        chmLong = new ConcurrentHashMap<>();
+        chmString = new ConcurrentHashMap<>();
+        for (int i = 0; i < SAMPLES; i++) {
+            long2Int.addTo(users[i], 1);
+            long2Long.addTo(users[i], 1);
+            utf8.addTo(tags[i], 1);
+            objects.put(tags[i], (long) i);
+            chmLong.merge(users[i], 1, Integer::sum);
+            chmString.merge(tags[i], 1L, Long::sum);
+        }
+    }
+
+    // ----------------------------------------------
+    //  LONG KEYS.
+    // ----------------------------------------------
+
+    @Benchmark
+    public int long2IntAddTo(Cursor cursor) {
+        return long2Int.addTo(users[cursor.next()], 1);
+    }
+
+    @Benchmark
+    public int long2IntGet(Cursor cursor) {
+        return long2Int.get(users[cursor.next()]);
+    }
+
+    @Benchmark
+    public long long2LongAddTo(Cursor cursor) {
+        return long2Long.addTo(users[cursor.next()], 1);
+    }
+
+    @Benchmark
+    public Integer chmLongMerge(Cursor cursor) {
+        return chmLong.merge(users[cursor.next()], 1, Integer::sum);
+    }
+
+    // ----------------------------------------------
+    //  STRING KEYS.
+    // ----------------------------------------------
+
+    @Benchmark
+    public long utf8AddTo(Cursor cursor) {
+        return utf8.addTo(tags[cursor.next()], 1);
+    }
+
+    @Benchmark
+    public long utf8Get(Cursor cursor) {
+        return utf8.get(tags[cursor.next()]);
+    }
+
+    @Benchmark
+    public Long objectsGet(Cursor cursor) {
+        return objects.get(tags[cursor.next()]);
+    }
+
+    @Benchmark
+    public Long chmStringMerge(Cursor cursor) {
+        return chmString.merge(tags[cursor.next()], 1L, Long::sum);
+    }
+}
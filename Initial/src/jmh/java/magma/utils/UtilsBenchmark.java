@@ -0,0 +1,65 @@
+package magma.utils;
+
+import bench.TweetGenerator;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import model.TagDictionary;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// The top-N of the aggregations: Utils.sortMap over the
+// fastutil count maps and the int[] variant sortCounts,
+// filled with Zipf distributed hashtag and user counts.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UtilsBenchmark {
+
+    @Param({"10000", "200000"})
+    int keys;
+
+    @Param({"10", "1000"})
+    int limit;
+
+    Object2IntMap<String> tags;
+    Long2IntOpenHashMap users;
+    int[] counts;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final var generator = new TweetGenerator(5, keys, keys, 1_000);
+        final var dictionary = new TagDictionary(TagDictionary.Kind.HASHTAG);
+        tags = new Object2IntOpenHashMap<>();
+        users = new Long2IntOpenHashMap();
+        counts = new int[keys];
+        for (int i = 0; i < 10 * keys; i++) {
+            final var tag = generator.hashtag();
+            tags.mergeInt(tag, 1, Integer::sum);
+            counts[dictionary.id(tag)]++;
+            users.addTo(generator.user(), 1);
+        }
+    }
+
+    @Benchmark
+    public List<Map.Entry<String, Integer>> sortTagMap() {
+        return Utils.sortMap(tags, limit);
+    }
+
+    @Benchmark
+    public List<Long2IntMap.Entry> sortUserMap() {
+        return Utils.sortMap(users, limit);
+    }
+
+    @Benchmark
+    public int[] sortCounts() {
+        return Utils.sortCounts(counts, limit);
+    }
+}
@@ -0,0 +1,51 @@
+package model;
+
+import bench.TweetGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+// Locator.resolve of user written locations, a hit is a
+// lower case + map lookup, a miss also counts the string
+// in the off-heap map of unresolved locations.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LocatorBenchmark {
+
+    static final int SAMPLES = 1 << 14;
+
+    @Param({"1000", "50000"})
+    int locations;
+
+    String[] samples;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        final var generator = new TweetGenerator(7, 1_000, 1_000, locations);
+        final var loc = Files.createTempFile("locations", ".csv");
+        final var slv = Files.createTempFile("locations", ".resolved");
+        generator.writeLocations(loc, slv);
+        Locator.get.readJohannesLocations(loc, slv);
+        Files.delete(loc);
+        Files.delete(slv);
+        samples = new String[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) samples[i] = generator.location();
+    }
+
+    @Benchmark
+    public Optional<Locator.Location> resolve(Cursor cursor) {
+        return Locator.get.resolve(samples[cursor.next++ & (SAMPLES - 1)]);
+    }
+}
@@ -0,0 +1,68 @@
+package model;
+
+import bench.TweetGenerator;
+import org.bson.RawBsonDocument;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Per tweet cost of the ingest: json line -> bson
+// (parse) and bson -> Status (toMinTweet, which also
+// resolves the location and interns the hashtags).
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransformerBenchmark {
+
+    static final int TWEETS = 10_000;
+
+    @Param({"0.0", "0.6"})
+    double retweets;
+
+    @Param({"1000", "100000"})
+    int hashtags;
+
+    List<String> lines;
+    RawBsonDocument[] docs;
+    SimpleDateFormat format;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        final var generator = new TweetGenerator(42, 100_000, hashtags, 5_000).retweets(retweets);
+        final var loc = Files.createTempFile("locations", ".csv");
+        final var slv = Files.createTempFile("locations", ".resolved");
+        generator.writeLocations(loc, slv);
+        Locator.get.readJohannesLocations(loc, slv);
+        Files.delete(loc);
+        Files.delete(slv);
+        lines = generator.json(TWEETS);
+        docs = lines.stream().map(RawBsonDocument::parse).toArray(RawBsonDocument[]::new);
+        format = new SimpleDateFormat("EEE MMM dd HH:mm:ss Z yyyy");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TWEETS)
+    public void parse(Blackhole bh) {
+        for (var line : lines) bh.consume(RawBsonDocument.parse(line));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TWEETS)
+    public void toMinTweet(Blackhole bh) {
+        for (var doc : docs) bh.consume(Transformer.toMinTweet(doc, format));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TWEETS)
+    public void parseAndTransform(Blackhole bh) {
+        for (var line : lines) bh.consume(Transformer.toMinTweet(RawBsonDocument.parse(line), format));
+    }
+}
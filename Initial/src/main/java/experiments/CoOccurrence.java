@@ -0,0 +1,246 @@
+package experiments;
+
+import magma.concurrent.ConcurrentCounterArray;
+import magma.concurrent.NBHashMapLong2Int;
+import magma.exa.base.Hash;
+import magma.system.Log;
+import magma.utils.Sink;
+import model.Model.Status;
+import model.TagDictionary;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static magma.exa.base.contract.Require.isTrue;
+import static magma.utils.ParallelUtils.forRange;
+import static magma.utils.Sink.*;
+
+// Sparse hashtag co-occurrence counts over the int tag
+// ids of the tweets, built in one parallel scan. Every
+// unordered pair a < b of a tweet is keyed as a << 32 | b
+// in a shared NBHashMapLong2Int, tag counts go into a
+// striped ConcurrentCounterArray.
+//
+// With minCount > 1 rare pairs are pruned by a count-min
+// sketch in front of the map: a pair is only admitted to
+// the map once its sketch estimate reaches minCount, the
+// thread that inserts it credits the estimate for the
+// occurrences before. Since the sketch never under counts
+// no pair with minCount occurrences is lost, admitted
+// counts may be too high by the sketch error, which is
+// small as long as the sketch is much wider than the
+// number of distinct pairs (see sketchBits).
+//
+// The result is kept as a symmetric adjacency list with
+// the neighbours of each tag sorted by count, so top-K
+// neighbours are a prefix of its row.
+public class CoOccurrence {
+
+    public static final int DEPTH = 4;
+    public static final int SKETCH_BITS = 22;
+
+    // Number of tweets with at least one tag.
+    public final long tweets;
+    public final long pairs;
+    final int[] tagCount;
+    // neighbours of tag t are adj[off[t] .. off[t + 1]) with
+    // count << 32 | neighbour, by descending count
+    final int[] off;
+    final long[] adj;
+
+    private CoOccurrence(long tweets, int[] tagCount, int[] off, long[] adj) {
+        this.tweets = tweets;
+        this.tagCount = tagCount;
+        this.off = off;
+        this.adj = adj;
+        this.pairs = adj.length / 2;
+    }
+
+    // ----------------------------------------------
+    //  BUILD.
+    // ----------------------------------------------
+
+    // Exact counts of all pairs.
+    public static CoOccurrence of(List<Status> tweets, int vocabulary) {
+        return of(tweets, vocabulary, 1, SKETCH_BITS);
+    }
+
+    // Pairs with less than 'minCount' occurrences are
+    // pruned by a sketch of DEPTH rows of 2^sketchBits
+    // counters.
+    public static CoOccurrence of(List<Status> tweets, int vocabulary, int minCount, int sketchBits) {
+        isTrue(minCount >= 1 && sketchBits > 0 && sketchBits < 28);
+        final var tagCnt = new ConcurrentCounterArray(vocabulary);
+        final var exact = new NBHashMapLong2Int(1 << 16);
+        exact.defaultReturnValue(-1);
+        final var sketch = minCount > 1 ? new AtomicIntegerArray(DEPTH << sketchBits) : null;
+        final int mask = (1 << sketchBits) - 1;
+        final var docs = new LongAdder();
+        forRange(tweets.size(), (from, to) -> {
+            for (int i = from; i < to; i++) {
+                final var tags = tweets.get(i).tags;
+                if (tags.length == 0) continue;
+                docs.increment();
+                for (int x = 0; x < tags.length; x++) {
+                    tagCnt.increment(tags[x]);
+                    for (int y = x + 1; y < tags.length; y++) {
+                        final long key = (long) tags[x] << 32 | tags[y];
+                        if (sketch == null) {
+                            exact.addTo(key, 1);
+                            continue;
+                        }
+                        final int est = increment(sketch, key, sketchBits, mask);
+                        if (est < minCount) continue;
+                        if (exact.addTo(key, 1) == -1) exact.addTo(key, est - 1);
+                    }
+                }
+            }
+        });
+        final var counts = tagCnt.snapshot();
+        final var tagCount = new int[vocabulary];
+        for (int t = 0; t < vocabulary; t++) tagCount[t] = (int) counts[t];
+
+        final var off = new int[vocabulary + 1];
+        exact.forEach((key, cnt) -> {
+            if (cnt < minCount) return;
+            off[(int) (key >>> 32) + 1]++;
+            off[(int) key + 1]++;
+        });
+        for (int t = 0; t < vocabulary; t++) off[t + 1] += off[t];
+        final var adj = new long[off[vocabulary]];
+        final var pos = Arrays.copyOf(off, vocabulary);
+        exact.forEach((key, cnt) -> {
+            if (cnt < minCount) return;
+            final int a = (int) (key >>> 32), b = (int) key;
+            adj[pos[a]++] = (long) cnt << 32 | b;
+            adj[pos[b]++] = (long) cnt << 32 | a;
+        });
+        forRange(vocabulary, (from, to) -> {
+            for (int t = from; t < to; t++) {
+                Arrays.sort(adj, off[t], off[t + 1]);
+                for (int i = off[t], j = off[t + 1] - 1; i < j; i++, j--) {
+                    final long tmp = adj[i];
+                    adj[i] = adj[j];
+                    adj[j] = tmp;
+                }
+            }
+        });
+        final var result = new CoOccurrence(docs.sum(), tagCount, off, adj);
+        Log.info("CO-OCCURRENCE: " + result.tweets + " TWEETS, " + result.pairs + " PAIRS >= " + minCount);
+        return result;
+    }
+
+    // Adds one to the DEPTH counters of 'key' and returns
+    // the smallest of them, i.e. the count-min estimate.
+    private static int increment(AtomicIntegerArray sketch, long key, int bits, int mask) {
+        final int h1 = Hash.code(key);
+        final int h2 = Hash.code(~key) | 1;
+        int result = Integer.MAX_VALUE;
+        for (int r = 0; r < DEPTH; r++) {
+            final int cnt = sketch.incrementAndGet(r << bits | ((h1 + r * h2) & mask));
+            if (cnt < result) result = cnt;
+        }
+        return result;
+    }
+
+    // ----------------------------------------------
+    //  QUERIES.
+    // ----------------------------------------------
+
+    public int vocabulary() { return tagCount.length; }
+
+    // Number of tweets with 'tag'.
+    public int count(int tag) { return tagCount[tag]; }
+
+    // Number of tweets with both tags, 0 if pruned.
+    public int count(int a, int b) {
+        for (int i = off[a]; i < off[a + 1]; i++)
+            if ((int) adj[i] == b) return (int) (adj[i] >>> 32);
+        return 0;
+    }
+
+    public int degree(int tag) { return off[tag + 1] - off[tag]; }
+
+    // The k tags that occur most often with 'tag'.
+    public int[] neighbours(int tag, int k) {
+        final var result = new int[Math.min(k, degree(tag))];
+        for (int i = 0; i < result.length; i++) result[i] = (int) adj[off[tag] + i];
+        return result;
+    }
+
+    // Counts of neighbours(tag, k), in the same order.
+    public int[] neighbourCounts(int tag, int k) {
+        final var result = new int[Math.min(k, degree(tag))];
+        for (int i = 0; i < result.length; i++) result[i] = (int) (adj[off[tag] + i] >>> 32);
+        return result;
+    }
+
+    // ln(p(a, b) / (p(a) p(b))) with p(x) = count(x) / tweets,
+    // NaN for a pair that never occurs (or is pruned), whose
+    // PMI would be ln 0.
+    public double pmi(int a, int b) {
+        final int ab = count(a, b);
+        return ab == 0 ? Double.NaN : pmi(ab, tagCount[a], tagCount[b]);
+    }
+
+    // PMI normalized to [-1, 1] by -ln p(a, b), -1 for a
+    // pair that never occurs, its limit.
+    public double npmi(int a, int b) {
+        final int ab = count(a, b);
+        return ab == 0 ? -1.0 : npmi(ab, tagCount[a], tagCount[b]);
+    }
+
+    // 0 for a pair that never occurs.
+    public double lift(int a, int b) {
+        final int ab = count(a, b);
+        return ab == 0 ? 0.0 : lift(ab, tagCount[a], tagCount[b]);
+    }
+
+    // Scores of a pair with ab >= 1 occurrences, so ca, cb
+    // >= 1 as well and all of them are finite.
+    private double lift(long ab, int ca, int cb) {
+        return ab * (double) tweets / ((double) ca * cb);
+    }
+
+    private double pmi(long ab, int ca, int cb) {
+        return Math.log(lift(ab, ca, cb));
+    }
+
+    private double npmi(long ab, int ca, int cb) {
+        final double pab = (double) ab / tweets;
+        return pab >= 1.0 ? 1.0 : pmi(ab, ca, cb) / -Math.log(pab);
+    }
+
+    // ----------------------------------------------
+    //  EXPORT.
+    // ----------------------------------------------
+
+    // Edge list of the hashtag network, one row per pair.
+    public void writeScores(Path file, TagDictionary dictionary) throws IOException {
+        writeScores(file, dictionary, 1);
+    }
+
+    // Only the pairs with at least 'minCount' occurrences,
+    // which are >= 1, so no score is infinite or NaN.
+    public void writeScores(Path file, TagDictionary dictionary, int minCount) throws IOException {
+        isTrue(minCount >= 1);
+        try (var sink = Sink.result(file, stringCol("t1"), stringCol("t2"), longCol("count"),
+                intCol("c1"), intCol("c2"), doubleCol("pmi"), doubleCol("npmi"), doubleCol("lift"))) {
+            for (int a = 0; a < vocabulary(); a++) {
+                for (int i = off[a]; i < off[a + 1]; i++) {
+                    final int b = (int) adj[i];
+                    final long cnt = adj[i] >>> 32;
+                    if (cnt < minCount) break; // by descending count
+                    if (b < a) continue;
+                    final int ca = tagCount[a], cb = tagCount[b];
+                    sink.put(dictionary.name(a)).put(dictionary.name(b)).put(cnt).put(ca).put(cb)
+                        .put(pmi(cnt, ca, cb)).put(npmi(cnt, ca, cb)).put(lift(cnt, ca, cb)).end();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package experiments;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+import magma.system.Log;
+import magma.system.Metrics;
+import magma.utils.Csv;
+import magma.utils.Csv.Column;
+import magma.utils.Csv.Type;
+import magma.utils.Sink;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Country to country network of the misinformation
+// dataset. Replaces the Cat_*_network_global notebooks:
+// all category/threshold edge lists are loaded into one
+// set of columns with dense country ids, the weighted
+// degrees of every slot are accumulated in one scan and
+// Vi/Vj, the percentages, tweets per population and both
+// Cij variants are computed per edge without any lookup.
+public class CountryNetwork {
+
+    public enum Threshold {
+        ONLY_2("only_2"),
+        ONLY_3("only_3"),
+        ONLY_2_OR_3("only_2_or_3");
+        final String suffix;
+        Threshold(String suffix) { this.suffix = suffix; }
+    }
+
+    public static final List<String> CATEGORIES = List.of("1", "2", "3", "4", "5", "6", "7", "8", "all");
+
+    static final Sink.Column[] COLUMNS = {
+            Sink.stringCol("Source"), Sink.stringCol("Destination"),
+            Sink.doubleCol("Number of Tweets"),
+            Sink.doubleCol("All Degree of Source"), Sink.doubleCol("All Degree of Destination"),
+            Sink.doubleCol("Vi - Out Degree of Source"), Sink.doubleCol("Vj - In Degree of Destination"),
+            Sink.doubleCol("Percentage of Incoming at Destination (Total Tweet / Vj)"),
+            Sink.doubleCol("Percentage of Outgoing From Source (Total Tweet / Vi)"),
+            Sink.doubleCol("Tweets Per Population"), Sink.doubleCol("Cij (All Degrees)"), Sink.doubleCol("Cij")};
+
+    // Populations the notebooks had to patch in by hand
+    // since they are missing in the country data files.
+    static final Map<String, Long> POPULATION_FALLBACK = Map.ofEntries(
+            Map.entry("AI", 15753L), Map.entry("AQ", 3000L), Map.entry("AX", 30129L),
+            Map.entry("BQ", 27726L), Map.entry("CX", 1692L), Map.entry("EH", 612000L),
+            Map.entry("FK", 3662L), Map.entry("GF", 301099L), Map.entry("GG", 63950L),
+            Map.entry("GS", 1L), Map.entry("IO", 3000L), Map.entry("JE", 103267L),
+            Map.entry("PN", 47L), Map.entry("RE", 873102L), Map.entry("SH", 4439L),
+            Map.entry("TF", 300L), Map.entry("TW", 23894394L), Map.entry("UM", 300L),
+            Map.entry("VA", 453L), Map.entry("YT", 310022L));
+
+    // ----------------------------------------------
+    //  COLUMNS.
+    // ----------------------------------------------
+
+    final Object2IntOpenHashMap<String> countryIds = new Object2IntOpenHashMap<>();
+    final List<String> countries = new ArrayList<>();
+    final List<String> slotNames = new ArrayList<>();
+
+    // One row per edge of every slot.
+    final IntArrayList slot = new IntArrayList();
+    final IntArrayList src = new IntArrayList();
+    final IntArrayList tgt = new IntArrayList();
+    final DoubleArrayList tweets = new DoubleArrayList();
+    final IntArrayList slotStart = new IntArrayList();
+
+    final Object2LongOpenHashMap<String> populations = new Object2LongOpenHashMap<>();
+
+    // [slot * countries + country]
+    double[] degIn, degOut;
+    long[] population;
+
+    public CountryNetwork() {
+        countryIds.defaultReturnValue(-1);
+    }
+
+    int countryId(String code) {
+        int id = countryIds.getInt(code);
+        if (id == -1) {
+            id = countries.size();
+            countryIds.put(code, id);
+            countries.add(code);
+        }
+        return id;
+    }
+
+    // ----------------------------------------------
+    //  LOAD.
+    // ----------------------------------------------
+
+    // Reads one loc-to-loc file (i,j,count) as a new slot.
+    // Country codes may be quoted with ', rows with None
+    // on either side are dropped.
+    public CountryNetwork addEdgeList(String name, Path file) throws IOException {
+        final int s = slotNames.size();
+        slotNames.add(name);
+        slotStart.add(slot.size());
+        final var table = Csv.read(file, true, Csv.CHUNK_BYTES,
+                Column.at(0, "i", Type.STRING),
+                Column.at(1, "j", Type.STRING),
+                Column.at(2, "count", Type.DOUBLE));
+        final var is = table.strings("i");
+        final var js = table.strings("j");
+        final var counts = table.doubles("count");
+        for (int r = 0; r < table.rows(); r++) {
+            if (Double.isNaN(counts[r])) continue;
+            final var i = unquote(is[r]);
+            final var j = unquote(js[r]);
+            if (i.equals("None") || j.equals("None")) continue;
+            slot.add(s);
+            src.add(countryId(i));
+            tgt.add(countryId(j));
+            tweets.add(counts[r]);
+        }
+        return this;
+    }
+
+    private static String unquote(String str) {
+        return str.replace("'", "").trim();
+    }
+
+    // Country Code,...,Population. Later files do not
+    // overwrite earlier entries, rows without a code or
+    // population are skipped.
+    public CountryNetwork addPopulation(Path countryDataFile) throws IOException {
+        final var table = Csv.read(countryDataFile,
+                Csv.stringCol("Country Code"),
+                Csv.doubleCol("Population"));
+        final var codes = table.strings("Country Code");
+        final var pops = table.doubles("Population");
+        for (int r = 0; r < table.rows(); r++) {
+            if (codes[r].isEmpty() || Double.isNaN(pops[r])) continue;
+            populations.putIfAbsent(codes[r], (long) pops[r]);
+        }
+        return this;
+    }
+
+    // ----------------------------------------------
+    //  COMPUTE.
+    // ----------------------------------------------
+
+    public CountryNetwork compute() {
+        final int C = countries.size();
+        final int S = slotNames.size();
+        final int E = slot.size();
+        final var sl = slot.elements();
+        final var sr = src.elements();
+        final var tg = tgt.elements();
+        final var tw = tweets.elements();
+        degIn = new double[S * C];
+        degOut = new double[S * C];
+        for (int e = 0; e < E; e++) {
+            degOut[sl[e] * C + sr[e]] += tw[e];
+            degIn[sl[e] * C + tg[e]] += tw[e];
+        }
+        population = new long[C];
+        for (int c = 0; c < C; c++) {
+            final var cc = countries.get(c);
+            population[c] = populations.containsKey(cc)
+                    ? populations.getLong(cc)
+                    : POPULATION_FALLBACK.getOrDefault(cc, 0L);
+        }
+        Log.info("COUNTRY NETWORK: " + S + " SLOTS, " + C + " COUNTRIES, " + E + " EDGES");
+        return this;
+    }
+
+    // ----------------------------------------------
+    //  EXPORT.
+    // ----------------------------------------------
+
+    public void write(Path resultDir) throws IOException {
+        final int C = countries.size();
+        for (int s = 0; s < slotNames.size(); s++) {
+            final var file = resultDir.resolve("global_network_cat_" + slotNames.get(s) + ".csv");
+            try (var sink = Sink.result(file, COLUMNS)) {
+                for (int e = slotStart.getInt(s), end = slotEnd(s); e < end; e++) {
+                    final int i = src.getInt(e), j = tgt.getInt(e);
+                    final double n = tweets.getDouble(e);
+                    final double allI = degIn[s * C + i] + degOut[s * C + i];
+                    final double allJ = degIn[s * C + j] + degOut[s * C + j];
+                    final double vi = degOut[s * C + i];
+                    final double vj = degIn[s * C + j];
+                    final long pop = population[i] + population[j];
+                    sink.put(countries.get(i)).put(countries.get(j))
+                        .put(n).put(allI).put(allJ).put(vi).put(vj)
+                        .put(n / vj * 100).put(n / vi * 100)
+                        .put(pop == 0 ? Double.NaN : n / pop)
+                        .put(n / (allI + allJ)).put(n / (vi + vj)).end();
+                }
+            }
+        }
+    }
+
+    int slotEnd(int s) {
+        return s + 1 < slotStart.size() ? slotStart.getInt(s + 1) : slot.size();
+    }
+
+    // ----------------------------------------------
+    //  RUN.
+    // ----------------------------------------------
+
+    private static final Metrics.Stage STAGE = Metrics.stage("countries");
+
+    // Expects Location_with_only_country_code_cat_<c>_<t>.csv
+    // for every category and threshold in 'dataDir'.
+    public static void run(Path dataDir, Path countryDataFile, Path resultDir) throws IOException {
+        Log.info("START COUNTRY NETWORK");
+        var inst = new CountryNetwork();
+        for (var category : CATEGORIES) {
+            for (var threshold : Threshold.values()) {
+                final var name = category + "_" + threshold.suffix;
+                final var file = dataDir.resolve("Location_with_only_country_code_cat_" + name + ".csv");
+                if (Files.isRegularFile(file)) STAGE.time("read", () -> inst.addEdgeList(name, file));
+                else Log.warn("MISSING " + file);
+            }
+        }
+        STAGE.time("population", () -> inst.addPopulation(countryDataFile));
+        STAGE.time("compute", inst::compute);
+        STAGE.time("write", () -> inst.write(resultDir));
+    }
+}
@@ -1,61 +1,49 @@
 package experiments;
 
 import experiments.Timeline.Bucket;
-import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import magma.system.Log;
+import magma.system.Metrics;
+import magma.utils.Sink;
+import model.Model.Status;
+import model.TagDictionary;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.List;
 
-import static magma.utils.FileUtils.newBufferedWriterAppend;
-import static magma.utils.FileUtils.newFile;
-import static magma.utils.Utils.sortMap;
+import static magma.utils.Sink.intCol;
+import static magma.utils.Sink.stringCol;
+import static magma.utils.Utils.sortCounts;
 
 public class Hashtags {
 
+    private static final Metrics.Stage STAGE = Metrics.stage("hashtags");
+
     final Timeline timeLine;
+    // Tweets carry their hashtags as ids of this.
+    final TagDictionary dictionary = TagDictionary.HASHTAGS;
+    static final int MIN_PAIR_COUNT = 5;
+    private CoOccurrence pairs;
 
     public Hashtags(Timeline timeLine) {
         this.timeLine = timeLine;
     }
 
     public void top1000Tweets(Path rltFle) throws IOException {
-        final var all = new Object2IntOpenHashMap<String>();
-        final var twt = new Object2IntOpenHashMap<String>();
-        final var rtw = new Object2IntOpenHashMap<String>();
-        final var tweets = timeLine.tweets();
-        for (int i = 0; i < tweets.size(); i++) {
-            var tweet = tweets.get(i);
-                for (var tag : tweet.hashtags) {
-                    all.addTo(tag.toLowerCase(), 1);
-                }
-            if (tweet.isRetweet) {
-                for (var tag : tweet.hashtags) {
-                    rtw.addTo(tag.toLowerCase(), 1);
-                }
-            }
-            else {
-                for (var tag : tweet.hashtags) {
-                    twt.addTo(tag.toLowerCase(), 1);
-                }
+        final int n = dictionary.size();
+        final var all = new int[n];
+        final var twt = new int[n];
+        final var rtw = new int[n];
+        count(timeLine.tweets(), all, twt, rtw);
+        try (var sink = Sink.result(rltFle, stringCol("tag"), intCol("all"), intCol("tweet"), intCol("retweet"))) {
+            for (int tag : sortCounts(all, 1000)) {
+                sink.put(dictionary.name(tag)).put(all[tag]).put(twt[tag]).put(rtw[tag]).end();
             }
         }
-        var writer = newBufferedWriterAppend(newFile(rltFle));
-        var result = sortMap(all, 1000);
-        writer.write("tag,all,tweet,retweet\n");
-        for (var val : result) {
-            var tag = val.getKey();
-            writer.write( tag + "," + val.getValue()
-                                  + "," + twt.getInt(tag)
-                                  + "," + rtw.getInt(tag)
-                                  + "\n");
-        }
-        writer.close();
     }
 
     public void top10TweetsByDay(Path rltFle) throws IOException {
-        var buckets = timeLine.splitByDay().buckets();
         writeTagsToFile(timeLine.splitByDay().buckets(), rltFle);
     }
 
@@ -65,102 +53,102 @@ public class Hashtags {
     }
 
     private void writeTagsToFile(List<Bucket> buckets, Path rltFle) throws IOException {
-        var writer = newBufferedWriterAppend(newFile(rltFle));
-        writer.write("date,tag,all,tweet,retweet\n");
-        for (var bucket : buckets) {
-            final var all = new Object2IntOpenHashMap<String>();
-            final var twt = new Object2IntOpenHashMap<String>();
-            final var rtw = new Object2IntOpenHashMap<String>();
-            final var tweets = bucket.statuses;
-            for (int i = 0; i < tweets.size(); i++) {
-                var tweet = tweets.get(i);
-                for (var tag : tweet.hashtags) {
-                    all.addTo(tag.toLowerCase(), 1);
-                }
-                if (tweet.isRetweet) {
-                    for (var tag : tweet.hashtags)
-                        rtw.addTo(tag.toLowerCase(), 1);
-                }
-                else {
-                    for (var tag : tweet.hashtags)
-                        twt.addTo(tag.toLowerCase(), 1);
+        final int n = dictionary.size();
+        final var all = new int[n];
+        final var twt = new int[n];
+        final var rtw = new int[n];
+        try (var sink = Sink.result(rltFle,
+                stringCol("date"), stringCol("tag"), intCol("all"), intCol("tweet"), intCol("retweet"))) {
+            for (var bucket : buckets) {
+                final long start = System.nanoTime();
+                Arrays.fill(all, 0);
+                Arrays.fill(twt, 0);
+                Arrays.fill(rtw, 0);
+                count(bucket.statuses, all, twt, rtw);
+                var result = sortCounts(all, 3);
+                final long counted = System.nanoTime();
+                STAGE.histogram("bucket").record(counted - start);
+                Log.debug(() -> bucket.start + ": " + result.length + " TAGS");
+                final var date = bucket.start.toString();
+                for (int tag : result) {
+                    sink.put(date).put(dictionary.name(tag)).put(all[tag]).put(twt[tag]).put(rtw[tag]).end();
                 }
+                STAGE.histogram("write").since(counted);
             }
-            var result = sortMap(all, 3);
-            for (var val : result) {
-                Log.info("IN RESULT: " + result.size());
-                var tag = val.getKey();
-                writer.write(bucket.start + "," + tag
-                        + "," + val.getValue()
-                        + "," + twt.getInt(tag)
-                        + "," + rtw.getInt(tag)
-                        + "\n");
+        }
+    }
+
+    // Tag counts of all tweets, of the original
+    // tweets and of the retweets, indexed by id.
+    private static void count(List<Status> tweets, int[] all, int[] twt, int[] rtw) {
+        for (int i = 0; i < tweets.size(); i++) {
+            var tweet = tweets.get(i);
+            var cnt = tweet.isRetweet ? rtw : twt;
+            for (int tag : tweet.tags) {
+                all[tag]++;
+                cnt[tag]++;
             }
         }
-        writer.close();
     }
 
+    // Tag counts of the original tweets only.
+    private static void count(List<Status> tweets, int[] twt) {
+        for (int i = 0; i < tweets.size(); i++) {
+            var tweet = tweets.get(i);
+            if (tweet.isRetweet) continue;
+            for (int tag : tweet.tags) twt[tag]++;
+        }
+    }
+
+    // For the 10 most used tags of original tweets the
+    // 10 tags that occur most often with them in any tweet,
+    // empty fields for tags with fewer neighbours.
     public void top10PairsTweet(Path rltFle) throws IOException {
-        var writer = newBufferedWriterAppend(newFile(rltFle));
-        writer.write("mT,t1,c1,t2,c2,t3,c3,t4,c4,t5,c5,t6,c6,t7,c7,t8,c8,t9,c9,t10,c10,\n");
-        final var tweets = timeLine.tweets();
-        final var top10 = new Object2IntOpenHashMap<String>();
-        for (var tweet : tweets) {
-            if (!tweet.isRetweet) {
-                for (var tag : tweet.hashtags) {
-                    top10.addTo(tag, 1);
-                }
-            }
+        final var columns = new Sink.Column[21];
+        columns[0] = stringCol("mT");
+        for (int i = 0; i < 10; i++) {
+            columns[1 + 2 * i] = stringCol("t" + (i + 1));
+            columns[2 + 2 * i] = intCol("c" + (i + 1));
         }
-        final var top = sortMap(top10, 10);
-        for (var val : top) {
-            final var mainTag = val.getKey();
-            final var cntTags = new Object2IntOpenHashMap<String>();
-            for (var tweet : tweets) {
-                var tags = tweet.hashtags;
-                if (tags.contains(mainTag)) {
-                    for (var tag : tags) {
-                        cntTags.addTo(tag, 1);
-                    }
-                }
+        final var top10 = new int[dictionary.size()];
+        count(timeLine.tweets(), top10);
+        final var pairs = coOccurrence();
+        try (var sink = Sink.result(rltFle, columns)) {
+            for (int mainTag : sortCounts(top10, 10)) {
+                sink.put(dictionary.name(mainTag));
+                final var tags = pairs.neighbours(mainTag, 10);
+                final var cnts = pairs.neighbourCounts(mainTag, 10);
+                for (int i = 0; i < tags.length; i++) sink.put(dictionary.name(tags[i])).put(cnts[i]);
+                sink.end();
             }
-            var lst = sortMap(cntTags, 10);
-            writer.write(mainTag
-                                 + "," + lst.get(0).getKey()
-                                 + "," + lst.get(0).getValue()
-                                 + "," + lst.get(1).getKey()
-                                 + "," + lst.get(1).getValue()
-                                 + "," + lst.get(2).getKey()
-                                 + "," + lst.get(2).getValue()
-                                 + "," + lst.get(3).getKey()
-                                 + "," + lst.get(3).getValue()
-                                 + "," + lst.get(4).getKey()
-                                 + "," + lst.get(4).getValue()
-                                 + "," + lst.get(5).getKey()
-                                 + "," + lst.get(5).getValue()
-                                 + "," + lst.get(6).getKey()
-                                 + "," + lst.get(6).getValue()
-                                 + "," + lst.get(7).getKey()
-                                 + "," + lst.get(7).getValue()
-                                 + "," + lst.get(8).getKey()
-                                 + "," + lst.get(8).getValue()
-                                 + "," + lst.get(9).getKey()
-                                 + "," + lst.get(9).getValue()
-                                 + "\n");
         }
-        writer.close();
+    }
+
+    // PMI and lift of every pair that occurs at least
+    // MIN_PAIR_COUNT times, the edges of the hashtag network.
+    // Reuses the exact table of top10PairsTweet.
+    public void pairScores(Path rltFle) throws IOException {
+        coOccurrence().writeScores(rltFle, dictionary, MIN_PAIR_COUNT);
+    }
+
+    // One exact pair table for all pair outputs.
+    private CoOccurrence coOccurrence() {
+        if (pairs == null) pairs = CoOccurrence.of(timeLine.tweets(), dictionary.size());
+        return pairs;
     }
 
     public static void run(Timeline timeline, Path resultFolder) throws IOException {
         Log.info("START ANALYSE HASHTAGS");
         var inst = new Hashtags(timeline);
         Log.info("======================> A");
-        inst.top1000Tweets(resultFolder.resolve("hashtags__top__1000.csv"));
+        STAGE.time("top1000Tweets", () -> inst.top1000Tweets(resultFolder.resolve("hashtags__top__1000.csv")));
         Log.info("======================> B");
-        inst.top10TweetsByDay(resultFolder.resolve("hashtags__top10__by_day.csv"));
+        STAGE.time("top10TweetsByDay", () -> inst.top10TweetsByDay(resultFolder.resolve("hashtags__top10__by_day.csv")));
         Log.info("======================> C");
-        inst.top10TweetsByHour(resultFolder.resolve("hashtags__top__10_by_hour.csv"));
+        STAGE.time("top10TweetsByHour", () -> inst.top10TweetsByHour(resultFolder.resolve("hashtags__top__10_by_hour.csv")));
         Log.info("======================> D");
-        inst.top10PairsTweet(resultFolder.resolve("hashtags__top__10_pairs.csv"));
+        STAGE.time("top10PairsTweet", () -> inst.top10PairsTweet(resultFolder.resolve("hashtags__top__10_pairs.csv")));
+        Log.info("======================> E");
+        STAGE.time("pairScores", () -> inst.pairScores(resultFolder.resolve("hashtags__pairs__pmi.csv")));
     }
 }
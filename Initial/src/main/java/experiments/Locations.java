@@ -2,6 +2,8 @@ package experiments;
 
 import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import magma.system.Log;
+import magma.system.Metrics;
+import magma.utils.Sink;
 
 import java.io.IOException;
 import java.nio.file.Path;
@@ -9,12 +11,14 @@ import java.util.List;
 
 import static experiments.Timeline.*;
 import static java.util.Objects.isNull;
-import static magma.utils.FileUtils.newBufferedWriterAppend;
-import static magma.utils.FileUtils.newFile;
+import static magma.utils.Sink.intCol;
+import static magma.utils.Sink.stringCol;
 import static magma.utils.Utils.sortMap;
 
 public class Locations {
 
+    private static final Metrics.Stage STAGE = Metrics.stage("locations");
+
     final Timeline timeLine;
 
     public Locations(Timeline timeLine) {
@@ -40,17 +44,13 @@ public class Locations {
                 twt.addTo(cc, 1);
             }
         }
-        var writer = newBufferedWriterAppend(newFile(rltFle));
         var result = sortMap(all, 1000);
-        writer.write("country,all,tweet,retweet\n");
-        for (var val : result) {
-            var cc = val.getKey();
-            writer.write( cc + "," + val.getValue()
-                    + "," + twt.getInt(cc)
-                    + "," + rtw.getInt(cc)
-                    + "\n");
+        try (var sink = Sink.result(rltFle, stringCol("country"), intCol("all"), intCol("tweet"), intCol("retweet"))) {
+            for (var val : result) {
+                var cc = val.getKey();
+                sink.put(cc).put(val.getValue()).put(twt.getInt(cc)).put(rtw.getInt(cc)).end();
+            }
         }
-        writer.close();
     }
 
     public void top1000Cities(Path rltFle) throws IOException {
@@ -72,17 +72,13 @@ public class Locations {
                 twt.addTo(cc, 1);
             }
         }
-        var writer = newBufferedWriterAppend(newFile(rltFle));
         var result = sortMap(all, 1000);
-        writer.write("city,all,tweet,retweet\n");
-        for (var val : result) {
-            var cc = val.getKey();
-            writer.write( cc + "," + val.getValue()
-                    + "," + twt.getInt(cc)
-                    + "," + rtw.getInt(cc)
-                    + "\n");
+        try (var sink = Sink.result(rltFle, stringCol("city"), intCol("all"), intCol("tweet"), intCol("retweet"))) {
+            for (var val : result) {
+                var cc = val.getKey();
+                sink.put(cc).put(val.getValue()).put(twt.getInt(cc)).put(rtw.getInt(cc)).end();
+            }
         }
-        writer.close();
     }
 
     public void top10CountriesByDay(Path rltFle) throws IOException {
@@ -96,51 +92,52 @@ public class Locations {
     }
 
     private void writeCountriesToFile(List<Bucket> buckets, Path rltFle) throws IOException {
-        var writer = newBufferedWriterAppend(newFile(rltFle));
-        writer.write("date,country,all,tweet,retweet\n");
-        for (var bucket : buckets) {
-            final var all = new Object2IntOpenHashMap<String>();
-            final var twt = new Object2IntOpenHashMap<String>();
-            final var rtw = new Object2IntOpenHashMap<String>();
-            final var tweets = bucket.statuses;
-            for (int i = 0; i < tweets.size(); i++) {
-                var tweet = tweets.get(i);
-                if (isNull(tweet.loc)) continue;
-                if (tweet.loc.city.isEmpty()) continue;
-                var cc = tweet.loc.city.get().toLowerCase();
-                if (cc.equals("") || cc.equals("none")) continue;
-                all.addTo(cc, 1);
-                if (tweet.isRetweet) {
-                    rtw.addTo(cc, 1);
+        try (var sink = Sink.result(rltFle,
+                stringCol("date"), stringCol("country"), intCol("all"), intCol("tweet"), intCol("retweet"))) {
+            for (var bucket : buckets) {
+                final long start = System.nanoTime();
+                final var all = new Object2IntOpenHashMap<String>();
+                final var twt = new Object2IntOpenHashMap<String>();
+                final var rtw = new Object2IntOpenHashMap<String>();
+                final var tweets = bucket.statuses;
+                for (int i = 0; i < tweets.size(); i++) {
+                    var tweet = tweets.get(i);
+                    if (isNull(tweet.loc)) continue;
+                    if (tweet.loc.city.isEmpty()) continue;
+                    var cc = tweet.loc.city.get().toLowerCase();
+                    if (cc.equals("") || cc.equals("none")) continue;
+                    all.addTo(cc, 1);
+                    if (tweet.isRetweet) {
+                        rtw.addTo(cc, 1);
+                    }
+                    else {
+                        twt.addTo(cc, 1);
+                    }
                 }
-                else {
-                    twt.addTo(cc, 1);
+                var result = sortMap(all, 3);
+                final long counted = System.nanoTime();
+                STAGE.histogram("bucket").record(counted - start);
+                final var date = bucket.start.toString();
+                Log.debug(() -> date + ": " + result.size() + " COUNTRIES");
+                for (var val : result) {
+                    var cc = val.getKey();
+                    sink.put(date).put(cc).put(val.getValue()).put(twt.getInt(cc)).put(rtw.getInt(cc)).end();
                 }
-            }
-            var result = sortMap(all, 3);
-            for (var val : result) {
-                Log.info("IN RESULT: " + result.size());
-                var cc = val.getKey();
-                writer.write(bucket.start + "," + cc
-                        + "," + val.getValue()
-                        + "," + twt.getInt(cc)
-                        + "," + rtw.getInt(cc)
-                        + "\n");
+                STAGE.histogram("write").since(counted);
             }
         }
-        writer.close();
     }
 
     public static void run(Timeline timeline, Path resultFolder) throws IOException {
         Log.info("START ANALYSE HASHTAGS");
         var inst = new Locations(timeline);
         Log.info("======================> A");
-        inst.top1000Countries(resultFolder.resolve("locations__top_1000_countries.csv"));
+        STAGE.time("top1000Countries", () -> inst.top1000Countries(resultFolder.resolve("locations__top_1000_countries.csv")));
         Log.info("======================> B");
-        inst.top1000Cities(resultFolder.resolve("locations__top_1000_cities.csv"));
+        STAGE.time("top1000Cities", () -> inst.top1000Cities(resultFolder.resolve("locations__top_1000_cities.csv")));
         Log.info("======================> C");
-        inst.top10CountriesByDay(resultFolder.resolve("locations__top_1000_countries_by_day.csv"));
+        STAGE.time("top10CountriesByDay", () -> inst.top10CountriesByDay(resultFolder.resolve("locations__top_1000_countries_by_day.csv")));
         Log.info("======================> D");
-        inst.top10CountriesByHour(resultFolder.resolve("locations__top_1000_countries_by_hour.csv"));
+        STAGE.time("top10CountriesByHour", () -> inst.top10CountriesByHour(resultFolder.resolve("locations__top_1000_countries_by_hour.csv")));
     }
 }
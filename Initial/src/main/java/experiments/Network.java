@@ -1,5 +1,6 @@
 package experiments;
 
+import graph.Clusters;
 import magma.system.Log;
 import magma.utils.Utils.DegreeDistribution;
 import org.jgrapht.alg.scoring.*;
@@ -20,6 +21,7 @@ public class Network implements Runnable {
     private KatzCentrality<Long, DefaultEdge> katz;
     private PageRank<Long, DefaultEdge> pageRank;
     private Coreness<Long, DefaultEdge> coreness;
+    private Clusters clusters;
     private boolean isAnalyzed = false;
 
     private final graph.Network network;
@@ -53,6 +55,14 @@ public class Network implements Runnable {
         });
     }
 
+    // Components and communities on the Csr of the
+    // network instead of a jgrapht inspector.
+    CompletableFuture<Void> clusters() {
+        return CompletableFuture.runAsync(() -> {
+            clusters = network.clusters();
+        });
+    }
+
     CompletableFuture<Void> coreness() {
         return CompletableFuture.runAsync(() -> {
             coreness = new Coreness<>(simpleDirectedOf(network));
@@ -73,6 +83,8 @@ public class Network implements Runnable {
     }
 
     int corenessDegeneracy() { return coreness.getDegeneracy(); }
+    int numComponents() { return clusters.numComponents(); }
+    int numCommunities() { return clusters.numCommunities(); }
     double clusteringGlobal() { return clustering.getGlobalClusteringCoefficient(); }
     double clusteringAverage() { return clustering.getAverageClusteringCoefficient(); }
 
@@ -83,6 +95,7 @@ public class Network implements Runnable {
             Log.info("BETWEENESS"); betweenessScores();
             Log.info("PAGE-RANK");  pageRankScores();
             Log.info("CLUSTERING"); clusteringScores();
+            Log.info("CLUSTERS");   clusters().join();
             isAnalyzed = true;
         }
     }
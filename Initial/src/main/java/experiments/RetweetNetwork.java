@@ -0,0 +1,63 @@
+package experiments;
+
+import graph.Clusters;
+import graph.Csr;
+import it.unimi.dsi.fastutil.ints.Int2IntSortedMap;
+import magma.system.Log;
+import magma.system.Metrics;
+import magma.utils.GraphUtils;
+import magma.utils.Sink;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static magma.utils.Sink.intCol;
+import static magma.utils.Sink.longCol;
+
+// The retweet network of the timeline as a Csr (see
+// Csr.retweets) with its weakly connected components and
+// label propagation communities (Clusters), per user and
+// as size histograms, and the degree plot data.
+public class RetweetNetwork {
+
+    private static final Metrics.Stage STAGE = Metrics.stage("network");
+
+    final Csr csr;
+    private Clusters clusters;
+
+    public RetweetNetwork(Timeline timeLine) {
+        this.csr = Csr.retweets(timeLine.tweets());
+    }
+
+    private Clusters clusters() {
+        if (clusters == null) clusters = Clusters.of(csr);
+        return clusters;
+    }
+
+    public void writeClusters(Path rltFle) throws IOException {
+        final var res = clusters();
+        Log.info(res.numComponents() + " COMPONENTS, " + res.numCommunities() + " COMMUNITIES, "
+                + res.iterations + " ITERATIONS");
+        try (var sink = Sink.result(rltFle, longCol("user"), intCol("component"), intCol("community"))) {
+            for (int v = 0; v < csr.n; v++) {
+                sink.put(csr.ids[v]).put(res.component[v]).put(res.community[v]).end();
+            }
+        }
+    }
+
+    private static void writeSizes(Int2IntSortedMap histogram, Path rltFle) throws IOException {
+        try (var sink = Sink.result(rltFle, intCol("size"), intCol("count"))) {
+            for (var e : histogram.int2IntEntrySet()) sink.put(e.getIntKey()).put(e.getIntValue()).end();
+        }
+    }
+
+    public static void run(Timeline timeline, Path resultFolder) throws IOException {
+        Log.info("START ANALYSE RETWEET NETWORK");
+        final var inst = STAGE.timed("csr", () -> new RetweetNetwork(timeline));
+        Log.info("RETWEET NETWORK " + inst.csr);
+        STAGE.time("clusters", () -> inst.writeClusters(resultFolder.resolve("network__clusters.csv")));
+        writeSizes(inst.clusters().componentSizeHistogram(), resultFolder.resolve("network__component_sizes.csv"));
+        writeSizes(inst.clusters().communitySizeHistogram(), resultFolder.resolve("network__community_sizes.csv"));
+        STAGE.time("degrees", () -> GraphUtils.writeDegreePlotData(inst.csr, resultFolder));
+    }
+}
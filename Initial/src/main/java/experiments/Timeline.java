@@ -1,11 +1,15 @@
 package experiments;
 
 import magma.system.Log;
+import magma.system.Metrics;
 import model.Model.Status;
+import model.Store;
 import magma.utils.TimeUtils;
 
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.function.Function;
@@ -15,16 +19,27 @@ import static java.util.Comparator.comparingLong;
 
 public class Timeline {
 
+    private static final Metrics.Stage TIMELINE = Metrics.stage("timeline");
+
     private final List<Bucket> buckets;
     private final List<Status> tweets;
     private final Date bigBang, amagedon;
 
     public Timeline(Path folder) {
+        this(decompress(folder));
+    }
+
+    public Timeline(Store min) throws IOException {
+        this(decompress(min));
+    }
+
+    public Timeline(Collection<Status> statuses) {
         buckets = new ArrayList<>();
-        tweets = decompress(folder)
+        tweets = TIMELINE.timed("sort", () -> statuses
                 .stream()
                 .sorted(comparingLong(t -> t.date.getTime()))
-                .toList();
+                .toList());
+        TIMELINE.meter("tweets").mark(tweets.size());
         bigBang  = tweets.get(0).date;
         amagedon = tweets.get(tweets.size() - 1).date;
         Log.info("TIMELINE DONE");
@@ -40,6 +55,7 @@ public class Timeline {
     }
 
     public Timeline split(Function<Date, Date> incr) {
+        final long start = System.nanoTime();
         if (!buckets.isEmpty()) buckets.clear();
         var time = incr.apply(bigBang);
         final var twts = tweets;
@@ -53,6 +69,8 @@ public class Timeline {
             time = incr.apply(time);
             buckets.add(bucket);
         }
+        TIMELINE.histogram("split").since(start);
+        TIMELINE.counter("buckets").add(buckets.size());
         return this;
     }
 
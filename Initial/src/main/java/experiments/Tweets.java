@@ -5,18 +5,20 @@ import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
-import magma.utils.FileUtils;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
+import magma.system.Metrics;
+import magma.utils.Sink;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.regex.Pattern;
 
+import static magma.utils.Sink.*;
+
 public class Tweets {
 
+    private static final Metrics.Stage STAGE = Metrics.stage("tweets");
+
     final Timeline timeLine;
 
     public Tweets(Timeline timeLine) {
@@ -34,7 +36,16 @@ public class Tweets {
         return rs3;
     }
 
+    // One json object per line and text, the counts next
+    // to the arrays of the 10 most frequent of each.
+    static final Sink.Column[] SIMILAR = {
+            stringCol("text"), intCol("number_tweets"),
+            intCol("number_locations"), rowsCol("locations", stringCol("CC"), intCol("num")),
+            intCol("number_userIds"), rowsCol("userIds", longCol("id"), intCol("num")),
+            intCol("number_twtIds"), rowsCol("twtIds", longCol("id"), intCol("num"))};
+
     private void similar(Path resultFile) throws IOException {
+        final long start = System.nanoTime();
         var mapGlo = new HashMap<String, Long2ObjectMap<Status>>();
         final var tweets = timeLine.tweets();
         for (int i = 0; i < tweets.size(); i++) {
@@ -50,79 +61,55 @@ public class Tweets {
                 mapGlo.get(text).put(tweet.twtId, tweet);
             }
         }
-        if (!Files.exists(resultFile)) Files.createFile(resultFile);
-        var writer = FileUtils.newBufferedWriterAppend(resultFile);
-        mapGlo.entrySet().stream()
-                .sorted((e1, e2) -> Integer.compare(e2.getValue().size(), e1.getValue().size()))
-                .limit(1000)
-                .forEach(e -> {
-
-                    var json = new JSONObject();
-                    json.put("text", e.getKey());
-                    json.put("number_tweets", e.getValue().size());
-
-                    var _locations = new Object2IntOpenHashMap<String>();
-                    var _userIds = new Long2IntOpenHashMap();
-                    var _twtIds = new Long2IntOpenHashMap();
-
-                    for (var tweet : e.getValue().values()) {
-                        _userIds.addTo(tweet.usrId, 1);
-                        _twtIds.addTo(tweet.twtId, 1);
-                        if (tweet.loc != null) {
-                            tweet.loc.countryCode.ifPresent(c -> _locations.addTo(c, 1));
+        final long grouped = System.nanoTime();
+        STAGE.histogram("group").record(grouped - start);
+        STAGE.counter("texts").add(mapGlo.size());
+        try (var sink = Sink.jsonl(resultFile, SIMILAR)) {
+            mapGlo.entrySet().stream()
+                    .sorted((e1, e2) -> Integer.compare(e2.getValue().size(), e1.getValue().size()))
+                    .limit(1000)
+                    .forEachOrdered(e -> {
+                        var _locations = new Object2IntOpenHashMap<String>();
+                        var _userIds = new Long2IntOpenHashMap();
+                        var _twtIds = new Long2IntOpenHashMap();
+
+                        for (var tweet : e.getValue().values()) {
+                            _userIds.addTo(tweet.usrId, 1);
+                            _twtIds.addTo(tweet.twtId, 1);
+                            if (tweet.loc != null) {
+                                tweet.loc.countryCode.ifPresent(c -> _locations.addTo(c, 1));
+                            }
                         }
-                    }
-
-                    json.put("number_locations", _locations.size());
-                    var locations = new JSONArray();
-                    _locations.object2IntEntrySet().stream()
-                            .sorted((e1, e2) -> Integer.compare(e2.getIntValue(), e1.getIntValue()))
-                            .limit(10)
-                            .forEach(loc -> {
-                                var locObj = new JSONObject();
-                                locObj.put("CC", loc.getKey());
-                                locObj.put("num", loc.getIntValue());
-                                locations.add(locObj);
-                            });
-
-                    json.put("number_userIds", _userIds.size());
-                    var usrIds = new JSONArray();
-                    _userIds.long2IntEntrySet().stream()
-                            .sorted((e1, e2) -> Integer.compare(e2.getIntValue(), e1.getIntValue()))
-                            .limit(10)
-                            .forEach(loc -> {
-                                var locObj = new JSONObject();
-                                locObj.put("id", loc.getLongKey());
-                                locObj.put("num", loc.getIntValue());
-                                usrIds.add(locObj);
-                            });
-
-                    json.put("number_twtIds", _twtIds.size());
-                    var twtIds = new JSONArray();
-                    _twtIds.long2IntEntrySet().stream()
-                            .limit(10)
-                            .sorted((e1, e2) -> Integer.compare(e2.getIntValue(), e1.getIntValue()))
-                            .forEach(loc -> {
-                                var locObj = new JSONObject();
-                                locObj.put("id", loc.getLongKey());
-                                locObj.put("num", loc.getIntValue());
-                                twtIds.add(locObj);
-                            });
-
-                    json.put("locations", locations);
-                    json.put("userIds", usrIds);
-                    json.put("twtIds", twtIds);
-
-                    try {
-                        writer.write(json.toJSONString());
-                    } catch (IOException ex) {
-                        ex.printStackTrace();
-                    }
-                });
-        writer.close();
+
+                        sink.put(e.getKey()).put(e.getValue().size());
+                        sink.put(_locations.size()).rows();
+                        _locations.object2IntEntrySet().stream()
+                                .sorted((e1, e2) -> Integer.compare(e2.getIntValue(), e1.getIntValue()))
+                                .limit(10)
+                                .forEachOrdered(loc -> sink.put(loc.getKey()).put(loc.getIntValue()));
+                        sink.end();
+
+                        sink.put(_userIds.size()).rows();
+                        _userIds.long2IntEntrySet().stream()
+                                .sorted((e1, e2) -> Integer.compare(e2.getIntValue(), e1.getIntValue()))
+                                .limit(10)
+                                .forEachOrdered(usr -> sink.put(usr.getLongKey()).put(usr.getIntValue()));
+                        sink.end();
+
+                        sink.put(_twtIds.size()).rows();
+                        _twtIds.long2IntEntrySet().stream()
+                                .sorted((e1, e2) -> Integer.compare(e2.getIntValue(), e1.getIntValue()))
+                                .limit(10)
+                                .forEachOrdered(twt -> sink.put(twt.getLongKey()).put(twt.getIntValue()));
+                        sink.end();
+
+                        sink.end();
+                    });
+        }
+        STAGE.histogram("write").since(grouped);
     }
 
     public static void run(Timeline timeline, Path resultFolder) throws IOException {
-        new Tweets(timeline).similar(resultFolder.resolve("similar_tweets.json"));
+        new Tweets(timeline).similar(resultFolder.resolve("similar_tweets.jsonl"));
     }
 }
@@ -3,17 +3,22 @@ package experiments;
 import experiments.Timeline.Bucket;
 import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
 import magma.system.Log;
+import magma.system.Metrics;
+import magma.utils.Sink;
 
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.List;
 
-import static magma.utils.FileUtils.newBufferedWriterAppend;
-import static magma.utils.FileUtils.newFile;
+import static magma.utils.Sink.intCol;
+import static magma.utils.Sink.longCol;
+import static magma.utils.Sink.stringCol;
 import static magma.utils.Utils.sortMap;
 
 public class Users {
 
+    private static final Metrics.Stage STAGE = Metrics.stage("users");
+
     final Timeline timeLine;
 
     public Users(Timeline timeLine) {
@@ -35,50 +40,47 @@ public class Users {
                 twtUsr.addTo(tweet.usrId, 1);
             }
         }
-        var writer = newBufferedWriterAppend(newFile(rltFle));
         var result = sortMap(allUsr, 1000);
-        writer.write("user,all,tweet,retweet\n");
-        for (var val : result) {
-            var usr = val.getLongKey();
-            writer.write( usr + "," + val.getIntValue()
-                    + "," + twtUsr.get(usr)
-                    + "," + rtwUsr.get(usr)
-                    + "\n");
+        try (var sink = Sink.result(rltFle, longCol("user"), intCol("all"), intCol("tweet"), intCol("retweet"))) {
+            for (var val : result) {
+                var usr = val.getLongKey();
+                sink.put(usr).put(val.getIntValue()).put(twtUsr.get(usr)).put(rtwUsr.get(usr)).end();
+            }
         }
-        writer.close();
     }
 
     private void writeUsersToFile(List<Bucket> buckets, Path rltFle) throws IOException {
-        var writer = newBufferedWriterAppend(newFile(rltFle));
-        writer.write("date,tag,all,tweet,retweet,bucket\n");
-        for (var bucket : buckets) {
-            final var allUsr = new Long2IntOpenHashMap();
-            final var twtUsr = new Long2IntOpenHashMap();
-            final var rtwUsr = new Long2IntOpenHashMap();
-            final var tweets = bucket.statuses;
-            for (int i = 0; i < tweets.size(); i++) {
-                var tweet = tweets.get(i);
-                allUsr.addTo(tweet.usrId, 1);
-                if (tweet.isRetweet) {
-                    rtwUsr.addTo(tweet.usrId, 1);
+        try (var sink = Sink.result(rltFle, stringCol("date"), longCol("tag"),
+                intCol("all"), intCol("tweet"), intCol("retweet"), intCol("bucket"))) {
+            for (var bucket : buckets) {
+                final long start = System.nanoTime();
+                final var allUsr = new Long2IntOpenHashMap();
+                final var twtUsr = new Long2IntOpenHashMap();
+                final var rtwUsr = new Long2IntOpenHashMap();
+                final var tweets = bucket.statuses;
+                for (int i = 0; i < tweets.size(); i++) {
+                    var tweet = tweets.get(i);
+                    allUsr.addTo(tweet.usrId, 1);
+                    if (tweet.isRetweet) {
+                        rtwUsr.addTo(tweet.usrId, 1);
+                    }
+                    else {
+                        twtUsr.addTo(tweet.usrId, 1);
+                    }
                 }
-                else {
-                    twtUsr.addTo(tweet.usrId, 1);
+                var result = sortMap(allUsr, 100);
+                final long counted = System.nanoTime();
+                STAGE.histogram("bucket").record(counted - start);
+                final var date = bucket.start.toString();
+                Log.debug(() -> date + ": " + result.size() + " USERS");
+                for (var val : result) {
+                    var usr = val.getLongKey();
+                    sink.put(date).put(usr).put(val.getIntValue()).put(twtUsr.get(usr)).put(rtwUsr.get(usr))
+                            .put(bucket.statuses.size()).end();
                 }
-            }
-            var result = sortMap(allUsr, 100);
-            for (var val : result) {
-                Log.info("IN RESULT: " + result.size());
-                var usr = val.getLongKey();
-                writer.write(bucket.start + "," + usr
-                        + "," + val.getIntValue()
-                        + "," + twtUsr.get(usr)
-                        + "," + rtwUsr.get(usr)
-                        + "," + bucket.statuses.size()
-                        + "\n");
+                STAGE.histogram("write").since(counted);
             }
         }
-        writer.close();
     }
 
     public void top10UsersByDay(Path rltFle) throws IOException {
@@ -97,12 +99,12 @@ public class Users {
         Log.info("START ANALYSE HASHTAGS");
         var inst = new Users(timeline);
         Log.info("======================> A");
-        inst.top1000Users(resultFolder.resolve("users__top__1000.csv"));
+        STAGE.time("top1000Users", () -> inst.top1000Users(resultFolder.resolve("users__top__1000.csv")));
         Log.info("======================> B");
-        inst.top10UsersByDay(resultFolder.resolve("users__top__10__by_day.csv"));
+        STAGE.time("top10UsersByDay", () -> inst.top10UsersByDay(resultFolder.resolve("users__top__10__by_day.csv")));
         Log.info("======================> C");
-        inst.top10UserByHour(resultFolder.resolve("users__top__10_by_hour.csv"));
+        STAGE.time("top10UserByHour", () -> inst.top10UserByHour(resultFolder.resolve("users__top__10_by_hour.csv")));
         Log.info("======================> D");
-        inst.top10UserByWeek(resultFolder.resolve("users__top__10_by_week.csv"));
+        STAGE.time("top10UserByWeek", () -> inst.top10UserByWeek(resultFolder.resolve("users__top__10_by_week.csv")));
     }
 }
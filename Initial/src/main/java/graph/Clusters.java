@@ -0,0 +1,238 @@
+package graph;
+
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2IntRBTreeMap;
+import it.unimi.dsi.fastutil.ints.Int2IntSortedMap;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static magma.utils.ParallelUtils.forRange;
+
+/**
+ * Weakly connected components and label propagation communities
+ * of a {@link Csr} graph, computed together. Components use the
+ * Afforest variant of a concurrent union-find: a few sampled
+ * neighbours are linked first, then the largest intermediate
+ * component is skipped while the remaining edges are linked.
+ * Communities use asynchronous label propagation over the
+ * undirected view of the graph.
+ *
+ * <p>Ids are dense and ordered by size, i.e. component 0 and
+ * community 0 are the largest ones.
+ */
+public final class Clusters {
+
+    private static final VarHandle INT = MethodHandles.arrayElementVarHandle(int[].class);
+
+    // Neighbours linked before the largest component is sampled.
+    private static final int NEIGHBOR_ROUNDS = 2;
+    private static final int SAMPLES = 1024;
+    public static final int MAX_ITERATIONS = 20;
+
+    public final Csr csr;
+    public final int[] component, componentSizes;
+    public final int[] community, communitySizes;
+    public final int iterations;
+
+    private Clusters(Csr csr, int maxIterations) {
+        this.csr = csr;
+        final var roots = connect(csr);
+        final var labels = propagate(csr, maxIterations);
+        this.iterations = labels[csr.n];
+        final var cmpIds = relabel(roots, csr.n);
+        final var comIds = relabel(labels, csr.n);
+        this.componentSizes = cmpIds[1];
+        this.communitySizes = comIds[1];
+        this.component = roots;
+        this.community = Arrays.copyOf(labels, csr.n);
+        forRange(csr.n, (from, to) -> {
+            for (int v = from; v < to; v++) {
+                component[v] = cmpIds[0][component[v]];
+                community[v] = comIds[0][community[v]];
+            }
+        });
+    }
+
+    public static Clusters of(Csr csr) { return new Clusters(csr, MAX_ITERATIONS); }
+
+    public static Clusters of(Csr csr, int maxIterations) { return new Clusters(csr, maxIterations); }
+
+    public int numComponents() { return componentSizes.length; }
+    public int numCommunities() { return communitySizes.length; }
+
+    // size -> number of components of that size
+    public Int2IntSortedMap componentSizeHistogram() { return histogram(componentSizes); }
+
+    // size -> number of communities of that size
+    public Int2IntSortedMap communitySizeHistogram() { return histogram(communitySizes); }
+
+    static Int2IntSortedMap histogram(int[] sizes) {
+        var result = new Int2IntRBTreeMap();
+        for (int size : sizes) result.addTo(size, 1);
+        return result;
+    }
+
+    // ----------------------------------------------
+    //  UNION FIND.
+    // ----------------------------------------------
+
+    private static int find(int[] parent, int x) {
+        while (true) {
+            final int p = (int) INT.getAcquire(parent, x);
+            if (p == x) return x;
+            final int gp = (int) INT.getAcquire(parent, p);
+            // Path halving, losing the race is harmless.
+            if (gp != p) INT.compareAndSet(parent, x, p, gp);
+            x = gp;
+        }
+    }
+
+    // Always hooks the larger root below the smaller
+    // one, this rules out cycles between racing links.
+    private static void link(int[] parent, int u, int v) {
+        while (true) {
+            u = find(parent, u);
+            v = find(parent, v);
+            if (u == v) return;
+            final int hi = Math.max(u, v), lo = Math.min(u, v);
+            if (INT.compareAndSet(parent, hi, hi, lo)) return;
+        }
+    }
+
+    private static void compress(int[] parent) {
+        forRange(parent.length, (from, to) -> {
+            for (int v = from; v < to; v++) parent[v] = find(parent, v);
+        });
+    }
+
+    static int[] connect(Csr g) {
+        final var parent = new int[g.n];
+        forRange(g.n, (from, to) -> {
+            for (int v = from; v < to; v++) parent[v] = v;
+        });
+        for (int r = 0; r < NEIGHBOR_ROUNDS; r++) {
+            final int round = r;
+            forRange(g.n, (from, to) -> {
+                for (int v = from; v < to; v++) {
+                    final int e = g.outOff[v] + round;
+                    if (e < g.outOff[v + 1]) link(parent, v, g.outAdj[e]);
+                }
+            });
+            compress(parent);
+        }
+        final int skip = largestSample(parent);
+        forRange(g.n, (from, to) -> {
+            for (int v = from; v < to; v++) {
+                if (find(parent, v) == skip) continue;
+                for (int e = g.outOff[v] + NEIGHBOR_ROUNDS; e < g.outOff[v + 1]; e++)
+                    link(parent, v, g.outAdj[e]);
+                // Edges from the skipped component into v
+                // are only seen from this side.
+                for (int e = g.inOff[v]; e < g.inOff[v + 1]; e++)
+                    link(parent, v, g.inAdj[e]);
+            }
+        });
+        compress(parent);
+        return parent;
+    }
+
+    private static int largestSample(int[] parent) {
+        if (parent.length == 0) return -1;
+        final var rnd = new SplittableRandom(parent.length);
+        final var counts = new Int2IntOpenHashMap();
+        int best = -1, bestCnt = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            final int root = parent[rnd.nextInt(parent.length)];
+            final int cnt = counts.addTo(root, 1) + 1;
+            if (cnt > bestCnt) { best = root; bestCnt = cnt; }
+        }
+        return best;
+    }
+
+    // ----------------------------------------------
+    //  LABEL PROPAGATION.
+    // ----------------------------------------------
+
+    // Returns n + 1 slots, the last one holds the
+    // number of iterations that were needed.
+    static int[] propagate(Csr g, int maxIterations) {
+        final var labels = new int[g.n + 1];
+        forRange(g.n, (from, to) -> {
+            for (int v = from; v < to; v++) labels[v] = v;
+        });
+        final var counts = ThreadLocal.withInitial(Int2IntOpenHashMap::new);
+        final var changed = new AtomicInteger();
+        int it = 0;
+        while (it < maxIterations) {
+            it++;
+            changed.set(0);
+            forRange(g.n, (from, to) -> {
+                var cnt = counts.get();
+                int local = 0;
+                for (int v = from; v < to; v++) {
+                    if (g.degree(v) == 0) continue;
+                    // clear() is linear in the capacity, so we
+                    // drop the table after a hub vertex grew it.
+                    if (cnt.size() > 1024) counts.set(cnt = new Int2IntOpenHashMap());
+                    else cnt.clear();
+                    for (int e = g.outOff[v]; e < g.outOff[v + 1]; e++) cnt.addTo(labels[g.outAdj[e]], 1);
+                    for (int e = g.inOff[v]; e < g.inOff[v + 1]; e++) cnt.addTo(labels[g.inAdj[e]], 1);
+                    final int cur = labels[v];
+                    int best = cur, bestCnt = cnt.get(cur);
+                    for (var entry : cnt.int2IntEntrySet()) {
+                        final int lbl = entry.getIntKey(), c = entry.getIntValue();
+                        if (c > bestCnt || (c == bestCnt && lbl < best && best != cur)) {
+                            best = lbl;
+                            bestCnt = c;
+                        }
+                    }
+                    if (best != cur) {
+                        labels[v] = best;
+                        local++;
+                    }
+                }
+                if (local > 0) changed.addAndGet(local);
+            });
+            if (changed.get() == 0) break;
+        }
+        labels[g.n] = it;
+        return labels;
+    }
+
+    // ----------------------------------------------
+    //  DENSE IDS.
+    // ----------------------------------------------
+
+    // Maps raw labels in [0, n) to dense ids ordered
+    // by descending size. Returns {ids, sizes}.
+    private static int[][] relabel(int[] raw, int n) {
+        final var sizes = new int[n];
+        for (int v = 0; v < n; v++) sizes[raw[v]]++;
+        int k = 0;
+        for (int v = 0; v < n; v++) if (sizes[v] > 0) k++;
+        final var order = new int[k];
+        for (int v = 0, i = 0; v < n; v++) if (sizes[v] > 0) order[i++] = v;
+        IntArrays.parallelQuickSort(order, (a, b) -> {
+            final int c = Integer.compare(sizes[b], sizes[a]);
+            return c != 0 ? c : Integer.compare(a, b);
+        });
+        final var ids = new int[n];
+        final var dense = new int[k];
+        for (int i = 0; i < k; i++) {
+            ids[order[i]] = i;
+            dense[i] = sizes[order[i]];
+        }
+        return new int[][] { ids, dense };
+    }
+
+    public String toString() {
+        return "Clusters{components=" + numComponents()
+                + ", communities=" + numCommunities()
+                + ", iterations=" + iterations + '}';
+    }
+}
@@ -0,0 +1,157 @@
+package graph;
+
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import model.Model.Status;
+import model.Model.User;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import static magma.exa.base.contract.Require.isTrue;
+
+/**
+ * Immutable compressed sparse row view of a directed graph.
+ * Vertices are dense ints in [0, n), the original user ids
+ * are kept in {@link #ids}. Outgoing and incoming adjacency
+ * is stored twice so that both directions are a plain array
+ * scan. Weights are optional, a missing weight counts as 1.
+ */
+public final class Csr {
+
+    public final int n, m;
+    public final long[] ids;
+    final int[] outOff, outAdj;
+    final int[] inOff, inAdj;
+    final double[] outWgt, inWgt;
+
+    private Csr(long[] ids, int[] src, int[] tgt, double[] wgt) {
+        this.n = ids.length;
+        this.m = src.length;
+        this.ids = ids;
+        this.outOff = new int[n + 1];
+        this.inOff = new int[n + 1];
+        this.outAdj = new int[m];
+        this.inAdj = new int[m];
+        this.outWgt = wgt == null ? null : new double[m];
+        this.inWgt = wgt == null ? null : new double[m];
+        for (int e = 0; e < m; e++) {
+            outOff[src[e] + 1]++;
+            inOff[tgt[e] + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            outOff[v + 1] += outOff[v];
+            inOff[v + 1] += inOff[v];
+        }
+        // Counting sort of the edges by source and target.
+        var outPos = outOff.clone();
+        var inPos = inOff.clone();
+        for (int e = 0; e < m; e++) {
+            final int o = outPos[src[e]]++;
+            final int i = inPos[tgt[e]]++;
+            outAdj[o] = tgt[e];
+            inAdj[i] = src[e];
+            if (wgt != null) {
+                outWgt[o] = wgt[e];
+                inWgt[i] = wgt[e];
+            }
+        }
+    }
+
+    public static Csr of(long[] ids, int[] src, int[] tgt, double[] wgt) {
+        isTrue(src.length == tgt.length);
+        isTrue(wgt == null || wgt.length == src.length);
+        return new Csr(ids, src, tgt, wgt);
+    }
+
+    public static Csr of(int n, int[] src, int[] tgt) {
+        var ids = new long[n];
+        for (int v = 0; v < n; v++) ids[v] = v;
+        return of(ids, src, tgt, null);
+    }
+
+    // Vertices are numbered in the iteration order
+    // of the vertex set, edge weights are the number
+    // of retweets on the edge.
+    public static Csr of(Network network) {
+        final var index = new Long2IntOpenHashMap(network.vertexSet().size());
+        index.defaultReturnValue(-1);
+        final var ids = new long[network.vertexSet().size()];
+        int cnt = 0;
+        for (User user : network.vertexSet()) {
+            if (index.putIfAbsent(user.usrId, cnt) == -1)
+                ids[cnt++] = user.usrId;
+        }
+        final var edges = network.edgeSet();
+        final var src = new int[edges.size()];
+        final var tgt = new int[edges.size()];
+        final var wgt = new double[edges.size()];
+        int e = 0;
+        for (Edge edge : edges) {
+            src[e] = index.get(network.getEdgeSource(edge).usrId);
+            tgt[e] = index.get(network.getEdgeTarget(edge).usrId);
+            wgt[e] = network.getEdgeWeight(edge);
+            e++;
+        }
+        return of(cnt == ids.length ? ids : Arrays.copyOf(ids, cnt), src, tgt, wgt);
+    }
+
+    // The retweet network of 'tweets' without a Network in
+    // between: an edge from the retweeting to the retweeted
+    // user, weighted by the number of these retweets. Users
+    // are numbered in order of appearance.
+    public static Csr retweets(Collection<Status> tweets) {
+        final var index = new Long2IntOpenHashMap();
+        index.defaultReturnValue(-1);
+        final var ids = new LongArrayList();
+        // (src << 32 | tgt) -> retweets
+        final var pairs = new Long2IntOpenHashMap();
+        for (var tweet : tweets) {
+            if (!tweet.isRetweet) continue;
+            final int src = vertex(index, ids, tweet.usrId);
+            final int tgt = vertex(index, ids, tweet.rtuId);
+            pairs.addTo((long) src << 32 | tgt, 1);
+        }
+        final var src = new int[pairs.size()];
+        final var tgt = new int[pairs.size()];
+        final var wgt = new double[pairs.size()];
+        int e = 0;
+        for (Long2IntMap.Entry pair : pairs.long2IntEntrySet()) {
+            src[e] = (int) (pair.getLongKey() >>> 32);
+            tgt[e] = (int) pair.getLongKey();
+            wgt[e] = pair.getIntValue();
+            e++;
+        }
+        return of(ids.toLongArray(), src, tgt, wgt);
+    }
+
+    private static int vertex(Long2IntOpenHashMap index, LongArrayList ids, long usrId) {
+        int v = index.get(usrId);
+        if (v == -1) {
+            index.put(usrId, v = ids.size());
+            ids.add(usrId);
+        }
+        return v;
+    }
+
+    public int outDegree(int v) { return outOff[v + 1] - outOff[v]; }
+    public int inDegree(int v) { return inOff[v + 1] - inOff[v]; }
+    public int degree(int v) { return outDegree(v) + inDegree(v); }
+
+    public int outStart(int v) { return outOff[v]; }
+    public int outEnd(int v) { return outOff[v + 1]; }
+    public int inStart(int v) { return inOff[v]; }
+    public int inEnd(int v) { return inOff[v + 1]; }
+
+    public int outTarget(int e) { return outAdj[e]; }
+    public int inSource(int e) { return inAdj[e]; }
+
+    public double outWeight(int e) { return outWgt == null ? 1.0 : outWgt[e]; }
+    public double inWeight(int e) { return inWgt == null ? 1.0 : inWgt[e]; }
+    public boolean isWeighted() { return outWgt != null; }
+
+    public String toString() {
+        return "Csr{n=" + n + ", m=" + m + ", weighted=" + isWeighted() + '}';
+    }
+}
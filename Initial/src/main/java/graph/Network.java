@@ -20,6 +20,13 @@ public abstract class Network extends DefaultDirectedGraph<User, Edge> {
                 .collect(toSet());
     }
 
+    public Csr csr() { return Csr.of(this); }
+
+    // Components and communities of the whole
+    // network, replaces the per-slice jgrapht
+    // ConnectivityInspector / LabelPropagation.
+    public Clusters clusters() { return Clusters.of(csr()); }
+
     void removeUnconnectedNodes() {
         var set = vertexSet()
                 .stream()
@@ -0,0 +1,203 @@
+package magma.concurrent;
+
+import sun.misc.Unsafe;
+
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed size array of {@code long} counters, indexed by dense ints and
+ * updated from many threads at once.  Like {@link ConcurrentAutoTable} the
+ * updates are striped to avoid cache contention, but instead of striping a
+ * single counter every stripe holds a full copy of the array.  A thread is
+ * pinned to one stripe, so concurrent threads hardly ever touch the same
+ * cache line and parallel aggregations need no per-thread tables and no
+ * merge step.
+ *
+ * <p>Stripes are allocated lazily the first time a thread maps to them and
+ * are padded at both ends, so neighbouring stripes never share a cache line.
+ * Updates are atomic adds, a stripe shared by two threads loses no counts.
+ *
+ * <p>Since every stripe costs {@code 8 * length} bytes, the number of stripes
+ * is bounded by {@link #MAX_STRIPE_LONGS} in total besides {@link
+ * #MAX_STRIPES}, a large array gets fewer stripes, at least one.
+ *
+ * <p>{@link #get} and {@link #snapshot} sum up all stripes slot by slot and are
+ * only weakly consistent: while writers are running the result is no cut of
+ * the counters at one point in time, it holds every add that completed before
+ * the call and any number of those racing with it, so it may show a later add
+ * of a thread without an earlier one.  Once the writers are done it is exact.
+ * {@link #drain} atomically takes and zeroes every slot, so every add ends up
+ * in exactly one drained snapshot.  {@link #estimate} is a cheap read of a
+ * snapshot that is refreshed at most every {@link #ESTIMATE_MILLIS}, i.e. for
+ * progress output while writers run, which is all a snapshot is good for then.
+ */
+@SuppressWarnings("all")
+public class ConcurrentCounterArray {
+
+    private static final Unsafe _unsafe = UtilUnsafe.getUnsafe();
+    private static final int _Lbase = _unsafe.arrayBaseOffset(long[].class);
+    private static final int _Lscale = _unsafe.arrayIndexScale(long[].class);
+    private static final int _Obase = _unsafe.arrayBaseOffset(Object[].class);
+    private static final int _Oscale = _unsafe.arrayIndexScale(Object[].class);
+
+    // Two cache lines of longs before and after the counters of a stripe.
+    private static final int PAD = 16;
+    private static final int MAX_STRIPES = 64;
+    // Longs of all stripes together (128MB).
+    public static final long MAX_STRIPE_LONGS = 1L << 24;
+    public static final long ESTIMATE_MILLIS = 100;
+
+    // Threads get consecutive stripe ids, which spreads them evenly.
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+    private static final ThreadLocal<Integer> THREAD_ID = ThreadLocal.withInitial(NEXT_ID::getAndIncrement);
+
+    private final int _length;
+    private final long[][] _stripes;
+
+    private volatile long[] _estimate;
+    private volatile long _estimate_time;
+
+    /**
+     * Striped by the parallelism of the common pool, within {@link
+     * #MAX_STRIPE_LONGS}.
+     */
+    public ConcurrentCounterArray(final int length) {
+        this(length, ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    public ConcurrentCounterArray(final int length, final int stripes) {
+        if (length < 0 || stripes < 1) throw new IllegalArgumentException();
+        int s = 1;                  // Convert to next largest power-of-2
+        while (s < Math.min(stripes, MAX_STRIPES)) s <<= 1;
+        while (s > 1 && (long) s * (length + 2 * PAD) > MAX_STRIPE_LONGS) s >>>= 1;
+        _length = length;
+        _stripes = new long[s][];
+    }
+
+    public int length() { return _length; }
+
+    public int stripes() { return _stripes.length; }
+
+    // --- update --------------------------------------------------------------
+
+    public void add(final int index, final long delta) {
+        Objects.checkIndex(index, _length);
+        final long[] t = stripe();
+        _unsafe.getAndAddLong(t, rawIndex(index), delta);
+    }
+
+    public void increment(final int index) { add(index, 1L); }
+
+    public void decrement(final int index) { add(index, -1L); }
+
+    private long[] stripe() {
+        final int s = THREAD_ID.get() & (_stripes.length - 1);
+        final long[] t = (long[]) _unsafe.getObjectVolatile(_stripes, _Obase + (long) s * _Oscale);
+        return t != null ? t : allocate(s);
+    }
+
+    private long[] allocate(final int s) {
+        final long[] t = new long[_length + 2 * PAD];
+        final long off = _Obase + (long) s * _Oscale;
+        if (_unsafe.compareAndSwapObject(_stripes, off, null, t)) return t;
+        return (long[]) _unsafe.getObjectVolatile(_stripes, off); // Lost the race
+    }
+
+    private static long rawIndex(final int index) {
+        return _Lbase + (long) (index + PAD) * _Lscale;
+    }
+
+    // --- read ----------------------------------------------------------------
+
+    /**
+     * Current value of one counter, requires a pass over the stripes.  Exact
+     * once the writers are done.
+     */
+    public long get(final int index) {
+        Objects.checkIndex(index, _length);
+        final long raw = rawIndex(index);
+        long sum = 0;
+        for (int s = 0; s < _stripes.length; s++) {
+            final long[] t = (long[]) _unsafe.getObjectVolatile(_stripes, _Obase + (long) s * _Oscale);
+            if (t != null) sum += _unsafe.getLongVolatile(t, raw);
+        }
+        return sum;
+    }
+
+    /**
+     * Sum of all counters.
+     */
+    public long sum() {
+        long sum = 0;
+        for (long v : snapshot()) sum += v;
+        return sum;
+    }
+
+    /**
+     * Current values of all counters, weakly consistent while writers are
+     * running (see the class comment).
+     */
+    public long[] snapshot() {
+        final long[] result = new long[_length];
+        for (int s = 0; s < _stripes.length; s++) {
+            final long[] t = (long[]) _unsafe.getObjectVolatile(_stripes, _Obase + (long) s * _Oscale);
+            if (t == null) continue;
+            for (int i = 0; i < _length; i++)
+                result[i] += _unsafe.getLongVolatile(t, rawIndex(i));
+        }
+        return result;
+    }
+
+    /**
+     * Current values of all counters, resetting them to zero.  Concurrent
+     * adds are never lost, they either show up in this result or stay in the
+     * counters.
+     */
+    public long[] drain() {
+        final long[] result = new long[_length];
+        for (int s = 0; s < _stripes.length; s++) {
+            final long[] t = (long[]) _unsafe.getObjectVolatile(_stripes, _Obase + (long) s * _Oscale);
+            if (t == null) continue;
+            for (int i = 0; i < _length; i++)
+                result[i] += _unsafe.getAndSetLong(t, rawIndex(i), 0L);
+        }
+        return result;
+    }
+
+    /**
+     * A cheaper {@link #get}.  Reads a snapshot of all counters that is
+     * refreshed at most every {@link #ESTIMATE_MILLIS}, e.g. for progress
+     * output while writers are running.
+     */
+    public long estimate(final int index) {
+        Objects.checkIndex(index, _length);
+        final long millis = System.currentTimeMillis();
+        long[] est = _estimate;
+        if (est == null || millis - _estimate_time >= ESTIMATE_MILLIS) {
+            _estimate = est = snapshot(); // Racing refreshes are harmless
+            _estimate_time = millis;
+        }
+        return est[index];
+    }
+
+    /**
+     * Reset all counters to zero, concurrent adds may survive.
+     */
+    public void clear() {
+        for (int s = 0; s < _stripes.length; s++) {
+            final long[] t = (long[]) _unsafe.getObjectVolatile(_stripes, _Obase + (long) s * _Oscale);
+            if (t == null) continue;
+            for (int i = 0; i < _length; i++)
+                _unsafe.putLongVolatile(t, rawIndex(i), 0L);
+        }
+        _estimate = null;
+    }
+
+    public String toString() {
+        int used = 0;
+        for (long[] t : _stripes) if (t != null) used++;
+        return "ConcurrentCounterArray{length=" + _length + ", stripes=" + used + "/" + _stripes.length + '}';
+    }
+}
@@ -0,0 +1,114 @@
+package magma.concurrent;
+
+import it.unimi.dsi.fastutil.longs.LongIterator;
+
+import java.util.function.IntBinaryOperator;
+
+/**
+ * A simple wrapper around {@link NBHashMapLong2Long} restricting the values
+ * to {@code int}.  All operations are Non-Blocking and multi-thread safe and
+ * neither keys nor values are ever boxed.  Sums in {@link #addTo} are kept
+ * exact, a counter that leaves the {@code int} range throws an {@link
+ * ArithmeticException} on the update that overflows it.
+ */
+@SuppressWarnings("all")
+public class NBHashMapLong2Int {
+
+    // Backing default, no int value can be mistaken for it.
+    private static final long ABSENT = Long.MIN_VALUE;
+
+    private final NBHashMapLong2Long _map;
+
+    private int _defRetValue = 0;
+
+    /**
+     * Make a new empty {@link NBHashMapLong2Int}.
+     */
+    public NBHashMapLong2Int() { this(1, true); }
+
+    public NBHashMapLong2Int(final int initial_sz) { this(initial_sz, true); }
+
+    public NBHashMapLong2Int(final int initial_sz, final boolean opt_for_space) {
+        _map = new NBHashMapLong2Long(initial_sz, opt_for_space);
+        _map.defaultReturnValue(ABSENT);
+    }
+
+    public int defaultReturnValue() { return _defRetValue; }
+
+    public void defaultReturnValue(final int rv) { _defRetValue = rv; }
+
+    public int size() { return _map.size(); }
+
+    public boolean isEmpty() { return _map.isEmpty(); }
+
+    public boolean containsKey(final long key) { return _map.containsKey(key); }
+
+    public long reprobes() { return _map.reprobes(); }
+
+    public int get(final long key) { return result(_map.get(key)); }
+
+    public int getOrDefault(final long key, final int defaultValue) {
+        final long v = _map.get(key);
+        return v == ABSENT ? defaultValue : (int) v;
+    }
+
+    public int put(final long key, final int val) { return result(_map.put(key, val)); }
+
+    public int putIfAbsent(final long key, final int val) { return result(_map.putIfAbsent(key, val)); }
+
+    public int remove(final long key) { return result(_map.remove(key)); }
+
+    public boolean remove(final long key, final int val) { return _map.remove(key, val); }
+
+    public int replace(final long key, final int val) { return result(_map.replace(key, val)); }
+
+    public boolean replace(final long key, final int oldValue, final int newValue) {
+        return _map.replace(key, oldValue, newValue);
+    }
+
+    /**
+     * Atomically adds {@code incr} to the value of {@code key}, an absent
+     * key counts as 0.
+     *
+     * @return the previous value or the default return value.
+     */
+    public int addTo(final long key, final int incr) {
+        return result(_map.getAndMerge(key, incr, NBHashMapLong2Int::addExact));
+    }
+
+    /**
+     * Atomically maps {@code key} to {@code val} if it is absent, otherwise
+     * to {@code f(old, val)}.
+     *
+     * @return the new value.
+     */
+    public int merge(final long key, final int val, final IntBinaryOperator f) {
+        if (f == null) throw new NullPointerException();
+        return (int) _map.merge(key, val, (a, b) -> f.applyAsInt((int) a, (int) b));
+    }
+
+    public void clear() { _map.clear(); }
+
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long key, int value);
+    }
+
+    /**
+     * Weakly consistent traversal of all mappings.
+     */
+    public void forEach(final EntryConsumer action) {
+        _map.forEach((k, v) -> action.accept(k, (int) v));
+    }
+
+    /**
+     * Weakly consistent iterator over the keys, without auto-boxing.
+     */
+    public LongIterator keyIterator() { return _map.keyIterator(); }
+
+    public String toString() { return _map.toString(); }
+
+    private static long addExact(final long a, final long b) { return Math.addExact((int) a, (int) b); }
+
+    private int result(final long v) { return v == ABSENT ? _defRetValue : (int) v; }
+}
@@ -0,0 +1,773 @@
+package magma.concurrent;
+
+/*
+ * Derived from NonBlockingHashMapLong, written by Cliff Click and released
+ * to the public domain, as explained at
+ * http://creativecommons.org/licenses/publicdomain
+ */
+
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import sun.misc.Unsafe;
+
+import java.lang.reflect.Field;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * A lock-free hash map with <strong>primitive long keys and primitive long
+ * values</strong>.  The table follows {@link NBHashMapLong}: keys are claimed
+ * with a CAS, values are updated with a CAS and resizing copies slots lazily
+ * with help of every thread visiting the table.  Unlike {@link NBHashMapLong}
+ * neither keys nor values are ever boxed.
+ *
+ * <p>Since a {@code long[]} slot cannot hold a boxed {@code Prime}, the value
+ * states of the original design (null, tombstone, value, primed value) are
+ * kept in the top three bits of the value word.  The remaining 61 bits hold
+ * the value, i.e. values have to be in [{@link #MIN_VALUE}, {@link
+ * #MAX_VALUE}].  This is more than enough for counters and degrees and keeps
+ * every update a single CAS.
+ *
+ * <p>{@link #addTo} and {@link #merge} are atomic read-modify-write
+ * operations.  They never lose an update, even when they race with a table
+ * resize.  The remapping function of {@link #merge} may be called more than
+ * once if the CAS fails and should be side-effect free.
+ *
+ * <p>Absent keys are reported as {@link #defaultReturnValue()}, like in the
+ * fastutil maps.
+ */
+@SuppressWarnings("all")
+public class NBHashMapLong2Long {
+
+    private static final int REPROBE_LIMIT = 10; // Too many reprobes then force a table-resize
+
+    // --- Bits to allow Unsafe access to arrays
+    private static final Unsafe _unsafe = UtilUnsafe.getUnsafe();
+    private static final int _Lbase = _unsafe.arrayBaseOffset(long[].class);
+    private static final int _Lscale = _unsafe.arrayIndexScale(long[].class);
+    // --- Bits to allow Unsafe CAS'ing of the CHM field
+    private static final long _chm_offset;
+    private static final long _val_1_offset;
+    // --- Minimum table size ----------------
+    private static final int MIN_SIZE_LOG = 4;
+    private static final int MIN_SIZE = (1 << MIN_SIZE_LOG); // Must be power of 2
+
+    // --- Value words -----------------------
+    // 000 | 0...0    never written (null in NBHashMapLong)
+    // 001 | value    live value, 61 bit two's complement
+    // 010 | 0...0    deleted (TOMBSTONE)
+    // 1xx | ...      primed version of the above, slot is being copied
+    private static final long EMPTY = 0L;
+    private static final long LIVE = 1L << 61;
+    private static final long TOMBSTONE = 1L << 62;
+    private static final long PRIME = 1L << 63;
+    private static final long TOMBPRIME = PRIME | TOMBSTONE;
+    private static final long PAYLOAD = LIVE - 1;
+    // Expected-value sentinels of putIfMatch, never stored.
+    private static final long NO_MATCH_OLD = PRIME | 1L;
+    private static final long MATCH_ANY = PRIME | 2L;
+
+    public static final long MIN_VALUE = -(1L << 60);
+    public static final long MAX_VALUE = (1L << 60) - 1;
+
+    // The NO_KEY value must be zero, the initial value set by
+    // Java before it hands me the array.
+    private static final long NO_KEY = 0L;
+
+    static {                      // <clinit>
+        try {
+            Field f = NBHashMapLong2Long.class.getDeclaredField("_chm");
+            _chm_offset = _unsafe.objectFieldOffset(f);
+            f = NBHashMapLong2Long.class.getDeclaredField("_val_1");
+            _val_1_offset = _unsafe.objectFieldOffset(f);
+        }
+        catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Optimize for space: use a 1/2-sized table and allow more re-probes
+    private final boolean _opt_for_space;
+    // --- The Hash Table --------------------
+    private transient CHM _chm;
+    // Value word for Key 0 - the special key value which is the initial
+    // array value, and also means: no-key-inserted-yet.
+    private transient volatile long _val_1;
+    // Time since last resize
+    private transient long _last_resize_milli;
+    // Count of reprobes
+    private transient NBCounter _reprobes = new NBCounter();
+
+    private long _defRetValue = 0L;
+
+    /**
+     * Create a new map with default minimum size.
+     */
+    public NBHashMapLong2Long() { this(MIN_SIZE, true); }
+
+    /**
+     * Create a new map with initial room for the given number of elements,
+     * rounded up internally to the next larger power of 2.
+     */
+    public NBHashMapLong2Long(final int initial_sz) { this(initial_sz, true); }
+
+    /**
+     * Create a new map, setting the space-for-speed tradeoff.  {@code true}
+     * optimizes for space and is the default.
+     */
+    public NBHashMapLong2Long(final boolean opt_for_space) { this(1, opt_for_space); }
+
+    public NBHashMapLong2Long(final int initial_sz, final boolean opt_for_space) {
+        _opt_for_space = opt_for_space;
+        initialize(initial_sz);
+    }
+
+    private final void initialize(final int initial_sz) {
+        if (initial_sz < 0) throw new IllegalArgumentException();
+        int i;                      // Convert to next largest power-of-2
+        for (i = MIN_SIZE_LOG; (1 << i) < initial_sz; i++) ;
+        _chm = new CHM(this, new NBCounter(), i);
+        _val_1 = TOMBSTONE;         // Always as-if deleted
+        _last_resize_milli = System.currentTimeMillis();
+    }
+
+    private static long rawIndex(final long[] ary, final int idx) {
+        assert idx >= 0 && idx < ary.length;
+        return _Lbase + (long) idx * _Lscale;
+    }
+
+    // --- reprobe_limit -----------------------------------------------------
+    // Running over the reprobe limit on a 'get' call acts as a 'miss'; on a
+    // 'put' call it can trigger a table resize.
+    private static final int reprobe_limit(int len) {
+        return REPROBE_LIMIT + (len >> 2);
+    }
+
+    private final boolean CAS(final long offset, final Object old, final Object nnn) {
+        return _unsafe.compareAndSwapObject(this, offset, old, nnn);
+    }
+
+    private final boolean CAS_val_1(final long old, final long nnn) {
+        return _unsafe.compareAndSwapLong(this, _val_1_offset, old, nnn);
+    }
+
+    // --- value words -------------------------------------------------------
+
+    private static long box(final long val) {
+        if (val < MIN_VALUE || val > MAX_VALUE)
+            throw new IllegalArgumentException("value out of range: " + val);
+        return LIVE | (val & PAYLOAD);
+    }
+
+    private static long unbox(final long word) { return (word << 3) >> 3; }
+
+    private static boolean isPrime(final long word) { return word < 0; }
+
+    private static boolean isAbsent(final long word) { return word == EMPTY || word == TOMBSTONE; }
+
+    private static long apply(final LongBinaryOperator f, final long old, final long val) {
+        return box(f == null ? Math.addExact(old, val) : f.applyAsLong(old, val));
+    }
+
+    // --- public API --------------------------------------------------------
+
+    public long defaultReturnValue() { return _defRetValue; }
+
+    public void defaultReturnValue(final long rv) { _defRetValue = rv; }
+
+    /**
+     * Get and clear the current count of reprobes.
+     */
+    public long reprobes() {
+        long r = _reprobes.get();
+        _reprobes = new NBCounter();
+        return r;
+    }
+
+    /**
+     * Number of mappings.  Due to concurrent racing updates the size is only
+     * ever approximate.
+     */
+    public int size() { return (isAbsent(_val_1) ? 0 : 1) + _chm.size(); }
+
+    public boolean isEmpty() { return size() == 0; }
+
+    public boolean containsKey(final long key) { return !isAbsent(getWord(key)); }
+
+    /**
+     * @return the value mapped to {@code key} or the default return value.
+     */
+    public long get(final long key) {
+        final long w = getWord(key);
+        return isAbsent(w) ? _defRetValue : unbox(w);
+    }
+
+    public long getOrDefault(final long key, final long defaultValue) {
+        final long w = getWord(key);
+        return isAbsent(w) ? defaultValue : unbox(w);
+    }
+
+    /**
+     * @return the previous value or the default return value.
+     */
+    public long put(final long key, final long val) { return result(putIfMatch(key, box(val), NO_MATCH_OLD)); }
+
+    /**
+     * Atomically put {@code val} if-and-only-if the key is not mapped.
+     *
+     * @return the previous value or the default return value.
+     */
+    public long putIfAbsent(final long key, final long val) { return result(putIfMatch(key, box(val), TOMBSTONE)); }
+
+    /**
+     * @return the removed value or the default return value.
+     */
+    public long remove(final long key) { return result(putIfMatch(key, TOMBSTONE, NO_MATCH_OLD)); }
+
+    /**
+     * Atomically remove the key if-and-only-if it is mapped to {@code val}.
+     */
+    public boolean remove(final long key, final long val) {
+        final long exp = box(val);
+        return putIfMatch(key, TOMBSTONE, exp) == exp;
+    }
+
+    /**
+     * Atomically put if-and-only-if the key is mapped to some value already.
+     */
+    public long replace(final long key, final long val) { return result(putIfMatch(key, box(val), MATCH_ANY)); }
+
+    /**
+     * Atomically put if-and-only-if the key is mapped to {@code oldValue}.
+     */
+    public boolean replace(final long key, final long oldValue, final long newValue) {
+        final long exp = box(oldValue);
+        return putIfMatch(key, box(newValue), exp) == exp;
+    }
+
+    /**
+     * Atomically adds {@code incr} to the value of {@code key}, an absent
+     * key counts as 0.
+     *
+     * @return the previous value or the default return value.
+     * @throws IllegalArgumentException if the sum leaves [MIN_VALUE, MAX_VALUE].
+     */
+    public long addTo(final long key, final long incr) { return result(update(key, incr, null, false)); }
+
+    /**
+     * Atomically maps {@code key} to {@code val} if it is absent, otherwise
+     * to {@code f(old, val)}.
+     *
+     * @return the new value.
+     */
+    public long merge(final long key, final long val, final LongBinaryOperator f) {
+        if (f == null) throw new NullPointerException();
+        return unbox(update(key, val, f, true));
+    }
+
+    // Like merge() but returns the previous value or the default return
+    // value, used by the narrower wrappers for their exact addTo.
+    long getAndMerge(final long key, final long val, final LongBinaryOperator f) {
+        return result(update(key, val, f, false));
+    }
+
+    /**
+     * Removes all of the mappings from this map.
+     */
+    public void clear() {         // Smack a new empty table down
+        CHM newchm = new CHM(this, new NBCounter(), MIN_SIZE_LOG);
+        while (!CAS(_chm_offset, _chm, newchm)) // Spin until the clear works
+            ;
+        CAS_val_1(_val_1, TOMBSTONE);
+    }
+
+    private long result(final long word) { return isAbsent(word) ? _defRetValue : unbox(word); }
+
+    // Never returns a primed word.
+    private long getWord(final long key) {
+        if (key == NO_KEY) return _val_1;
+        final long V = _chm.get_impl(key);
+        assert !isPrime(V);
+        return V;
+    }
+
+    private long putIfMatch(final long key, final long newVal, final long oldVal) {
+        if (key == NO_KEY) {
+            final long curVal = _val_1;
+            if (oldVal == NO_MATCH_OLD ||
+                    curVal == oldVal ||
+                    (oldVal == MATCH_ANY && !isAbsent(curVal)) ||
+                    (oldVal == TOMBSTONE && isAbsent(curVal)))
+                CAS_val_1(curVal, newVal); // One shot CAS update attempt
+            return curVal;
+        }
+        final long res = _chm.putIfMatch(key, newVal, oldVal);
+        assert !isPrime(res);
+        return res;
+    }
+
+    // Returns the new or the previous value word, retried until the CAS sticks.
+    private long update(final long key, final long val, final LongBinaryOperator f, final boolean retNew) {
+        if (key == NO_KEY) {
+            while (true) {
+                final long curVal = _val_1;
+                final long newVal = isAbsent(curVal) ? box(val) : apply(f, unbox(curVal), val);
+                if (CAS_val_1(curVal, newVal)) return retNew ? newVal : curVal;
+            }
+        }
+        return _chm.update(key, val, f, retNew);
+    }
+
+    // --- help_copy -----------------------------------------------------------
+    // Help along an existing resize operation.
+    private final void help_copy() {
+        CHM topchm = _chm;
+        if (topchm._newchm == null) return; // No copy in-progress
+        topchm.help_copy_impl(false);
+    }
+
+    // --- iteration -----------------------------------------------------------
+
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long key, long value);
+    }
+
+    /**
+     * Weakly consistent traversal of all mappings.
+     */
+    public void forEach(final EntryConsumer action) {
+        final long v1 = _val_1;
+        if (!isAbsent(v1)) action.accept(NO_KEY, unbox(v1));
+        final long[] keys = snapshot()._keys;
+        for (int i = 0; i < keys.length; i++) {
+            final long K = keys[i];
+            if (K == NO_KEY) continue;
+            final long V = getWord(K);
+            if (!isAbsent(V)) action.accept(K, unbox(V));
+        }
+    }
+
+    /**
+     * Weakly consistent iterator over the keys, without auto-boxing.
+     */
+    public LongIterator keyIterator() {
+        return new LongIterator() {
+            final long[] _keys = snapshot()._keys;
+            int _idx = -1;           // -1 for NO_KEY, 0-keys.length
+            long _nextK;
+            boolean _has = advance();
+
+            private boolean advance() {
+                if (_idx == -1) {
+                    _idx = 0;
+                    if (!isAbsent(_val_1)) {
+                        _nextK = NO_KEY;
+                        return true;
+                    }
+                }
+                while (_idx < _keys.length) {
+                    final long K = _keys[_idx++];
+                    if (K != NO_KEY && !isAbsent(getWord(K))) {
+                        _nextK = K;
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            public boolean hasNext() { return _has; }
+
+            public long nextLong() {
+                if (!_has) throw new NoSuchElementException();
+                final long K = _nextK;
+                _has = advance();
+                return K;
+            }
+        };
+    }
+
+    // Top-level table with no copy in progress.
+    private CHM snapshot() {
+        CHM topchm;
+        while (true) {
+            topchm = _chm;
+            if (topchm._newchm == null) return topchm;
+            topchm.help_copy_impl(true);
+        }
+    }
+
+    public String toString() {
+        final var sb = new StringBuilder().append('{');
+        forEach((k, v) -> {
+            if (sb.length() > 1) sb.append(", ");
+            sb.append(k).append("=>").append(v);
+        });
+        return sb.append('}').toString();
+    }
+
+    // --- CHM -----------------------------------------------------------------
+    // The control structure for the map, same as in NBHashMapLong.
+    private static final class CHM {
+        private static final AtomicReferenceFieldUpdater<CHM, CHM> _newchmUpdater =
+                AtomicReferenceFieldUpdater.newUpdater(CHM.class, CHM.class, "_newchm");
+        private static final AtomicLongFieldUpdater<CHM> _resizerUpdater =
+                AtomicLongFieldUpdater.newUpdater(CHM.class, "_resizers");
+        static private final AtomicLongFieldUpdater<CHM> _copyIdxUpdater =
+                AtomicLongFieldUpdater.newUpdater(CHM.class, "_copyIdx");
+        static private final AtomicLongFieldUpdater<CHM> _copyDoneUpdater =
+                AtomicLongFieldUpdater.newUpdater(CHM.class, "_copyDone");
+
+        final NBHashMapLong2Long _nbhml;
+        final long[] _keys;
+        final long[] _vals;
+        // Size in active K,V pairs, shared with the next table
+        private final NBCounter _size;
+        // Count of used slots, to tell when the table is full of dead unusable slots
+        private final NBCounter _slots;
+        volatile CHM _newchm;
+        volatile long _resizers;    // count of threads attempting an initial resize
+        volatile long _copyIdx = 0;
+        volatile long _copyDone = 0;
+
+        CHM(final NBHashMapLong2Long nbhml, NBCounter size, final int logsize) {
+            _nbhml = nbhml;
+            _size = size;
+            _slots = new NBCounter();
+            _keys = new long[1 << logsize];
+            _vals = new long[1 << logsize];
+        }
+
+        public int size() { return (int) _size.get(); }
+
+        boolean CAS_newchm(CHM newchm) {
+            return _newchmUpdater.compareAndSet(this, null, newchm);
+        }
+
+        private final boolean CAS_key(int idx, long old, long key) {
+            return _unsafe.compareAndSwapLong(_keys, rawIndex(_keys, idx), old, key);
+        }
+
+        private final boolean CAS_val(int idx, long old, long val) {
+            return _unsafe.compareAndSwapLong(_vals, rawIndex(_vals, idx), old, val);
+        }
+
+        private final long key(int idx) { return _unsafe.getLongVolatile(_keys, rawIndex(_keys, idx)); }
+
+        private final long val(int idx) { return _unsafe.getLongVolatile(_vals, rawIndex(_vals, idx)); }
+
+        // --- get_impl ----------------------------------------------------------
+        // Returns EMPTY on a miss, never a primed word.
+        private final long get_impl(final long key) {
+            final int len = _keys.length;
+            int idx = (int) (key & (len - 1)); // First key hash
+
+            int reprobe_cnt = 0;
+            while (true) {
+                final long K = key(idx);
+                final long V = val(idx);
+                if (K == NO_KEY) return EMPTY; // A clear miss
+
+                if (key == K) {
+                    if (!isPrime(V)) return V == TOMBSTONE ? EMPTY : V;
+                    return copy_slot_and_check(idx, true).get_impl(key); // Retry in the new table
+                }
+                if (++reprobe_cnt >= reprobe_limit(len)) // too many probes
+                    return _newchm == null
+                            ? EMPTY
+                            : copy_slot_and_check(idx, true).get_impl(key);
+
+                idx = (idx + 1) & (len - 1);    // Reprobe by 1!
+            }
+        }
+
+        // --- key slot ----------------------------------------------------------
+        // Claims the slot of 'key', returns -1 if the table is too crowded and
+        // -2 if the key is missing and 'insert' is false.
+        private final int claim(final long key, final boolean insert) {
+            final int len = _keys.length;
+            int idx = (int) (key & (len - 1));
+            int reprobe_cnt = 0;
+            while (true) {
+                long K = key(idx);
+                if (K == NO_KEY) {
+                    if (!insert) return -2; // Not-now & never-been in this table
+                    if (CAS_key(idx, NO_KEY, key)) {
+                        _slots.add(1);
+                        break;
+                    }
+                    K = key(idx);         // CAS failed, get updated value
+                    assert K != NO_KEY;
+                }
+                if (K == key) break;
+                if (++reprobe_cnt >= reprobe_limit(len))
+                    return -1;
+                idx = (idx + 1) & (len - 1); // Reprobe!
+            }
+            return idx;
+        }
+
+        // Probing is linear, so the distance to the home slot is the reprobe count.
+        private final int reprobes(final long key, final int idx) {
+            final int len = _keys.length;
+            return (idx - (int) (key & (len - 1))) & (len - 1);
+        }
+
+        // --- putIfMatch --------------------------------------------------------
+        // Put, Remove, PutIfAbsent, etc.  Return the old value word.  If the
+        // returned value is equal to expVal (or expVal is NO_MATCH_OLD) then
+        // the put can be assumed to work (although might have been
+        // immediately overwritten).  expVal EMPTY is used by the table copy
+        // and only writes into a never-written slot.
+        private final long putIfMatch(final long key, final long putval, final long expVal) {
+            assert !isPrime(putval);
+            final int idx = claim(key, putval != TOMBSTONE);
+            if (idx == -2) return TOMBSTONE;
+            if (idx == -1) {
+                final CHM newchm = resize();
+                if (expVal != EMPTY) _nbhml.help_copy(); // help along an existing copy
+                return newchm.putIfMatch(key, putval, expVal);
+            }
+
+            long V = val(idx);
+            if (putval == V) return V; // Fast cutout for no-change
+
+            if ((V == EMPTY && tableFull(reprobes(key, idx), _keys.length)) || isPrime(V)) {
+                resize();               // Force the new table copy to start
+                return copy_slot_and_check(idx, expVal != EMPTY).putIfMatch(key, putval, expVal);
+            }
+
+            while (true) {
+                assert !isPrime(V);
+                if (expVal != NO_MATCH_OLD &&                  // Do we care about expected-Value at all?
+                        V != expVal &&                          // No instant match already?
+                        !(expVal == MATCH_ANY && !isAbsent(V)) &&
+                        !(expVal == TOMBSTONE && V == EMPTY))   // Match on EMPTY/TOMBSTONE combo
+                    return V;               // Do not update!
+
+                if (CAS_val(idx, V, putval)) {
+                    if (expVal != EMPTY) {  // Not a table copy, so adjust size
+                        if (isAbsent(V) && putval != TOMBSTONE) _size.add(1);
+                        if (!isAbsent(V) && putval == TOMBSTONE) _size.add(-1);
+                    }
+                    return (V == EMPTY && expVal != EMPTY) ? TOMBSTONE : V;
+                }
+                V = val(idx);           // Get new value
+                if (isPrime(V))
+                    return copy_slot_and_check(idx, expVal != EMPTY).putIfMatch(key, putval, expVal);
+            }
+        }
+
+        // --- update ------------------------------------------------------------
+        // Read-modify-write of the value of 'key', 'f' null means add.
+        // Returns the new value word if 'retNew', else the value word the
+        // update was applied to.
+        private final long update(final long key, final long val, final LongBinaryOperator f, final boolean retNew) {
+            final int idx = claim(key, true);
+            if (idx == -1) {
+                final CHM newchm = resize();
+                _nbhml.help_copy();
+                return newchm.update(key, val, f, retNew);
+            }
+
+            long V = val(idx);
+            while (true) {
+                if ((V == EMPTY && tableFull(reprobes(key, idx), _keys.length)) || isPrime(V)) {
+                    resize();
+                    return copy_slot_and_check(idx, true).update(key, val, f, retNew);
+                }
+                final long putval = isAbsent(V) ? box(val) : apply(f, unbox(V), val);
+                if (CAS_val(idx, V, putval)) {
+                    if (isAbsent(V)) _size.add(1);
+                    return retNew ? putval : V == EMPTY ? TOMBSTONE : V;
+                }
+                V = val(idx);
+            }
+        }
+
+        // --- tableFull ---------------------------------------------------------
+        // Heuristic to decide if this table is too full, and we should start a
+        // new table.
+        private final boolean tableFull(int reprobe_cnt, int len) {
+            return
+                    reprobe_cnt >= REPROBE_LIMIT &&
+                            _slots.estimate_get() >= reprobe_limit(len);
+        }
+
+        // --- resize ------------------------------------------------------------
+        // Resizing after too many probes.  "How Big???" heuristics are here.
+        private final CHM resize() {
+            CHM newchm = _newchm;     // VOLATILE READ
+            if (newchm != null)      // See if resize is already in progress
+                return newchm;          // Use the new table already
+
+            int oldlen = _keys.length; // Old count of K,V pairs allowed
+            int sz = size();          // Get current table count of active K,V pairs
+            int newsz = sz;           // First size estimate
+
+            if (_nbhml._opt_for_space) {
+                if (sz >= (oldlen >> 1)) // If we are >50% full of keys then...
+                    newsz = oldlen << 1;    // Double size
+            } else {
+                if (sz >= (oldlen >> 2)) { // If we are >25% full of keys then...
+                    newsz = oldlen << 1;      // Double size
+                    if (sz >= (oldlen >> 1)) // If we are >50% full of keys then...
+                        newsz = oldlen << 2;    // Double double size
+                }
+            }
+
+            // Last (re)size operation was very recent?  Then double again
+            // despite having few live keys; slows down resize operations
+            // for tables subject to a high key churn rate.
+            long tm = System.currentTimeMillis();
+            if (newsz <= oldlen &&    // New table would shrink or hold steady?
+                    tm <= _nbhml._last_resize_milli + 10000) // Recent resize
+                newsz = oldlen << 1;      // Double the existing size
+
+            if (newsz < oldlen) newsz = oldlen;
+
+            int log2;
+            for (log2 = MIN_SIZE_LOG; (1 << log2) < newsz; log2++) ; // Compute log2 of size
+
+            // Now limit the number of threads actually allocating memory to a
+            // handful - lest we have 750 threads all trying to allocate a giant
+            // resized array.
+            long r = _resizers;
+            while (!_resizerUpdater.compareAndSet(this, r, r + 1))
+                r = _resizers;
+            int megs = ((((1 << log2) << 1) + 4) << 3/*word to bytes*/) >> 20/*megs*/;
+            if (r >= 2 && megs > 0) { // Already 2 guys trying; wait and see
+                newchm = _newchm;        // Between dorking around, another thread did it
+                if (newchm != null)
+                    return newchm;
+                try {
+                    Thread.sleep(8 * megs);
+                }
+                catch (Exception e) {
+                }
+            }
+            newchm = _newchm;
+            if (newchm != null)
+                return newchm;
+
+            newchm = new CHM(_nbhml, _size, log2);
+
+            if (_newchm != null)
+                return _newchm;
+
+            if (!CAS_newchm(newchm))  // NOW a resize-is-in-progress!
+                newchm = _newchm;       // CAS failed, reread new table
+            return newchm;
+        }
+
+        // --- help_copy_impl ----------------------------------------------------
+        // Help along an existing resize operation.  We hope its the top-level
+        // copy (it was when we started) but this table might have been promoted
+        // out of the top position.
+        private final void help_copy_impl(final boolean copy_all) {
+            final CHM newchm = _newchm;
+            assert newchm != null;    // Already checked by caller
+            int oldlen = _keys.length; // Total amount to copy
+            final int MIN_COPY_WORK = Math.min(oldlen, 1024); // Limit per-thread work
+
+            int panic_start = -1;
+            int copyidx = -9999;
+            while (_copyDone < oldlen) { // Still needing to copy?
+                if (panic_start == -1) { // No panic?
+                    copyidx = (int) _copyIdx;
+                    while (copyidx < (oldlen << 1) && // 'panic' check
+                            !_copyIdxUpdater.compareAndSet(this, copyidx, copyidx + MIN_COPY_WORK))
+                        copyidx = (int) _copyIdx;
+                    if (!(copyidx < (oldlen << 1))) // Panic!
+                        panic_start = copyidx;
+                }
+
+                int workdone = 0;
+                for (int i = 0; i < MIN_COPY_WORK; i++)
+                    if (copy_slot((copyidx + i) & (oldlen - 1))) // Made an oldtable slot go dead?
+                        workdone++;
+                if (workdone > 0)
+                    copy_check_and_promote(workdone);
+
+                copyidx += MIN_COPY_WORK;
+                if (!copy_all && panic_start == -1) // No panic?
+                    return;               // Then done copying after doing MIN_COPY_WORK
+            }
+            copy_check_and_promote(0); // See if we can promote
+        }
+
+        // --- copy_slot_and_check -----------------------------------------------
+        // Copy slot 'idx' from the old table to the new table.  If this thread
+        // confirmed the copy, update the counters and check for promotion.
+        private final CHM copy_slot_and_check(int idx, boolean should_help) {
+            assert _newchm != null;
+            if (copy_slot(idx))      // Copy the desired slot
+                copy_check_and_promote(1); // Record the slot copied
+            if (should_help) _nbhml.help_copy();
+            return _newchm;
+        }
+
+        // --- copy_check_and_promote --------------------------------------------
+        private final void copy_check_and_promote(int workdone) {
+            int oldlen = _keys.length;
+            long copyDone = _copyDone;
+            long nowDone = copyDone + workdone;
+            assert nowDone <= oldlen;
+            if (workdone > 0) {
+                while (!_copyDoneUpdater.compareAndSet(this, copyDone, nowDone)) {
+                    copyDone = _copyDone;   // Reload, retry
+                    nowDone = copyDone + workdone;
+                    assert nowDone <= oldlen;
+                }
+            }
+
+            // Check for copy being ALL done, and promote.
+            if (nowDone == oldlen &&
+                    _nbhml._chm == this &&
+                    _nbhml.CAS(_chm_offset, this, _newchm)) {
+                _nbhml._last_resize_milli = System.currentTimeMillis();
+            }
+        }
+
+        // --- copy_slot ---------------------------------------------------------
+        // Copy one K/V pair from oldkvs[i] to newkvs.  Returns true if we can
+        // confirm that the new table guaranteed has a value for this old-table
+        // slot.
+        private boolean copy_slot(int idx) {
+            // Blindly set the key slot from NO_KEY to some key which hashes here,
+            // to eagerly stop fresh put's from inserting new values in the old
+            // table when the old table is mid-resize.
+            long key;
+            while ((key = key(idx)) == NO_KEY)
+                CAS_key(idx, NO_KEY, (idx + _keys.length)/*a non-zero key which hashes here*/);
+
+            // Prevent new values from appearing in the old table.
+            // Box what we see in the old table, to prevent further updates.
+            long oldval = val(idx);
+            while (!isPrime(oldval)) {
+                final long box = isAbsent(oldval) ? TOMBPRIME : (oldval | PRIME);
+                if (CAS_val(idx, oldval, box)) {
+                    if (box == TOMBPRIME)
+                        return true;        // Copy done, nothing to copy
+                    oldval = box;
+                    break;
+                }
+                oldval = val(idx);
+            }
+            if (oldval == TOMBPRIME) return false; // Copy already complete here!
+
+            // Copy the value into the new table, but only if we overwrite a null.
+            final long old_unboxed = oldval & ~PRIME;
+            assert !isAbsent(old_unboxed);
+            boolean copied_into_new = (_newchm.putIfMatch(key, old_unboxed, EMPTY) == EMPTY);
+
+            // Finally, now that any old value is exposed in the new table, we can
+            // forever hide the old-table value by slapping a TOMBPRIME down.
+            while (!CAS_val(idx, oldval, TOMBPRIME))
+                oldval = val(idx);
+
+            return copied_into_new;
+        }
+    }
+}
@@ -0,0 +1,529 @@
+package magma.concurrent;
+
+import magma.exa.base.Hash;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A lock-free hash map from strings to {@code long} values that keeps keys
+ * and values <strong>off heap</strong>.  Every entry (value, hash, UTF-8 key
+ * bytes) is written once into an append-only arena of direct buffers, the
+ * table itself is a plain {@code long[]} of entry addresses.  Millions of
+ * keys therefore cost the GC nothing but a few large arrays.
+ *
+ * <p>Keys are hashed with {@link Hash#code(byte[], int, int)} and can be
+ * looked up by a byte slice of an array or a buffer, so parsers can count
+ * keys straight from their input without creating a {@code String}.
+ *
+ * <p>Reads never block.  A new key is published with a single CAS of its
+ * table slot, values are updated in place with atomic operations on the
+ * arena.  Since a slot only ever changes from empty to an entry address,
+ * resizing follows {@link NBHashMapLong} but is much simpler: a slot is
+ * frozen with a CAS and its address re-inserted into the next table, and
+ * threads that meet a resize help copying.  Keys cannot be removed.
+ *
+ * <p>Absent keys are reported as {@link #defaultReturnValue()}, like in the
+ * fastutil maps.
+ */
+public class NBHashMapUtf8 {
+
+    // --- Arena -----------------------------
+    // Address = chunk << CHUNK_BITS | offset, entries are 8 byte aligned.
+    // Entry: [0, 8) value, [8, 12) hash, [12, 16) length, [16, ...) key
+    private static final int CHUNK_BITS = 24;
+    private static final int CHUNK = 1 << CHUNK_BITS;
+    private static final int MAX_CHUNKS = 1 << 16;
+    private static final int HEADER = 16;
+    public static final int MAX_KEY_BYTES = CHUNK - HEADER;
+
+    private static final VarHandle LONGS =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle BYTES =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle SLOT = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle TABLE;
+    static {
+        try {
+            TABLE = MethodHandles.lookup().findVarHandle(NBHashMapUtf8.class, "_table", Table.class);
+        }
+        catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // --- Slots -----------------------------
+    // bit 63 frozen by a resize, bits 40..62 hash tag, bits 0..39 address / 8
+    private static final long EMPTY = 0L;
+    private static final long MOVED = 1L << 63;
+    private static final long ADDR_MASK = (1L << 40) - 1;
+    private static final int TAG_SHIFT = 40;
+    private static final long TAG_MASK = ((1L << 23) - 1) << TAG_SHIFT;
+
+    // Set in the result of insert() if the key was new.
+    private static final long INSERTED = 1L << 62;
+
+    private static final int MIN_SIZE_LOG = 4;
+    // Largest table, the next power of two is no int.
+    static final int MAX_SLOTS = 1 << 30;
+    private static final int REPROBE_LIMIT = 10;
+    private static final int COPY_WORK = 1024;
+
+    private final AtomicReferenceArray<ByteBuffer> _chunks = new AtomicReferenceArray<>(MAX_CHUNKS);
+    // Address 0 is never handed out, a zero slot is empty.
+    private final AtomicLong _tail = new AtomicLong(Long.BYTES);
+    private final NBCounter _size = new NBCounter();
+    private volatile Table _table;
+    private long _defRetValue = 0L;
+
+    private static final ThreadLocal<byte[]> UTF8 = ThreadLocal.withInitial(() -> new byte[256]);
+
+    public NBHashMapUtf8() { this(1 << MIN_SIZE_LOG); }
+
+    /**
+     * Create a new map with initial room for the given number of keys.
+     */
+    public NBHashMapUtf8(final int initial_sz) {
+        if (initial_sz < 0) throw new IllegalArgumentException();
+        int log;
+        for (log = MIN_SIZE_LOG; (1 << log) < MAX_SLOTS && (1 << log) < initial_sz * 2L; log++) ;
+        _table = new Table(1 << log);
+    }
+
+    public long defaultReturnValue() { return _defRetValue; }
+
+    public void defaultReturnValue(final long rv) { _defRetValue = rv; }
+
+    /**
+     * Number of keys, only approximate while writers are running.
+     */
+    public int size() { return (int) _size.get(); }
+
+    public boolean isEmpty() { return size() == 0; }
+
+    /**
+     * Bytes taken from the arena, including the space lost at chunk ends.
+     */
+    public long arenaBytes() { return _tail.get(); }
+
+    // --- Lookups ---------------------------------------------------------------
+
+    public boolean containsKey(final CharSequence key) {
+        final int len = encode(key);
+        final byte[] b = UTF8.get();
+        return find(b, 0, len, Hash.code(b, 0, len)) != 0;
+    }
+
+    public long get(final CharSequence key) {
+        final int len = encode(key);
+        final byte[] b = UTF8.get();
+        return valueOf(find(b, 0, len, Hash.code(b, 0, len)));
+    }
+
+    public long get(final byte[] bytes, final int offset, final int length) {
+        return valueOf(find(bytes, offset, length, Hash.code(bytes, offset, length)));
+    }
+
+    public long get(final ByteBuffer bytes, final int offset, final int length) {
+        return valueOf(find(bytes, offset, length, Hash.code(bytes, offset, length)));
+    }
+
+    private long valueOf(final long addr) {
+        if (addr == 0) return _defRetValue;
+        return (long) LONGS.getAcquire(chunk(addr), offset(addr));
+    }
+
+    // --- Updates ---------------------------------------------------------------
+
+    /**
+     * @return the previous value or the default return value.
+     */
+    public long put(final CharSequence key, final long value) {
+        final int len = encode(key);
+        return put(UTF8.get(), 0, len, value);
+    }
+
+    public long put(final byte[] bytes, final int offset, final int length, final long value) {
+        final long addr = insert(bytes, offset, length, Hash.code(bytes, offset, length), value);
+        if ((addr & INSERTED) != 0) return _defRetValue;
+        return (long) LONGS.getAndSet(chunk(addr), offset(addr), value);
+    }
+
+    /**
+     * @return the present value or the default return value if
+     * {@code value} was inserted.
+     */
+    public long putIfAbsent(final CharSequence key, final long value) {
+        final int len = encode(key);
+        return putIfAbsent(UTF8.get(), 0, len, value);
+    }
+
+    public long putIfAbsent(final byte[] bytes, final int offset, final int length, final long value) {
+        final long addr = insert(bytes, offset, length, Hash.code(bytes, offset, length), value);
+        return (addr & INSERTED) != 0 ? _defRetValue : valueOf(addr);
+    }
+
+    /**
+     * Atomically adds {@code incr} to the value of {@code key}, an absent
+     * key counts as 0.
+     *
+     * @return the previous value or the default return value.
+     */
+    public long addTo(final CharSequence key, final long incr) {
+        final int len = encode(key);
+        return addTo(UTF8.get(), 0, len, incr);
+    }
+
+    public long addTo(final byte[] bytes, final int offset, final int length, final long incr) {
+        final long addr = insert(bytes, offset, length, Hash.code(bytes, offset, length), incr);
+        if ((addr & INSERTED) != 0) return _defRetValue;
+        return (long) LONGS.getAndAdd(chunk(addr), offset(addr), incr);
+    }
+
+    public long addTo(final ByteBuffer bytes, final int offset, final int length, final long incr) {
+        final long addr = insert(bytes, offset, length, Hash.code(bytes, offset, length), incr);
+        if ((addr & INSERTED) != 0) return _defRetValue;
+        return (long) LONGS.getAndAdd(chunk(addr), offset(addr), incr);
+    }
+
+    // --- Iteration -------------------------------------------------------------
+
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(String key, long value);
+    }
+
+    @FunctionalInterface
+    public interface SliceConsumer {
+        // 'key' holds the UTF-8 bytes in [offset, offset + length)
+        // and must not be modified.
+        void accept(ByteBuffer key, int offset, int length, long value);
+    }
+
+    /**
+     * Weakly consistent traversal of all mappings, decoding the keys.
+     */
+    public void forEach(final EntryConsumer action) {
+        final var buf = new byte[256];
+        forEachSlice((key, off, len, value) -> {
+            final byte[] b = len <= buf.length ? buf : new byte[len];
+            key.get(off, b, 0, len);
+            action.accept(new String(b, 0, len, StandardCharsets.UTF_8), value);
+        });
+    }
+
+    /**
+     * Weakly consistent traversal of all mappings, without copying the keys.
+     */
+    public void forEachSlice(final SliceConsumer action) {
+        // Finish every running resize first, so that every key
+        // sits in exactly one slot of the last table.
+        Table t = _table;
+        while (t.next != null) {
+            t.copyAll();
+            promote();
+            t = t.next;
+        }
+        final long[] s = t.slots;
+        for (int i = 0; i < s.length; i++) {
+            final long w = (long) SLOT.getAcquire(s, i);
+            if ((w & ~MOVED) == EMPTY) continue;
+            final long addr = addr(w);
+            final ByteBuffer c = chunk(addr);
+            final int o = offset(addr);
+            action.accept(c, o + HEADER, c.getInt(o + 12), (long) LONGS.getAcquire(c, o));
+        }
+    }
+
+    public String toString() {
+        return "NBHashMapUtf8{size=" + size() + ", table=" + _table.slots.length
+                + ", arena=" + (arenaBytes() >> 20) + "MB}";
+    }
+
+    // --- Arena -----------------------------------------------------------------
+
+    private ByteBuffer chunk(final long addr) {
+        final int c = (int) (addr >>> CHUNK_BITS);
+        final ByteBuffer b = _chunks.get(c);
+        return b != null ? b : newChunk(c);
+    }
+
+    private ByteBuffer newChunk(final int c) {
+        if (c >= MAX_CHUNKS) throw new IllegalStateException("ARENA IS FULL");
+        final var b = ByteBuffer.allocateDirect(CHUNK).order(ByteOrder.LITTLE_ENDIAN);
+        return _chunks.compareAndSet(c, null, b) ? b : _chunks.get(c);
+    }
+
+    private static int offset(final long addr) { return (int) (addr & (CHUNK - 1)); }
+
+    private long allocate(final int length) {
+        if (length > MAX_KEY_BYTES) throw new IllegalArgumentException("KEY TOO LONG: " + length);
+        final int size = (HEADER + length + 7) & ~7;
+        while (true) {
+            final long addr = _tail.getAndAdd(size);
+            // An entry never spans two chunks, the rest of the chunk is lost.
+            if (offset(addr) + size <= CHUNK) return addr;
+        }
+    }
+
+    private long newEntry(final Object src, final int offset, final int length, final int hash, final long value) {
+        final long addr = allocate(length);
+        final ByteBuffer c = chunk(addr);
+        final int o = offset(addr);
+        c.putLong(o, value);
+        c.putInt(o + 8, hash);
+        c.putInt(o + 12, length);
+        if (src instanceof byte[]) c.put(o + HEADER, (byte[]) src, offset, length);
+        else c.put(o + HEADER, (ByteBuffer) src, offset, length);
+        return addr;
+    }
+
+    private boolean matches(final long addr, final int hash, final Object src, final int offset, final int length) {
+        final ByteBuffer c = chunk(addr);
+        final int o = offset(addr);
+        if (c.getInt(o + 8) != hash || c.getInt(o + 12) != length) return false;
+        final int k = o + HEADER;
+        int i = 0;
+        if (src instanceof byte[]) {
+            final byte[] b = (byte[]) src;
+            for (; i + Long.BYTES <= length; i += Long.BYTES)
+                if ((long) LONGS.get(c, k + i) != (long) BYTES.get(b, offset + i)) return false;
+            for (; i < length; i++)
+                if (c.get(k + i) != b[offset + i]) return false;
+        }
+        else {
+            final ByteBuffer b = (ByteBuffer) src;
+            for (; i + Long.BYTES <= length; i += Long.BYTES)
+                if ((long) LONGS.get(c, k + i) != (long) LONGS.get(b, offset + i)) return false;
+            for (; i < length; i++)
+                if (c.get(k + i) != b.get(offset + i)) return false;
+        }
+        return true;
+    }
+
+    // Encodes into the thread local buffer, returns the length.
+    private static int encode(final CharSequence s) {
+        final int n = s.length();
+        byte[] b = UTF8.get();
+        if (b.length < n * 3) UTF8.set(b = new byte[n * 3]);
+        int j = 0;
+        for (int i = 0; i < n; i++) {
+            final char ch = s.charAt(i);
+            if (ch < 0x80) {
+                b[j++] = (byte) ch;
+            }
+            else if (ch < 0x800) {
+                b[j++] = (byte) (0xC0 | (ch >> 6));
+                b[j++] = (byte) (0x80 | (ch & 0x3F));
+            }
+            else if (Character.isHighSurrogate(ch) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                final int cp = Character.toCodePoint(ch, s.charAt(++i));
+                b[j++] = (byte) (0xF0 | (cp >> 18));
+                b[j++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                b[j++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                b[j++] = (byte) (0x80 | (cp & 0x3F));
+            }
+            else if (Character.isSurrogate(ch)) {
+                b[j++] = '?';         // Unpaired, like String.getBytes
+            }
+            else {
+                b[j++] = (byte) (0xE0 | (ch >> 12));
+                b[j++] = (byte) (0x80 | ((ch >> 6) & 0x3F));
+                b[j++] = (byte) (0x80 | (ch & 0x3F));
+            }
+        }
+        return j;
+    }
+
+    // --- Table -----------------------------------------------------------------
+
+    private static long word(final long addr, final int hash) {
+        return ((long) (hash >>> 9) << TAG_SHIFT) | (addr >>> 3);
+    }
+
+    private static long addr(final long word) { return (word & ADDR_MASK) << 3; }
+
+    private static boolean sameTag(final long word, final int hash) {
+        return (word & TAG_MASK) == ((long) (hash >>> 9) << TAG_SHIFT);
+    }
+
+    private static int reprobe_limit(final int len) { return REPROBE_LIMIT + (len >> 2); }
+
+    // Address of the entry of the key or 0.
+    private long find(final Object src, final int offset, final int length, final int hash) {
+        Table t = _table;
+        while (t != null) {
+            final long[] s = t.slots;
+            final int mask = s.length - 1;
+            int idx = hash & mask;
+            for (int probe = 0; probe <= reprobe_limit(s.length); probe++) {
+                final long w = (long) SLOT.getAcquire(s, idx);
+                if (w == EMPTY) return 0;
+                if (w == MOVED) break;  // Chain ends in a frozen slot, go on in the next table
+                if (sameTag(w, hash) && matches(addr(w), hash, src, offset, length)) return addr(w);
+                idx = (idx + 1) & mask;
+            }
+            t = t.next;
+        }
+        return 0;
+    }
+
+    // Returns the address of the entry of the key. If the key is new, the
+    // entry is created with 'value' and the INSERTED bit is set.
+    private long insert(final Object src, final int offset, final int length, final int hash, final long value) {
+        long mine = 0;
+        Table t = _table;
+        while (true) {
+            if (t.next != null) t.help();
+            final long[] s = t.slots;
+            final int mask = s.length - 1;
+            int idx = hash & mask;
+            int probe = 0;
+            while (true) {
+                final long w = (long) SLOT.getAcquire(s, idx);
+                if (w == EMPTY) {
+                    if (mine == 0) mine = newEntry(src, offset, length, hash, value);
+                    if (SLOT.compareAndSet(s, idx, EMPTY, word(mine, hash))) {
+                        _size.add(1);
+                        if (_size.estimate_get() >= (s.length >> 1)) resize(t);
+                        return mine | INSERTED;
+                    }
+                    continue;         // Lost the slot, look at the winner
+                }
+                if (w == MOVED) break;
+                if (sameTag(w, hash) && matches(addr(w), hash, src, offset, length))
+                    return addr(w);     // An entry we made stays unused in the arena
+                if (++probe > reprobe_limit(s.length)) {
+                    resize(t);
+                    break;
+                }
+                idx = (idx + 1) & mask;
+            }
+            t = t.next;
+        }
+    }
+
+    // Re-inserts the entry of a frozen slot into 't', a no-op if the
+    // entry is already there.
+    private void copy(Table t, final long addr) {
+        final ByteBuffer c = chunk(addr);
+        final int o = offset(addr);
+        final int hash = c.getInt(o + 8);
+        final long w = word(addr, hash);
+        while (true) {
+            final long[] s = t.slots;
+            final int mask = s.length - 1;
+            int idx = hash & mask;
+            int probe = 0;
+            while (true) {
+                final long cur = (long) SLOT.getAcquire(s, idx);
+                if (cur == EMPTY) {
+                    if (SLOT.compareAndSet(s, idx, EMPTY, w)) return;
+                    continue;
+                }
+                if (cur == MOVED) break;
+                if (addr(cur) == addr) return;
+                if (++probe > reprobe_limit(s.length)) {
+                    resize(t);
+                    break;
+                }
+                idx = (idx + 1) & mask;
+            }
+            final Table next = t.next;
+            t.help();
+            t = next;
+        }
+    }
+
+    private void resize(final Table t) {
+        if (t.next != null) return;
+        final var next = new Table(grownLength(t.slots.length, _size.estimate_get()));
+        if (t.next == null) Table.NEXT.compareAndSet(t, null, next);
+    }
+
+    // Slots of the next table for 'size' keys: the first power of
+    // two above twice the size, at least twice 'length' and at most
+    // MAX_SLOTS. A table of MAX_SLOTS slots cannot grow any more.
+    static int grownLength(final int length, final long size) {
+        if (length >= MAX_SLOTS) throw new IllegalStateException("TABLE IS FULL: " + length + " SLOTS");
+        final long wanted = Math.min(size * 2, MAX_SLOTS);
+        int len = length;
+        while (len < MAX_SLOTS && len <= wanted) len <<= 1;
+        return len == length ? len << 1 : len;
+    }
+
+    // Moves the top level table forward past every finished copy.
+    private void promote() {
+        Table t = _table;
+        while (t.next != null && t.copyDone == t.slots.length) {
+            TABLE.compareAndSet(this, t, t.next);
+            t = _table;
+        }
+    }
+
+    private final class Table {
+        static final VarHandle NEXT, COPY_IDX, COPY_DONE;
+        static {
+            try {
+                final var lookup = MethodHandles.lookup();
+                NEXT = lookup.findVarHandle(Table.class, "next", Table.class);
+                COPY_IDX = lookup.findVarHandle(Table.class, "copyIdx", int.class);
+                COPY_DONE = lookup.findVarHandle(Table.class, "copyDone", int.class);
+            }
+            catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        final long[] slots;
+        volatile Table next;
+        volatile int copyIdx;
+        volatile int copyDone;
+
+        Table(final int len) { slots = new long[len]; }
+
+        // Freezes slot i, returns true if this thread did it.
+        private boolean freeze(final int i) {
+            while (true) {
+                final long w = (long) SLOT.getAcquire(slots, i);
+                if ((w & MOVED) != 0) return false;
+                if (SLOT.compareAndSet(slots, i, w, w | MOVED)) {
+                    if (w != EMPTY) copy(next, addr(w));
+                    return true;
+                }
+            }
+        }
+
+        // Copies one share of the slots, called by every thread that
+        // runs into this table while it is being resized.
+        void help() {
+            final int len = slots.length;
+            if (copyIdx >= len) return;
+            final int from = (int) COPY_IDX.getAndAdd(this, COPY_WORK);
+            if (from >= len) return;
+            int done = 0;
+            for (int i = from, to = Math.min(len, from + COPY_WORK); i < to; i++)
+                if (freeze(i)) done++;
+            if (done > 0 && (int) COPY_DONE.getAndAdd(this, done) + done == len) promote();
+        }
+
+        // Copies every slot. A slot frozen by a thread that did not yet
+        // re-insert it is re-inserted here as well, which is harmless.
+        void copyAll() {
+            int done = 0;
+            for (int i = 0; i < slots.length; i++) {
+                if (freeze(i)) done++;
+                else {
+                    final long w = (long) SLOT.getAcquire(slots, i);
+                    if (w != MOVED) copy(next, addr(w));
+                }
+            }
+            if (done > 0) COPY_DONE.getAndAdd(this, done);
+        }
+    }
+}
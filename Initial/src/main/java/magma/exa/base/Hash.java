@@ -12,6 +12,10 @@
 
 package magma.exa.base;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Objects;
 
 /**
@@ -301,6 +305,67 @@ public enum Hash {
 
     // ----------------------------------------------------------
 
+    /// BYTE SLICES.
+
+    private static final VarHandle LONGS_OF_ARRAY =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final VarHandle LONGS_OF_BUFFER =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Returns a hash code for the given slice of bytes, e.g. the UTF-8
+     * encoding of a string. The bytes are consumed 8 at a time and every
+     * word is mixed with {@link #code(long)}. Equal slices have equal hash
+     * codes, no matter if they are read from an array or a buffer.
+     *
+     * @param bytes  array holding the slice.
+     * @param offset first byte of the slice.
+     * @param length number of bytes of the slice.
+     * @return hashed value.
+     */
+    public static int code(final byte[] bytes, final int offset, final int length) {
+        int h = Hash.code(length);
+        int i = offset;
+        final int end = offset + length;
+        for (; i + Long.BYTES <= end; i += Long.BYTES)
+            h = Hash.combine(h, Hash.code((long) LONGS_OF_ARRAY.get(bytes, i)));
+        if (i < end) {
+            long tail = 0L;
+            for (int s = 0; i < end; i++, s += 8)
+                tail |= (bytes[i] & 0xFFL) << s;
+            h = Hash.combine(h, Hash.code(tail));
+        }
+        return Hash.code(h);
+    }
+
+    /**
+     * Returns a hash code for the given slice of a buffer, equal to the one
+     * of {@link #code(byte[], int, int)} for the same bytes. The position of
+     * the buffer is not changed.
+     *
+     * @param buffer buffer holding the slice.
+     * @param offset absolute index of the first byte of the slice.
+     * @param length number of bytes of the slice.
+     * @return hashed value.
+     */
+    public static int code(final ByteBuffer buffer, final int offset, final int length) {
+        int h = Hash.code(length);
+        int i = offset;
+        final int end = offset + length;
+        for (; i + Long.BYTES <= end; i += Long.BYTES)
+            h = Hash.combine(h, Hash.code((long) LONGS_OF_BUFFER.get(buffer, i)));
+        if (i < end) {
+            long tail = 0L;
+            for (int s = 0; i < end; i++, s += 8)
+                tail |= (buffer.get(i) & 0xFFL) << s;
+            h = Hash.combine(h, Hash.code(tail));
+        }
+        return Hash.code(h);
+    }
+
+    // ----------------------------------------------------------
+
     /// HASH COMBINER.
 
     /**
@@ -21,6 +21,8 @@ import magma.exa.control.exception.TODO;
 import magma.exa.control.exception.Throw;
 import magma.exa.control.function.Fn1;
 import magma.exa.control.function.Fn2;
+import magma.exa.data.misc.Kernels;
+import magma.exa.data.misc.RadixSort;
 import magma.exa.data.misc.Sorting;
 import magma.exa.data.index.Range;
 import magma.exa.value.scalar.*;
@@ -20982,6 +20984,11 @@ public enum Array {
         try {
             final int lo = Range.lo(range);
             final int hi = Range.hi(range);
+            if (predicate instanceof I32.Compare) {
+                final var cmp = (I32.Compare) predicate;
+                final int in = Kernels.countIn(src, lo, hi, cmp.lo, cmp.hi);
+                return cmp.out ? (hi - lo) - in : in;
+            }
             int count = 0;
             for (int i = lo; i < hi; ++i) {
                 if (predicate.onEval(src[i])) {
@@ -21000,6 +21007,11 @@ public enum Array {
         try {
             final int lo = Range.lo(range);
             final int hi = Range.hi(range);
+            if (predicate instanceof I64.Compare) {
+                final var cmp = (I64.Compare) predicate;
+                final int in = Kernels.countIn(src, lo, hi, cmp.lo, cmp.hi);
+                return cmp.out ? (hi - lo) - in : in;
+            }
             int count = 0;
             for (int i = lo; i < hi; ++i) {
                 if (predicate.onEval(src[i])) {
@@ -22317,6 +22329,374 @@ public enum Array {
         return length <= 0L ? Array.emptyF64 : new double[Narrow.I32(length)];
     }
 
+    // ----------------------------------------------------------
+    //  ARRAY.SELECT
+    // ----------------------------------------------------------
+
+    /**
+     * Returns the indices of the values of the given source {@code int[]}
+     * array that satisfy the given predicate, in ascending order.
+     *
+     * @param src source array.
+     * @param predicate to be satisfied.
+     * @return selected indices.
+     * @see Kernels#selectIn(int[], int, int, int, int, boolean, int[])
+     */
+    public static int[] select(final int[] src, final I32.Predicate predicate) {
+        return select(src, range(src), predicate);
+    }
+
+    /**
+     * Returns the indices of the values of the given source {@code long[]}
+     * array that satisfy the given predicate, in ascending order.
+     *
+     * @param src source array.
+     * @param predicate to be satisfied.
+     * @return selected indices.
+     * @see Kernels#selectIn(long[], int, int, long, long, boolean, int[])
+     */
+    public static int[] select(final long[] src, final I64.Predicate predicate) {
+        return select(src, range(src), predicate);
+    }
+
+    /**
+     * Returns the indices within the given range of the values of the given
+     * source {@code int[]} array that satisfy the given predicate. Relations
+     * to a constant ({@link I32.Compare}) run on the interval kernel.
+     */
+    public static int[] select(final int[] src, final Range range, final I32.Predicate predicate) {
+        precondition(src, range, predicate);
+        try {
+            final int lo = Range.lo(range);
+            final int hi = Range.hi(range);
+            final var dst = new int[hi - lo];
+            int n = 0;
+            if (predicate instanceof I32.Compare) {
+                final var cmp = (I32.Compare) predicate;
+                n = Kernels.selectIn(src, lo, hi, cmp.lo, cmp.hi, cmp.out, dst);
+            } else {
+                for (int i = lo; i < hi; ++i) {
+                    if (predicate.onEval(src[i])) dst[n++] = i;
+                }
+            }
+            return (n == dst.length) ? dst : java.util.Arrays.copyOf(dst, n);
+        } catch (Throwable ex) {
+            return Throw.sneaky(ex);
+        }
+    }
+
+    /**
+     * Returns the indices within the given range of the values of the given
+     * source {@code long[]} array that satisfy the given predicate. Relations
+     * to a constant ({@link I64.Compare}) run on the interval kernel.
+     */
+    public static int[] select(final long[] src, final Range range, final I64.Predicate predicate) {
+        precondition(src, range, predicate);
+        try {
+            final int lo = Range.lo(range);
+            final int hi = Range.hi(range);
+            final var dst = new int[hi - lo];
+            int n = 0;
+            if (predicate instanceof I64.Compare) {
+                final var cmp = (I64.Compare) predicate;
+                n = Kernels.selectIn(src, lo, hi, cmp.lo, cmp.hi, cmp.out, dst);
+            } else {
+                for (int i = lo; i < hi; ++i) {
+                    if (predicate.onEval(src[i])) dst[n++] = i;
+                }
+            }
+            return (n == dst.length) ? dst : java.util.Arrays.copyOf(dst, n);
+        } catch (Throwable ex) {
+            return Throw.sneaky(ex);
+        }
+    }
+
+    // ----------------------------------------------------------
+    //  ARRAY.SUM
+    // ----------------------------------------------------------
+
+    /**
+     * Returns the sum of the values of the given {@code int[]} array as {@code long}.
+     */
+    public static long sum(final int[] src) {
+        return sum(src, range(src));
+    }
+
+    /**
+     * Returns the sum of the values of the given {@code long[]} array.
+     */
+    public static long sum(final long[] src) {
+        return sum(src, range(src));
+    }
+
+    /**
+     * Returns the sum of the values of the given {@code double[]} array.
+     */
+    public static double sum(final double[] src) {
+        return sum(src, range(src));
+    }
+
+    public static long sum(final int[] src, final Range range) {
+        precondition(src, range);
+        return Kernels.sum(src, Range.lo(range), Range.hi(range));
+    }
+
+    public static long sum(final long[] src, final Range range) {
+        precondition(src, range);
+        return Kernels.sum(src, Range.lo(range), Range.hi(range));
+    }
+
+    public static double sum(final double[] src, final Range range) {
+        precondition(src, range);
+        return Kernels.sum(src, Range.lo(range), Range.hi(range));
+    }
+
+    // ----------------------------------------------------------
+    //  ARRAY.BINCOUNT
+    // ----------------------------------------------------------
+
+    /**
+     * Returns the number of occurrences of every value {@code v} of the
+     * given {@code int[]} array at index {@code v}, e.g. of hours or
+     * categories. The values must be within {@code [0, bins)}.
+     *
+     * @param src source array of small non-negative values.
+     * @param bins number of bins.
+     * @return {@code int[bins]} array of counts.
+     */
+    public static int[] bincount(final int[] src, final int bins) {
+        return bincount(src, range(src), bins);
+    }
+
+    public static int[] bincount(final int[] src, final Range range, final int bins) {
+        precondition(src, range);
+        return Kernels.bincount(src, Range.lo(range), Range.hi(range), new int[bins]);
+    }
+
+    // ----------------------------------------------------------
+    //  ARRAY.RADIX-SORT
+    // ----------------------------------------------------------
+
+    /**
+     * Returns the given source {@code int[]} array with values sorted in
+     * ascending order by a parallel, stable LSD radix sort.
+     *
+     * @param src source array to be sorted.
+     * @return sorted {@code int[]} array.
+     * @see RadixSort
+     */
+    public static int[] radixSortUpdate(final int[] src) {
+        return radixSortUpdate(src, range(src), Sorting.ASCENDING);
+    }
+
+    /**
+     * Returns the given source {@code long[]} array with values sorted in
+     * ascending order by a parallel, stable LSD radix sort.
+     *
+     * @param src source array to be sorted.
+     * @return sorted {@code long[]} array.
+     * @see RadixSort
+     */
+    public static long[] radixSortUpdate(final long[] src) {
+        return radixSortUpdate(src, range(src), Sorting.ASCENDING);
+    }
+
+    /**
+     * Returns the given source {@code int[]} array with values sorted
+     * according to the given sort order by a parallel LSD radix sort.
+     */
+    public static int[] radixSortUpdate(final int[] src, final Sorting mode) {
+        return radixSortUpdate(src, range(src), mode);
+    }
+
+    /**
+     * Returns the given source {@code long[]} array with values sorted
+     * according to the given sort order by a parallel LSD radix sort.
+     */
+    public static long[] radixSortUpdate(final long[] src, final Sorting mode) {
+        return radixSortUpdate(src, range(src), mode);
+    }
+
+    /**
+     * Returns the given source {@code int[]} array with values sorted
+     * according to the given sort order within the specified index-range
+     * by a parallel LSD radix sort. Allocates scratch space of the size
+     * of the range.
+     *
+     * @param src   source array to be sorted.
+     * @param range lower/upper bounds of the index-range.
+     * @param mode  of the sorting to be applied.
+     * @return sorted {@code int[]} array.
+     */
+    public static int[] radixSortUpdate(final int[] src, final Range range, final Sorting mode) {
+        precondition(src, range, mode);
+        RadixSort.sort(src, null, Range.lo(range), Range.hi(range), mode);
+        return src;
+    }
+
+    /**
+     * Returns the given source {@code long[]} array with values sorted
+     * according to the given sort order within the specified index-range
+     * by a parallel LSD radix sort. Allocates scratch space of the size
+     * of the range.
+     *
+     * @param src   source array to be sorted.
+     * @param range lower/upper bounds of the index-range.
+     * @param mode  of the sorting to be applied.
+     * @return sorted {@code long[]} array.
+     */
+    public static long[] radixSortUpdate(final long[] src, final Range range, final Sorting mode) {
+        precondition(src, range, mode);
+        RadixSort.sort(src, null, Range.lo(range), Range.hi(range), mode);
+        return src;
+    }
+
+    /**
+     * Sorts the {@code long} keys of the given segments as one sequence,
+     * for key counts beyond {@link #MAX_CAPACITY}. Each segment holds its
+     * keys from position 0 to its limit, all but the last segment must
+     * hold the same number of keys. Direct segments get direct (off-heap)
+     * scratch segments.
+     *
+     * @param segments of the keys to be sorted.
+     * @param mode     of the sorting to be applied.
+     * @return the given segments.
+     */
+    public static java.nio.LongBuffer[] radixSortUpdate(final java.nio.LongBuffer[] segments, final Sorting mode) {
+        if (null == segments) throw Exceptions.nullPointer("src = null");
+        if (null == mode) throw Exceptions.nullPointer("2nd argument = null");
+        RadixSort.sort(segments, mode);
+        return segments;
+    }
+
+    // ----------------------------------------------------------
+    //  ARRAY.ARGSORT
+    // ----------------------------------------------------------
+
+    /**
+     * Returns the indices of the given {@code int[]} array in ascending
+     * order of their values, equal values in the order of their indices.
+     * The source array is not modified.
+     *
+     * @param src array of keys.
+     * @return permutation of {@code [0, src.length)}.
+     */
+    public static int[] argsort(final int[] src) {
+        return argsort(src, Sorting.ASCENDING);
+    }
+
+    /**
+     * Returns the indices of the given {@code long[]} array in ascending
+     * order of their values, equal values in the order of their indices.
+     * The source array is not modified.
+     *
+     * @param src array of keys.
+     * @return permutation of {@code [0, src.length)}.
+     */
+    public static int[] argsort(final long[] src) {
+        return argsort(src, Sorting.ASCENDING);
+    }
+
+    /**
+     * Returns the indices of the given {@code int[]} array in the given
+     * order of their values, equal values in the order of their indices.
+     */
+    public static int[] argsort(final int[] src, final Sorting mode) {
+        precondition(src, range(src), mode);
+        return argsortUpdate(src.clone(), mode);
+    }
+
+    /**
+     * Returns the indices of the given {@code int[]} array in the given
+     * order of their values and sorts the array itself along, i.e. the
+     * array ends up as the source permuted by the returned indices.
+     */
+    public static int[] argsortUpdate(final int[] src, final Sorting mode) {
+        precondition(src, range(src), mode);
+        final var idx = iota(src.length);
+        RadixSort.sort(src, idx, 0, src.length, mode);
+        return idx;
+    }
+
+    /**
+     * Returns the indices of the given {@code long[]} array in the given
+     * order of their values, equal values in the order of their indices.
+     */
+    public static int[] argsort(final long[] src, final Sorting mode) {
+        precondition(src, range(src), mode);
+        return argsortUpdate(src.clone(), mode);
+    }
+
+    /**
+     * Returns the indices of the given {@code long[]} array in the given
+     * order of their values and sorts the array itself along, i.e. the
+     * array ends up as the source permuted by the returned indices.
+     */
+    public static int[] argsortUpdate(final long[] src, final Sorting mode) {
+        precondition(src, range(src), mode);
+        final var idx = iota(src.length);
+        RadixSort.sort(src, idx, 0, src.length, mode);
+        return idx;
+    }
+
+    private static int[] iota(final int length) {
+        final var idx = new int[length];
+        java.util.Arrays.parallelSetAll(idx, i -> i);
+        return idx;
+    }
+
+    // ----------------------------------------------------------
+    //  ARRAY.PERMUTE
+    // ----------------------------------------------------------
+
+    /**
+     * Returns a new {@code int[]} array holding {@code src[order[i]]} at
+     * index {@code i}, e.g. to reorder a column by the argsort of another.
+     *
+     * @param src   source array.
+     * @param order indices into the source array, e.g. from argsort.
+     * @return permuted {@code int[]} array of the length of {@code order}.
+     */
+    public static int[] permute(final int[] src, final int[] order) {
+        if (null == src) throw Exceptions.nullPointer("src = null");
+        if (null == order) throw Exceptions.nullPointer("order = null");
+        final var dst = new int[order.length];
+        java.util.Arrays.parallelSetAll(dst, i -> src[order[i]]);
+        return dst;
+    }
+
+    /**
+     * Returns a new {@code long[]} array holding {@code src[order[i]]} at
+     * index {@code i}, e.g. to reorder a column by the argsort of another.
+     *
+     * @param src   source array.
+     * @param order indices into the source array, e.g. from argsort.
+     * @return permuted {@code long[]} array of the length of {@code order}.
+     */
+    public static long[] permute(final long[] src, final int[] order) {
+        if (null == src) throw Exceptions.nullPointer("src = null");
+        if (null == order) throw Exceptions.nullPointer("order = null");
+        final var dst = new long[order.length];
+        java.util.Arrays.parallelSetAll(dst, i -> src[order[i]]);
+        return dst;
+    }
+
+    /**
+     * Returns a new {@code A[]} array holding {@code src[order[i]]} at
+     * index {@code i}, e.g. to reorder a column by the argsort of another.
+     *
+     * @param src   source array.
+     * @param order indices into the source array, e.g. from argsort.
+     * @return permuted {@code A[]} array of the length of {@code order}.
+     */
+    public static <A> A[] permute(final A[] src, final int[] order) {
+        if (null == src) throw Exceptions.nullPointer("src = null");
+        if (null == order) throw Exceptions.nullPointer("order = null");
+        final A[] dst = Force.cast(java.lang.reflect.Array.newInstance(src.getClass().componentType(), order.length));
+        java.util.Arrays.parallelSetAll(dst, i -> src[order[i]]);
+        return dst;
+    }
+
     // ----------------------------------------------------------
     //  ARRAY.CAPACITY
     // ----------------------------------------------------------
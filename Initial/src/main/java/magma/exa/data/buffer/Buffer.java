@@ -66,7 +66,7 @@ import magma.exa.value.scalar.I8;
  * @param <T_ARY> type of array.
  * @param <SELF>  F-bound parameter.
  */
-abstract class Buffer<T, T_ARY, SELF extends Buffer<T, T_ARY, SELF>>
+public abstract class Buffer<T, T_ARY, SELF extends Buffer<T, T_ARY, SELF>>
         
         implements Mixin.Capacity, Mixin.Count, Mixin.IsEmpty,
         
@@ -391,6 +391,65 @@ abstract class Buffer<T, T_ARY, SELF extends Buffer<T, T_ARY, SELF>>
 
         // ----------------------------------------------------------
 
+        // ----------------------------------------------------------
+
+        /**
+         * Appends all values of the given buffer, copying them chunk
+         * by chunk, e.g. to concatenate the buffers of several workers.
+         *
+         * @param src buffer whose values are to be appended.
+         * @return instance of unified type.
+         */
+        public Chunk<A> insert(final Chunk<? extends A> src) {
+            appendBuffer(Force.cast(src));
+            return this;
+        }
+
+        /**
+         * Returns a spliterator over the values of this buffer that
+         * splits along chunk boundaries, for parallel scans.
+         */
+        @Override
+        public java.util.Spliterator<A> spliterator() {
+            final class Splitr extends ChunkSpliterator<java.util.Spliterator<A>>
+                    implements java.util.Spliterator<A> {
+
+                Splitr(final int ci, final int lc, final int ei, final int lf) {
+                    super(ci, lc, ei, lf);
+                }
+
+                @Override
+                java.util.Spliterator<A> make(final int ci, final int lc, final int ei, final int lf) {
+                    return new Splitr(ci, lc, ei, lf);
+                }
+
+                @Override
+                java.util.Spliterator<A> slice(final A[] array, final int from, final int to) {
+                    return java.util.Spliterators.spliterator(array, from, to, characteristics());
+                }
+
+                @Override
+                public boolean tryAdvance(final java.util.function.Consumer<? super A> action) {
+                    if (!advance()) return false;
+                    action.accept(array[ei++]);
+                    return true;
+                }
+
+                @Override
+                public void forEachRemaining(final java.util.function.Consumer<? super A> action) {
+                    for (int j = ci; j <= lc; ++j) {
+                        final A[] chunk = chunkAt(j);
+                        final int fence = fence(j);
+                        for (int i = (j == ci) ? ei : 0; i < fence; ++i) {
+                            action.accept(chunk[i]);
+                        }
+                    }
+                    exhaust();
+                }
+            }
+            return new Splitr(0, tix, 0, vix);
+        }
+
         /**
          * Returns a bidirectional indexed traverser over the buffer contents.
          */
@@ -2923,6 +2982,70 @@ abstract class Buffer<T, T_ARY, SELF extends Buffer<T, T_ARY, SELF>>
 
         // ----------------------------------------------------------
 
+        /**
+         * Appends all values of the given buffer, copying them chunk
+         * by chunk, e.g. to concatenate the buffers of several workers.
+         *
+         * @param src buffer whose values are to be appended.
+         * @return instance of unified type.
+         */
+        public I32Chunk insert(final I32Chunk src) {
+            appendBuffer(src);
+            return this;
+        }
+
+        /**
+         * Returns a spliterator over the values of this buffer that
+         * splits along chunk boundaries, for parallel scans.
+         */
+        @Override
+        public java.util.Spliterator.OfInt spliterator() {
+            final class Splitr extends ChunkSpliterator<java.util.Spliterator.OfInt>
+                    implements java.util.Spliterator.OfInt {
+
+                Splitr(final int ci, final int lc, final int ei, final int lf) {
+                    super(ci, lc, ei, lf);
+                }
+
+                @Override
+                java.util.Spliterator.OfInt make(final int ci, final int lc, final int ei, final int lf) {
+                    return new Splitr(ci, lc, ei, lf);
+                }
+
+                @Override
+                java.util.Spliterator.OfInt slice(final int[] array, final int from, final int to) {
+                    return java.util.Spliterators.spliterator(array, from, to, characteristics());
+                }
+
+                @Override
+                public boolean tryAdvance(final java.util.function.IntConsumer action) {
+                    if (!advance()) return false;
+                    action.accept(array[ei++]);
+                    return true;
+                }
+
+                @Override
+                public void forEachRemaining(final java.util.function.IntConsumer action) {
+                    for (int j = ci; j <= lc; ++j) {
+                        final int[] chunk = chunkAt(j);
+                        final int fence = fence(j);
+                        for (int i = (j == ci) ? ei : 0; i < fence; ++i) {
+                            action.accept(chunk[i]);
+                        }
+                    }
+                    exhaust();
+                }
+
+                @Override
+                public int characteristics() {
+                    return super.characteristics() | java.util.Spliterator.NONNULL;
+                }
+            }
+            return new Splitr(0, tix, 0, vix);
+        }
+
+        // ----------------------------------------------------------
+
         @Override
         public I32.Traverser.Duplex.Indexed traverser() {
             // Denotes the beginning of the critical section
@@ -3472,6 +3595,70 @@ abstract class Buffer<T, T_ARY, SELF extends Buffer<T, T_ARY, SELF>>
             return dst;
         }
 
+        // ----------------------------------------------------------
+
+        /**
+         * Appends all values of the given buffer, copying them chunk
+         * by chunk, e.g. to concatenate the buffers of several workers.
+         *
+         * @param src buffer whose values are to be appended.
+         * @return instance of unified type.
+         */
+        public I64Chunk insert(final I64Chunk src) {
+            appendBuffer(src);
+            return this;
+        }
+
+        /**
+         * Returns a spliterator over the values of this buffer that
+         * splits along chunk boundaries, for parallel scans.
+         */
+        @Override
+        public java.util.Spliterator.OfLong spliterator() {
+            final class Splitr extends ChunkSpliterator<java.util.Spliterator.OfLong>
+                    implements java.util.Spliterator.OfLong {
+
+                Splitr(final int ci, final int lc, final int ei, final int lf) {
+                    super(ci, lc, ei, lf);
+                }
+
+                @Override
+                java.util.Spliterator.OfLong make(final int ci, final int lc, final int ei, final int lf) {
+                    return new Splitr(ci, lc, ei, lf);
+                }
+
+                @Override
+                java.util.Spliterator.OfLong slice(final long[] array, final int from, final int to) {
+                    return java.util.Spliterators.spliterator(array, from, to, characteristics());
+                }
+
+                @Override
+                public boolean tryAdvance(final java.util.function.LongConsumer action) {
+                    if (!advance()) return false;
+                    action.accept(array[ei++]);
+                    return true;
+                }
+
+                @Override
+                public void forEachRemaining(final java.util.function.LongConsumer action) {
+                    for (int j = ci; j <= lc; ++j) {
+                        final long[] chunk = chunkAt(j);
+                        final int fence = fence(j);
+                        for (int i = (j == ci) ? ei : 0; i < fence; ++i) {
+                            action.accept(chunk[i]);
+                        }
+                    }
+                    exhaust();
+                }
+
+                @Override
+                public int characteristics() {
+                    return super.characteristics() | java.util.Spliterator.NONNULL;
+                }
+            }
+            return new Splitr(0, tix, 0, vix);
+        }
+
         // ----------------------------------------------------------
         
         @Override
@@ -4574,6 +4761,56 @@ abstract class Buffer<T, T_ARY, SELF extends Buffer<T, T_ARY, SELF>>
             return dst;
         }
 
+        /**
+         * Returns a spliterator over the values of this buffer that
+         * splits along chunk boundaries, for parallel scans.
+         */
+        @Override
+        public java.util.Spliterator.OfDouble spliterator() {
+            final class Splitr extends ChunkSpliterator<java.util.Spliterator.OfDouble>
+                    implements java.util.Spliterator.OfDouble {
+
+                Splitr(final int ci, final int lc, final int ei, final int lf) {
+                    super(ci, lc, ei, lf);
+                }
+
+                @Override
+                java.util.Spliterator.OfDouble make(final int ci, final int lc, final int ei, final int lf) {
+                    return new Splitr(ci, lc, ei, lf);
+                }
+
+                @Override
+                java.util.Spliterator.OfDouble slice(final double[] array, final int from, final int to) {
+                    return java.util.Spliterators.spliterator(array, from, to, characteristics());
+                }
+
+                @Override
+                public boolean tryAdvance(final java.util.function.DoubleConsumer action) {
+                    if (!advance()) return false;
+                    action.accept(array[ei++]);
+                    return true;
+                }
+
+                @Override
+                public void forEachRemaining(final java.util.function.DoubleConsumer action) {
+                    for (int j = ci; j <= lc; ++j) {
+                        final double[] chunk = chunkAt(j);
+                        final int fence = fence(j);
+                        for (int i = (j == ci) ? ei : 0; i < fence; ++i) {
+                            action.accept(chunk[i]);
+                        }
+                    }
+                    exhaust();
+                }
+
+                @Override
+                public int characteristics() {
+                    return super.characteristics() | java.util.Spliterator.NONNULL;
+                }
+            }
+            return new Splitr(0, tix, 0, vix);
+        }
+
         // ----------------------------------------------------------
 
         /**
@@ -4896,7 +5133,8 @@ abstract class Buffer<T, T_ARY, SELF extends Buffer<T, T_ARY, SELF>>
     protected Buffer(final Allocator<T_ARY> allocator, final int initialCapacity) {
         this.allocator = allocator;
         this.initialChunkPower = (initialCapacity > 0) 
-                ? Math.max(MIN_CHUNK_POWER, Bit.findNextPositivePowerOfTwo(initialCapacity)) 
+                ? Math.min(MAX_CHUNK_POWER, Math.max(MIN_CHUNK_POWER,
+                        Integer.numberOfTrailingZeros(Bit.findNextPositivePowerOfTwo(initialCapacity))))
                 : MIN_CHUNK_POWER;
         this.chunk = allocator.chunk(1 << initialChunkPower);
     }
@@ -4936,6 +5174,46 @@ abstract class Buffer<T, T_ARY, SELF extends Buffer<T, T_ARY, SELF>>
         ensureCapacity(capacity() + 1);
     }
 
+    /** Chunk {@code j}, valid for any j <= tix. */
+    final T_ARY chunkAt(final int j) {
+        return (table == null) ? chunk : table[j];
+    }
+
+    /**
+     * Appends all values of the given buffer chunk by chunk. 
+     */
+    final void appendBuffer(final Buffer<T, T_ARY, ?> src) {
+        final var tix = src.tix;
+        final var vix = src.vix;
+        for (int j = 0; j <= tix; ++j) {
+            appendArray(src.chunkAt(j), (j == tix) ? vix : Array.length(src.table[j]));
+        }
+    }
+
+    /**
+     * Appends the first {@code len} values of the given array,
+     * copying as much as fits into the current chunk at once.
+     */
+    final void appendArray(final T_ARY src, int len) {
+        int from = 0;
+        while (len > 0) {
+            if (vix == Array.length(chunk)) {
+                inflateTable();
+                if (tix + 1 >= table.length || table[tix + 1] == null) {
+                    grow();
+                }
+                vix = 0;
+                ++tix;
+                chunk = table[tix];
+            }
+            final int n = Math.min(len, Array.length(chunk) - vix);
+            System.arraycopy(src, from, chunk, vix, n);
+            vix  += n;
+            from += n;
+            len  -= n;
+        }
+    }
+
     final void ensureCapacity(final long targetSize) {
         long capacity = capacity();
         if (targetSize > capacity) {
@@ -4962,6 +5240,91 @@ abstract class Buffer<T, T_ARY, SELF extends Buffer<T, T_ARY, SELF>>
         }
     }
 
+    // ----------------------------------------------------------
+    //  BUFFER.SPLITERATOR
+    // ----------------------------------------------------------
+
+    /**
+     * Base of the spliterators of the chunk buffers. Splits off
+     * all but the last chunk first, the chunks grow geometrically
+     * so that halves the remaining values roughly, then halves
+     * the last chunk. Neither late-binding nor fail-fast: the
+     * buffer must not be modified while traversed.
+     *
+     * @param <S> type of spliterator.
+     */
+    abstract class ChunkSpliterator<S extends java.util.Spliterator<T>> {
+        /** Current chunk and next value within it. */
+        int ci, ei;
+        /** Last chunk and fence within it. */
+        final int lc, lf;
+        T_ARY array;
+
+        ChunkSpliterator(final int ci, final int lc, final int ei, final int lf) {
+            this.ci = ci;
+            this.lc = lc;
+            this.ei = ei;
+            this.lf = lf;
+            this.array = chunkAt(ci);
+        }
+
+        /** Spliterator over chunks [ci, lc]. */
+        abstract S make(int ci, int lc, int ei, int lf);
+
+        /** Spliterator over the given range of one chunk. */
+        abstract S slice(T_ARY array, int from, int to);
+
+        /**
+         * Moves to the next chunk if the current one is exhausted.
+         *
+         * @return whether array[ei] is a value.
+         */
+        final boolean advance() {
+            while (ci < lc && ei == Array.length(array)) {
+                array = chunkAt(++ci);
+                ei = 0;
+            }
+            return (ci < lc) || (ei < lf);
+        }
+
+        /** Fence of chunk j within this spliterator. */
+        final int fence(final int j) {
+            return (j == lc) ? lf : Array.length(chunkAt(j));
+        }
+
+        /** Marks this spliterator as exhausted. */
+        final void exhaust() {
+            array = chunkAt(ci = lc);
+            ei = lf;
+        }
+
+        public S trySplit() {
+            if (ci < lc) {
+                final S prefix = make(ci, lc - 1, ei, Array.length(chunkAt(lc - 1)));
+                array = chunkAt(ci = lc);
+                ei = 0;
+                return prefix;
+            }
+            final int half = (lf - ei) >>> 1;
+            if (half == 0) {
+                return null;
+            }
+            final S prefix = slice(array, ei, ei + half);
+            ei += half;
+            return prefix;
+        }
+
+        public long estimateSize() {
+            return (ci == lc) ? lf - ei : counts[lc] + lf - counts[ci] - ei;
+        }
+
+        public int characteristics() {
+            return java.util.Spliterator.ORDERED | java.util.Spliterator.SIZED | java.util.Spliterator.SUBSIZED;
+        }
+    }
+
+    // ----------------------------------------------------------
+
     private static int chunkSize(final int initialChunkPower, final int tix) {
         return 1 << ((tix != 0 && tix != 1) 
                 ? Math.min(initialChunkPower + tix - 1, Buffer.MAX_CHUNK_POWER) 
@@ -0,0 +1,692 @@
+//     _____
+//    ╱     ╲┌────╭─╭──────╭─────────╮────╭─╮
+//   ╱  ╲ ╱  ╲ ┌──╮ │ ╭──╮ ╮ ┬─╮ ┬─╮ ┌ ┌──╮ │
+//  ╱    Y    ╲└──╰ ╵ ╰──╯ │ │ │ │ │ │ └──╰ │
+//  ╲____│____╱╰──╰─┴╭───╯ ╰─╰─╯ ╰─╰─┴────╰─┴╲╲
+//            ╲╭─────┘─────└────────────────╮╱╱
+//
+// Copyright (C) esentri.magma - All Rights Reserved.
+//
+// Unauthorized copying of this file, via any medium
+// is strictly prohibited. Proprietary and confidential.
+
+package magma.exa.data.compute;
+
+import magma.exa.adt.mixin.Mixin;
+import magma.exa.base.Force;
+import magma.exa.base.contract.Require;
+import magma.exa.control.function.Fn0;
+import magma.exa.control.function.Fn2;
+import magma.exa.data.buffer.Buffer.F64Chunk;
+import magma.exa.data.buffer.Buffer.I32Chunk;
+import magma.exa.data.buffer.Buffer.I64Chunk;
+import magma.exa.data.compute.pipe.F64Pipe;
+import magma.exa.data.compute.pipe.I32Pipe;
+import magma.exa.data.compute.pipe.I64Pipe;
+import magma.exa.value.scalar.F64;
+import magma.exa.value.scalar.I32;
+import magma.exa.value.scalar.I64;
+
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.IntBinaryOperator;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Fused execution of primitive pipelines over column chunks and arrays.
+ * <p>
+ * A stage chain is a composition of {@link HOperator}s, each stage
+ * appends one operator to the chain of its upstream stage. Nothing
+ * runs until a terminal operation: the chain is then applied to the
+ * pipe of the {@link HTerminal}, which yields a single head pipe that
+ * computes the whole chain, and the source pushes its values into that
+ * pipe in one loop per chunk. There are no intermediate buffers and no
+ * boxing, the pipes are {@code int}, {@code long} and {@code double}
+ * specialized, and the pipes of one chain are monomorphic per call
+ * site so that the JIT can inline the chain into the loop.
+ * <p>
+ * A parallel pipeline splits its source along the chunk boundaries of
+ * the spliterator on a {@link ForkJoinPool}, each leaf compiles its own
+ * chain into its own terminal, and the terminals of two neighbouring
+ * leaves are merged in encounter order. Terminal operations do not
+ * short-circuit.
+ * <pre>{@code
+ *   long retweets = Fused.range(0, n).parallel()
+ *           .filter(i -> (flags.at(i) & RETWEET) != 0)
+ *           .count();
+ * }</pre>
+ */
+public enum Fused {
+    ;
+
+    /** Smallest number of values of a parallel leaf. */
+    static final long MIN_LEAF = 1 << 14;
+
+    // ----------------------------------------------------------
+    //  FUSED.SOURCES
+    // ----------------------------------------------------------
+
+    /** Pipeline over the values of the given chunk buffer. */
+    public static OfI32 of(final I32Chunk chunk) {
+        Require.notNull(chunk);
+        return new OfI32(chunk::spliterator);
+    }
+
+    /** Pipeline over the values of the given chunk buffer. */
+    public static OfI64 of(final I64Chunk chunk) {
+        Require.notNull(chunk);
+        return new OfI64(chunk::spliterator);
+    }
+
+    /** Pipeline over the values of the given chunk buffer. */
+    public static OfF64 of(final F64Chunk chunk) {
+        Require.notNull(chunk);
+        return new OfF64(chunk::spliterator);
+    }
+
+    /** Pipeline over the values {@code array[from, to)}. */
+    public static OfI32 of(final int[] array, final int from, final int to) {
+        Require.notNull(array);
+        return new OfI32(() -> java.util.Arrays.spliterator(array, from, to));
+    }
+
+    /** Pipeline over the values {@code array[from, to)}. */
+    public static OfI64 of(final long[] array, final int from, final int to) {
+        Require.notNull(array);
+        return new OfI64(() -> java.util.Arrays.spliterator(array, from, to));
+    }
+
+    /** Pipeline over the values {@code array[from, to)}. */
+    public static OfF64 of(final double[] array, final int from, final int to) {
+        Require.notNull(array);
+        return new OfF64(() -> java.util.Arrays.spliterator(array, from, to));
+    }
+
+    /** Pipeline over the indices {@code [from, to)}, e.g. the rows of columns. */
+    public static OfI32 range(final int from, final int to) {
+        return new OfI32(() -> java.util.stream.IntStream.range(from, to).spliterator());
+    }
+
+    /** Pipeline over the indices {@code [from, to)}, e.g. the rows of columns. */
+    public static OfI64 range(final long from, final long to) {
+        return new OfI64(() -> java.util.stream.LongStream.range(from, to).spliterator());
+    }
+
+    // ----------------------------------------------------------
+    //  FUSED.STAGE
+    // ----------------------------------------------------------
+
+    /**
+     * Common base of the primitive pipeline stages.
+     *
+     * @param <P>    type of outbound pipe of this stage.
+     * @param <SELF> self type of this stage.
+     */
+    public static abstract class Stage<P extends HPipe<?>, SELF extends Stage<P, SELF>>
+            implements Mixin.Self<SELF> {
+
+        /** Supplies a fresh spliterator over the source per evaluation. */
+        final Fn0<? extends Spliterator<?>> source;
+
+        /** Operators from the head pipe of the source to the pipe of this stage. */
+        final HOperator<HPipe<?>, P> chain;
+
+        /** Pool of a parallel evaluation, {@code null} if sequential. */
+        final ForkJoinPool pool;
+
+        Stage(final Fn0<? extends Spliterator<?>> source,
+              final HOperator<HPipe<?>, P> chain,
+              final ForkJoinPool pool) {
+            this.source = source;
+            this.chain = chain;
+            this.pool = pool;
+        }
+
+        /** Returns this stage with the given chain and pool. */
+        abstract SELF with(HOperator<HPipe<?>, P> chain, ForkJoinPool pool);
+
+        /**
+         * Returns a pipeline that evaluates on the common pool.
+         */
+        public SELF parallel() {
+            return parallel(ForkJoinPool.commonPool());
+        }
+
+        /**
+         * Returns a pipeline that evaluates on the given pool.
+         */
+        public SELF parallel(final ForkJoinPool pool) {
+            return with(chain, Require.notNull(pool));
+        }
+
+        /**
+         * Returns a pipeline that evaluates on the calling thread.
+         */
+        public SELF sequential() {
+            return with(chain, null);
+        }
+
+        /**
+         * Appends the given operator to the chain of this stage.
+         */
+        final <Q extends HPipe<?>> HOperator<HPipe<?>, Q> then(final HOperator<P, Q> op) {
+            return chain.contraMap(op);
+        }
+
+        /**
+         * Evaluates this pipeline into terminals of the given factory,
+         * one per parallel leaf, merged pairwise in encounter order.
+         *
+         * @param terminal factory of the terminal of a leaf.
+         * @param merge    merges the terminal of a right leaf into the left one.
+         * @param <T>      type of terminal.
+         * @return terminal holding the result.
+         */
+        public final <T extends HTerminal<P, ?>> T evaluate(final Fn0<? extends T> terminal,
+                                                            final Fn2<T, T, T> merge) {
+            Require.notNull(terminal);
+            Require.notNull(merge);
+            final Spliterator<?> split = source.apply();
+            if (pool == null) {
+                return run(split, terminal);
+            }
+            final long leaf = Math.max(MIN_LEAF, split.estimateSize() / ((long) pool.getParallelism() << 2));
+            return pool.invoke(new Task<>(split, leaf, terminal, merge));
+        }
+
+        /**
+         * Compiles the chain into the pipe of a new terminal and pushes
+         * the given values through it.
+         */
+        final <T extends HTerminal<P, ?>> T run(final Spliterator<?> split, final Fn0<? extends T> terminal) {
+            final T sink = terminal.apply();
+            final HPipe<?> head = chain.apply(sink.apply());
+            head.open();
+            push(split, head);
+            head.close();
+            return sink;
+        }
+
+        /**
+         * Splits until the leaves are small enough, evaluates the leaves
+         * and merges their terminals on the way back up.
+         */
+        final class Task<T extends HTerminal<P, ?>> extends RecursiveTask<T> {
+            private final Spliterator<?> split;
+            private final long leaf;
+            private final Fn0<? extends T> terminal;
+            private final Fn2<T, T, T> merge;
+
+            Task(final Spliterator<?> split, final long leaf,
+                 final Fn0<? extends T> terminal, final Fn2<T, T, T> merge) {
+                this.split = split;
+                this.leaf = leaf;
+                this.terminal = terminal;
+                this.merge = merge;
+            }
+
+            @Override
+            protected T compute() {
+                final Spliterator<?> prefix;
+                if (split.estimateSize() > leaf && (prefix = split.trySplit()) != null) {
+                    final var left = new Task<>(prefix, leaf, terminal, merge);
+                    left.fork();
+                    final T right = new Task<>(split, leaf, terminal, merge).compute();
+                    return merge.apply(left.join(), right);
+                }
+                return run(split, terminal);
+            }
+        }
+    }
+
+    /**
+     * The fused loop: pushes the remaining values of the spliterator
+     * into the head pipe of a compiled chain.
+     */
+    static void push(final Spliterator<?> split, final HPipe<?> head) {
+        if (split instanceof Spliterator.OfLong) {
+            final I64Pipe pipe = Force.cast(head);
+            ((Spliterator.OfLong) split).forEachRemaining((java.util.function.LongConsumer) pipe::accept);
+        } else if (split instanceof Spliterator.OfInt) {
+            final I32Pipe pipe = Force.cast(head);
+            ((Spliterator.OfInt) split).forEachRemaining((java.util.function.IntConsumer) pipe::accept);
+        } else if (split instanceof Spliterator.OfDouble) {
+            final F64Pipe pipe = Force.cast(head);
+            ((Spliterator.OfDouble) split).forEachRemaining((java.util.function.DoubleConsumer) pipe::accept);
+        } else {
+            throw new IllegalArgumentException("not a primitive spliterator: " + split);
+        }
+    }
+
+    // ----------------------------------------------------------
+    //  FUSED.OF-I32
+    // ----------------------------------------------------------
+
+    /**
+     * Pipeline stage that produces {@code int} values.
+     */
+    public static final class OfI32 extends Stage<I32Pipe, OfI32> {
+
+        /**
+         * Pushes any number of {@code int} values per value downstream.
+         */
+        @FunctionalInterface
+        public interface Expander {
+            void onExpand(int val, I32.Consumer out) throws Throwable;
+        }
+
+        /**
+         * Accumulates an {@code int} value into a container.
+         */
+        @FunctionalInterface
+        public interface Accumulator<R> {
+            void onAccept(R container, int val) throws Throwable;
+        }
+
+        OfI32(final Fn0<? extends Spliterator<?>> source) {
+            this(source, Force.cast(HOperator.identity()), null);
+        }
+
+        OfI32(final Fn0<? extends Spliterator<?>> source,
+              final HOperator<HPipe<?>, I32Pipe> chain,
+              final ForkJoinPool pool) {
+            super(source, chain, pool);
+        }
+
+        @Override
+        OfI32 with(final HOperator<HPipe<?>, I32Pipe> chain, final ForkJoinPool pool) {
+            return new OfI32(source, chain, pool);
+        }
+
+        /// INTERMEDIATE OPERATIONS.
+
+        public OfI32 map(final I32.ToI32 fn) {
+            Require.notNull(fn);
+            return with(then(out -> new I32Pipe.Chained<I32Pipe>(out) {
+                public void onAccept(final int val) throws Throwable { out.onAccept(fn.onApply(val)); }
+            }), pool);
+        }
+
+        public OfI32 filter(final I32.Predicate pd) {
+            Require.notNull(pd);
+            return with(then(out -> new I32Pipe.Chained<I32Pipe>(out) {
+                public void onAccept(final int val) throws Throwable { if (pd.onEval(val)) out.onAccept(val); }
+            }), pool);
+        }
+
+        public OfI32 flatMap(final Expander fn) {
+            Require.notNull(fn);
+            return with(then(out -> new I32Pipe.Chained<I32Pipe>(out) {
+                public void onAccept(final int val) throws Throwable { fn.onExpand(val, out); }
+            }), pool);
+        }
+
+        public OfI64 mapToI64(final I32.ToI64 fn) {
+            Require.notNull(fn);
+            return new OfI64(source, then(out -> new I32Pipe.Chained<I64Pipe>(out) {
+                public void onAccept(final int val) throws Throwable { out.onAccept(fn.onApply(val)); }
+            }), pool);
+        }
+
+        public OfF64 mapToF64(final I32.ToF64 fn) {
+            Require.notNull(fn);
+            return new OfF64(source, then(out -> new I32Pipe.Chained<F64Pipe>(out) {
+                public void onAccept(final int val) throws Throwable { out.onAccept(fn.onApply(val)); }
+            }), pool);
+        }
+
+        /// TERMINAL OPERATIONS.
+
+        public long count() {
+            return evaluate(Count::new, Count::merge).result();
+        }
+
+        public long sum() {
+            return evaluate(Sum::new, Sum::merge).result();
+        }
+
+        /** Folds the values with an associative operator. */
+        public int fold(final int identity, final IntBinaryOperator op) {
+            Require.notNull(op);
+            return evaluate(() -> new Fold(identity, op), Fold::merge).result();
+        }
+
+        /** Accumulates the values into one container per leaf, merged in order. */
+        public <R> R collect(final Fn0<? extends R> container, final Accumulator<R> acc, final Fn2<R, R, R> merge) {
+            Require.notNull(container);
+            Require.notNull(acc);
+            Require.notNull(merge);
+            return evaluate(() -> new Collect<>(container.apply(), acc),
+                    (Collect<R> l, Collect<R> r) -> l.merge(r, merge)).result();
+        }
+
+        /** Performs the action on each value, in no particular order if parallel. */
+        public void forEach(final I32.Consumer action) {
+            Require.notNull(action);
+            evaluate(() -> new Each(action), (Each l, Each r) -> l);
+        }
+
+        static final class Count extends HTerminal.FromI32.ToI64 {
+            long n;
+            public void onAccept(final int val) { ++n; }
+            public long result() { return n; }
+            Count merge(final Count r) { n += r.n; return this; }
+        }
+
+        static final class Sum extends HTerminal.FromI32.ToI64 {
+            long sum;
+            public void onAccept(final int val) { sum += val; }
+            public long result() { return sum; }
+            Sum merge(final Sum r) { sum += r.sum; return this; }
+        }
+
+        static final class Fold extends HTerminal.FromI32.ToI32 {
+            final IntBinaryOperator op;
+            int acc;
+            Fold(final int identity, final IntBinaryOperator op) { this.acc = identity; this.op = op; }
+            public void onAccept(final int val) { acc = op.applyAsInt(acc, val); }
+            public int result() { return acc; }
+            Fold merge(final Fold r) { acc = op.applyAsInt(acc, r.acc); return this; }
+        }
+
+        static final class Collect<R> extends HTerminal.FromI32.To<R> {
+            final Accumulator<R> acc;
+            R container;
+            Collect(final R container, final Accumulator<R> acc) { this.container = container; this.acc = acc; }
+            public void onAccept(final int val) throws Throwable { acc.onAccept(container, val); }
+            public R result() { return container; }
+            Collect<R> merge(final Collect<R> r, final Fn2<R, R, R> fn) { container = fn.apply(container, r.container); return this; }
+        }
+
+        static final class Each extends HTerminal.FromI32.To<Void> {
+            final I32.Consumer action;
+            Each(final I32.Consumer action) { this.action = action; }
+            public void onAccept(final int val) throws Throwable { action.onAccept(val); }
+            public Void result() { return null; }
+        }
+    }
+
+    // ----------------------------------------------------------
+    //  FUSED.OF-I64
+    // ----------------------------------------------------------
+
+    /**
+     * Pipeline stage that produces {@code long} values.
+     */
+    public static final class OfI64 extends Stage<I64Pipe, OfI64> {
+
+        /**
+         * Pushes any number of {@code long} values per value downstream.
+         */
+        @FunctionalInterface
+        public interface Expander {
+            void onExpand(long val, I64.Consumer out) throws Throwable;
+        }
+
+        /**
+         * Accumulates a {@code long} value into a container.
+         */
+        @FunctionalInterface
+        public interface Accumulator<R> {
+            void onAccept(R container, long val) throws Throwable;
+        }
+
+        OfI64(final Fn0<? extends Spliterator<?>> source) {
+            this(source, Force.cast(HOperator.identity()), null);
+        }
+
+        OfI64(final Fn0<? extends Spliterator<?>> source,
+              final HOperator<HPipe<?>, I64Pipe> chain,
+              final ForkJoinPool pool) {
+            super(source, chain, pool);
+        }
+
+        @Override
+        OfI64 with(final HOperator<HPipe<?>, I64Pipe> chain, final ForkJoinPool pool) {
+            return new OfI64(source, chain, pool);
+        }
+
+        /// INTERMEDIATE OPERATIONS.
+
+        public OfI64 map(final I64.ToI64 fn) {
+            Require.notNull(fn);
+            return with(then(out -> new I64Pipe.Chained<I64Pipe>(out) {
+                public void onAccept(final long val) throws Throwable { out.onAccept(fn.onApply(val)); }
+            }), pool);
+        }
+
+        public OfI64 filter(final I64.Predicate pd) {
+            Require.notNull(pd);
+            return with(then(out -> new I64Pipe.Chained<I64Pipe>(out) {
+                public void onAccept(final long val) throws Throwable { if (pd.onEval(val)) out.onAccept(val); }
+            }), pool);
+        }
+
+        public OfI64 flatMap(final Expander fn) {
+            Require.notNull(fn);
+            return with(then(out -> new I64Pipe.Chained<I64Pipe>(out) {
+                public void onAccept(final long val) throws Throwable { fn.onExpand(val, out); }
+            }), pool);
+        }
+
+        public OfI32 mapToI32(final I64.ToI32 fn) {
+            Require.notNull(fn);
+            return new OfI32(source, then(out -> new I64Pipe.Chained<I32Pipe>(out) {
+                public void onAccept(final long val) throws Throwable { out.onAccept(fn.onApply(val)); }
+            }), pool);
+        }
+
+        public OfF64 mapToF64(final I64.ToF64 fn) {
+            Require.notNull(fn);
+            return new OfF64(source, then(out -> new I64Pipe.Chained<F64Pipe>(out) {
+                public void onAccept(final long val) throws Throwable { out.onAccept(fn.onApply(val)); }
+            }), pool);
+        }
+
+        /// TERMINAL OPERATIONS.
+
+        public long count() {
+            return evaluate(Count::new, Count::merge).result();
+        }
+
+        public long sum() {
+            return evaluate(() -> new Fold(0, Long::sum), Fold::merge).result();
+        }
+
+        /** Folds the values with an associative operator. */
+        public long fold(final long identity, final LongBinaryOperator op) {
+            Require.notNull(op);
+            return evaluate(() -> new Fold(identity, op), Fold::merge).result();
+        }
+
+        /** Accumulates the values into one container per leaf, merged in order. */
+        public <R> R collect(final Fn0<? extends R> container, final Accumulator<R> acc, final Fn2<R, R, R> merge) {
+            Require.notNull(container);
+            Require.notNull(acc);
+            Require.notNull(merge);
+            return evaluate(() -> new Collect<>(container.apply(), acc),
+                    (Collect<R> l, Collect<R> r) -> l.merge(r, merge)).result();
+        }
+
+        /** Performs the action on each value, in no particular order if parallel. */
+        public void forEach(final I64.Consumer action) {
+            Require.notNull(action);
+            evaluate(() -> new Each(action), (Each l, Each r) -> l);
+        }
+
+        static final class Count extends HTerminal.FromI64.ToI64 {
+            long n;
+            public void onAccept(final long val) { ++n; }
+            public long result() { return n; }
+            Count merge(final Count r) { n += r.n; return this; }
+        }
+
+        static final class Fold extends HTerminal.FromI64.ToI64 {
+            final LongBinaryOperator op;
+            long acc;
+            Fold(final long identity, final LongBinaryOperator op) { this.acc = identity; this.op = op; }
+            public void onAccept(final long val) { acc = op.applyAsLong(acc, val); }
+            public long result() { return acc; }
+            Fold merge(final Fold r) { acc = op.applyAsLong(acc, r.acc); return this; }
+        }
+
+        static final class Collect<R> extends HTerminal.FromI64.To<R> {
+            final Accumulator<R> acc;
+            R container;
+            Collect(final R container, final Accumulator<R> acc) { this.container = container; this.acc = acc; }
+            public void onAccept(final long val) throws Throwable { acc.onAccept(container, val); }
+            public R result() { return container; }
+            Collect<R> merge(final Collect<R> r, final Fn2<R, R, R> fn) { container = fn.apply(container, r.container); return this; }
+        }
+
+        static final class Each extends HTerminal.FromI64.To<Void> {
+            final I64.Consumer action;
+            Each(final I64.Consumer action) { this.action = action; }
+            public void onAccept(final long val) throws Throwable { action.onAccept(val); }
+            public Void result() { return null; }
+        }
+    }
+
+    // ----------------------------------------------------------
+    //  FUSED.OF-F64
+    // ----------------------------------------------------------
+
+    /**
+     * Pipeline stage that produces {@code double} values.
+     */
+    public static final class OfF64 extends Stage<F64Pipe, OfF64> {
+
+        /**
+         * Pushes any number of {@code double} values per value downstream.
+         */
+        @FunctionalInterface
+        public interface Expander {
+            void onExpand(double val, F64.Consumer out) throws Throwable;
+        }
+
+        /**
+         * Accumulates a {@code double} value into a container.
+         */
+        @FunctionalInterface
+        public interface Accumulator<R> {
+            void onAccept(R container, double val) throws Throwable;
+        }
+
+        OfF64(final Fn0<? extends Spliterator<?>> source) {
+            this(source, Force.cast(HOperator.identity()), null);
+        }
+
+        OfF64(final Fn0<? extends Spliterator<?>> source,
+              final HOperator<HPipe<?>, F64Pipe> chain,
+              final ForkJoinPool pool) {
+            super(source, chain, pool);
+        }
+
+        @Override
+        OfF64 with(final HOperator<HPipe<?>, F64Pipe> chain, final ForkJoinPool pool) {
+            return new OfF64(source, chain, pool);
+        }
+
+        /// INTERMEDIATE OPERATIONS.
+
+        public OfF64 map(final F64.ToF64 fn) {
+            Require.notNull(fn);
+            return with(then(out -> new F64Pipe.Chained<F64Pipe>(out) {
+                public void onAccept(final double val) throws Throwable { out.onAccept(fn.onApply(val)); }
+            }), pool);
+        }
+
+        public OfF64 filter(final F64.Predicate pd) {
+            Require.notNull(pd);
+            return with(then(out -> new F64Pipe.Chained<F64Pipe>(out) {
+                public void onAccept(final double val) throws Throwable { if (pd.onEval(val)) out.onAccept(val); }
+            }), pool);
+        }
+
+        public OfF64 flatMap(final Expander fn) {
+            Require.notNull(fn);
+            return with(then(out -> new F64Pipe.Chained<F64Pipe>(out) {
+                public void onAccept(final double val) throws Throwable { fn.onExpand(val, out); }
+            }), pool);
+        }
+
+        public OfI32 mapToI32(final F64.ToI32 fn) {
+            Require.notNull(fn);
+            return new OfI32(source, then(out -> new F64Pipe.Chained<I32Pipe>(out) {
+                public void onAccept(final double val) throws Throwable { out.onAccept(fn.onApply(val)); }
+            }), pool);
+        }
+
+        public OfI64 mapToI64(final F64.ToI64 fn) {
+            Require.notNull(fn);
+            return new OfI64(source, then(out -> new F64Pipe.Chained<I64Pipe>(out) {
+                public void onAccept(final double val) throws Throwable { out.onAccept(fn.onApply(val)); }
+            }), pool);
+        }
+
+        /// TERMINAL OPERATIONS.
+
+        public long count() {
+            return evaluate(Count::new, Count::merge).result();
+        }
+
+        public double sum() {
+            return evaluate(() -> new Fold(0, Double::sum), Fold::merge).result();
+        }
+
+        /** Folds the values with an associative operator. */
+        public double fold(final double identity, final DoubleBinaryOperator op) {
+            Require.notNull(op);
+            return evaluate(() -> new Fold(identity, op), Fold::merge).result();
+        }
+
+        /** Accumulates the values into one container per leaf, merged in order. */
+        public <R> R collect(final Fn0<? extends R> container, final Accumulator<R> acc, final Fn2<R, R, R> merge) {
+            Require.notNull(container);
+            Require.notNull(acc);
+            Require.notNull(merge);
+            return evaluate(() -> new Collect<>(container.apply(), acc),
+                    (Collect<R> l, Collect<R> r) -> l.merge(r, merge)).result();
+        }
+
+        /** Performs the action on each value, in no particular order if parallel. */
+        public void forEach(final F64.Consumer action) {
+            Require.notNull(action);
+            evaluate(() -> new Each(action), (Each l, Each r) -> l);
+        }
+
+        static final class Count extends HTerminal.FromF64.ToI64 {
+            long n;
+            public void onAccept(final double val) { ++n; }
+            public long result() { return n; }
+            Count merge(final Count r) { n += r.n; return this; }
+        }
+
+        static final class Fold extends HTerminal.FromF64.ToF64 {
+            final DoubleBinaryOperator op;
+            double acc;
+            Fold(final double identity, final DoubleBinaryOperator op) { this.acc = identity; this.op = op; }
+            public void onAccept(final double val) { acc = op.applyAsDouble(acc, val); }
+            public double result() { return acc; }
+            Fold merge(final Fold r) { acc = op.applyAsDouble(acc, r.acc); return this; }
+        }
+
+        static final class Collect<R> extends HTerminal.FromF64.To<R> {
+            final Accumulator<R> acc;
+            R container;
+            Collect(final R container, final Accumulator<R> acc) { this.container = container; this.acc = acc; }
+            public void onAccept(final double val) throws Throwable { acc.onAccept(container, val); }
+            public R result() { return container; }
+            Collect<R> merge(final Collect<R> r, final Fn2<R, R, R> fn) { container = fn.apply(container, r.container); return this; }
+        }
+
+        static final class Each extends HTerminal.FromF64.To<Void> {
+            final F64.Consumer action;
+            Each(final F64.Consumer action) { this.action = action; }
+            public void onAccept(final double val) throws Throwable { action.onAccept(val); }
+            public Void result() { return null; }
+        }
+    }
+}
@@ -0,0 +1,236 @@
+//     _____
+//    ╱     ╲┌────╭─╭──────╭─────────╮────╭─╮
+//   ╱  ╲ ╱  ╲ ┌──╮ │ ╭──╮ ╮ ┬─╮ ┬─╮ ┌ ┌──╮ │
+//  ╱    Y    ╲└──╰ ╵ ╰──╯ │ │ │ │ │ │ └──╰ │
+//  ╲____│____╱╰──╰─┴╭───╯ ╰─╰─╯ ╰─╰─┴────╰─┴╲╲
+//            ╲╭─────┘─────└────────────────╮╱╱
+//
+// Copyright (C) esentri.magma - All Rights Reserved.
+//
+// Unauthorized copying of this file, via any medium
+// is strictly prohibited. Proprietary and confidential.
+
+package magma.exa.data.misc;
+
+import magma.exa.control.exception.Exceptions;
+
+/**
+ * Kernels over primitive columns: counting and selecting the values
+ * of a closed interval or with some bits set, bin counts over small
+ * {@code int} domains, bit position counts and sums.
+ * <p>
+ * The kernels use the Vector API ({@code jdk.incubator.vector}) if the
+ * module is resolved, i.e. the JVM runs with {@code --add-modules
+ * jdk.incubator.vector}, and fall back to scalar loops otherwise or
+ * if the system property {@code magma.vector} is {@code false}. The
+ * implementation is chosen once, a static final field, so that the
+ * JIT inlines its calls.
+ * <p>
+ * Interval predicates test {@code lo <= x <= hi}, which covers every
+ * relation to a constant ({@code x > v} is {@code [v + 1, MAX]}), the
+ * {@code out} variants select the complement. Selections write the
+ * absolute indices of the selected values into {@code dst}, which must
+ * hold {@code to - from} indices, and return their number.
+ */
+public enum Kernels {
+    ;
+
+    /**
+     * The operations an implementation provides, all over {@code [from, to)}.
+     */
+    interface Impl {
+        int countIn(int[] a, int from, int to, int lo, int hi);
+        int countIn(long[] a, int from, int to, long lo, long hi);
+        int countBits(int[] a, int from, int to, int mask);
+        int selectIn(int[] a, int from, int to, int lo, int hi, boolean out, int[] dst);
+        int selectIn(long[] a, int from, int to, long lo, long hi, boolean out, int[] dst);
+        int selectBits(int[] a, int from, int to, int mask, int[] dst);
+        void bincount(int[] a, int from, int to, int[] bins);
+        void bitCounts(long[] a, int from, int to, int stride, int[] counts);
+        long sum(int[] a, int from, int to);
+        long sum(long[] a, int from, int to);
+        double sum(double[] a, int from, int to);
+    }
+
+    static final Impl IMPL = load();
+
+    private static Impl load() {
+        if (!Boolean.parseBoolean(System.getProperty("magma.vector", "true"))
+                || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return ScalarKernels.kernels;
+        }
+        try { // Only loaded if the module is there.
+            return (Impl) Class.forName("magma.exa.data.misc.VectorKernels")
+                    .getField("kernels").get(null);
+        } catch (ReflectiveOperationException | LinkageError ex) {
+            return ScalarKernels.kernels;
+        }
+    }
+
+    /**
+     * Returns whether the kernels run on the Vector API.
+     */
+    public static boolean vectorized() {
+        return IMPL != ScalarKernels.kernels;
+    }
+
+    // ----------------------------------------------------------
+    //  KERNELS.COUNT
+    // ----------------------------------------------------------
+
+    /**
+     * Counts the values {@code lo <= a[i] <= hi} of {@code a[from, to)}.
+     */
+    public static int countIn(final int[] a, final int from, final int to, final int lo, final int hi) {
+        checkRange(a.length, from, to);
+        return (lo > hi) ? 0 : IMPL.countIn(a, from, to, lo, hi);
+    }
+
+    /**
+     * Counts the values {@code lo <= a[i] <= hi} of {@code a[from, to)}.
+     */
+    public static int countIn(final long[] a, final int from, final int to, final long lo, final long hi) {
+        checkRange(a.length, from, to);
+        return (lo > hi) ? 0 : IMPL.countIn(a, from, to, lo, hi);
+    }
+
+    /**
+     * Counts the values of {@code a[from, to)} that have any bit of {@code mask} set.
+     */
+    public static int countBits(final int[] a, final int from, final int to, final int mask) {
+        checkRange(a.length, from, to);
+        return IMPL.countBits(a, from, to, mask);
+    }
+
+    // ----------------------------------------------------------
+    //  KERNELS.SELECT
+    // ----------------------------------------------------------
+
+    /**
+     * Selects the indices of {@code a[from, to)} whose values are within
+     * {@code [lo, hi]}, or outside of it if {@code out}.
+     *
+     * @return number of indices written to {@code dst}.
+     */
+    public static int selectIn(final int[] a, final int from, final int to,
+                               final int lo, final int hi, final boolean out, final int[] dst) {
+        checkSelect(a.length, from, to, dst);
+        if (lo > hi) return out ? iota(from, to, dst) : 0;
+        return IMPL.selectIn(a, from, to, lo, hi, out, dst);
+    }
+
+    /**
+     * Selects the indices of {@code a[from, to)} whose values are within
+     * {@code [lo, hi]}, or outside of it if {@code out}.
+     *
+     * @return number of indices written to {@code dst}.
+     */
+    public static int selectIn(final long[] a, final int from, final int to,
+                               final long lo, final long hi, final boolean out, final int[] dst) {
+        checkSelect(a.length, from, to, dst);
+        if (lo > hi) return out ? iota(from, to, dst) : 0;
+        return IMPL.selectIn(a, from, to, lo, hi, out, dst);
+    }
+
+    /**
+     * Selects the indices of {@code a[from, to)} whose values have any bit of {@code mask} set.
+     *
+     * @return number of indices written to {@code dst}.
+     */
+    public static int selectBits(final int[] a, final int from, final int to, final int mask, final int[] dst) {
+        checkSelect(a.length, from, to, dst);
+        return IMPL.selectBits(a, from, to, mask, dst);
+    }
+
+    /**
+     * Gathers {@code src[sel[0, n)]} into {@code dst[0, n)}, e.g. the
+     * values of another column at the indices of a selection. Stays
+     * scalar, vector gathers are not faster than scalar loads.
+     */
+    public static long[] compress(final long[] src, final int[] sel, final int n, final long[] dst) {
+        for (int i = 0; i < n; ++i) dst[i] = src[sel[i]];
+        return dst;
+    }
+
+    /**
+     * Gathers {@code src[sel[0, n)]} into {@code dst[0, n)}.
+     */
+    public static int[] compress(final int[] src, final int[] sel, final int n, final int[] dst) {
+        for (int i = 0; i < n; ++i) dst[i] = src[sel[i]];
+        return dst;
+    }
+
+    // ----------------------------------------------------------
+    //  KERNELS.HISTOGRAM
+    // ----------------------------------------------------------
+
+    /**
+     * Adds the number of occurrences of every value {@code v} of
+     * {@code a[from, to)} to {@code bins[v]}. The values must be
+     * within {@code [0, bins.length)}, e.g. hours or categories.
+     */
+    public static int[] bincount(final int[] a, final int from, final int to, final int[] bins) {
+        checkRange(a.length, from, to);
+        IMPL.bincount(a, from, to, bins);
+        return bins;
+    }
+
+    /**
+     * Adds the number of values of {@code a[from, to)} that have bit
+     * {@code k * stride} set to {@code counts[k]}, for all {@code k}
+     * of {@code counts}, e.g. the categories of packed 2 bit levels.
+     */
+    public static int[] bitCounts(final long[] a, final int from, final int to, final int stride, final int[] counts) {
+        checkRange(a.length, from, to);
+        if ((long) (counts.length - 1) * stride >= Long.SIZE) throw Exceptions.outOfBounds("counts * stride > 64");
+        IMPL.bitCounts(a, from, to, stride, counts);
+        return counts;
+    }
+
+    // ----------------------------------------------------------
+    //  KERNELS.SUM
+    // ----------------------------------------------------------
+
+    /**
+     * Sums {@code a[from, to)} without overflow for less than {@code 2^32} values.
+     */
+    public static long sum(final int[] a, final int from, final int to) {
+        checkRange(a.length, from, to);
+        return IMPL.sum(a, from, to);
+    }
+
+    /**
+     * Sums {@code a[from, to)}.
+     */
+    public static long sum(final long[] a, final int from, final int to) {
+        checkRange(a.length, from, to);
+        return IMPL.sum(a, from, to);
+    }
+
+    /**
+     * Sums {@code a[from, to)}. The vector kernel adds in a different
+     * order, so the result may differ in the last bits.
+     */
+    public static double sum(final double[] a, final int from, final int to) {
+        checkRange(a.length, from, to);
+        return IMPL.sum(a, from, to);
+    }
+
+    // ----------------------------------------------------------
+
+    private static int iota(final int from, final int to, final int[] dst) {
+        for (int i = from; i < to; ++i) dst[i - from] = i;
+        return to - from;
+    }
+
+    private static void checkRange(final int length, final int from, final int to) {
+        if (from < 0 || from > to || to > length) {
+            throw Exceptions.outOfBounds("range [" + from + ", " + to + ") of " + length);
+        }
+    }
+
+    private static void checkSelect(final int length, final int from, final int to, final int[] dst) {
+        checkRange(length, from, to);
+        if (dst.length < to - from) throw Exceptions.outOfBounds("dst < to - from");
+    }
+}
@@ -0,0 +1,425 @@
+//     _____
+//    ╱     ╲┌────╭─╭──────╭─────────╮────╭─╮
+//   ╱  ╲ ╱  ╲ ┌──╮ │ ╭──╮ ╮ ┬─╮ ┬─╮ ┌ ┌──╮ │
+//  ╱    Y    ╲└──╰ ╵ ╰──╯ │ │ │ │ │ │ └──╰ │
+//  ╲____│____╱╰──╰─┴╭───╯ ╰─╰─╯ ╰─╰─┴────╰─┴╲╲
+//            ╲╭─────┘─────└────────────────╮╱╱
+//
+// Copyright (C) esentri.magma - All Rights Reserved.
+//
+// Unauthorized copying of this file, via any medium
+// is strictly prohibited. Proprietary and confidential.
+
+package magma.exa.data.misc;
+
+import magma.exa.control.exception.Exceptions;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Parallel least significant digit radix sort of {@code long} and
+ * {@code int} keys, optionally carrying an {@code int[]} payload of
+ * indices (argsort), and of segmented {@code long} keys that exceed
+ * the capacity of a single array.
+ * <p>
+ * Keys are sorted by 8 bit digits, one stable counting pass per digit.
+ * The keys are cut into contiguous blocks, one per worker, each block
+ * counts its digits, a prefix sum over all blocks assigns each block
+ * its slots per digit, and each block scatters its keys into the
+ * scratch space. Passes over a digit all keys share, e.g. the high
+ * bytes of timestamps, are skipped. The sign bit of the most
+ * significant digit is flipped so that signed keys sort naturally,
+ * a descending order flips all bits of every digit, both keep the
+ * sort stable.
+ * <p>
+ * Allocates scratch space of the size of the sorted range (and of
+ * the payload).
+ */
+public enum RadixSort {
+    ;
+
+    /** Bits per digit. */
+    private static final int BITS = 8;
+    /** Number of distinct digits. */
+    private static final int RADIX = 1 << BITS;
+    private static final int MASK = RADIX - 1;
+
+    /** Below this many keys per block a range is sorted on the calling thread. */
+    private static final int MIN_BLOCK = 1 << 16;
+
+    // ----------------------------------------------------------
+    //  RADIX-SORT.I64
+    // ----------------------------------------------------------
+
+    /**
+     * Sorts the {@code long} keys in {@code [lo, hi)}, permuting the
+     * payload {@code idx} alike, {@code idx[i]} belongs to {@code key[lo + i]}.
+     * The payload may be null.
+     */
+    public static void sort(final long[] key, final int[] idx, final int lo, final int hi, final Sorting mode) {
+        final int n = hi - lo;
+        if (n < 2) return;
+        final int blocks = blocks(n);
+        final var global = histograms(key, lo, n, blocks);
+        final var scratch = new long[n];
+        final var iscratch = (idx == null) ? null : new int[n];
+
+        long[] src = key, dst = scratch;
+        int[] isrc = idx, idst = iscratch;
+        int so = lo, dof = 0; // offsets of src and dst
+
+        for (int digit = 0; digit < Long.BYTES; ++digit) {
+            if (isTrivial(global[digit], n)) continue;
+            final int shift = digit * BITS;
+            final int flip = flip(digit == Long.BYTES - 1, mode);
+            pass(src, so, dst, dof, isrc, idst, n, blocks, shift, flip);
+            final var t = src; src = dst; dst = t;
+            final var it = isrc; isrc = idst; idst = it;
+            final var to = so; so = dof; dof = to;
+        }
+        if (src != key) {
+            System.arraycopy(src, 0, key, lo, n);
+            if (idx != null) System.arraycopy(isrc, 0, idx, 0, n);
+        }
+    }
+
+    private static void pass(final long[] src, final int so, final long[] dst, final int dof,
+                             final int[] isrc, final int[] idst,
+                             final int n, final int blocks, final int shift, final int flip) {
+        final var offsets = new int[blocks][RADIX];
+        forBlocks(n, blocks, (b, from, to) -> {
+            final var count = offsets[b];
+            for (int i = from; i < to; ++i) {
+                ++count[digit(src[so + i], shift, flip)];
+            }
+        });
+        prefix(offsets);
+        forBlocks(n, blocks, (b, from, to) -> {
+            final var offset = offsets[b];
+            if (isrc == null) {
+                for (int i = from; i < to; ++i) {
+                    final long k = src[so + i];
+                    dst[dof + offset[digit(k, shift, flip)]++] = k;
+                }
+            } else {
+                for (int i = from; i < to; ++i) {
+                    final long k = src[so + i];
+                    final int j = offset[digit(k, shift, flip)]++;
+                    dst[dof + j] = k;
+                    idst[j] = isrc[i];
+                }
+            }
+        });
+    }
+
+    /** Digit counts of all 8 digits over the whole range. */
+    private static long[][] histograms(final long[] key, final int lo, final int n, final int blocks) {
+        final var counts = new long[blocks][Long.BYTES * RADIX];
+        forBlocks(n, blocks, (b, from, to) -> {
+            final var count = counts[b];
+            for (int i = from; i < to; ++i) {
+                final long k = key[lo + i];
+                for (int d = 0; d < Long.BYTES; ++d) {
+                    ++count[(d << BITS) | (int) (k >>> (d * BITS)) & MASK];
+                }
+            }
+        });
+        return merge(counts, Long.BYTES);
+    }
+
+    private static int digit(final long key, final int shift, final int flip) {
+        return ((int) (key >>> shift) & MASK) ^ flip;
+    }
+
+    // ----------------------------------------------------------
+    //  RADIX-SORT.I32
+    // ----------------------------------------------------------
+
+    /**
+     * Sorts the {@code int} keys in {@code [lo, hi)}, permuting the
+     * payload {@code idx} alike, {@code idx[i]} belongs to {@code key[lo + i]}.
+     * The payload may be null.
+     */
+    public static void sort(final int[] key, final int[] idx, final int lo, final int hi, final Sorting mode) {
+        final int n = hi - lo;
+        if (n < 2) return;
+        final int blocks = blocks(n);
+        final var global = histograms(key, lo, n, blocks);
+        final var scratch = new int[n];
+        final var iscratch = (idx == null) ? null : new int[n];
+
+        int[] src = key, dst = scratch;
+        int[] isrc = idx, idst = iscratch;
+        int so = lo, dof = 0;
+
+        for (int digit = 0; digit < Integer.BYTES; ++digit) {
+            if (isTrivial(global[digit], n)) continue;
+            final int shift = digit * BITS;
+            final int flip = flip(digit == Integer.BYTES - 1, mode);
+            pass(src, so, dst, dof, isrc, idst, n, blocks, shift, flip);
+            final var t = src; src = dst; dst = t;
+            final var it = isrc; isrc = idst; idst = it;
+            final var to = so; so = dof; dof = to;
+        }
+        if (src != key) {
+            System.arraycopy(src, 0, key, lo, n);
+            if (idx != null) System.arraycopy(isrc, 0, idx, 0, n);
+        }
+    }
+
+    private static void pass(final int[] src, final int so, final int[] dst, final int dof,
+                             final int[] isrc, final int[] idst,
+                             final int n, final int blocks, final int shift, final int flip) {
+        final var offsets = new int[blocks][RADIX];
+        forBlocks(n, blocks, (b, from, to) -> {
+            final var count = offsets[b];
+            for (int i = from; i < to; ++i) {
+                ++count[digit(src[so + i], shift, flip)];
+            }
+        });
+        prefix(offsets);
+        forBlocks(n, blocks, (b, from, to) -> {
+            final var offset = offsets[b];
+            if (isrc == null) {
+                for (int i = from; i < to; ++i) {
+                    final int k = src[so + i];
+                    dst[dof + offset[digit(k, shift, flip)]++] = k;
+                }
+            } else {
+                for (int i = from; i < to; ++i) {
+                    final int k = src[so + i];
+                    final int j = offset[digit(k, shift, flip)]++;
+                    dst[dof + j] = k;
+                    idst[j] = isrc[i];
+                }
+            }
+        });
+    }
+
+    private static long[][] histograms(final int[] key, final int lo, final int n, final int blocks) {
+        final var counts = new long[blocks][Integer.BYTES * RADIX];
+        forBlocks(n, blocks, (b, from, to) -> {
+            final var count = counts[b];
+            for (int i = from; i < to; ++i) {
+                final int k = key[lo + i];
+                for (int d = 0; d < Integer.BYTES; ++d) {
+                    ++count[(d << BITS) | (k >>> (d * BITS)) & MASK];
+                }
+            }
+        });
+        return merge(counts, Integer.BYTES);
+    }
+
+    private static int digit(final int key, final int shift, final int flip) {
+        return ((key >>> shift) & MASK) ^ flip;
+    }
+
+    // ----------------------------------------------------------
+    //  RADIX-SORT.SEGMENTED
+    // ----------------------------------------------------------
+
+    /**
+     * Sorts the {@code long} keys of the given segments as one sequence
+     * of up to {@code segments.length * size} keys, from position 0 to
+     * the limit of each buffer. All segments but the last must hold
+     * the same number of keys, possibly none. The scratch segments are allocated
+     * direct (off-heap) iff the first segment is direct.
+     */
+    public static void sort(final LongBuffer[] segments, final Sorting mode) {
+        if (segments.length == 0) return;
+        final long size = segments[0].limit(); // keys per segment
+        long n = 0;
+        for (int s = 0; s < segments.length; ++s) {
+            final int length = segments[s].limit();
+            if (s < segments.length - 1 && length != size)
+                throw Exceptions.illegalArgument("segment " + s + " holds " + length + " keys, expected " + size);
+            n += length;
+        }
+        if (n < 2) return;
+        if (size == 0) {
+            // All keys are in the last segment.
+            sort(new LongBuffer[] {segments[segments.length - 1]}, mode);
+            return;
+        }
+        if (segments.length == 1) {
+            final var keys = segments[0];
+            if (keys.hasArray()) {
+                sort(keys.array(), null, keys.arrayOffset(), keys.arrayOffset() + keys.limit(), mode);
+                return;
+            }
+        }
+        final var scratch = new LongBuffer[segments.length];
+        for (int s = 0; s < segments.length; ++s) {
+            scratch[s] = allocate(segments[s].limit(), segments[0].isDirect());
+        }
+        final int blocks = blocks(n);
+        final var global = histograms(segments, size, n, blocks);
+
+        LongBuffer[] src = segments, dst = scratch;
+        for (int digit = 0; digit < Long.BYTES; ++digit) {
+            if (isTrivial(global[digit], n)) continue;
+            pass(src, dst, size, n, blocks, digit * BITS, flip(digit == Long.BYTES - 1, mode));
+            final var t = src; src = dst; dst = t;
+        }
+        if (src != segments) {
+            for (int s = 0; s < segments.length; ++s) {
+                segments[s].duplicate().position(0).put(src[s].duplicate().position(0));
+            }
+        }
+    }
+
+    private static void pass(final LongBuffer[] src, final LongBuffer[] dst, final long size,
+                             final long n, final int blocks, final int shift, final int flip) {
+        final var offsets = new long[blocks][RADIX];
+        forLongBlocks(n, blocks, (b, from, to) -> {
+            final var count = offsets[b];
+            for (long i = from; i < to; ) {
+                final var seg = src[(int) (i / size)];
+                final int end = (int) Math.min(size, to - i + i % size);
+                for (int k = (int) (i % size); k < end; ++k, ++i) {
+                    ++count[digit(seg.get(k), shift, flip)];
+                }
+            }
+        });
+        prefix(offsets);
+        forLongBlocks(n, blocks, (b, from, to) -> {
+            // Write cursor per digit as segment and position in it.
+            final var offset = offsets[b];
+            final var segment = new int[RADIX];
+            final var position = new int[RADIX];
+            for (int d = 0; d < RADIX; ++d) {
+                segment[d] = (int) (offset[d] / size);
+                position[d] = (int) (offset[d] % size);
+            }
+            for (long i = from; i < to; ) {
+                final var seg = src[(int) (i / size)];
+                final int end = (int) Math.min(size, to - i + i % size);
+                for (int k = (int) (i % size); k < end; ++k, ++i) {
+                    final long key = seg.get(k);
+                    final int d = digit(key, shift, flip);
+                    dst[segment[d]].put(position[d], key);
+                    if (++position[d] == size) {
+                        ++segment[d];
+                        position[d] = 0;
+                    }
+                }
+            }
+        });
+    }
+
+    private static long[][] histograms(final LongBuffer[] segments, final long size, final long n, final int blocks) {
+        final var counts = new long[blocks][Long.BYTES * RADIX];
+        forLongBlocks(n, blocks, (b, from, to) -> {
+            final var count = counts[b];
+            for (long i = from; i < to; ) {
+                final var seg = segments[(int) (i / size)];
+                final int end = (int) Math.min(size, to - i + i % size);
+                for (int k = (int) (i % size); k < end; ++k, ++i) {
+                    final long key = seg.get(k);
+                    for (int d = 0; d < Long.BYTES; ++d) {
+                        ++count[(d << BITS) | (int) (key >>> (d * BITS)) & MASK];
+                    }
+                }
+            }
+        });
+        return merge(counts, Long.BYTES);
+    }
+
+    private static LongBuffer allocate(final int length, final boolean direct) {
+        return direct
+                ? ByteBuffer.allocateDirect(length * Long.BYTES).order(ByteOrder.nativeOrder()).asLongBuffer()
+                : LongBuffer.allocate(length);
+    }
+
+    // ----------------------------------------------------------
+    //  RADIX-SORT.BLOCKS
+    // ----------------------------------------------------------
+
+    @FunctionalInterface
+    private interface Block {
+        void accept(int block, int from, int to);
+    }
+
+    @FunctionalInterface
+    private interface LongBlock {
+        void accept(int block, long from, long to);
+    }
+
+    private static int blocks(final long n) {
+        final long blocks = Math.min(ForkJoinPool.getCommonPoolParallelism(), n / MIN_BLOCK);
+        return (int) Math.max(1, blocks);
+    }
+
+    private static void forBlocks(final int n, final int blocks, final Block body) {
+        if (blocks == 1) {
+            body.accept(0, 0, n);
+            return;
+        }
+        IntStream.range(0, blocks).parallel().forEach(b -> body.accept(b,
+                (int) ((long) n * b / blocks),
+                (int) ((long) n * (b + 1) / blocks)));
+    }
+
+    private static void forLongBlocks(final long n, final int blocks, final LongBlock body) {
+        if (blocks == 1) {
+            body.accept(0, 0, n);
+            return;
+        }
+        IntStream.range(0, blocks).parallel().forEach(b -> body.accept(b,
+                n * b / blocks,
+                n * (b + 1) / blocks));
+    }
+
+    /** Turns per block digit counts into per block start offsets. */
+    private static void prefix(final int[][] offsets) {
+        int position = 0;
+        for (int d = 0; d < RADIX; ++d) {
+            for (final var offset : offsets) {
+                final int count = offset[d];
+                offset[d] = position;
+                position += count;
+            }
+        }
+    }
+
+    private static void prefix(final long[][] offsets) {
+        long position = 0;
+        for (int d = 0; d < RADIX; ++d) {
+            for (final var offset : offsets) {
+                final long count = offset[d];
+                offset[d] = position;
+                position += count;
+            }
+        }
+    }
+
+    /** Sums the block histograms, one row of RADIX counts per digit. */
+    private static long[][] merge(final long[][] counts, final int digits) {
+        final var result = new long[digits][RADIX];
+        for (final var count : counts) {
+            for (int d = 0; d < digits; ++d) {
+                for (int v = 0; v < RADIX; ++v) {
+                    result[d][v] += count[(d << BITS) | v];
+                }
+            }
+        }
+        return result;
+    }
+
+    /** A pass is trivial if all keys share its digit. */
+    private static boolean isTrivial(final long[] histogram, final long n) {
+        for (final long count : histogram) {
+            if (count == n) return true;
+            if (count != 0) return false;
+        }
+        return false;
+    }
+
+    private static int flip(final boolean top, final Sorting mode) {
+        return (top ? 0x80 : 0) ^ (mode == Sorting.DESCENDING ? MASK : 0);
+    }
+}
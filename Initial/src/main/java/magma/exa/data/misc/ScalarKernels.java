@@ -0,0 +1,156 @@
+//     _____
+//    ╱     ╲┌────╭─╭──────╭─────────╮────╭─╮
+//   ╱  ╲ ╱  ╲ ┌──╮ │ ╭──╮ ╮ ┬─╮ ┬─╮ ┌ ┌──╮ │
+//  ╱    Y    ╲└──╰ ╵ ╰──╯ │ │ │ │ │ │ └──╰ │
+//  ╲____│____╱╰──╰─┴╭───╯ ╰─╰─╯ ╰─╰─┴────╰─┴╲╲
+//            ╲╭─────┘─────└────────────────╮╱╱
+//
+// Copyright (C) esentri.magma - All Rights Reserved.
+//
+// Unauthorized copying of this file, via any medium
+// is strictly prohibited. Proprietary and confidential.
+
+package magma.exa.data.misc;
+
+/**
+ * Scalar fallback of the {@link Kernels}, also used for the tails of
+ * the vector kernels. The interval tests are branch free: {@code x} is
+ * within {@code [lo, hi]} iff {@code x - lo <= hi - lo} unsigned.
+ */
+enum ScalarKernels implements Kernels.Impl {
+    kernels;
+
+    /** Minimal count of values that is spread over 4 sub-histograms. */
+    static final int SPREAD = 1 << 10;
+
+    @Override
+    public int countIn(final int[] a, final int from, final int to, final int lo, final int hi) {
+        final int span = hi - lo;
+        int n = 0;
+        for (int i = from; i < to; ++i) {
+            n += Integer.compareUnsigned(a[i] - lo, span) <= 0 ? 1 : 0;
+        }
+        return n;
+    }
+
+    @Override
+    public int countIn(final long[] a, final int from, final int to, final long lo, final long hi) {
+        final long span = hi - lo;
+        int n = 0;
+        for (int i = from; i < to; ++i) {
+            n += Long.compareUnsigned(a[i] - lo, span) <= 0 ? 1 : 0;
+        }
+        return n;
+    }
+
+    @Override
+    public int countBits(final int[] a, final int from, final int to, final int mask) {
+        int n = 0;
+        for (int i = from; i < to; ++i) {
+            n += (a[i] & mask) != 0 ? 1 : 0;
+        }
+        return n;
+    }
+
+    @Override
+    public int selectIn(final int[] a, final int from, final int to,
+                        final int lo, final int hi, final boolean out, final int[] dst) {
+        return selectIn(a, from, to, lo, hi, out, dst, 0);
+    }
+
+    @Override
+    public int selectIn(final long[] a, final int from, final int to,
+                        final long lo, final long hi, final boolean out, final int[] dst) {
+        return selectIn(a, from, to, lo, hi, out, dst, 0);
+    }
+
+    @Override
+    public int selectBits(final int[] a, final int from, final int to, final int mask, final int[] dst) {
+        return selectBits(a, from, to, mask, dst, 0);
+    }
+
+    // The selections continue at dst[n], for the tails of the
+    // vector kernels, and return the new number of indices.
+
+    static int selectIn(final int[] a, final int from, final int to,
+                        final int lo, final int hi, final boolean out, final int[] dst, int n) {
+        final int span = hi - lo;
+        for (int i = from; i < to; ++i) {
+            dst[n] = i; // Written always, kept if selected.
+            n += (Integer.compareUnsigned(a[i] - lo, span) <= 0) != out ? 1 : 0;
+        }
+        return n;
+    }
+
+    static int selectIn(final long[] a, final int from, final int to,
+                        final long lo, final long hi, final boolean out, final int[] dst, int n) {
+        final long span = hi - lo;
+        for (int i = from; i < to; ++i) {
+            dst[n] = i;
+            n += (Long.compareUnsigned(a[i] - lo, span) <= 0) != out ? 1 : 0;
+        }
+        return n;
+    }
+
+    static int selectBits(final int[] a, final int from, final int to, final int mask, final int[] dst, int n) {
+        for (int i = from; i < to; ++i) {
+            dst[n] = i;
+            n += (a[i] & mask) != 0 ? 1 : 0;
+        }
+        return n;
+    }
+
+    @Override
+    public void bincount(final int[] a, final int from, final int to, final int[] bins) {
+        if (to - from < SPREAD) {
+            for (int i = from; i < to; ++i) ++bins[a[i]];
+            return;
+        }
+        // Runs of equal values would stall on the store to
+        // the same bin, 4 interleaved histograms do not.
+        final int k = bins.length;
+        final int[] spread = new int[k << 2];
+        int i = from;
+        for (; i + 3 < to; i += 4) {
+            ++spread[a[i] << 2];
+            ++spread[(a[i + 1] << 2) + 1];
+            ++spread[(a[i + 2] << 2) + 2];
+            ++spread[(a[i + 3] << 2) + 3];
+        }
+        for (; i < to; ++i) ++bins[a[i]];
+        for (int b = 0; b < k; ++b) {
+            bins[b] += spread[b << 2] + spread[(b << 2) + 1] + spread[(b << 2) + 2] + spread[(b << 2) + 3];
+        }
+    }
+
+    @Override
+    public void bitCounts(final long[] a, final int from, final int to, final int stride, final int[] counts) {
+        for (int i = from; i < to; ++i) {
+            long bits = a[i];
+            for (int k = 0; k < counts.length; ++k, bits >>>= stride) {
+                counts[k] += (int) (bits & 1);
+            }
+        }
+    }
+
+    @Override
+    public long sum(final int[] a, final int from, final int to) {
+        long sum = 0;
+        for (int i = from; i < to; ++i) sum += a[i];
+        return sum;
+    }
+
+    @Override
+    public long sum(final long[] a, final int from, final int to) {
+        long sum = 0;
+        for (int i = from; i < to; ++i) sum += a[i];
+        return sum;
+    }
+
+    @Override
+    public double sum(final double[] a, final int from, final int to) {
+        double sum = 0;
+        for (int i = from; i < to; ++i) sum += a[i];
+        return sum;
+    }
+}
@@ -2003,12 +2003,43 @@ public enum I32 {
      * Relational operators.
      */
     public enum Relation implements To<Predicate> {
-        EQ { @Override public Predicate onApply(final int val) { return x -> x == val; } },
-        NE { @Override public Predicate onApply(final int val) { return x -> x != val; } },
-        GT { @Override public Predicate onApply(final int val) { return x -> x >  val; } },
-        GE { @Override public Predicate onApply(final int val) { return x -> x >= val; } },
-        LT { @Override public Predicate onApply(final int val) { return x -> x <  val; } },
-        LE { @Override public Predicate onApply(final int val) { return x -> x <= val; } }
+        EQ { @Override public Predicate onApply(final int val) { return new Compare(this, val) { public boolean onEval(final int x) { return x == val; } }; } },
+        NE { @Override public Predicate onApply(final int val) { return new Compare(this, val) { public boolean onEval(final int x) { return x != val; } }; } },
+        GT { @Override public Predicate onApply(final int val) { return new Compare(this, val) { public boolean onEval(final int x) { return x >  val; } }; } },
+        GE { @Override public Predicate onApply(final int val) { return new Compare(this, val) { public boolean onEval(final int x) { return x >= val; } }; } },
+        LT { @Override public Predicate onApply(final int val) { return new Compare(this, val) { public boolean onEval(final int x) { return x <  val; } }; } },
+        LE { @Override public Predicate onApply(final int val) { return new Compare(this, val) { public boolean onEval(final int x) { return x <= val; } }; } }
+    }
+
+    /**
+     * Predicate of a relation to a constant. Array operations recognize
+     * it and run the interval kernels of {@link magma.exa.data.misc.Kernels}
+     * instead of evaluating the predicate value by value: the predicate
+     * accepts the values of {@code [lo, hi]}, or all others if {@code out}.
+     */
+    public static abstract class Compare implements Predicate {
+        public final Relation relation;
+        public final int value;
+        public final int lo, hi;
+        public final boolean out;
+
+        Compare(final Relation relation, final int value) {
+            this.relation = relation;
+            this.value = value;
+            int lo = Integer.MIN_VALUE, hi = Integer.MAX_VALUE;
+            boolean out = false;
+            switch (relation) {
+                case EQ: lo = hi = value; break;
+                case NE: lo = hi = value; out = true; break;
+                case GT: if (value == Integer.MAX_VALUE) out = true; else lo = value + 1; break;
+                case GE: lo = value; break;
+                case LT: if (value == Integer.MIN_VALUE) out = true; else hi = value - 1; break;
+                case LE: hi = value; break;
+            }
+            this.lo = lo;
+            this.hi = hi;
+            this.out = out;
+        }
     }
 
 
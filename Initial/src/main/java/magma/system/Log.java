@@ -1,27 +1,39 @@
 package magma.system;
 
 import magma.system.SystemIO.Color;
-import magma.system.SystemIO.ConsoleOutput;
 import magma.system.SystemIO.Font;
 
-import java.io.File;
-import java.io.FileOutputStream;
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.Locale;
 import java.util.Objects;
-import java.util.function.BiConsumer;
-
-import static com.google.common.base.Preconditions.checkNotNull;
-import static magma.exa.base.contract.Require.isTrue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
 
 
 // ------------------------------------------------------------
 //                         LOG SYSTEM
 // ------------------------------------------------------------
-// TODO: IMPROVE EXCEPTION LOG WITH STACK-WALKING API
+// Asynchronous: a call checks the level, formats nothing if
+// it is disabled and otherwise puts one event into a lock-free
+// ring buffer. A single daemon thread drains the ring in
+// batches, styles them and writes each batch with one write
+// to the console and one to the log file. Worker threads never
+// touch the stdout lock. A full ring makes producers wait,
+// except for progress events which are dropped. Events still
+// in the ring are written by a shutdown hook.
 //
 public enum Log {
 
@@ -41,17 +53,49 @@ public enum Log {
 
     // ----------------------------------------------
 
+    public enum Level { ERROR, WARN, INFO, DEBUG }
+
+    // At most one progress event per key and interval.
+    public static final long PROGRESS_MILLIS = 5_000;
+
+    static final int RING_SIZE = 1 << 14;
+    static final int BATCH = 1 << 10;
+    static final long IDLE_NANOS = 2_000_000;
+
+    // ----------------------------------------------
+
     private final LogContext context;
 
-    private LogHandler level;
+    private volatile int level;
 
     // ----------------------------------------------
 
     Log(final String filePath) {
         context = new LogContext(filePath);
-        level = LogHandler.WARN;
     }
 
+    // Everything, as before the levels, unless -Dmagma.log=<level>.
+    // An unknown level falls back to INFO with a warning, after
+    // the styles, so that the warning can be written.
+    static {
+        final var name = System.getProperty("magma.log", "DEBUG");
+        try {
+            get.level = Level.valueOf(name.trim().toUpperCase(Locale.ROOT)).ordinal();
+        } catch (IllegalArgumentException ex) {
+            get.level = Level.INFO.ordinal();
+            warn("UNKNOWN LOG LEVEL -Dmagma.log=" + name + ", USING INFO");
+        }
+    }
+
+    public static void level(final Level lvl) { get.level = lvl.ordinal(); }
+
+    public static Level level() { return Level.values()[get.level]; }
+
+    public static boolean isEnabled(final Level lvl) { return lvl.ordinal() <= get.level; }
+
+    // Blocks until every event logged before is written.
+    public static void flush() { get.context.flush(); }
+
     // ----------------------------------------------
 
     public static void system(final String msg) {
@@ -65,8 +109,8 @@ public enum Log {
     }
 
     public static void error(final String msg, Object... params) {
-        var fmt = String.format(msg, params);
-        LogHandler.ERROR.accept(fmt, null);
+        if (!isEnabled(Level.ERROR)) return;
+        LogHandler.ERROR.accept(String.format(msg, params), null);
     }
 
     public static void error(final String msg) {
@@ -79,8 +123,8 @@ public enum Log {
 
     // ----------------------------------------------
     public static void warn(final String msg, Object... params) {
-        var fmt = String.format(msg, params);
-        LogHandler.WARN.accept(fmt, null);
+        if (!isEnabled(Level.WARN)) return;
+        LogHandler.WARN.accept(String.format(msg, params), null);
     }
 
     public static void warn(final String msg) {
@@ -88,6 +132,7 @@ public enum Log {
     }
 
     public static void warn(final Object ref) {
+        if (!isEnabled(Level.WARN)) return;
         LogHandler.WARN.accept(Objects.toString(ref), null);
     }
 
@@ -97,15 +142,21 @@ public enum Log {
 
     // ----------------------------------------------
     public static void info(final String msg, Object... params) {
-        var fmt = String.format(msg, params);
-        LogHandler.INFO.accept(fmt, null);
+        if (!isEnabled(Level.INFO)) return;
+        LogHandler.INFO.accept(String.format(msg, params), null);
     }
 
     public static void info(final String msg) {
         LogHandler.INFO.accept(msg, null);
     }
 
+    public static void info(final Supplier<String> msg) {
+        if (!isEnabled(Level.INFO)) return;
+        LogHandler.INFO.accept(msg.get(), null);
+    }
+
     public static void info(final Object ref) {
+        if (!isEnabled(Level.INFO)) return;
         if (ref != null && ref.getClass().isArray()
                 && !ref.getClass().getComponentType().isPrimitive()) {
             final Object[] array = (Object[]) ref;
@@ -125,7 +176,13 @@ public enum Log {
         LogHandler.DEBUG.accept(msg, null);
     }
 
+    public static void debug(final Supplier<String> msg) {
+        if (!isEnabled(Level.DEBUG)) return;
+        LogHandler.DEBUG.accept(msg.get(), null);
+    }
+
     public static void debug(final Object ref) {
+        if (!isEnabled(Level.DEBUG)) return;
         LogHandler.DEBUG.accept(Objects.toString(ref), null);
     }
 
@@ -135,68 +192,40 @@ public enum Log {
 
     // ----------------------------------------------
 
-    enum LogHandler implements BiConsumer<String, Throwable> {
-        ERROR {
-            // Critical errors.
-            public void accept(String msg, Throwable ex) {
-                if (get.level.ordinal() < ordinal())
-                    return;
-
-                final LogWriter wr = get.context.logger();
-                wr.log(SYSTEM_STYLE, toString() + " ");
-                wr.logln(ERROR_STYLE, msg);
-                if (ex != null) {
-                    wr.logThrowable(ex);
-                }
-            }
-        },
-        WARN {
-            // Important warnings.
-            public void accept(String msg, Throwable ex) {
-                //if (get.level.ordinal() >= ordinal())
-                //    return;
-                final LogWriter wr = get.context.logger();
-                wr.logln(WARN_STYLE, msg);
-                if (ex != null) {
-                    wr.logln(WARN_STYLE, ex.getMessage());
-                }
-            }
-        },
-        INFO {
-            // Informative messages.
-            public void accept(String msg, Throwable ex) {
-                if (get.level.ordinal() >= ordinal())
-                    return;
-                final LogWriter wr = get.context.logger();
-                wr.logln(INFO_STYLE, msg);
-                if (ex != null) {
-                    wr.logln(INFO_STYLE, ex.getMessage());
-                }
-            }
-        },
-        DEBUG {
-            // Debug messages.
-            public void accept(String msg, Throwable ex) {
-                if (get.level.ordinal() >= ordinal())
-                    return;
-                final LogWriter wr = get.context.logger();
-                wr.logln(DEBUG_STYLE, msg);
-                if (ex != null) {
-                    wr.logln(DEBUG_STYLE, ex.getMessage());
-                }
-            }
-        },
-        SYSTEM {
-            // System messages.
-            public void accept(String msg, Throwable ex) {
-                final LogWriter wr = get.context.logger();
-                wr.println(SYSTEM_STYLE, "# " + msg);
-            }
-        },
-        NONE {
-            public void accept(String msg, Throwable ex) {
-            }
-        };
+    // Info message for loops that run on many threads, at
+    // most one per 'key' every PROGRESS_MILLIS, the others
+    // are dropped before 'msg' is evaluated.
+    public static void progress(final String key, final Supplier<String> msg) {
+        if (!isEnabled(Level.INFO)) return;
+        final var last = get.context.progress.computeIfAbsent(key, k -> new AtomicLong());
+        final long now = System.currentTimeMillis();
+        final long prev = last.get();
+        if (now - prev < PROGRESS_MILLIS || !last.compareAndSet(prev, now)) return;
+        get.context.offer(new Event(LogHandler.INFO, Thread.currentThread(), msg.get(), null), false);
+    }
+
+    // ----------------------------------------------
+
+    enum LogHandler {
+        ERROR(Level.ERROR, ERROR_STYLE),
+        WARN(Level.WARN, WARN_STYLE),
+        INFO(Level.INFO, INFO_STYLE),
+        DEBUG(Level.DEBUG, DEBUG_STYLE),
+        SYSTEM(null, SYSTEM_STYLE),
+        NONE(null, null);
+
+        final Level level;
+        final Font font;
+
+        LogHandler(Level level, Font font) {
+            this.level = level;
+            this.font = font;
+        }
+
+        public void accept(String msg, Throwable ex) {
+            if (this == NONE || level != null && !isEnabled(level)) return;
+            get.context.offer(new Event(this, Thread.currentThread(), msg, ex), true);
+        }
 
         public String toString() {
             return '[' + name() + ']';
@@ -205,95 +234,155 @@ public enum Log {
 
     // ----------------------------------------------
 
-    static final class LogWriter {
-        private final ConsoleOutput cos;
-        private final PrintStream fos;
-        private final Thread thread;
-        private Font font;
-
-        private LogWriter(final ConsoleOutput _cos,
-                          final FileOutputStream _fos) {
-            thread = Thread.currentThread();
-            cos = checkNotNull(_cos);
-            fos = (_fos != null)
-                    ? new PrintStream(_fos)
-                    : null;
+    record Event(LogHandler handler, String thread, String msg, Throwable ex) {
+        Event(LogHandler handler, Thread thread, String msg, Throwable ex) {
+            this(handler, "Thread[" + thread.getName() + ',' + thread.getId() + "] ", msg, ex);
         }
 
-        public void println(Font font, String msg) {
-            cos.set(font).println(msg);
-            cos.reset();
-            cos.flush();
-            if (fos != null) {
-                fos.println(msg);
-                fos.flush();
+        void format(StringBuilder console, StringBuilder file) {
+            final String line = switch (handler) {
+                case SYSTEM -> "# " + msg;
+                case ERROR -> thread + handler + " " + msg;
+                default -> thread + msg;
+            };
+            console.append(handler.font.apply(line)).append('\n');
+            file.append(line).append('\n');
+            if (ex != null) {
+                final String trace;
+                if (handler == LogHandler.ERROR) {
+                    final var sw = new StringWriter();
+                    ex.printStackTrace(new PrintWriter(sw));
+                    trace = sw.toString();
+                }
+                else trace = thread + ex.getMessage() + '\n';
+                console.append(handler.font.apply(trace));
+                file.append(trace);
             }
         }
+    }
 
-        public void log(Font font, String msg) {
-            msg = "Thread[" + (thread.getName() + ','
-                    + thread.getId() + "] ") + msg;
-            cos.set(font).print(msg);
-            cos.reset();
-            cos.flush();
-            if (fos != null) {
-                fos.print(msg);
-                fos.flush();
-            }
+    // ----------------------------------------------
+    // Bounded multi-producer single-consumer ring. A slot
+    // is free for position p when its sequence is p and
+    // full when it is p + 1 (D. Vyukov's bounded queue).
+
+    static final class Ring {
+        final Event[] slots = new Event[RING_SIZE];
+        final AtomicLongArray seq = new AtomicLongArray(RING_SIZE);
+        final AtomicLong tail = new AtomicLong();
+        volatile long head;
+
+        Ring() {
+            for (int i = 0; i < RING_SIZE; i++) seq.set(i, i);
         }
 
-        public void logln(Font font, String msg) {
-            msg = "Thread[" + (thread.getName() + ','
-                    + thread.getId() + "] ") + msg;
-            cos.set(font).println(msg);
-            cos.reset();
-            cos.flush();
-            if (fos != null) {
-                fos.println(msg);
-                fos.flush();
+        boolean offer(final Event e) {
+            long pos = tail.get();
+            while (true) {
+                final int i = (int) pos & (RING_SIZE - 1);
+                final long dif = seq.getAcquire(i) - pos;
+                if (dif == 0) {
+                    if (tail.compareAndSet(pos, pos + 1)) {
+                        slots[i] = e;
+                        seq.setRelease(i, pos + 1);
+                        return true;
+                    }
+                    pos = tail.get();
+                }
+                else if (dif < 0) return false;
+                else pos = tail.get();
             }
         }
 
-        public void logThrowable(Throwable th) {
-            th.printStackTrace(cos);
-            cos.flush();
-            if (fos != null) {
-                th.printStackTrace(fos);
-                fos.flush();
-            }
+        // Consumer only.
+        Event poll() {
+            final long h = head;
+            final int i = (int) h & (RING_SIZE - 1);
+            if (seq.getAcquire(i) != h + 1) return null;
+            final Event e = slots[i];
+            slots[i] = null;
+            seq.setRelease(i, h + RING_SIZE);
+            head = h + 1;
+            return e;
         }
     }
 
     // ----------------------------------------------
 
-    static final class LogContext {
-        private final ThreadLocal<LogWriter> writer;
+    static final class LogContext implements Runnable {
+        final ConcurrentHashMap<String, AtomicLong> progress = new ConcurrentHashMap<>();
+        private final Ring ring = new Ring();
+        private final Writer file;
         private final Path path;
+        private final Thread writer;
 
         LogContext(final String filePath) {
-            final FileOutputStream fos;
             if (filePath != null) {
                 path = Paths.get(filePath);
-                final File logFile = this.path.toFile();
-                if (logFile.exists()) {
-                    isTrue(logFile.delete());
-                }
                 try {
-                    isTrue(logFile.createNewFile());
-                    fos = new FileOutputStream(logFile);
+                    Files.deleteIfExists(path);
+                    file = new BufferedWriter(new OutputStreamWriter(
+                            Files.newOutputStream(Files.createFile(path)), StandardCharsets.UTF_8), 1 << 16);
                 } catch (IOException ex) {
                     throw new RuntimeException(ex);
                 }
             } else {
                 path = Paths.get("");
-                fos = null;
+                file = null;
             }
-            writer = ThreadLocal.withInitial(() ->
-                    new LogWriter(SystemIO.out, fos));
+            writer = new Thread(this, "log-writer");
+            writer.setDaemon(true);
+            writer.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "log-flush"));
         }
 
-        final LogWriter logger() {
-            return writer.get();
+        void offer(final Event e, final boolean wait) {
+            while (!ring.offer(e)) {
+                if (!wait) return;
+                LockSupport.unpark(writer);
+                Thread.yield();
+            }
+        }
+
+        public void run() {
+            while (true) {
+                if (drain() == 0) LockSupport.parkNanos(this, IDLE_NANOS);
+            }
+        }
+
+        private final StringBuilder console = new StringBuilder(1 << 16);
+        private final StringBuilder text = new StringBuilder(1 << 16);
+
+        // Writes up to BATCH events, returns their number.
+        private synchronized int drain() {
+            int n = 0;
+            Event e;
+            while (n < BATCH && (e = ring.poll()) != null) {
+                e.format(console, text);
+                n++;
+            }
+            if (n == 0) return 0;
+            final var out = SystemIO.out;
+            out.reset().print(console);
+            out.flush();
+            if (file != null) {
+                try {
+                    file.append(text);
+                    file.flush();
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                }
+            }
+            console.setLength(0);
+            text.setLength(0);
+            return n;
+        }
+
+        void flush() {
+            final long target = ring.tail.get();
+            while (ring.head < target) {
+                if (drain() == 0) Thread.onSpinWait();
+            }
         }
     }
 }
@@ -0,0 +1,398 @@
+package magma.system;
+
+import org.json.simple.JSONObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static magma.exa.base.contract.Require.isTrue;
+
+
+// ------------------------------------------------------------
+//                          METRICS
+// ------------------------------------------------------------
+// Counters, meters and latency histograms of the pipeline,
+// grouped by stage ("ingest", "timeline", "hashtags", ...).
+// A stage and its metrics are created on first use and
+// live for the whole run, hot paths keep them in static
+// fields. Recording is a LongAdder or a striped atomic
+// increment, cheap enough for every tweet. start() logs a
+// summary of all stages periodically, write() dumps the
+// totals as json at the end of a run.
+//
+public enum Metrics {
+    ;
+
+    public static final String DEFAULT_FILE = "metrics.json"; // next to log.out
+
+    public static final long REPORT_MILLIS = 60_000;
+
+    private static final Map<String, Stage> STAGES = new ConcurrentSkipListMap<>();
+
+    private static final long STARTED = System.currentTimeMillis();
+
+    private static ScheduledExecutorService reporter;
+    private static ScheduledFuture<?> report;
+
+    // ----------------------------------------------
+    //  REGISTRY.
+    // ----------------------------------------------
+
+    public static Stage stage(final String name) {
+        return STAGES.computeIfAbsent(name, Stage::new);
+    }
+
+    public static Counter counter(final String stage, final String name) {
+        return stage(stage).counter(name);
+    }
+
+    public static Meter meter(final String stage, final String name) {
+        return stage(stage).meter(name);
+    }
+
+    public static Histogram histogram(final String stage, final String name) {
+        return stage(stage).histogram(name);
+    }
+
+    // ----------------------------------------------
+    //  REPORTING.
+    // ----------------------------------------------
+
+    // Logs report() every 'periodMillis' until stop().
+    public static synchronized void start(final long periodMillis) {
+        isTrue(periodMillis > 0);
+        stop();
+        if (reporter == null) {
+            reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+                final var thread = new Thread(r, "metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        report = reporter.scheduleAtFixedRate(Metrics::report, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public static synchronized void stop() {
+        if (report != null) report.cancel(false);
+        report = null;
+    }
+
+    // One info line per stage.
+    public static void report() {
+        for (var stage : STAGES.values())
+            if (!stage.metrics.isEmpty()) Log.info("METRICS " + stage);
+    }
+
+    // Totals of all stages as json.
+    public static void write(final Path file) throws IOException {
+        Files.writeString(file, json().toJSONString(), StandardCharsets.UTF_8);
+        Log.info("METRICS -> " + file);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static JSONObject json() {
+        final var result = new JSONObject();
+        result.put("started", STARTED);
+        result.put("elapsedMillis", System.currentTimeMillis() - STARTED);
+        final var stages = new JSONObject();
+        for (var stage : STAGES.values()) stages.put(stage.name, stage.json());
+        result.put("stages", stages);
+        return result;
+    }
+
+    public static boolean isEmpty() { return STAGES.isEmpty(); }
+
+    // Drops all stages, for tests and benchmarks.
+    public static void reset() { STAGES.clear(); }
+
+    // ----------------------------------------------
+    //  STAGE.
+    // ----------------------------------------------
+
+    public interface Metric {
+        JSONObject json();
+    }
+
+    // A task that may throw, e.g. an analysis writing csv.
+    public interface Task<E extends Exception> {
+        void run() throws E;
+    }
+
+    public static final class Stage {
+        public final String name;
+        final Map<String, Metric> metrics = new ConcurrentSkipListMap<>();
+
+        Stage(final String name) { this.name = name; }
+
+        public Counter counter(final String name) { return get(name, Counter.class, n -> new Counter()); }
+
+        public Meter meter(final String name) { return get(name, Meter.class, n -> new Meter()); }
+
+        public Histogram histogram(final String name) { return get(name, Histogram.class, n -> new Histogram()); }
+
+        private <M extends Metric> M get(final String name, final Class<M> type, final Function<String, M> make) {
+            final var metric = metrics.computeIfAbsent(name, make);
+            isTrue(type.isInstance(metric));
+            return type.cast(metric);
+        }
+
+        // Runs 'task' and records its duration in the
+        // histogram 'name' of this stage.
+        public <E extends Exception> void time(final String name, final Task<E> task) throws E {
+            final var histogram = histogram(name);
+            final long start = System.nanoTime();
+            try {
+                task.run();
+            } finally {
+                histogram.record(System.nanoTime() - start);
+            }
+        }
+
+        // time() for tasks with a result.
+        public <T> T timed(final String name, final Supplier<T> task) {
+            final var histogram = histogram(name);
+            final long start = System.nanoTime();
+            try {
+                return task.get();
+            } finally {
+                histogram.record(System.nanoTime() - start);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        JSONObject json() {
+            final var result = new JSONObject();
+            metrics.forEach((name, metric) -> result.put(name, metric.json()));
+            return result;
+        }
+
+        public String toString() {
+            final var result = new StringBuilder(name).append(':');
+            metrics.forEach((name, metric) -> result.append(' ').append(name).append('=').append(metric));
+            return result.toString();
+        }
+    }
+
+    // ----------------------------------------------
+    //  COUNTER.
+    // ----------------------------------------------
+
+    public static final class Counter implements Metric {
+        private final LongAdder count = new LongAdder();
+
+        public void increment() { count.increment(); }
+
+        public void add(final long n) { count.add(n); }
+
+        public long get() { return count.sum(); }
+
+        @SuppressWarnings("unchecked")
+        public JSONObject json() {
+            final var result = new JSONObject();
+            result.put("type", "counter");
+            result.put("count", get());
+            return result;
+        }
+
+        public String toString() { return human(get()); }
+    }
+
+    // ----------------------------------------------
+    //  METER.
+    // ----------------------------------------------
+
+    // Count of events and their rate per second, since
+    // the first event and since the last toString().
+    public static final class Meter implements Metric {
+        private final LongAdder count = new LongAdder();
+        private final AtomicLong first = new AtomicLong();
+        // state of the last toString(), reporter only
+        private long lastCount, lastNanos;
+
+        public void mark() { mark(1); }
+
+        public void mark(final long n) {
+            if (first.get() == 0) first.compareAndSet(0, System.nanoTime());
+            count.add(n);
+        }
+
+        public long count() { return count.sum(); }
+
+        // Events per second since the first one.
+        public double rate() {
+            final long from = first.get();
+            if (from == 0) return 0;
+            final long nanos = System.nanoTime() - from;
+            return nanos <= 0 ? 0 : count() * 1e9 / nanos;
+        }
+
+        @SuppressWarnings("unchecked")
+        public JSONObject json() {
+            final var result = new JSONObject();
+            result.put("type", "meter");
+            result.put("count", count());
+            result.put("rate", rate());
+            return result;
+        }
+
+        public synchronized String toString() {
+            final long cnt = count(), now = System.nanoTime();
+            final double recent = lastNanos == 0 ? rate() : (cnt - lastCount) * 1e9 / (now - lastNanos);
+            lastCount = cnt;
+            lastNanos = now;
+            return human(cnt) + " (" + human(rate()) + "/s, now " + human(recent) + "/s)";
+        }
+    }
+
+    // ----------------------------------------------
+    //  HISTOGRAM.
+    // ----------------------------------------------
+
+    // Log-linear histogram of non-negative values (nanos)
+    // in the manner of HdrHistogram: values below 2^SUB_BITS
+    // are exact, above every power of two is split into
+    // 2^SUB_BITS buckets, i.e. a relative error of at most
+    // 1 / 2^SUB_BITS (3%) from 1ns to 292 years in 1888
+    // buckets. The counts are striped by thread so that
+    // the ingest threads do not all hit the same words.
+    public static final class Histogram implements Metric {
+        static final int SUB_BITS = 5;
+        static final int SUB = 1 << SUB_BITS;
+        static final int BUCKETS = (64 - SUB_BITS) * SUB;
+        static final int STRIPES = 8;
+
+        private final AtomicLongArray counts = new AtomicLongArray(STRIPES * BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+        private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+        public void record(long value) {
+            if (value < 0) value = 0;
+            final int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+            counts.getAndIncrement(stripe * BUCKETS + index(value));
+            count.increment();
+            sum.add(value);
+            long m;
+            while (value < (m = min.get()) && !min.compareAndSet(m, value)) ;
+            while (value > (m = max.get()) && !max.compareAndSet(m, value)) ;
+        }
+
+        // Records the nanos since 'start' (System.nanoTime).
+        public void since(final long start) { record(System.nanoTime() - start); }
+
+        static int index(final long value) {
+            if (value < SUB) return (int) value;
+            final int exp = 63 - Long.numberOfLeadingZeros(value);
+            final int sub = (int) (value >>> (exp - SUB_BITS)) & (SUB - 1);
+            return (exp - SUB_BITS + 1) * SUB + sub;
+        }
+
+        // Smallest value of bucket 'index'.
+        static long lowest(final int index) {
+            if (index < SUB) return index;
+            final int exp = index / SUB + SUB_BITS - 1;
+            return (long) (SUB + index % SUB) << (exp - SUB_BITS);
+        }
+
+        public long count() { return count.sum(); }
+
+        public long sum() { return sum.sum(); }
+
+        public long min() { return count() == 0 ? 0 : min.get(); }
+
+        public long max() { return count() == 0 ? 0 : max.get(); }
+
+        public double mean() {
+            final long n = count();
+            return n == 0 ? 0 : (double) sum() / n;
+        }
+
+        // Value at quantile q in [0, 1], the middle of its
+        // bucket clamped to [min, max].
+        public long quantile(final double q) {
+            isTrue(q >= 0 && q <= 1);
+            final var merged = new long[BUCKETS];
+            long total = 0;
+            for (int s = 0; s < STRIPES; s++)
+                for (int b = 0; b < BUCKETS; b++) {
+                    final long n = counts.get(s * BUCKETS + b);
+                    merged[b] += n;
+                    total += n;
+                }
+            if (total == 0) return 0;
+            final long rank = Math.max(1, (long) Math.ceil(q * total));
+            long seen = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                seen += merged[b];
+                if (seen >= rank) {
+                    final long lo = lowest(b);
+                    final long hi = b + 1 < BUCKETS ? lowest(b + 1) - 1 : Long.MAX_VALUE;
+                    return Math.min(max(), Math.max(min(), lo + (hi - lo) / 2));
+                }
+            }
+            return max();
+        }
+
+        @SuppressWarnings("unchecked")
+        public JSONObject json() {
+            final var result = new JSONObject();
+            result.put("type", "histogram");
+            result.put("unit", "ns");
+            result.put("count", count());
+            result.put("sum", sum());
+            result.put("min", min());
+            result.put("mean", mean());
+            result.put("p50", quantile(0.5));
+            result.put("p90", quantile(0.9));
+            result.put("p99", quantile(0.99));
+            result.put("p999", quantile(0.999));
+            result.put("max", max());
+            return result;
+        }
+
+        public String toString() {
+            return "[n=" + human(count())
+                    + " total=" + duration(sum())
+                    + " mean=" + duration((long) mean())
+                    + " p50=" + duration(quantile(0.5))
+                    + " p99=" + duration(quantile(0.99))
+                    + " max=" + duration(max()) + ']';
+        }
+    }
+
+    // ----------------------------------------------
+    //  FORMAT.
+    // ----------------------------------------------
+
+    static String human(final double value) {
+        final double abs = Math.abs(value);
+        if (abs >= 1e9) return String.format(Locale.ROOT, "%.2fG", value / 1e9);
+        if (abs >= 1e6) return String.format(Locale.ROOT, "%.2fM", value / 1e6);
+        if (abs >= 1e3) return String.format(Locale.ROOT, "%.1fK", value / 1e3);
+        return value == Math.rint(value) ? Long.toString((long) value) : String.format(Locale.ROOT, "%.1f", value);
+    }
+
+    static String duration(final long nanos) {
+        if (nanos >= 60_000_000_000L) return String.format(Locale.ROOT, "%.1fmin", nanos / 6e10);
+        if (nanos >= 1_000_000_000L) return String.format(Locale.ROOT, "%.2fs", nanos / 1e9);
+        if (nanos >= 1_000_000L) return String.format(Locale.ROOT, "%.2fms", nanos / 1e6);
+        if (nanos >= 1_000L) return String.format(Locale.ROOT, "%.1fus", nanos / 1e3);
+        return nanos + "ns";
+    }
+}
@@ -0,0 +1,165 @@
+package magma.system;
+
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static magma.exa.base.contract.Require.isTrue;
+
+
+// ------------------------------------------------------------
+//                          PROFILER
+// ------------------------------------------------------------
+// Allocation and gc profile of the pipeline stages, off
+// unless enabled (Cli -p). A section snapshots the bytes
+// allocated by every live thread, the counts and times of
+// all collectors and the used heap, close() keeps the
+// differences as one row of summary() and adds them to
+// the Metrics stage of the same name. The live heap after
+// a stage is measured after a System.gc() that is not
+// counted against the stage. Bytes allocated by a thread
+// that dies within the section are lost, the pools of
+// Executor keep their threads.
+//
+//   try (var ignored = Profiler.section("ingest")) { ... }
+//
+public enum Profiler {
+    ;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+    private static final List<GarbageCollectorMXBean> COLLECTORS = ManagementFactory.getGarbageCollectorMXBeans();
+
+    private static final List<Row> ROWS = new ArrayList<>();
+
+    private static volatile boolean enabled;
+
+    // ----------------------------------------------
+    //  SECTIONS.
+    // ----------------------------------------------
+
+    public static void enable() {
+        isTrue(THREADS.isThreadAllocatedMemorySupported());
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+        enabled = true;
+        Log.info("PROFILER ENABLED");
+    }
+
+    public static boolean enabled() { return enabled; }
+
+    // A no-op section unless enabled.
+    public static Section section(final String name) {
+        return enabled ? new Section(name) : Section.NONE;
+    }
+
+    public static final class Section implements AutoCloseable {
+        static final Section NONE = new Section();
+
+        final String name;
+        final long start;
+        final Long2LongOpenHashMap allocated;
+        final long gcCount, gcMillis, heap;
+
+        private Section() {
+            name = null;
+            start = gcCount = gcMillis = heap = 0;
+            allocated = null;
+        }
+
+        Section(final String name) {
+            this.name = name;
+            heap = MEMORY.getHeapMemoryUsage().getUsed();
+            gcCount = gcCount();
+            gcMillis = gcMillis();
+            allocated = allocated();
+            start = System.nanoTime();
+        }
+
+        public void close() {
+            if (name == null) return;
+            final long nanos = System.nanoTime() - start;
+            final var now = allocated();
+            long bytes = 0;
+            for (var e : now.long2LongEntrySet()) bytes += e.getLongValue() - allocated.get(e.getLongKey());
+            final long count = gcCount() - gcCount;
+            final long millis = gcMillis() - gcMillis;
+            final long after = MEMORY.getHeapMemoryUsage().getUsed();
+            System.gc();
+            final long live = MEMORY.getHeapMemoryUsage().getUsed();
+
+            final var row = new Row(name, nanos, bytes, count, millis, heap, after, live);
+            synchronized (ROWS) { ROWS.add(row); }
+            final var stage = Metrics.stage(name);
+            stage.counter("allocatedBytes").add(bytes);
+            stage.counter("gcCount").add(count);
+            stage.counter("gcMillis").add(millis);
+            Log.info("PROFILE " + row);
+        }
+    }
+
+    private static Long2LongOpenHashMap allocated() {
+        final var ids = THREADS.getAllThreadIds();
+        final var bytes = THREADS.getThreadAllocatedBytes(ids);
+        final var result = new Long2LongOpenHashMap(ids.length);
+        for (int i = 0; i < ids.length; i++)
+            if (bytes[i] >= 0) result.put(ids[i], bytes[i]);
+        return result;
+    }
+
+    private static long gcCount() {
+        long result = 0;
+        for (var gc : COLLECTORS) result += Math.max(0, gc.getCollectionCount());
+        return result;
+    }
+
+    private static long gcMillis() {
+        long result = 0;
+        for (var gc : COLLECTORS) result += Math.max(0, gc.getCollectionTime());
+        return result;
+    }
+
+    // ----------------------------------------------
+    //  SUMMARY.
+    // ----------------------------------------------
+
+    public record Row(String stage, long nanos, long allocated, long gcCount, long gcMillis,
+                      long heapBefore, long heapAfter, long live) {
+
+        public double gcShare() { return nanos == 0 ? 0 : gcMillis * 1e6 / nanos; }
+
+        public double allocationRate() { return nanos == 0 ? 0 : allocated * 1e9 / nanos; }
+
+        public String toString() {
+            return String.format(Locale.ROOT, "%-16s %10s %10s %10s/s %6d %10s %5.1f%% %10s %10s %10s",
+                    stage, Metrics.duration(nanos), bytes(allocated), bytes((long) allocationRate()),
+                    gcCount, Metrics.duration(gcMillis * 1_000_000), 100 * gcShare(),
+                    bytes(heapBefore), bytes(heapAfter), bytes(live));
+        }
+    }
+
+    public static List<Row> rows() {
+        synchronized (ROWS) { return List.copyOf(ROWS); }
+    }
+
+    // One line per section in the order they closed.
+    public static String summary() {
+        final var result = new StringBuilder(String.format(Locale.ROOT,
+                "%-16s %10s %10s %12s %6s %10s %6s %10s %10s %10s",
+                "stage", "wall", "alloc", "alloc rate", "gcs", "gc time", "gc", "heap pre", "heap post", "live"));
+        for (var row : rows()) result.append('\n').append(row);
+        return result.toString();
+    }
+
+    static String bytes(final long bytes) {
+        if (bytes >= 1L << 30) return String.format(Locale.ROOT, "%.2fGB", bytes / (double) (1L << 30));
+        if (bytes >= 1L << 20) return String.format(Locale.ROOT, "%.1fMB", bytes / (double) (1L << 20));
+        if (bytes >= 1L << 10) return String.format(Locale.ROOT, "%.1fKB", bytes / (double) (1L << 10));
+        return bytes + "B";
+    }
+}
@@ -0,0 +1,352 @@
+package magma.utils;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static magma.exa.base.contract.Require.isTrue;
+
+// ------------------------------------------------------------
+//                            CSV
+// ------------------------------------------------------------
+//
+// Reads the selected columns of a csv file into primitive
+// arrays. The file is cut at line breaks into ranges (see
+// FileUtils.lineRanges), every range is memory mapped and
+// parsed on its own thread into its own column lists,
+// which are concatenated in file order at the end.
+//
+// Fields may be quoted with ", a quoted field may contain
+// the separator and "" for a quote. NUL bytes are dropped
+// wherever they are, like replace('\0', '') in the Python
+// scripts. Since chunks are cut at any line break, quoted
+// fields must not contain line breaks. Empty fields and
+// missing trailing fields read as the NULL_* values.
+//
+public final class Csv {
+
+    // ----------------------------------------------
+    //  CONSTANTS.
+    // ----------------------------------------------
+    //
+    public static final long CHUNK_BYTES = 64L << 20;
+
+    public static final long NULL_LONG = Long.MIN_VALUE;
+    public static final int NULL_INT = Integer.MIN_VALUE;
+    public static final double NULL_DOUBLE = Double.NaN;
+    public static final String NULL_STRING = "";
+
+    static final byte SEP = ',';
+    static final byte QUOTE = '"';
+
+    // ----------------------------------------------
+    //  SCHEMA.
+    // ----------------------------------------------
+    //
+    public enum Type { LONG, INT, DOUBLE, STRING }
+
+    // A column is selected by its header name or,
+    // for files without header, by its position.
+    public record Column(String name, int index, Type type) {
+        public static Column of(String name, Type type) { return new Column(name, -1, type); }
+        public static Column at(int index, String name, Type type) { return new Column(name, index, type); }
+    }
+
+    public static Column longCol(String name) { return Column.of(name, Type.LONG); }
+    public static Column intCol(String name) { return Column.of(name, Type.INT); }
+    public static Column doubleCol(String name) { return Column.of(name, Type.DOUBLE); }
+    public static Column stringCol(String name) { return Column.of(name, Type.STRING); }
+
+    // ----------------------------------------------
+    //  TABLE.
+    // ----------------------------------------------
+    //
+    public static final class Table {
+        final Column[] columns;
+        final Object[] data;
+        final int rows;
+
+        Table(Column[] columns, Object[] data, int rows) {
+            this.columns = columns;
+            this.data = data;
+            this.rows = rows;
+        }
+
+        public int rows() { return rows; }
+
+        public long[] longs(String name) { return (long[]) data[slot(name, Type.LONG)]; }
+        public int[] ints(String name) { return (int[]) data[slot(name, Type.INT)]; }
+        public double[] doubles(String name) { return (double[]) data[slot(name, Type.DOUBLE)]; }
+        public String[] strings(String name) { return (String[]) data[slot(name, Type.STRING)]; }
+
+        private int slot(String name, Type type) {
+            for (int c = 0; c < columns.length; c++) {
+                if (columns[c].name.equals(name)) {
+                    isTrue(columns[c].type == type);
+                    return c;
+                }
+            }
+            throw new IllegalArgumentException("NO COLUMN " + name);
+        }
+
+        public String toString() {
+            return "Csv.Table{rows=" + rows + ", columns=" + Arrays.toString(columns) + '}';
+        }
+    }
+
+    // ----------------------------------------------
+    //  READ.
+    // ----------------------------------------------
+    //
+    // The first line is the header.
+    public static Table read(Path file, Column... columns) throws IOException {
+        return read(file, true, CHUNK_BYTES, columns);
+    }
+
+    public static Table read(Path file, boolean header, long chunkBytes, Column... columns) throws IOException {
+        isTrue(columns.length > 0 && chunkBytes > 0);
+        final long start;
+        final var fields = new int[columns.length];
+        try (var channel = FileChannel.open(file, READ)) {
+            start = header ? FileUtils.nextLineStart(channel, 0) : 0;
+            final var names = header ? parseHeader(channel, start) : List.<String>of();
+            for (int c = 0; c < columns.length; c++) {
+                isTrue(header || columns[c].index >= 0);
+                fields[c] = columns[c].index >= 0 ? columns[c].index : names.indexOf(columns[c].name);
+                if (fields[c] < 0) throw new IllegalArgumentException("NO COLUMN " + columns[c].name + " IN " + file);
+            }
+        }
+        // slots[field] is the column of that field or -1
+        final int maxField = Arrays.stream(fields).max().getAsInt();
+        final var slots = new int[maxField + 1];
+        Arrays.fill(slots, -1);
+        for (int c = 0; c < columns.length; c++) slots[fields[c]] = c;
+        final var chunks = FileUtils.mapRanges(file, start, chunkBytes,
+                                               (range, buf) -> new Chunk(columns, slots).parse(buf));
+        return concat(columns, chunks);
+    }
+
+    private static List<String> parseHeader(FileChannel channel, long end) throws IOException {
+        final var buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, end);
+        final var header = new Chunk(new Column[0], new int[0]);
+        final var result = new ArrayList<String>();
+        int pos = 0;
+        final int limit = lineLimit(buf, 0, buf.limit());
+        while (pos <= limit) {
+            pos = header.field(buf, pos, limit);
+            result.add(new String(header.scratch, 0, header.len, StandardCharsets.UTF_8).trim());
+            pos++;
+        }
+        return result;
+    }
+
+    // ----------------------------------------------
+    //  CHUNK.
+    // ----------------------------------------------
+    //
+    static final class Chunk {
+        final Column[] columns;
+        final int[] slots;
+        final Object[] lists;
+        int rows;
+        // bytes of the current field, unquoted, without NULs
+        byte[] scratch = new byte[256];
+        int len;
+        boolean quoted;
+
+        Chunk(Column[] columns, int[] slots) {
+            this.columns = columns;
+            this.slots = slots;
+            this.lists = new Object[columns.length];
+            for (int c = 0; c < columns.length; c++) {
+                lists[c] = switch (columns[c].type) {
+                    case LONG -> new LongArrayList();
+                    case INT -> new IntArrayList();
+                    case DOUBLE -> new DoubleArrayList();
+                    case STRING -> new ObjectArrayList<String>();
+                };
+            }
+        }
+
+        Chunk parse(ByteBuffer buf) {
+            final int limit = buf.limit();
+            int pos = 0;
+            while (pos < limit) {
+                int end = pos;
+                while (end < limit && buf.get(end) != '\n') end++;
+                final int line = lineLimit(buf, pos, end);
+                if (line > pos) row(buf, pos, line);
+                pos = end + 1;
+            }
+            return this;
+        }
+
+        private void row(ByteBuffer buf, int pos, int end) {
+            int f = 0;
+            while (pos <= end && f < slots.length) {
+                final int c = slots[f];
+                if (c >= 0) {
+                    pos = field(buf, pos, end);
+                    add(c);
+                }
+                else pos = skip(buf, pos, end);
+                pos++;
+                f++;
+            }
+            for (; f < slots.length; f++) {
+                if (slots[f] < 0) continue;
+                len = 0;
+                quoted = false;
+                add(slots[f]);
+            }
+            rows++;
+        }
+
+        // Copies the field at 'pos' into scratch and
+        // returns the position of its separator or 'end'.
+        int field(ByteBuffer buf, int pos, int end) {
+            len = 0;
+            quoted = false;
+            boolean inQuotes = false;
+            for (; pos < end; pos++) {
+                final byte b = buf.get(pos);
+                if (b == 0) continue;
+                if (inQuotes) {
+                    if (b == QUOTE) {
+                        if (pos + 1 < end && buf.get(pos + 1) == QUOTE) pos++;
+                        else {
+                            inQuotes = false;
+                            continue;
+                        }
+                    }
+                }
+                else if (b == SEP) return pos;
+                else if (b == QUOTE) {
+                    inQuotes = quoted = true;
+                    continue;
+                }
+                if (len == scratch.length) scratch = Arrays.copyOf(scratch, len * 2);
+                scratch[len++] = b;
+            }
+            return end;
+        }
+
+        private static int skip(ByteBuffer buf, int pos, int end) {
+            boolean inQuotes = false;
+            for (; pos < end; pos++) {
+                final byte b = buf.get(pos);
+                if (b == QUOTE) inQuotes = !inQuotes;
+                else if (b == SEP && !inQuotes) return pos;
+            }
+            return end;
+        }
+
+        private void add(int c) {
+            switch (columns[c].type) {
+                case LONG -> ((LongArrayList) lists[c]).add(len == 0 ? NULL_LONG : parseLong());
+                case INT -> ((IntArrayList) lists[c]).add(len == 0 ? NULL_INT : Math.toIntExact(parseLong()));
+                case DOUBLE -> ((DoubleArrayList) lists[c]).add(len == 0 ? NULL_DOUBLE : parseDouble());
+                case STRING -> strings(c).add(
+                        len == 0 ? NULL_STRING : new String(scratch, 0, len, StandardCharsets.UTF_8));
+            }
+        }
+
+        // The constructor creates an ObjectArrayList<String>
+        // for every STRING column.
+        @SuppressWarnings("unchecked")
+        private ObjectArrayList<String> strings(int c) {
+            return (ObjectArrayList<String>) lists[c];
+        }
+
+        private long parseLong() {
+            int i = 0;
+            final boolean neg = scratch[0] == '-';
+            if (neg || scratch[0] == '+') i++;
+            if (i == len || len - i > 18) return Long.parseLong(text());
+            long result = 0;
+            for (; i < len; i++) {
+                final int d = scratch[i] - '0';
+                if (d < 0 || d > 9) return Long.parseLong(text());
+                result = result * 10 + d;
+            }
+            return neg ? -result : result;
+        }
+
+        // Plain decimals with up to 15 digits are exact as
+        // long / 10^k, anything else goes to the JDK.
+        private double parseDouble() {
+            int i = 0;
+            final boolean neg = scratch[0] == '-';
+            if (neg || scratch[0] == '+') i++;
+            long mantissa = 0;
+            int digits = 0, scale = -1;
+            for (; i < len; i++) {
+                final byte b = scratch[i];
+                if (b == '.' && scale < 0) scale = 0;
+                else if (b >= '0' && b <= '9') {
+                    mantissa = mantissa * 10 + (b - '0');
+                    digits++;
+                    if (scale >= 0) scale++;
+                }
+                else return Double.parseDouble(text());
+            }
+            if (digits == 0 || digits > 15) return Double.parseDouble(text());
+            final double result = scale <= 0 ? mantissa : mantissa / POW10[scale];
+            return neg ? -result : result;
+        }
+
+        private String text() {
+            return new String(scratch, 0, len, StandardCharsets.UTF_8).trim();
+        }
+    }
+
+    static final double[] POW10 = new double[16];
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) POW10[i] = POW10[i - 1] * 10;
+    }
+
+    // Line end without a trailing \r.
+    static int lineLimit(ByteBuffer buf, int pos, int end) {
+        return end > pos && buf.get(end - 1) == '\r' ? end - 1 : end;
+    }
+
+    private static Table concat(Column[] columns, List<Chunk> chunks) {
+        int rows = 0;
+        for (var chunk : chunks) rows += chunk.rows;
+        final var data = new Object[columns.length];
+        for (int c = 0; c < columns.length; c++) {
+            data[c] = switch (columns[c].type) {
+                case LONG -> new long[rows];
+                case INT -> new int[rows];
+                case DOUBLE -> new double[rows];
+                case STRING -> new String[rows];
+            };
+            int pos = 0;
+            for (var chunk : chunks) {
+                final var list = chunk.lists[c];
+                final int n = chunk.rows;
+                switch (columns[c].type) {
+                    case LONG -> System.arraycopy(((LongArrayList) list).elements(), 0, data[c], pos, n);
+                    case INT -> System.arraycopy(((IntArrayList) list).elements(), 0, data[c], pos, n);
+                    case DOUBLE -> System.arraycopy(((DoubleArrayList) list).elements(), 0, data[c], pos, n);
+                    case STRING -> System.arraycopy(((ObjectArrayList<?>) list).elements(), 0, data[c], pos, n);
+                }
+                pos += n;
+            }
+        }
+        return new Table(columns, data, rows);
+    }
+
+}
@@ -6,6 +6,8 @@ import org.apache.commons.io.filefilter.RegexFileFilter;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
@@ -72,30 +74,15 @@ public enum FileUtils {
         catch (IOException e) { e.printStackTrace(); }
     }
 
-    // https://goo.gl/JVF5oP
+    // Number of line breaks, see fileStats: 0 for an empty
+    // file, at least 1 otherwise.
     public static long countLines(final Path pth) {
         checkState(isRegularFile(pth), "must be a reg file");
         var res = 0L;
-        try (var inp = new BufferedInputStream(new FileInputStream(pth.toFile()))) {
-            var buf = new byte[1024];
-            var dne = inp.read(buf);
-            if (dne == -1) return 0;
-            while (dne == buf.length) {
-                for (int i = 0; i < buf.length; ) {
-                    if (buf[i++] == '\n') {
-                        ++res;
-                    }
-                }
-                dne = inp.read(buf);
-            }
-            while (dne != -1) {
-                for (int i = 0; i < dne; ++i) {
-                    if (buf[i] == '\n') {
-                        ++res;
-                    }
-                }
-                dne = inp.read(buf);
-            }
+        try {
+            final var stats = fileStats(pth);
+            if (stats.size() == 0) return 0;
+            res = stats.newLines();
         }
         catch (IOException e) {
             e.printStackTrace();
@@ -250,42 +237,13 @@ public enum FileUtils {
 
     public static CompletableFuture<List<Path>> splitBySizeAndNewLine(Path srcPth, Path tgtDir, double chunkSizeMb) throws IOException {
         final long cnkLen = MemoryUtils.MBToBytes(chunkSizeMb);
-        final long srcLen = Files.size(srcPth);
-        final int tgtNum = toIntExact((srcLen/cnkLen));
-        var lst = new ArrayList<Long[]>(tgtNum + 1);
-        var buf = ByteBuffer.allocateDirect(optBufferLen(srcPth));
-        long bytesRead = 0L;
-        long currentChunk = 0L;
-        long startPos = 0L;
-        long chunkCount = 0L;
-        try(var fileChannel = FileChannel.open(srcPth, READ)) {
-            while (fileChannel.position() < fileChannel.size()) {
-                fileChannel.read(buf);
-                buf.flip();
-                while (buf.hasRemaining()) {
-                    ++bytesRead;
-                    ++currentChunk;
-                    if (buf.get() == '\n') {
-                        if (currentChunk >= cnkLen) {
-                            currentChunk = 0L;
-                            lst.add(new Long[] { ++chunkCount, startPos, bytesRead });
-                            startPos = bytesRead;
-                        }
-                    }
-                }
-                buf.clear();
-            }
-        }
-        if (currentChunk > 0) {
-            lst.add(new Long[] { ++chunkCount, startPos, bytesRead });
-        }
-        var tmp = lst.stream()
-                .map(a ->
+        var tmp = lineRanges(srcPth, cnkLen).stream()
+                .map(range ->
                         CompletableFuture.supplyAsync(() -> {
-                            var pth = newFileName(tgtDir, srcPth, toIntExact(a[0]));
+                            var pth = newFileName(tgtDir, srcPth, range.index() + 1);
                             try(var srcCha = FileChannel.open(srcPth, READ)) {
                                 try(var tgtCha = FileChannel.open(pth, CREATE, WRITE)) {
-                                    srcCha.transferTo(a[1], a[2] - a[1], tgtCha);
+                                    transfer(srcCha, range, tgtCha);
                                 }
                             }
                             catch (IOException e) {
@@ -297,6 +255,11 @@ public enum FileUtils {
         return FutureUtils.allAsList(tmp);
     }
 
+    private static void transfer(FileChannel src, Range range, FileChannel tgt) throws IOException {
+        for (long p = range.offset(); p < range.end(); )
+            p += src.transferTo(p, range.end() - p, tgt);
+    }
+
 
     public static CompletableFuture<List<Path>> splitBySize(Path srcPth, Path tgtPth, double chunkSizeMb) throws IOException {
         final var cnkLen = MemoryUtils.MBToBytes(chunkSizeMb);
@@ -337,56 +300,17 @@ public enum FileUtils {
         checkState(isRegularFile(src), "must be a reg file");
         checkState(isDirectory(tgt), "must be a dir");
         checkState(chunkSizeMb > 0, "wrong Max Mb");
-        final var tgtFileSize = MemoryUtils.MBToBytes(chunkSizeMb);
-        final var srcFileSize = Files.size(src);
-        final var tgtFileNum = toIntExact((srcFileSize / tgtFileSize) + 1L);
-        final var tgtFiles = new ArrayList<Path>(tgtFileNum);
-        var srcBuf = ByteBuffer.allocateDirect(optBufferLen(src) * 1024);
-        long YYY = optBufferLen(tgt) * 1024;
-        var tgtBuf = UTF8.decode(ByteBuffer.allocateDirect(optBufferLen(tgt) * 1024));
-        int tgtFileCnt = 0;
-        var srcChannel = FileChannel.open(src);
-        var srcBytesRead = srcChannel.read(srcBuf);
-        var tgtFileName = newFileName(tgt, src, tgtFileCnt);
-        var tgtChannel = FileChannel.open(tgtFileName, CREATE, WRITE);
-        tgtFiles.add(tgtFileName);
-        long tgtFileCurSize = 0;
-        while (srcBytesRead != -1) {
-            srcBuf.flip();
-            while (srcBuf.hasRemaining()) {
-                byte byt = srcBuf.get();
-                switch (byt) {
-                    case NEW_LINE:
-                        if (tgtBuf.length() == YYY) System.out.println("FULL" + YYY);
-                        tgtBuf.put((char) byt);
-                        tgtChannel.write(UTF8.encode(tgtBuf.flip()));
-                        tgtBuf.clear();
-
-                        if(++tgtFileCurSize >= tgtFileSize) {
-                            tgtFileCurSize = 0;
-                            tgtFileName = newFileName(tgt, src, ++tgtFileCnt);
-                            tgtFiles.add(tgtFileName);
-                            tgtChannel.close();
-                            tgtChannel = FileChannel.open(tgtFileName, CREATE, WRITE);
-                        }
-                        break;
-                    default:
-                        if (tgtBuf.length() == YYY) {
-
-                            System.out.println("FULL" + YYY);
-                        }
-                        tgtFileCurSize++;
-                        tgtBuf.put((char) byt);
-                        break;
+        final var ranges = lineRanges(src, MemoryUtils.MBToBytes(chunkSizeMb));
+        final var tgtFiles = new Path[ranges.size()];
+        try (var srcChannel = FileChannel.open(src, READ)) {
+            for (var range : ranges) {
+                tgtFiles[range.index()] = newFileName(tgt, src, range.index());
+                try (var tgtChannel = FileChannel.open(tgtFiles[range.index()], CREATE, WRITE)) {
+                    transfer(srcChannel, range, tgtChannel);
                 }
             }
-            srcBuf.clear();
-            srcBuf.put(UTF8.encode(tgtBuf.flip()));
-            tgtBuf.clear();
-            srcBytesRead = srcChannel.read(srcBuf);
         }
-        srcChannel.close();
-        return tgtFiles.toArray(new Path[0]);
+        return tgtFiles;
     }
 
 
@@ -566,6 +490,153 @@ public enum FileUtils {
         return filePth;
     }
 
+    // ----------------------------------------------
+    //  LINE RANGES.
+    // ----------------------------------------------
+    //
+    // A line aligned part [offset, offset + length) of a
+    // file. Ranges are logical, they are memory mapped
+    // by the consumer and nothing is ever copied.
+    public record Range(int index, long offset, long length) {
+        public long end() { return offset + length; }
+
+        public MappedByteBuffer map(final FileChannel cha) throws IOException {
+            return cha.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        }
+    }
+
+    @FunctionalInterface
+    public interface RangeFunction<T> {
+        T apply(Range range, MappedByteBuffer buf) throws IOException;
+    }
+
+    static final int SEEK_WINDOW = 1 << 16;
+
+    // Start of the line after the one containing 'pos',
+    // or the file size. Reads a window at 'pos' with a
+    // positional read, the channel position is not used.
+    public static long nextLineStart(final FileChannel cha, final long pos) throws IOException {
+        final long size = cha.size();
+        final var buf = ByteBuffer.allocate(SEEK_WINDOW);
+        final var arr = buf.array();
+        for (long p = pos; p < size; p += SEEK_WINDOW) {
+            final int read = cha.read(buf.clear(), p);
+            for (int i = 0; i < read; i++)
+                if (arr[i] == NEW_LINE) return p + i + 1;
+        }
+        return size;
+    }
+
+    // Cuts [start, size) into ranges of at least 'rangeBytes'
+    // that end right after a line break (or at the end of the
+    // file). Only a window at each target offset is read, so
+    // this costs a few reads however large the file. Ranges
+    // stay below 2GB to be mappable as long as no line is
+    // longer than that.
+    public static List<Range> lineRanges(final FileChannel cha, final long start, final long rangeBytes)
+            throws IOException {
+        checkArgument(rangeBytes > 0 && start >= 0);
+        final long size = cha.size();
+        final var result = new ArrayList<Range>();
+        long from = start;
+        while (from < size) {
+            final long to = from + rangeBytes >= size ? size : nextLineStart(cha, from + rangeBytes - 1);
+            checkState(to - from < Integer.MAX_VALUE, "line too long");
+            result.add(new Range(result.size(), from, to - from));
+            from = to;
+        }
+        return result;
+    }
+
+    public static List<Range> lineRanges(final Path pth, final long rangeBytes) throws IOException {
+        try (var cha = FileChannel.open(pth, READ)) {
+            return lineRanges(cha, 0L, rangeBytes);
+        }
+    }
+
+    // Maps every range of [start, size) and applies 'body'
+    // to the ranges in parallel. Results are in file order.
+    public static <T> List<T> mapRanges(final Path pth, final long start, final long rangeBytes,
+                                        final RangeFunction<T> body) throws IOException {
+        try (var cha = FileChannel.open(pth, READ)) {
+            return lineRanges(cha, start, rangeBytes)
+                    .parallelStream()
+                    .map(range -> {
+                        try { return body.apply(range, range.map(cha)); }
+                        catch (IOException e) { throw new UncheckedIOException(e); }
+                    })
+                    .collect(Collectors.toList());
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    public static <T> List<T> mapRanges(final Path pth, final long rangeBytes,
+                                        final RangeFunction<T> body) throws IOException {
+        return mapRanges(pth, 0L, rangeBytes, body);
+    }
+
+    // ----------------------------------------------
+    //  FILE STATS.
+    // ----------------------------------------------
+    //
+    public record FileStats(Path path, long size, long modified, long newLines, boolean endsWithNewLine) {
+        // Lines including an unterminated last line.
+        public long lines() { return newLines + (size > 0 && !endsWithNewLine ? 1 : 0); }
+    }
+
+    // Stats by real path, an entry is only used while
+    // size and modification time of the file are unchanged.
+    private static final ConcurrentHashMap<Path, FileStats> FILE_STATS = new ConcurrentHashMap<>();
+
+    static final long STATS_RANGE = 256L << 20;
+
+    // Counts the line breaks of memory mapped ranges in
+    // parallel, 8 bytes at a time. Repeated calls for an
+    // unchanged file are answered from a cache.
+    public static FileStats fileStats(final Path pth) throws IOException {
+        final var key = pth.toRealPath();
+        final long size = Files.size(key);
+        final long modified = getLastModifiedTime(key).toMillis();
+        final var cached = FILE_STATS.get(key);
+        if (cached != null && cached.size == size && cached.modified == modified) return cached;
+        long newLines = 0L;
+        for (long cnt : mapRanges(key, STATS_RANGE, (range, buf) -> countNewLines(buf))) newLines += cnt;
+        boolean endsWithNewLine = false;
+        if (size > 0) {
+            try (var cha = FileChannel.open(key, READ)) {
+                endsWithNewLine = endsWith(ByteBuffer.allocate(1), cha, '\n');
+            }
+        }
+        final var result = new FileStats(key, size, modified, newLines, endsWithNewLine);
+        FILE_STATS.put(key, result);
+        return result;
+    }
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long LOW7 = 0x7F7F7F7F7F7F7F7FL;
+    private static final long NL = ONES * NEW_LINE;
+
+    // SWAR: for x = word ^ NL a byte of x is zero iff it was
+    // a line break. ((x & LOW7) + LOW7) | x has the high bit
+    // of every non-zero byte set without carries between
+    // bytes, so the clear high bits count the line breaks.
+    static long countNewLines(final ByteBuffer in) {
+        // own byte order, the caller's buffer is left alone
+        final var buf = in.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        final int limit = buf.limit();
+        final int words = limit & ~7;
+        long result = 0L;
+        for (int i = 0; i < words; i += 8) {
+            final long x = buf.getLong(i) ^ NL;
+            result += Long.bitCount(~(((x & LOW7) + LOW7) | x | LOW7));
+        }
+        for (int i = words; i < limit; i++)
+            if (buf.get(i) == NEW_LINE) result++;
+        return result;
+    }
+
     // ----------------------------------------------
     //  RANDOM FILE PATH.
     // ----------------------------------------------
@@ -1,5 +1,6 @@
 package magma.utils;
 
+import graph.Csr;
 import it.unimi.dsi.fastutil.ints.Int2ObjectLinkedOpenHashMap;
 import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
 import it.unimi.dsi.fastutil.objects.Object2IntMap;
@@ -9,8 +10,13 @@ import magma.exa.value.tuple.Tuple2;
 import org.jgrapht.Graph;
 import org.jgrapht.Graphs;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.stream.IntStream;
+
+import static magma.utils.ParallelUtils.*;
 
 public class GraphUtils extends Graphs {
 
@@ -34,7 +40,8 @@ public class GraphUtils extends Graphs {
         return result;
     }
 
-    // TODO
+    // Average neighbour degree k_nn(k) of the
+    // vertices with degree k.
     public static <V, E> double[] degreeDegreeCorrelation(Graph<V, E> g) {
         var maxDegree = maxDegree(g);
         final var size = maxDegree + 1;
@@ -44,11 +51,10 @@ public class GraphUtils extends Graphs {
         for (V v : g.vertexSet()) {
             var _vtxDegree = g.degreeOf(v);
             var _sumDegree = 0;
-            for (V n : neighborListOf(g, v)) {
-                _sumDegree = g.degreeOf(n);
-                sumDegArr[_vtxDegree] += _sumDegree;
-                nNodesArr[_vtxDegree] += _vtxDegree;
-            }
+            for (E e : g.edgesOf(v))
+                _sumDegree += g.degreeOf(getOppositeVertex(g, e, v));
+            sumDegArr[_vtxDegree] += _sumDegree;
+            nNodesArr[_vtxDegree] += _vtxDegree;
         }
         for (int i = 0; i < size; i++)
             if (nNodesArr[i] != 0)
@@ -68,11 +74,10 @@ public class GraphUtils extends Graphs {
         for (V v : g.vertexSet()) {
             var _vtxDegree = g.degreeOf(v);
             var _sumDegree = 0;
-            for (V n : neighborListOf(g, v)) {
-                _sumDegree = g.degreeOf(n);
-                sumDegArr[_vtxDegree] += _sumDegree;
-                nNodesArr[_vtxDegree] += _vtxDegree;
-            }
+            for (E e : g.edgesOf(v))
+                _sumDegree += g.degreeOf(getOppositeVertex(g, e, v));
+            sumDegArr[_vtxDegree] += _sumDegree;
+            nNodesArr[_vtxDegree] += _vtxDegree;
         }
         var map = new Int2ObjectLinkedOpenHashMap<Tuple2<Integer, Integer>>();
         for (int i = 0; i < size; i++)
@@ -131,4 +136,163 @@ public class GraphUtils extends Graphs {
     public static <V, E>  String status(Graph<V, E> g) {
         return "NODES: " + numNodes(g) + " EDGES " +  numEdges(g);
     }
+
+    // ----------------------------------------------
+    //  CSR KERNELS.
+    // ----------------------------------------------
+    // Array based counterparts of the functions above.
+    // Vertices are the dense ids of the Csr, every loop
+    // is cut into vertex ranges and runs in parallel.
+
+    public enum Degree { IN, OUT, ALL }
+
+    public static int degreeOf(Csr g, int v, Degree kind) {
+        return switch (kind) {
+            case IN -> g.inDegree(v);
+            case OUT -> g.outDegree(v);
+            case ALL -> g.degree(v);
+        };
+    }
+
+    public static int[] degrees(Csr g, Degree kind) {
+        final var result = new int[g.n];
+        forRange(g.n, (from, to) -> {
+            for (int v = from; v < to; v++) result[v] = degreeOf(g, v, kind);
+        });
+        return result;
+    }
+
+    public static int[] inDegrees(Csr g) { return degrees(g, Degree.IN); }
+
+    public static int[] outDegrees(Csr g) { return degrees(g, Degree.OUT); }
+
+    public static int[] allDegrees(Csr g) { return degrees(g, Degree.ALL); }
+
+    public static int maxDegree(int[] degrees) {
+        int result = 0;
+        for (int d : degrees) if (d > result) result = d;
+        return result;
+    }
+
+    // result[k] is the number of vertices with
+    // degree k. At most one range per worker, each
+    // counts into its own plain long[] and these
+    // are summed up at the end.
+    public static long[] degreeHistogram(int[] degrees) {
+        final int n = degrees.length;
+        final int size = maxDegree(degrees) + 1;
+        final int ranges = Math.min(rangeCount(n), PARALLELISM);
+        final var partial = new long[ranges][];
+        IntStream.range(0, ranges).parallel().forEach(r -> {
+            final var hist = new long[size];
+            for (int v = rangeFrom(n, ranges, r), to = rangeFrom(n, ranges, r + 1); v < to; v++) hist[degrees[v]]++;
+            partial[r] = hist;
+        });
+        final var result = partial[0];
+        for (int r = 1; r < ranges; r++) {
+            final var hist = partial[r];
+            for (int k = 0; k < size; k++) result[k] += hist[k];
+        }
+        return result;
+    }
+
+    // Average neighbour degree k_nn(k) over the
+    // undirected view of the graph, i.e. the sum
+    // of the neighbour degrees of all vertices of
+    // degree k divided by the number of their edges.
+    public static double[] degreeDegreeCorrelation(Csr g) {
+        final var deg = allDegrees(g);
+        final var nbrSum = new long[g.n];
+        forRange(g.n, (from, to) -> {
+            for (int v = from; v < to; v++) {
+                long sum = 0;
+                for (int e = g.outStart(v); e < g.outEnd(v); e++) sum += deg[g.outTarget(e)];
+                for (int e = g.inStart(v); e < g.inEnd(v); e++) sum += deg[g.inSource(e)];
+                nbrSum[v] = sum;
+            }
+        });
+        final int size = maxDegree(deg) + 1;
+        final var sumDeg = new long[size];
+        final var sumCnt = new long[size];
+        for (int v = 0; v < g.n; v++) {
+            sumDeg[deg[v]] += nbrSum[v];
+            sumCnt[deg[v]] += deg[v];
+        }
+        final var result = new double[size];
+        for (int k = 0; k < size; k++)
+            result[k] = sumCnt[k] == 0 ? 0 : (double) sumDeg[k] / sumCnt[k];
+        return result;
+    }
+
+    // Newman's degree assortativity for directed graphs:
+    // the Pearson correlation between the 'srcKind' degree
+    // of the source and the 'tgtKind' degree of the target
+    // over all edges. (OUT, IN) is the classic variant.
+    public static double assortativity(Csr g, Degree srcKind, Degree tgtKind) {
+        if (g.m == 0) return 0;
+        final var srcDeg = degrees(g, srcKind);
+        final var tgtDeg = srcKind == tgtKind ? srcDeg : degrees(g, tgtKind);
+        final int ranges = rangeCount(g.n);
+        // sumJ, sumK, sumJK, sumJJ, sumKK per range.
+        final var partial = new double[ranges][5];
+        IntStream.range(0, ranges).parallel().forEach(r -> {
+            final var acc = partial[r];
+            for (int v = rangeFrom(g.n, ranges, r), to = rangeFrom(g.n, ranges, r + 1); v < to; v++) {
+                final double j = srcDeg[v];
+                for (int e = g.outStart(v); e < g.outEnd(v); e++) {
+                    final double k = tgtDeg[g.outTarget(e)];
+                    acc[0] += j;
+                    acc[1] += k;
+                    acc[2] += j * k;
+                    acc[3] += j * j;
+                    acc[4] += k * k;
+                }
+            }
+        });
+        final var sum = new double[5];
+        for (var acc : partial)
+            for (int i = 0; i < 5; i++) sum[i] += acc[i];
+        final double m = g.m;
+        final double meanJ = sum[0] / m, meanK = sum[1] / m;
+        final double cov = sum[2] / m - meanJ * meanK;
+        final double varJ = sum[3] / m - meanJ * meanJ;
+        final double varK = sum[4] / m - meanK * meanK;
+        if (varJ <= 0 || varK <= 0) return 0;
+        return cov / Math.sqrt(varJ * varK);
+    }
+
+    // ----------------------------------------------
+    //  DEGREE-PLOT EXPORT.
+    // ----------------------------------------------
+    // Writes the files DEGREE-PLOT/degree_plot.py reads,
+    // 'id,degree' per user and 'degree,count' per degree,
+    // as results (Sink.result). Cli -net writes them for
+    // the retweet network.
+
+    public static Path writeDegrees(Csr g, int[] degrees, Path file) throws IOException {
+        try (var sink = Sink.result(file, Sink.longCol("id"), Sink.intCol("degree"))) {
+            for (int v = 0; v < g.n; v++) sink.put(g.ids[v]).put(degrees[v]).end();
+        }
+        return file;
+    }
+
+    public static Path writeDegreeHistogram(long[] histogram, Path file) throws IOException {
+        try (var sink = Sink.result(file, Sink.intCol("degree"), Sink.longCol("count"))) {
+            for (int k = 0; k < histogram.length; k++) {
+                if (histogram[k] != 0) sink.put(k).put(histogram[k]).end();
+            }
+        }
+        return file;
+    }
+
+    // degree_{all,in,out}.csv and the matching
+    // degree_{all,in,out}_hist.csv in 'dir'.
+    public static void writeDegreePlotData(Csr g, Path dir) throws IOException {
+        for (var kind : Degree.values()) {
+            final var name = "degree_" + kind.name().toLowerCase();
+            final var deg = degrees(g, kind);
+            writeDegrees(g, deg, dir.resolve(name + ".csv"));
+            writeDegreeHistogram(degreeHistogram(deg), dir.resolve(name + "_hist.csv"));
+        }
+    }
 }
@@ -0,0 +1,63 @@
+package magma.utils;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+// ------------------------------------------------------------
+//                       PARALLEL UTILS
+// ------------------------------------------------------------
+//
+public enum ParallelUtils {
+    ;
+
+    // ----------------------------------------------
+    //  CONSTANTS.
+    // ----------------------------------------------
+    //
+    public static final int PARALLELISM = ForkJoinPool.getCommonPoolParallelism();
+
+    // Below this many elements a range is
+    // processed on the calling thread.
+    public static final int MIN_GRAIN = 1 << 12;
+
+    // ----------------------------------------------
+    //  RANGES.
+    // ----------------------------------------------
+    //
+    @FunctionalInterface
+    public interface RangeConsumer {
+        void accept(int from, int to);
+    }
+
+    // Number of ranges a loop over 'n' elements
+    // is cut into. We oversubscribe the pool by
+    // 4 so that skewed ranges (e.g. hub vertices)
+    // are balanced by work stealing.
+    public static int rangeCount(final int n) {
+        if (n <= MIN_GRAIN) return 1;
+        return max(1, min(PARALLELISM * 4, (n + MIN_GRAIN - 1) / MIN_GRAIN));
+    }
+
+    public static int rangeFrom(final int n, final int ranges, final int r) {
+        return (int) ((long) n * r / ranges);
+    }
+
+    // Runs 'body' over [0, n) cut into contiguous
+    // ranges. Ranges never overlap, so a body may
+    // write to its own slots without any sync.
+    public static void forRange(final int n, final RangeConsumer body) {
+        final int ranges = rangeCount(n);
+        if (ranges == 1) {
+            body.accept(0, n);
+            return;
+        }
+        IntStream.range(0, ranges)
+                .parallel()
+                .forEach(r -> body.accept(
+                        rangeFrom(n, ranges, r),
+                        rangeFrom(n, ranges, r + 1)));
+    }
+}
@@ -0,0 +1,421 @@
+package magma.utils;
+
+import magma.utils.Sink.Bytes;
+import magma.utils.Sink.Column;
+import magma.utils.Sink.Strings;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import static magma.utils.Sink.int32;
+
+// ------------------------------------------------------------
+//                          PARQUET
+// ------------------------------------------------------------
+//
+// The Parquet encoding of Sink.Format.PARQUET, without any
+// Hadoop or Thrift library. Every block of the sink is a row
+// group with one gzip compressed data page (v1) per column,
+// PLAIN values and RLE definition levels, all columns are
+// OPTIONAL so that skipped fields are nulls. Strings are
+// UTF8 byte arrays. The column chunks carry null counts and
+// min/max statistics, so pyarrow can skip row groups on a
+// filter and reads only the selected columns:
+//
+//     pd.read_parquet(file, columns=["Source", "Cij"])
+//
+// The footer (FileMetaData) and the page headers are written
+// in the Thrift compact protocol, see Thrift below.
+//
+final class Parquet {
+
+    // ----------------------------------------------
+    //  CONSTANTS.
+    // ----------------------------------------------
+    //
+    static final byte[] MAGIC = {'P', 'A', 'R', '1'};
+
+    // Physical types, repetition, codec, encodings and page type.
+    static final int INT32 = 1, INT64 = 2, DOUBLE = 5, BYTE_ARRAY = 6;
+    static final int OPTIONAL = 1;
+    static final int GZIP = 2;
+    static final int PLAIN = 0, RLE = 3;
+    static final int DATA_PAGE = 0;
+    static final int UTF8 = 0;
+
+    static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    static final String CREATED_BY = "magma Sink";
+
+    // ----------------------------------------------
+    //  STATE.
+    // ----------------------------------------------
+    //
+    // Metadata of a column chunk, for the footer.
+    record Chunk(long offset, long raw, long packed, int nulls, byte[] min, byte[] max) {}
+
+    record RowGroup(int rows, Chunk[] chunks) {}
+
+    final Column[] columns;
+    final List<RowGroup> groups = new ArrayList<>();
+    final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    final CRC32 crc = new CRC32();
+    // Page before and after compression, and its header.
+    final Bytes page = new Bytes(1 << 16);
+    final Bytes gzip = new Bytes(1 << 16);
+    final Bytes header = new Bytes(64);
+
+    Parquet(Column[] columns) {
+        this.columns = columns;
+    }
+
+    // ----------------------------------------------
+    //  ROW GROUPS.
+    // ----------------------------------------------
+    //
+    // Encodes the rows of a sink block into 'out', which is
+    // written at 'offset' of the file.
+    void rowGroup(final Object[] block, final BitSet[] nulls, final int rows, final long offset, final Bytes out) {
+        final var chunks = new Chunk[columns.length];
+        for (int c = 0; c < columns.length; c++) {
+            final long start = offset + out.n;
+            page.n = 0;
+            levels(nulls[c], rows);
+            final byte[][] stats = switch (columns[c].type()) {
+                case LONG -> longs((long[]) block[c], nulls[c], rows);
+                case INT -> ints((int[]) block[c], nulls[c], rows);
+                case DOUBLE -> doubles((double[]) block[c], nulls[c], rows);
+                case STRING, ROWS -> strings((Strings) block[c], nulls[c], rows);
+            };
+            compress();
+            header.n = 0;
+            final var thrift = new Thrift(header);
+            thrift.i32(1, DATA_PAGE);
+            thrift.i32(2, page.n);
+            thrift.i32(3, gzip.n);
+            thrift.begin(5);
+            thrift.i32(1, rows);
+            thrift.i32(2, PLAIN);
+            thrift.i32(3, RLE);
+            thrift.i32(4, RLE);
+            thrift.end();
+            thrift.stop();
+            out.put(header);
+            out.put(gzip);
+            chunks[c] = new Chunk(start, header.n + page.n, header.n + gzip.n,
+                    nulls[c].cardinality(), stats[0], stats[1]);
+        }
+        groups.add(new RowGroup(rows, chunks));
+    }
+
+    // Definition levels of bit width 1 as RLE hybrid with a
+    // 4 byte length: one run of 1 without nulls, else bit
+    // packed groups of 8.
+    private void levels(final BitSet nulls, final int rows) {
+        page.room(4);
+        page.n += 4;
+        final int start = page.n;
+        if (nulls.isEmpty()) {
+            varint(page, (long) rows << 1);
+            page.put(1);
+        } else {
+            final int groups = (rows + 7) >>> 3;
+            varint(page, (long) groups << 1 | 1);
+            page.room(groups);
+            for (int g = 0; g < groups; g++) {
+                int bits = 0;
+                for (int i = g << 3, k = 0; k < 8 && i < rows; i++, k++) {
+                    if (!nulls.get(i)) bits |= 1 << k;
+                }
+                page.a[page.n++] = (byte) bits;
+            }
+        }
+        Sink.I32.set(page.a, start - 4, page.n - start);
+    }
+
+    // The values append their non null values to the page
+    // and return the plain encoded min and max, or nulls.
+
+    private byte[][] longs(final long[] v, final BitSet nulls, final int rows) {
+        long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+        page.room(rows << 3);
+        for (int i = 0; i < rows; i++) {
+            if (nulls.get(i)) continue;
+            Sink.I64.set(page.a, page.n, v[i]);
+            page.n += 8;
+            min = Math.min(min, v[i]);
+            max = Math.max(max, v[i]);
+        }
+        return nulls.cardinality() == rows ? new byte[2][] : new byte[][] {int64(min), int64(max)};
+    }
+
+    private byte[][] ints(final int[] v, final BitSet nulls, final int rows) {
+        int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+        page.room(rows << 2);
+        for (int i = 0; i < rows; i++) {
+            if (nulls.get(i)) continue;
+            Sink.I32.set(page.a, page.n, v[i]);
+            page.n += 4;
+            min = Math.min(min, v[i]);
+            max = Math.max(max, v[i]);
+        }
+        if (nulls.cardinality() == rows) return new byte[2][];
+        final var res = new byte[2][4];
+        Sink.I32.set(res[0], 0, min);
+        Sink.I32.set(res[1], 0, max);
+        return res;
+    }
+
+    // NaN is a value but not part of min and max.
+    private byte[][] doubles(final double[] v, final BitSet nulls, final int rows) {
+        double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+        boolean any = false;
+        page.room(rows << 3);
+        for (int i = 0; i < rows; i++) {
+            if (nulls.get(i)) continue;
+            Sink.F64.set(page.a, page.n, v[i]);
+            page.n += 8;
+            if (Double.isNaN(v[i])) continue;
+            any = true;
+            min = Math.min(min, v[i]);
+            max = Math.max(max, v[i]);
+        }
+        if (!any) return new byte[2][];
+        final var res = new byte[2][8];
+        Sink.F64.set(res[0], 0, min == 0 ? -0.0 : min);
+        Sink.F64.set(res[1], 0, max == 0 ? 0.0 : max);
+        return res;
+    }
+
+    // Min and max compare the UTF-8 bytes unsigned.
+    private byte[][] strings(final Strings s, final BitSet nulls, final int rows) {
+        int minFrom = -1, minTo = -1, maxFrom = -1, maxTo = -1;
+        for (int i = 0, from = 0; i < rows; from = s.end[i++]) {
+            if (nulls.get(i)) continue;
+            final int to = s.end[i];
+            int32(page, to - from);
+            page.room(to - from);
+            System.arraycopy(s.bytes.a, from, page.a, page.n, to - from);
+            page.n += to - from;
+            if (minFrom < 0 || Arrays.compareUnsigned(s.bytes.a, from, to, s.bytes.a, minFrom, minTo) < 0) {
+                minFrom = from;
+                minTo = to;
+            }
+            if (maxFrom < 0 || Arrays.compareUnsigned(s.bytes.a, from, to, s.bytes.a, maxFrom, maxTo) > 0) {
+                maxFrom = from;
+                maxTo = to;
+            }
+        }
+        if (minFrom < 0) return new byte[2][];
+        return new byte[][] {
+                Arrays.copyOfRange(s.bytes.a, minFrom, minTo),
+                Arrays.copyOfRange(s.bytes.a, maxFrom, maxTo)};
+    }
+
+    // Gzip of the page, a header, raw deflate, CRC32 and size.
+    private void compress() {
+        gzip.n = 0;
+        gzip.put(GZIP_HEADER);
+        deflater.reset();
+        deflater.setInput(page.a, 0, page.n);
+        deflater.finish();
+        while (!deflater.finished()) {
+            gzip.room(1 << 12);
+            gzip.n += deflater.deflate(gzip.a, gzip.n, gzip.a.length - gzip.n);
+        }
+        crc.reset();
+        crc.update(page.a, 0, page.n);
+        int32(gzip, (int) crc.getValue());
+        int32(gzip, page.n);
+    }
+
+    // ----------------------------------------------
+    //  FOOTER.
+    // ----------------------------------------------
+    //
+    // FileMetaData, its length and the magic.
+    void footer(final Bytes out) {
+        final int start = out.n;
+        final var thrift = new Thrift(out);
+        thrift.i32(1, 1);
+        thrift.list(2, Thrift.STRUCT, columns.length + 1);
+        thrift.element();
+        thrift.string(4, "schema");
+        thrift.i32(5, columns.length);
+        thrift.end();
+        for (var column : columns) {
+            thrift.element();
+            thrift.i32(1, type(column));
+            thrift.i32(3, OPTIONAL);
+            thrift.string(4, column.name());
+            if (type(column) == BYTE_ARRAY) {
+                thrift.i32(6, UTF8);
+                thrift.begin(10); // LogicalType STRING
+                thrift.begin(1);
+                thrift.end();
+                thrift.end();
+            }
+            thrift.end();
+        }
+        long rows = 0;
+        for (var group : groups) rows += group.rows;
+        thrift.i64(3, rows);
+        thrift.list(4, Thrift.STRUCT, groups.size());
+        for (var group : groups) {
+            long raw = 0, packed = 0;
+            for (var chunk : group.chunks) {
+                raw += chunk.raw;
+                packed += chunk.packed;
+            }
+            thrift.element();
+            thrift.list(1, Thrift.STRUCT, columns.length);
+            for (int c = 0; c < columns.length; c++) {
+                final var chunk = group.chunks[c];
+                thrift.element();
+                thrift.i64(2, chunk.offset);
+                thrift.begin(3);
+                thrift.i32(1, type(columns[c]));
+                thrift.list(2, Thrift.I32, 2);
+                thrift.i32(PLAIN);
+                thrift.i32(RLE);
+                thrift.list(3, Thrift.BINARY, 1);
+                thrift.binary(columns[c].name().getBytes(StandardCharsets.UTF_8));
+                thrift.i32(4, GZIP);
+                thrift.i64(5, group.rows);
+                thrift.i64(6, chunk.raw);
+                thrift.i64(7, chunk.packed);
+                thrift.i64(9, chunk.offset);
+                thrift.begin(12);
+                thrift.i64(3, chunk.nulls);
+                if (chunk.max != null) thrift.binary(5, chunk.max);
+                if (chunk.min != null) thrift.binary(6, chunk.min);
+                thrift.end();
+                thrift.end();
+                thrift.end();
+            }
+            thrift.i64(2, raw);
+            thrift.i64(3, group.rows);
+            thrift.i64(5, group.chunks[0].offset);
+            thrift.i64(6, packed);
+            thrift.end();
+        }
+        thrift.string(6, CREATED_BY);
+        thrift.stop();
+        int32(out, out.n - start);
+        out.put(MAGIC);
+    }
+
+    static int type(final Column column) {
+        return switch (column.type()) {
+            case LONG -> INT64;
+            case INT -> INT32;
+            case DOUBLE -> DOUBLE;
+            case STRING, ROWS -> BYTE_ARRAY;
+        };
+    }
+
+    void close() { deflater.end(); }
+
+    // ----------------------------------------------
+    //  THRIFT.
+    // ----------------------------------------------
+    //
+    // The subset of the Thrift compact protocol that Parquet
+    // metadata needs: i32, i64, binary, structs and lists.
+    // Field ids are written as deltas to the previous field
+    // of the same struct, begin() and element() open a struct
+    // and end() closes it.
+    static final class Thrift {
+        static final int I32 = 5, I64 = 6, BINARY = 8, LIST = 9, STRUCT = 12;
+
+        final Bytes out;
+        final int[] stack = new int[16];
+        int depth, last;
+
+        Thrift(Bytes out) { this.out = out; }
+
+        void field(final int id, final int type) {
+            final int delta = id - last;
+            if (delta > 0 && delta <= 15) out.put(delta << 4 | type);
+            else {
+                out.put(type);
+                varint(out, zigzag(id));
+            }
+            last = id;
+        }
+
+        void i32(final int id, final int v) {
+            field(id, I32);
+            i32(v);
+        }
+
+        void i64(final int id, final long v) {
+            field(id, I64);
+            varint(out, zigzag(v));
+        }
+
+        void binary(final int id, final byte[] v) {
+            field(id, BINARY);
+            binary(v);
+        }
+
+        void string(final int id, final String s) {
+            binary(id, s.getBytes(StandardCharsets.UTF_8));
+        }
+
+        void list(final int id, final int type, final int size) {
+            field(id, LIST);
+            if (size < 15) out.put(size << 4 | type);
+            else {
+                out.put(0xF0 | type);
+                varint(out, size);
+            }
+        }
+
+        // Elements of lists.
+        void i32(final int v) { varint(out, zigzag(v)); }
+
+        void binary(final byte[] v) {
+            varint(out, v.length);
+            out.put(v);
+        }
+
+        void begin(final int id) {
+            field(id, STRUCT);
+            element();
+        }
+
+        void element() {
+            stack[depth++] = last;
+            last = 0;
+        }
+
+        void end() {
+            stop();
+            last = stack[--depth];
+        }
+
+        void stop() { out.put(0); }
+    }
+
+    static long zigzag(final long v) { return v << 1 ^ v >> 63; }
+
+    static void varint(final Bytes out, long v) {
+        while ((v & ~0x7FL) != 0) {
+            out.put((int) (v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.put((int) v);
+    }
+
+    static byte[] int64(final long v) {
+        final var res = new byte[8];
+        Sink.I64.set(res, 0, v);
+        return res;
+    }
+}
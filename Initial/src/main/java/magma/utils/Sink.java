@@ -0,0 +1,692 @@
+package magma.utils;
+
+import magma.exa.control.exception.Throw;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static magma.exa.base.contract.Require.isTrue;
+
+// ------------------------------------------------------------
+//                            SINK
+// ------------------------------------------------------------
+//
+// Writes result rows of typed columns as csv, as json lines
+// or in a binary columnar format. Fields are encoded right
+// into reusable byte buffers, numbers digit by digit and
+// strings char by char as UTF-8, no String is created per
+// field. Full pages are written to the file by a daemon
+// thread of the sink while the caller fills the next free
+// page, so the computation only waits if it is PAGES ahead
+// of the disk. The thread only blocks on I/O and never
+// holds a worker of Executor. close() writes the rest and
+// joins it.
+//
+// A row is put field by field in column order and ended by
+// end(), which fills missing trailing fields with null: an
+// empty field in csv, null in json and the Csv.NULL_* values
+// in the columnar format.
+//
+//     try (var sink = Sink.csv(file, stringCol("tag"), intCol("all"))) {
+//         for (int tag : top) sink.put(name(tag)).put(all[tag]).end();
+//     }
+//
+// Doubles are written like StringBuilder.append(double), the
+// text is the one of string concatenation, NaN and infinities
+// are null in json. Csv fields are quoted only if they contain
+// the separator, a quote or a line break.
+//
+// A ROWS column is a json array of objects of its own columns
+// (json lines only): rows() opens the array, the puts that
+// follow fill one object after the other and end() closes it.
+//
+// The columnar format is little endian,
+//
+//     "MGCOL1" int:columns { byte:type short:length name }
+//     { int:rows { column } }* int:0
+//
+// blocks of up to BLOCK_ROWS rows, every column of a block as
+// rows longs, ints or doubles, strings as rows ints of the end
+// offsets of their UTF-8 bytes followed by the bytes, so that
+// a block is read with numpy.frombuffer.
+//
+// Parquet (see Parquet) writes every block as a row group of
+// gzip compressed, OPTIONAL columns with statistics, skipped
+// fields are nulls. result() writes the csv or, with
+// -Dmagma.results=parquet, a .parquet file of the same name
+// for the notebooks.
+//
+public final class Sink implements Closeable {
+
+    // ----------------------------------------------
+    //  CONSTANTS.
+    // ----------------------------------------------
+    //
+    public static final int PAGE_BYTES = 1 << 18;
+    // Pages of a sink, one is filled, the rest are in flight.
+    static final int PAGES = 4;
+    public static final int BLOCK_ROWS = 1 << 16;
+
+    static final byte[] MAGIC = {'M', 'G', 'C', 'O', 'L', '1'};
+
+    static final VarHandle I32 = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    static final VarHandle I64 = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    static final VarHandle F64 = MethodHandles.byteArrayViewVarHandle(double[].class, ByteOrder.LITTLE_ENDIAN);
+
+    // Encodings of chars.
+    static final int PLAIN = 0, QUOTED = 1, JSON = 2;
+
+    // ----------------------------------------------
+    //  SCHEMA.
+    // ----------------------------------------------
+    //
+    public enum Format { CSV, JSONL, COLUMNAR, PARQUET }
+
+    public enum Type { LONG, INT, DOUBLE, STRING, ROWS }
+
+    // The fields of a ROWS column are its own columns.
+    public record Column(String name, Type type, Column[] fields) {
+        public String toString() { return name + ':' + type + (fields.length == 0 ? "" : Arrays.toString(fields)); }
+    }
+
+    static final Column[] NO_FIELDS = {};
+
+    public static Column longCol(String name) { return new Column(name, Type.LONG, NO_FIELDS); }
+    public static Column intCol(String name) { return new Column(name, Type.INT, NO_FIELDS); }
+    public static Column doubleCol(String name) { return new Column(name, Type.DOUBLE, NO_FIELDS); }
+    public static Column stringCol(String name) { return new Column(name, Type.STRING, NO_FIELDS); }
+    public static Column rowsCol(String name, Column... fields) {
+        isTrue(fields.length > 0);
+        for (var field : fields) isTrue(field.type != Type.ROWS);
+        return new Column(name, Type.ROWS, fields);
+    }
+
+    // ----------------------------------------------
+    //  OPEN.
+    // ----------------------------------------------
+    //
+    // The file is created or truncated.
+    public static Sink csv(Path file, Column... columns) throws IOException {
+        return open(file, Format.CSV, columns);
+    }
+
+    public static Sink jsonl(Path file, Column... columns) throws IOException {
+        return open(file, Format.JSONL, columns);
+    }
+
+    public static Sink columnar(Path file, Column... columns) throws IOException {
+        return open(file, Format.COLUMNAR, columns);
+    }
+
+    public static Sink parquet(Path file, Column... columns) throws IOException {
+        return open(file, Format.PARQUET, columns);
+    }
+
+    // Format of result(), CSV unless magma.results is parquet.
+    public static final Format RESULTS =
+            "parquet".equalsIgnoreCase(System.getProperty("magma.results")) ? Format.PARQUET : Format.CSV;
+
+    // A result table at 'file' (.csv) in the RESULTS format,
+    // the file of the other format is deleted so that a stale
+    // one of an earlier run is never read instead.
+    public static Sink result(Path file, Column... columns) throws IOException {
+        final var name = file.getFileName().toString();
+        final int dot = name.lastIndexOf('.');
+        final var parquet = file.resolveSibling((dot < 0 ? name : name.substring(0, dot)) + ".parquet");
+        if (RESULTS == Format.CSV) {
+            Files.deleteIfExists(parquet);
+            return csv(file, columns);
+        }
+        Files.deleteIfExists(file);
+        return parquet(parquet, columns);
+    }
+
+    public static Sink open(Path file, Format format, Column... columns) throws IOException {
+        isTrue(columns.length > 0);
+        for (var column : columns) isTrue(column.type != Type.ROWS || format == Format.JSONL);
+        return new Sink(FileChannel.open(file, CREATE, TRUNCATE_EXISTING, WRITE), format, columns);
+    }
+
+    // ----------------------------------------------
+    //  STATE.
+    // ----------------------------------------------
+    //
+    final Format format;
+    final Column[] columns;
+    final FileChannel channel;
+    // Json keys ("name":) of every column, the ones of
+    // the fields of a ROWS column after its own.
+    final byte[][][] keys;
+    // The row being encoded, text formats only.
+    final Bytes row = new Bytes(256);
+    final StringBuilder num = new StringBuilder(32);
+
+    final BlockingQueue<Page> free = new ArrayBlockingQueue<>(PAGES);
+    final BlockingQueue<Page> full = new ArrayBlockingQueue<>(PAGES + 1);
+    final Thread writer;
+    volatile IOException failure;
+    Page page;
+
+    // Next column of the row and next field of the open
+    // ROWS column (-1 if none) with its object count.
+    int col, sub = -1, objects;
+    boolean closed;
+
+    // Columnar and parquet only: one array per column and
+    // the rows of the current block, parquet also marks the
+    // nulls and counts the bytes emitted for its offsets.
+    final Object[] block;
+    int rows;
+    final Parquet parquet;
+    final BitSet[] nulls;
+    long offset;
+
+    private Sink(FileChannel channel, Format format, Column[] columns) {
+        this.format = format;
+        this.columns = columns.clone();
+        this.channel = channel;
+        keys = new byte[columns.length][][];
+        for (int c = 0; c < columns.length; c++) {
+            final var fields = columns[c].fields;
+            keys[c] = new byte[1 + fields.length][];
+            keys[c][0] = key(columns[c].name);
+            for (int f = 0; f < fields.length; f++) keys[c][1 + f] = key(fields[f].name);
+        }
+        for (int p = 1; p < PAGES; p++) free.add(new Page());
+        page = new Page();
+        final boolean blocks = format == Format.COLUMNAR || format == Format.PARQUET;
+        block = blocks ? new Object[columns.length] : null;
+        parquet = format == Format.PARQUET ? new Parquet(this.columns) : null;
+        nulls = format == Format.PARQUET ? new BitSet[columns.length] : null;
+        if (blocks) {
+            for (int c = 0; c < columns.length; c++) {
+                block[c] = switch (columns[c].type) {
+                    case LONG -> new long[BLOCK_ROWS];
+                    case INT -> new int[BLOCK_ROWS];
+                    case DOUBLE -> new double[BLOCK_ROWS];
+                    case STRING, ROWS -> new Strings();
+                };
+                if (nulls != null) nulls[c] = new BitSet(BLOCK_ROWS);
+            }
+        }
+        writer = new Thread(this::drain, "sink-writer");
+        writer.setDaemon(true);
+        writer.start();
+        header();
+    }
+
+    // ----------------------------------------------
+    //  ROWS.
+    // ----------------------------------------------
+    //
+    public Sink put(final long v) {
+        final int c = field(Type.LONG);
+        if (block != null) ((long[]) block[c])[rows] = v;
+        else digits(row, v);
+        return next();
+    }
+
+    // Also into LONG columns.
+    public Sink put(final int v) {
+        final var type = current().type;
+        if (type == Type.LONG) return put((long) v);
+        final int c = field(Type.INT);
+        if (block != null) ((int[]) block[c])[rows] = v;
+        else digits(row, v);
+        return next();
+    }
+
+    public Sink put(final double v) {
+        final int c = field(Type.DOUBLE);
+        if (block != null) ((double[]) block[c])[rows] = v;
+        else if (format == Format.JSONL && !Double.isFinite(v)) ascii(row, "null");
+        else decimal(v);
+        return next();
+    }
+
+    // null is skip().
+    public Sink put(final CharSequence s) {
+        if (s == null) return skip();
+        final int c = field(Type.STRING);
+        if (block != null) {
+            final var strings = (Strings) block[c];
+            chars(strings.bytes, s, PLAIN);
+            strings.end[rows] = strings.bytes.n;
+        } else if (format == Format.JSONL) {
+            row.put('"');
+            chars(row, s, JSON);
+            row.put('"');
+        } else if (quote(s)) {
+            row.put('"');
+            chars(row, s, QUOTED);
+            row.put('"');
+        } else {
+            chars(row, s, PLAIN);
+        }
+        return next();
+    }
+
+    // A null field.
+    public Sink skip() {
+        final var type = current().type;
+        final int c = field(type);
+        if (nulls != null) nulls[c].set(rows);
+        if (block != null) {
+            switch (type) {
+                case LONG -> ((long[]) block[c])[rows] = Csv.NULL_LONG;
+                case INT -> ((int[]) block[c])[rows] = Csv.NULL_INT;
+                case DOUBLE -> ((double[]) block[c])[rows] = Csv.NULL_DOUBLE;
+                case STRING, ROWS -> {
+                    final var strings = (Strings) block[c];
+                    strings.end[rows] = strings.bytes.n;
+                }
+            }
+        } else if (format == Format.JSONL) {
+            ascii(row, "null");
+        }
+        return next();
+    }
+
+    // Opens the array of the current ROWS column.
+    public Sink rows() {
+        isTrue(sub < 0 && current().type == Type.ROWS);
+        row.put(col == 0 ? '{' : ',');
+        row.put(keys[col][0]);
+        row.put('[');
+        sub = 0;
+        objects = 0;
+        return this;
+    }
+
+    // Closes the open ROWS column or ends the row.
+    public Sink end() {
+        if (sub >= 0) {
+            isTrue(sub == 0);
+            row.put(']');
+            sub = -1;
+            ++col;
+            return this;
+        }
+        while (col < columns.length) skip();
+        col = 0;
+        if (block != null) {
+            if (++rows == BLOCK_ROWS) block();
+            return this;
+        }
+        if (format == Format.JSONL) row.put('}');
+        row.put('\n');
+        emit(row);
+        row.n = 0;
+        return this;
+    }
+
+    private Column current() {
+        isTrue(col < columns.length);
+        return sub < 0 ? columns[col] : columns[col].fields[sub];
+    }
+
+    // Checks the type of the next field and writes what
+    // precedes it in text formats, returns its column.
+    private int field(final Type type) {
+        isTrue(current().type == type);
+        if (block != null) return col;
+        if (sub >= 0) {
+            if (sub > 0) row.put(',');
+            else {
+                if (objects++ > 0) row.put(',');
+                row.put('{');
+            }
+            row.put(keys[col][1 + sub]);
+        } else if (format == Format.JSONL) {
+            row.put(col == 0 ? '{' : ',');
+            row.put(keys[col][0]);
+        } else if (col > 0) {
+            row.put(',');
+        }
+        return col;
+    }
+
+    private Sink next() {
+        if (sub < 0) ++col;
+        else if (++sub == columns[col].fields.length) {
+            row.put('}');
+            sub = 0;
+        }
+        return this;
+    }
+
+    // ----------------------------------------------
+    //  ENCODE.
+    // ----------------------------------------------
+    //
+    // A growing byte buffer.
+    static final class Bytes {
+        byte[] a;
+        int n;
+
+        Bytes(int capacity) { a = new byte[capacity]; }
+
+        void room(int k) {
+            if (n + k > a.length) a = Arrays.copyOf(a, Math.max(a.length << 1, n + k));
+        }
+
+        void put(int b) {
+            if (n == a.length) room(1);
+            a[n++] = (byte) b;
+        }
+
+        void put(byte[] b) {
+            room(b.length);
+            System.arraycopy(b, 0, a, n, b.length);
+            n += b.length;
+        }
+
+        void put(Bytes b) {
+            room(b.n);
+            System.arraycopy(b.a, 0, a, n, b.n);
+            n += b.n;
+        }
+    }
+
+    static final class Strings {
+        final Bytes bytes = new Bytes(1 << 12);
+        final int[] end = new int[BLOCK_ROWS];
+    }
+
+    static void digits(final Bytes out, long v) {
+        if (v == Long.MIN_VALUE) {
+            ascii(out, "-9223372036854775808");
+            return;
+        }
+        out.room(20);
+        if (v < 0) {
+            out.a[out.n++] = '-';
+            v = -v;
+        }
+        int i = out.n + length(v);
+        out.n = i;
+        do {
+            out.a[--i] = (byte) ('0' + v % 10);
+            v /= 10;
+        } while (v != 0);
+    }
+
+    // Number of digits of v >= 0.
+    static int length(final long v) {
+        long p = 10;
+        for (int k = 1; k < 19; k++, p *= 10) {
+            if (v < p) return k;
+        }
+        return 19;
+    }
+
+    // Reuses one StringBuilder, which does not create a String.
+    private void decimal(final double v) {
+        num.setLength(0);
+        num.append(v);
+        final int len = num.length();
+        row.room(len);
+        for (int i = 0; i < len; i++) row.a[row.n++] = (byte) num.charAt(i);
+    }
+
+    static void ascii(final Bytes out, final String s) {
+        out.room(s.length());
+        for (int i = 0; i < s.length(); i++) out.a[out.n++] = (byte) s.charAt(i);
+    }
+
+    static boolean quote(final CharSequence s) {
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') return true;
+        }
+        return false;
+    }
+
+    // UTF-8 of s, quotes doubled if QUOTED, escaped if JSON.
+    // Unpaired surrogates are written as '?'.
+    static void chars(final Bytes out, final CharSequence s, final int mode) {
+        final int len = s.length();
+        out.room(len);
+        for (int i = 0; i < len; i++) {
+            final char c = s.charAt(i);
+            if (c < 0x80) {
+                if (mode == JSON && (c < 0x20 || c == '"' || c == '\\')) {
+                    escape(out, c);
+                    continue;
+                }
+                if (mode == QUOTED && c == '"') out.put('"');
+                out.put(c);
+            } else if (c < 0x800) {
+                out.put(0xC0 | c >> 6);
+                out.put(0x80 | c & 0x3F);
+            } else if (!Character.isSurrogate(c)) {
+                out.put(0xE0 | c >> 12);
+                out.put(0x80 | c >> 6 & 0x3F);
+                out.put(0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+                final int cp = Character.toCodePoint(c, s.charAt(++i));
+                out.put(0xF0 | cp >> 18);
+                out.put(0x80 | cp >> 12 & 0x3F);
+                out.put(0x80 | cp >> 6 & 0x3F);
+                out.put(0x80 | cp & 0x3F);
+            } else {
+                out.put('?');
+            }
+        }
+    }
+
+    static void escape(final Bytes out, final char c) {
+        out.put('\\');
+        switch (c) {
+            case '"', '\\' -> out.put(c);
+            case '\n' -> out.put('n');
+            case '\r' -> out.put('r');
+            case '\t' -> out.put('t');
+            default -> {
+                ascii(out, "u00");
+                out.put(Character.forDigit(c >> 4, 16));
+                out.put(Character.forDigit(c & 0xF, 16));
+            }
+        }
+    }
+
+    static byte[] key(final String name) {
+        final var out = new Bytes(name.length() + 3);
+        out.put('"');
+        chars(out, name, JSON);
+        ascii(out, "\":");
+        return Arrays.copyOf(out.a, out.n);
+    }
+
+    // The csv header, the columnar schema or the parquet magic.
+    private void header() {
+        if (format == Format.JSONL) return;
+        if (format == Format.PARQUET) {
+            row.put(Parquet.MAGIC);
+        } else if (format == Format.CSV) {
+            for (int c = 0; c < columns.length; c++) {
+                if (c > 0) row.put(',');
+                name(columns[c].name);
+            }
+            row.put('\n');
+        } else {
+            row.put(MAGIC);
+            int32(row, columns.length);
+            for (var column : columns) {
+                final var name = column.name.getBytes(StandardCharsets.UTF_8);
+                row.put(column.type.ordinal());
+                row.room(2);
+                row.a[row.n++] = (byte) name.length;
+                row.a[row.n++] = (byte) (name.length >>> 8);
+                row.put(name);
+            }
+        }
+        emit(row);
+        row.n = 0;
+    }
+
+    // A header field.
+    private void name(final String name) {
+        if (quote(name)) {
+            row.put('"');
+            chars(row, name, QUOTED);
+            row.put('"');
+        } else {
+            chars(row, name, PLAIN);
+        }
+    }
+
+    // Encodes and emits the rows of the current block.
+    private void block() {
+        if (parquet != null) {
+            parquet.rowGroup(block, nulls, rows, offset, row);
+            emit(row);
+            row.n = 0;
+            for (int c = 0; c < columns.length; c++) {
+                nulls[c].clear();
+                if (block[c] instanceof Strings strings) strings.bytes.n = 0;
+            }
+            rows = 0;
+            return;
+        }
+        int32(row, rows);
+        for (int c = 0; c < columns.length; c++) {
+            switch (columns[c].type) {
+                case LONG -> {
+                    final var v = (long[]) block[c];
+                    row.room(rows << 3);
+                    for (int i = 0; i < rows; i++, row.n += 8) I64.set(row.a, row.n, v[i]);
+                }
+                case INT -> {
+                    final var v = (int[]) block[c];
+                    row.room(rows << 2);
+                    for (int i = 0; i < rows; i++, row.n += 4) I32.set(row.a, row.n, v[i]);
+                }
+                case DOUBLE -> {
+                    final var v = (double[]) block[c];
+                    row.room(rows << 3);
+                    for (int i = 0; i < rows; i++, row.n += 8) F64.set(row.a, row.n, v[i]);
+                }
+                case STRING, ROWS -> {
+                    final var strings = (Strings) block[c];
+                    row.room(rows << 2);
+                    for (int i = 0; i < rows; i++, row.n += 4) I32.set(row.a, row.n, strings.end[i]);
+                    emit(row);
+                    row.n = 0;
+                    emit(strings.bytes);
+                    strings.bytes.n = 0;
+                }
+            }
+        }
+        emit(row);
+        row.n = 0;
+        rows = 0;
+    }
+
+    static void int32(final Bytes out, final int v) {
+        out.room(4);
+        I32.set(out.a, out.n, v);
+        out.n += 4;
+    }
+
+    // ----------------------------------------------
+    //  I/O.
+    // ----------------------------------------------
+    //
+    static final class Page {
+        final byte[] bytes;
+        int size;
+
+        Page() { this(PAGE_BYTES); }
+        Page(int capacity) { bytes = new byte[capacity]; }
+    }
+
+    // Ends the writer thread.
+    static final Page EOF = new Page(0);
+
+    // Copies b into pages, full pages are handed to the writer.
+    private void emit(final Bytes b) {
+        offset += b.n;
+        for (int off = 0; off < b.n; ) {
+            final int k = Math.min(b.n - off, PAGE_BYTES - page.size);
+            System.arraycopy(b.a, off, page.bytes, page.size, k);
+            page.size += k;
+            off += k;
+            if (page.size == PAGE_BYTES) flush();
+        }
+    }
+
+    // Waits for a free page if the writer is PAGES behind.
+    private void flush() {
+        if (failure != null) Throw.sneaky(failure);
+        full.add(page);
+        try { page = free.take(); }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            Throw.sneaky(new InterruptedIOException());
+        }
+        page.size = 0;
+    }
+
+    // The writer thread. After a failure the pages are only
+    // recycled, so that the caller is never blocked.
+    private void drain() {
+        try {
+            for (var p = full.take(); p != EOF; p = full.take()) {
+                if (failure == null) {
+                    try {
+                        final var buffer = ByteBuffer.wrap(p.bytes, 0, p.size);
+                        while (buffer.hasRemaining()) channel.write(buffer);
+                    } catch (IOException ex) {
+                        failure = ex;
+                    }
+                }
+                free.add(p);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // A partial row is dropped.
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            if (block != null) {
+                row.n = 0;
+                if (rows > 0) block();
+                if (parquet != null) parquet.footer(row);
+                else int32(row, 0);
+                emit(row);
+            }
+            if (page.size > 0) full.add(page);
+            full.add(EOF);
+            writer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } finally {
+            if (parquet != null) parquet.close();
+            channel.close();
+        }
+        if (failure != null) throw failure;
+    }
+}
@@ -0,0 +1,288 @@
+package magma.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static magma.exa.base.contract.Require.isTrue;
+
+// ------------------------------------------------------------
+//                           TOP K
+// ------------------------------------------------------------
+//
+// The K lines with the largest count of a line delimited
+// file, streamed instead of loaded into a map. The file
+// is cut into line aligned ranges (FileUtils.mapRanges)
+// that are memory mapped and scanned in parallel. Every
+// chunk keeps a bounded min-heap of K entries, a line
+// whose count does not beat the smallest entry of a full
+// heap, or of the result, is dropped before its text is
+// decoded. A chunk heap is merged into the result as soon
+// as its chunk is done, so memory is O(K) per running
+// chunk plus the result however large the input. Ties are
+// broken by text, the result is the same in whatever
+// order the chunks finish.
+//
+public final class TopK {
+
+    // ----------------------------------------------
+    //  CONSTANTS.
+    // ----------------------------------------------
+    //
+    public static final long CHUNK_BYTES = 64L << 20;
+
+    public record Entry(String text, int count) { }
+
+    // Orders by count, ties by text, largest first.
+    static final Comparator<Entry> DESCENDING =
+            Comparator.comparingInt(Entry::count).reversed().thenComparing(Entry::text);
+
+    // ----------------------------------------------
+    //  LINE FORMAT.
+    // ----------------------------------------------
+    //
+    // A line is given as the bytes [from, to) of a
+    // buffer, without the line break.
+    public interface LineParser {
+        // Count of the line, lines below 0 are skipped.
+        int count(ByteBuffer buf, int from, int to);
+        // Only called for lines that enter a heap.
+        String text(ByteBuffer buf, int from, int to);
+    }
+
+    // Lines that start with a list of ids, the count is
+    // the number of ids:
+    //   [1278365787628109825,1278356708142784512],https://...
+    //   {1341231895942549505, 1341232078734598144},rt @livewire7teen: ...
+    //   {"mentions":[1252344028097474560],"text":"..."}
+    // The text is the rest of the line after the list or
+    // the "text" field of a json line.
+    public static final LineParser ID_LIST = new LineParser() {
+
+        public int count(ByteBuffer buf, int from, int to) {
+            final int open = listStart(buf, from, to);
+            if (open < 0) return -1;
+            int result = 0;
+            boolean digit = false;
+            for (int i = open + 1; i < to; i++) {
+                final byte b = buf.get(i);
+                if (b == ']' || b == '}') return digit ? result + 1 : result;
+                if (b >= '0' && b <= '9') digit = true;
+                else if (b == ',' && digit) {
+                    result++;
+                    digit = false;
+                }
+            }
+            return -1;
+        }
+
+        public String text(ByteBuffer buf, int from, int to) {
+            if (to - from > 1 && buf.get(from) == '{' && buf.get(from + 1) == '"') {
+                final int field = indexOf(buf, from, to, "\"text\":\"");
+                if (field < 0) return "";
+                int end = field;
+                while (end < to && buf.get(end) != '"') end += buf.get(end) == '\\' ? 2 : 1;
+                return unescape(decode(buf, field, Math.min(end, to)));
+            }
+            int close = listStart(buf, from, to);
+            while (close < to && buf.get(close) != ']' && buf.get(close) != '}') close++;
+            final int start = close + 1 < to && buf.get(close + 1) == ',' ? close + 2 : close + 1;
+            return decode(buf, Math.min(start, to), to);
+        }
+
+        // Position of the bracket that opens the id list.
+        private int listStart(ByteBuffer buf, int from, int to) {
+            if (from >= to) return -1;
+            final byte first = buf.get(from);
+            if (first == '[') return from;
+            if (first != '{') return -1;
+            if (from + 1 < to && buf.get(from + 1) != '"') return from;
+            final int field = indexOf(buf, from, to, "\":[");
+            return field < 0 ? -1 : field - 1;
+        }
+    };
+
+    // ----------------------------------------------
+    //  HEAP.
+    // ----------------------------------------------
+    //
+    private final int k;
+    private final int[] counts;
+    private final String[] texts;
+    private int size;
+
+    public TopK(final int k) {
+        isTrue(k > 0);
+        this.k = k;
+        this.counts = new int[k];
+        this.texts = new String[k];
+    }
+
+    public int size() { return size; }
+
+    // Smallest count that may still enter the heap, a
+    // count equal to it only with a smaller text.
+    public int threshold() {
+        return size < k ? Integer.MIN_VALUE : counts[0];
+    }
+
+    public boolean offer(final int count, final String text) {
+        if (size < k) {
+            int i = size++;
+            counts[i] = count;
+            texts[i] = text;
+            while (i > 0) {
+                final int p = (i - 1) >>> 1;
+                if (!below(i, p)) break;
+                swap(i, p);
+                i = p;
+            }
+        }
+        else {
+            if (count < counts[0] || count == counts[0] && text.compareTo(texts[0]) >= 0) return false;
+            counts[0] = count;
+            texts[0] = text;
+            siftDown(0);
+        }
+        return true;
+    }
+
+    // Entry i goes before j out of the heap: the smaller
+    // count, of equal counts the larger text.
+    private boolean below(final int i, final int j) {
+        return counts[i] < counts[j] || counts[i] == counts[j] && texts[i].compareTo(texts[j]) > 0;
+    }
+
+    public TopK merge(final TopK other) {
+        for (int i = 0; i < other.size; i++) offer(other.counts[i], other.texts[i]);
+        return this;
+    }
+
+    // Entries by descending count.
+    public List<Entry> sorted() {
+        final var result = new ArrayList<Entry>(size);
+        for (int i = 0; i < size; i++) result.add(new Entry(texts[i], counts[i]));
+        result.sort(DESCENDING);
+        return result;
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            final int l = 2 * i + 1, r = l + 1;
+            int m = i;
+            if (l < size && below(l, m)) m = l;
+            if (r < size && below(r, m)) m = r;
+            if (m == i) return;
+            swap(i, m);
+            i = m;
+        }
+    }
+
+    private void swap(final int i, final int j) {
+        final int c = counts[i];
+        counts[i] = counts[j];
+        counts[j] = c;
+        final var t = texts[i];
+        texts[i] = texts[j];
+        texts[j] = t;
+    }
+
+    // ----------------------------------------------
+    //  SCAN.
+    // ----------------------------------------------
+    //
+    public static List<Entry> of(final Path file, final int k, final LineParser parser) throws IOException {
+        return of(file, k, parser, CHUNK_BYTES);
+    }
+
+    public static List<Entry> of(final Path file, final int k, final LineParser parser, final long chunkBytes)
+            throws IOException {
+        final var result = new TopK(k);
+        // Threshold of the result, read by the running chunks.
+        final var floor = new AtomicInteger(Integer.MIN_VALUE);
+        FileUtils.mapRanges(file, chunkBytes, (range, buf) -> {
+            final var heap = scan(buf, k, parser, floor);
+            synchronized (result) {
+                result.merge(heap);
+                floor.set(result.threshold());
+            }
+            return null;
+        });
+        return result.sorted();
+    }
+
+    static TopK scan(final MappedByteBuffer buf, final int k, final LineParser parser, final AtomicInteger floor) {
+        final var heap = new TopK(k);
+        final int limit = buf.limit();
+        int from = 0;
+        while (from < limit) {
+            int to = from;
+            while (to < limit && buf.get(to) != '\n') to++;
+            int end = to > from && buf.get(to - 1) == '\r' ? to - 1 : to;
+            final int count = parser.count(buf, from, end);
+            if (count >= 0 && count >= heap.threshold() && count >= floor.get())
+                heap.offer(count, parser.text(buf, from, end));
+            from = to + 1;
+        }
+        return heap;
+    }
+
+    // ----------------------------------------------
+    //  BYTES.
+    // ----------------------------------------------
+    //
+    static String decode(final ByteBuffer buf, final int from, final int to) {
+        final var bytes = new byte[to - from];
+        buf.get(from, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Position right after the first 'str' in [from, to).
+    static int indexOf(final ByteBuffer buf, final int from, final int to, final String str) {
+        final int n = str.length();
+        for (int i = from; i + n <= to; i++) {
+            int j = 0;
+            while (j < n && buf.get(i + j) == str.charAt(j)) j++;
+            if (j == n) return i + n;
+        }
+        return -1;
+    }
+
+    static String unescape(final String str) {
+        if (str.indexOf('\\') < 0) return str;
+        final var result = new StringBuilder(str.length());
+        for (int i = 0; i < str.length(); i++) {
+            final char ch = str.charAt(i);
+            if (ch != '\\' || i + 1 == str.length()) {
+                result.append(ch);
+                continue;
+            }
+            final char esc = str.charAt(++i);
+            switch (esc) {
+                case 'n' -> result.append('\n');
+                case 't' -> result.append('\t');
+                case 'r' -> result.append('\r');
+                case 'b' -> result.append('\b');
+                case 'f' -> result.append('\f');
+                case 'u' -> {
+                    if (i + 4 < str.length()) {
+                        result.append((char) Integer.parseInt(str.substring(i + 1, i + 5), 16));
+                        i += 4;
+                    }
+                }
+                default -> result.append(esc);
+            }
+        }
+        return result.toString();
+    }
+
+    public String toString() {
+        return "TopK{k=" + k + ", size=" + size + ", threshold=" + threshold() + '}';
+    }
+}
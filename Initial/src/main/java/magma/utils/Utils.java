@@ -2,6 +2,8 @@ package magma.utils;
 
 import com.google.common.collect.Lists;
 import graph.Network;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
 import it.unimi.dsi.fastutil.longs.Long2IntMap;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
 import it.unimi.dsi.fastutil.longs.LongList;
@@ -57,6 +59,17 @@ public enum Utils {
                 .collect(Collectors.toList());
     }
 
+    // Indices of the 'limit' largest non-zero counts,
+    // largest first, the int[] version of sortMap.
+    public static int[] sortCounts(int[] counts, int limit) {
+        final var result = new IntArrayList();
+        for (int i = 0; i < counts.length; i++)
+            if (counts[i] != 0) result.add(i);
+        final var ids = result.elements();
+        IntArrays.quickSort(ids, 0, result.size(), (a, b) -> Integer.compare(counts[b], counts[a]));
+        return Arrays.copyOf(ids, Math.min(limit, result.size()));
+    }
+
     public static Optional<String> createOptionalFromLocation(String str) {
         var new_str = str.replace("'","");
         new_str = new_str.startsWith(" ")? new_str.substring(1): new_str;
@@ -3,11 +3,21 @@ package main;
 
 import experiments.*;
 import magma.system.Log;
+import magma.system.Metrics;
+import magma.system.Profiler;
+import magma.utils.FileUtils;
+import model.Labels;
+import model.Loader;
+import model.Locator;
+import model.Store;
 import model.Transformer;
+import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.DefaultParser;
 import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Options;
 
+import java.nio.file.Path;
+
 import static magma.utils.StrUtils.Color.*;
 import static main.Config.*;
 
@@ -23,9 +33,33 @@ public class Cli {
         var options = new Options()
                 .addOption("h", "help", false, "print help")
                 .addOption("t", "transform", false, "transform files to LZ4")
-                .addOption("all", "all", false, "All available analysis");
+                .addOption("s", "store", false, "load the xz files into the tweet store")
+                .addOption("fs", "from-store", false, "run the analysis on the tweet store instead of the LZ4 files")
+                .addOption("all", "all", false, "All available analysis")
+                .addOption("p", "profile", false, "allocation and gc profile per stage")
+                .addOption("cn", "countries", false, "country network of all misinformation categories")
+                .addOption("ls", "labels", false, "split labeled edge list by misinformation category")
+                .addOption("net", "network", false, "components, communities and degree plot data of the retweet network")
+                .addOption("wc", "lines", false, "line count and size of the files given as arguments");
 
         var cmd = new DefaultParser().parse(options, args);
+        if (cmd.hasOption("p")) Profiler.enable();
+        Metrics.start(Metrics.REPORT_MILLIS);
+        try {
+            run(cmd, options);
+        } finally {
+            Metrics.stop();
+            if (Profiler.enabled()) Log.info("PROFILE\n" + Profiler.summary());
+            if (!Metrics.isEmpty()) {
+                Metrics.report();
+                Metrics.write(Path.of(Metrics.DEFAULT_FILE));
+            }
+        }
+    }
+
+    // The Profiler sections are only closed, hence "try".
+    @SuppressWarnings("try")
+    static void run(CommandLine cmd, Options options) throws Exception {
 
         if (cmd.hasOption("h")) {
             new HelpFormatter()
@@ -35,6 +69,17 @@ public class Cli {
             Log.info("transform files to LZ4");
             Transformer.run(DATA_FOLDER, DATA_COMPRESSED_FOLDER_REMOTE);
         }
+        if (cmd.hasOption("s")) {
+            Log.info("LOAD INTO STORE");
+            Locator.get.readJohannesLocations(LOCATIONS_FILE_1_LOC, LOCATIONS_FILE_1_SLV);
+            try (var ignored = Profiler.section("store");
+                 var raw = Store.open(STORE_FOLDER.resolve("raw"));
+                 var min = Store.open(STORE_FOLDER.resolve("min"))) {
+                new Loader().loadXzDump(DATA_FOLDER, raw, min);
+            }
+            Locator.get.exportUnresolvedLocations();
+            DONE();
+        }
         if (cmd.hasOption("hw")) {
             //var arg = cmd.getArgList();
             //var ar1 = Path.of(arg.get(0));
@@ -42,20 +87,67 @@ public class Cli {
             //System.out.println(boldBrightCyan("ARGUMENT WAS: " + ar1));
             DONE();
         }
+        if (cmd.hasOption("cn")) {
+            Log.info("COUNTRY NETWORK");
+            try (var ignored = Profiler.section("countries")) {
+                CountryNetwork.run(MISINFO_LOCATION_FOLDER, COUNTRY_DATA_FILE, MISINFO_NETWORK_FOLDER);
+            }
+            DONE();
+        }
+        if (cmd.hasOption("ls")) {
+            Log.info("SPLIT LABELED EDGE LIST");
+            Labels.read(MISINFO_LABELED_FILE).writeSplits(MISINFO_CATEGORY_FOLDER);
+            DONE();
+        }
+        if (cmd.hasOption("wc")) {
+            Log.info("LINE COUNT");
+            for (var arg : cmd.getArgList()) {
+                var stats = FileUtils.fileStats(Path.of(arg));
+                Log.info(stats.lines() + "\t" + stats.size() + "\t" + stats.path());
+            }
+            DONE();
+        }
+        if (cmd.hasOption("net")) {
+            Log.info("RETWEET NETWORK");
+            final var timeline = timeline(cmd);
+            try (var ignored = Profiler.section("network")) {
+                RetweetNetwork.run(timeline, RESULT_FOLDER_REMOTE);
+            }
+            DONE();
+        }
         if (cmd.hasOption("all")) {
             Log.info("RUN ALL ANALYSIS");
-            Log.info("START WITH TIMELINE");
-            var timeline = new Timeline(DATA_COMPRESSED_FOLDER_REMOTE);
+            final var timeline = timeline(cmd);
             Log.info("START WITH TWEETS");
-            Tweets.run(timeline, RESULT_FOLDER_REMOTE);
+            try (var ignored = Profiler.section("tweets")) {
+                Tweets.run(timeline, RESULT_FOLDER_REMOTE);
+            }
             Log.info("START WITH HASHTAGS");
-            Hashtags.run(timeline, RESULT_FOLDER_REMOTE);
+            try (var ignored = Profiler.section("hashtags")) {
+                Hashtags.run(timeline, RESULT_FOLDER_REMOTE);
+            }
             Log.info("START WITH USERS");
-            Users.run(timeline, RESULT_FOLDER_REMOTE);
+            try (var ignored = Profiler.section("users")) {
+                Users.run(timeline, RESULT_FOLDER_REMOTE);
+            }
             Log.info("START WITH LOCATIONS");
-            Locations.run(timeline, RESULT_FOLDER_REMOTE);
+            try (var ignored = Profiler.section("locations")) {
+                Locations.run(timeline, RESULT_FOLDER_REMOTE);
+            }
             DONE();
         }
     }
+
+    // From the LZ4 files, or the tweet store with -fs.
+    @SuppressWarnings("try")
+    static Timeline timeline(CommandLine cmd) throws Exception {
+        Log.info("START WITH TIMELINE");
+        try (var ignored = Profiler.section("timeline")) {
+            if (!cmd.hasOption("fs")) return new Timeline(DATA_COMPRESSED_FOLDER_REMOTE);
+            try (var min = Store.open(STORE_FOLDER.resolve("min"))) {
+                return new Timeline(min);
+            }
+        }
+    }
 }
 
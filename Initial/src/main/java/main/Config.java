@@ -24,6 +24,8 @@ public class Config {
 //    public static final Path UNRESOLVED_LOCATIONS_FILE = RESULT_FOLDER_REMOTE.resolve("unresolved_locations");
     public static Path DATA_FOLDER = Path.of("/global/D1/projects/umod/dipp/Test/data");
     public static Path DATA_COMPRESSED_FOLDER_REMOTE = Path.of("/global/D1/projects/umod/dipp/Test/compressed_01");
+    // Raw and minimized tweets of Loader.loadXzDump.
+    public static Path STORE_FOLDER = Path.of("/global/D1/projects/umod/dipp/Test/store_01");
     //public static Path DATA_COMPRESSED_FOLDER_REMOTE = Path.of("/global/D1/homes/daniels/ukraine/compressed/");
     //public static final Path COMPRESSED_DATA_FILE = DATA_FOLDER.resolve("out");
 //    public static final Path UNRESOLVED_LOCATIONS_FILE = LOCATION_FOLDER.resolve("frequentplaces120000.txt");
@@ -32,4 +34,11 @@ public class Config {
     public static final Path RESULT_FOLDER_REMOTE = Path.of("/global/D1/projects/umod/dipp/Test/result_01");
     public static final Path UNRESOLVED_LOCATIONS_FILE = RESULT_FOLDER_REMOTE.resolve("unresolved_locations_01");
 
+    static final Path MISINFO_FOLDER = Path.of("/global/D1/projects/umod/dipp/Misinformation_Dataset");
+    public static final Path MISINFO_LOCATION_FOLDER = MISINFO_FOLDER.resolve("Result/location_with_value");
+    public static final Path MISINFO_NETWORK_FOLDER = MISINFO_FOLDER.resolve("Result/network");
+    public static final Path MISINFO_LABELED_FILE = MISINFO_FOLDER.resolve("after_first_filter.csv");
+    public static final Path MISINFO_CATEGORY_FOLDER = MISINFO_FOLDER.resolve("Result/category");
+    public static final Path COUNTRY_DATA_FILE = Path.of("/home/dipp/Github/Master-Thesis-dipp/All_Data_Files/Conuntry_Continent/Country_Data_V2_Latest.csv");
+
 }
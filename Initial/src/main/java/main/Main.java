@@ -1,6 +1,9 @@
 package main;
 
 import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import magma.utils.Csv;
+import magma.utils.Csv.Column;
+import magma.utils.Csv.Type;
 import magma.utils.FileUtils;
 import model.Locator;
 
@@ -42,14 +45,8 @@ public class Main {
     static void hashtags() throws IOException {
         var map = new Object2IntOpenHashMap<String>();
         Path src = Path.of("/global/D1/projects/umod/dipp/Test/tags.csv");
-        var reader = FileUtils.newBufferedReader(src);
-
-        String line = "";
-        while ((line = reader.readLine()) != null) {
-            var split = line.split(",");
-            var tag = split[1];
-            map.addTo(tag.toLowerCase(Locale.ROOT), 1);
-        }
+        var tags = Csv.read(src, false, Csv.CHUNK_BYTES, Column.at(1, "tag", Type.STRING)).strings("tag");
+        for (var tag : tags) map.addTo(tag.toLowerCase(Locale.ROOT), 1);
         map.object2IntEntrySet()
                 .stream()
                 .sorted((e1, e2) -> Integer.compare(e2.getIntValue(), e1.getIntValue()))
@@ -0,0 +1,203 @@
+package model;
+
+import magma.exa.data.Array;
+import magma.exa.data.buffer.Buffer.Chunk;
+import magma.exa.data.buffer.Buffer.I32Chunk;
+import magma.exa.data.buffer.Buffer.I64Chunk;
+import magma.exa.data.compute.Fused;
+import magma.exa.data.misc.Sorting;
+import model.Locator.Location;
+import model.Model.Status;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+import static magma.exa.base.contract.Require.isTrue;
+
+// Tweets column by column in chunk buffers instead of one
+// Status per tweet: ids, dates and counts as primitives,
+// text, hashtags and locations as references. The buffers
+// grow without copying, so a worker appends to its own
+// Columns (local()) and concat() copies them chunk-wise
+// into one at the end. status(i) materializes a row again.
+public final class Columns {
+
+    static final int RETWEET = 1;
+    // Marks a missing date.
+    static final long NO_DATE = Long.MIN_VALUE;
+
+    public final I64Chunk twtId, usrId, rtwId, rtuId, date;
+    public final I32Chunk retweetCnt, flags;
+    public final Chunk<String> txt;
+    public final Chunk<Set<String>> hashtags;
+    public final Chunk<int[]> tags;
+    public final Chunk<Location> loc;
+
+    public Columns() { this(1 << 16); }
+
+    // 'capacity' is the size of the first chunk.
+    public Columns(int capacity) {
+        twtId = I64Chunk.make(capacity);
+        usrId = I64Chunk.make(capacity);
+        rtwId = I64Chunk.make(capacity);
+        rtuId = I64Chunk.make(capacity);
+        date = I64Chunk.make(capacity);
+        retweetCnt = I32Chunk.make(capacity);
+        flags = I32Chunk.make(capacity);
+        txt = Chunk.make(capacity);
+        hashtags = Chunk.make(capacity);
+        tags = Chunk.make(capacity);
+        loc = Chunk.make(capacity);
+    }
+
+    public long size() { return twtId.count(); }
+
+    public boolean isEmpty() { return twtId.isEmpty(); }
+
+    // Appends one row, the fields of a Status.
+    public Columns add(long twtId, long usrId, long rtwId, long rtuId, long date, int retweetCnt,
+                       boolean isRetweet, String txt, Set<String> hashtags, int[] tags, Location loc) {
+        this.twtId.insert(twtId);
+        this.usrId.insert(usrId);
+        this.rtwId.insert(rtwId);
+        this.rtuId.insert(rtuId);
+        this.date.insert(date);
+        this.retweetCnt.insert(retweetCnt);
+        this.flags.insert(isRetweet ? RETWEET : 0);
+        this.txt.insert(txt);
+        this.hashtags.insert(hashtags);
+        this.tags.insert(tags);
+        this.loc.insert(loc);
+        return this;
+    }
+
+    // Appends all rows of 'other'.
+    public Columns addAll(Columns other) {
+        isTrue(other != this);
+        twtId.insert(other.twtId);
+        usrId.insert(other.usrId);
+        rtwId.insert(other.rtwId);
+        rtuId.insert(other.rtuId);
+        date.insert(other.date);
+        retweetCnt.insert(other.retweetCnt);
+        flags.insert(other.flags);
+        txt.insert(other.txt);
+        hashtags.insert(other.hashtags);
+        tags.insert(other.tags);
+        loc.insert(other.loc);
+        return this;
+    }
+
+    public Columns clear() {
+        twtId.clear();
+        usrId.clear();
+        rtwId.clear();
+        rtuId.clear();
+        date.clear();
+        retweetCnt.clear();
+        flags.clear();
+        txt.clear();
+        hashtags.clear();
+        tags.clear();
+        loc.clear();
+        return this;
+    }
+
+    public Status status(long i) {
+        final var res = new Status(twtId.at(i), txt.at(i));
+        res.usrId = usrId.at(i);
+        res.rtwId = rtwId.at(i);
+        res.rtuId = rtuId.at(i);
+        final long dte = date.at(i);
+        res.date = dte == NO_DATE ? null : new Date(dte);
+        res.retweetCnt = retweetCnt.at(i);
+        res.isRetweet = (flags.at(i) & RETWEET) != 0;
+        res.hashtags = hashtags.at(i);
+        res.tags = tags.at(i);
+        res.loc = loc.at(i);
+        return res;
+    }
+
+    // All rows ordered by date (stable, missing dates first):
+    // an argsort of the date column reorders every column,
+    // one column at a time. The argsort sorts the dates too.
+    public Columns sortByDate() {
+        final var dates = date.toArray();
+        final var order = Array.argsortUpdate(dates, Sorting.ASCENDING);
+        final var res = new Columns();
+        res.twtId.insert(Array.permute(twtId.toArray(), order));
+        res.usrId.insert(Array.permute(usrId.toArray(), order));
+        res.rtwId.insert(Array.permute(rtwId.toArray(), order));
+        res.rtuId.insert(Array.permute(rtuId.toArray(), order));
+        res.date.insert(dates);
+        res.retweetCnt.insert(Array.permute(retweetCnt.toArray(), order));
+        res.flags.insert(Array.permute(flags.toArray(), order));
+        gather(res.txt, txt, order);
+        gather(res.hashtags, hashtags, order);
+        gather(res.tags, tags, order);
+        gather(res.loc, loc, order);
+        return res;
+    }
+
+    // The arrays of a Chunk<A> are Object[] at runtime, so
+    // references are gathered row by row.
+    private static <A> void gather(final Chunk<A> dst, final Chunk<A> src, final int[] order) {
+        for (int i : order) dst.insert(src.at(i));
+    }
+
+    // ----------------------------------------------
+    //  SCANS.
+    // ----------------------------------------------
+
+    // The streams split along the chunks of the column.
+
+    public LongStream dates(boolean parallel) {
+        return StreamSupport.longStream(date.spliterator(), parallel).filter(d -> d != NO_DATE);
+    }
+
+    public IntStream flags(boolean parallel) {
+        return StreamSupport.intStream(flags.spliterator(), parallel);
+    }
+
+    public long retweets() {
+        return Fused.of(flags).parallel().filter(f -> (f & RETWEET) != 0).count();
+    }
+
+    // ----------------------------------------------
+    //  WORKERS.
+    // ----------------------------------------------
+
+    private static final ConcurrentLinkedQueue<Columns> WORKERS = new ConcurrentLinkedQueue<>();
+    // Small first chunk, there is one per thread of Executor.
+    private static final ThreadLocal<Columns> LOCAL = ThreadLocal.withInitial(() -> {
+        final var columns = new Columns(1 << 12);
+        WORKERS.add(columns);
+        return columns;
+    });
+
+    // The Columns of the calling thread.
+    public static Columns local() { return LOCAL.get(); }
+
+    // Moves the rows of all local() Columns into one, each
+    // worker is cleared right after it has been copied. Only
+    // once the workers are done, e.g. after their futures.
+    public static Columns concat() {
+        final var result = new Columns();
+        for (var worker : WORKERS) {
+            result.addAll(worker);
+            worker.clear();
+        }
+        return result;
+    }
+
+    public static Columns concat(Collection<Columns> parts) {
+        final var result = new Columns();
+        for (var part : parts) result.addAll(part);
+        return result;
+    }
+}
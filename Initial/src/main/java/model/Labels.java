@@ -0,0 +1,277 @@
+package model;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import magma.exa.data.misc.Kernels;
+import magma.system.Log;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static magma.exa.base.contract.Require.isTrue;
+import static magma.utils.FileUtils.*;
+
+// Misinformation labels of the labeled edge list. Every
+// contact carries one or more packed longs with a 2 bit
+// level (0..3) per conspiracy category, category k sits
+// at bits [2k, 2k+1] (see TEST-ZONE/test.java). The store
+// keeps the packed longs as they are in one primitive
+// column and evaluates predicates on whole words: for a
+// word x, lo = x & LO and hi = (x >>> 1) & LO hold the
+// low and high bit of every category at its even bit, so
+// "== 3" is hi & lo, ">= 2" is hi and "== 2" is hi & ~lo
+// for all categories at once.
+public class Labels {
+
+    public static final int CATEGORIES = 9;
+    public static final int BITS = 2;
+
+    // 01 repeated for every category.
+    static final long LO;
+    static {
+        long lo = 0L;
+        for (int k = 0; k < CATEGORIES; k++) lo |= 1L << (k * BITS);
+        LO = lo;
+    }
+
+    // ----------------------------------------------
+    //  ENCODING.
+    // ----------------------------------------------
+
+    public static long encode(short[] levels) {
+        isTrue(levels.length <= CATEGORIES);
+        long result = 0L;
+        for (int k = 0; k < levels.length; k++)
+            result |= (long) (levels[k] & 3) << (k * BITS);
+        return result;
+    }
+
+    public static short[] decode(long packed) {
+        var result = new short[CATEGORIES];
+        for (int k = 0; k < CATEGORIES; k++)
+            result[k] = (short) level(packed, k);
+        return result;
+    }
+
+    public static int level(long packed, int category) {
+        return (int) (packed >>> (category * BITS)) & 3;
+    }
+
+    // ----------------------------------------------
+    //  PREDICATES.
+    // ----------------------------------------------
+
+    public enum Level {
+        EQ_1 { long fields(long x) { return ~(x >>> 1) & x & LO; } },
+        EQ_2 { long fields(long x) { return (x >>> 1) & ~x & LO; } },
+        EQ_3 { long fields(long x) { return (x >>> 1) & x & LO; } },
+        GE_2 { long fields(long x) { return (x >>> 1) & LO; } };
+
+        // Bit 2k is set iff category k satisfies the level.
+        abstract long fields(long packed);
+
+        public boolean test(long packed, int category) {
+            return (fields(packed) & (1L << (category * BITS))) != 0;
+        }
+
+        public boolean any(long packed) {
+            return fields(packed) != 0;
+        }
+    }
+
+    // ----------------------------------------------
+    //  COLUMNS.
+    // ----------------------------------------------
+
+    final LongArrayList src = new LongArrayList();
+    final LongArrayList tgt = new LongArrayList();
+    final IntArrayList contacts = new IntArrayList();
+    // types of row r are [typeOff[r], typeOff[r + 1])
+    final IntArrayList typeOff = new IntArrayList(new int[] { 0 });
+    final LongArrayList types = new LongArrayList();
+
+    public int size() { return src.size(); }
+    public long src(int row) { return src.getLong(row); }
+    public long tgt(int row) { return tgt.getLong(row); }
+    public int contacts(int row) { return contacts.getInt(row); }
+    public int typeCount(int row) { return typeOff.getInt(row + 1) - typeOff.getInt(row); }
+    public long type(int row, int i) { return types.getLong(typeOff.getInt(row) + i); }
+
+    public void add(long i, long j, int contactCnt, long... packed) {
+        src.add(i);
+        tgt.add(j);
+        contacts.add(contactCnt);
+        types.addElements(types.size(), packed);
+        typeOff.add(types.size());
+    }
+
+    // Number of types of 'row' for which 'category'
+    // satisfies 'level', this is what the Python
+    // split scripts wrote as 'contacts'.
+    public int count(int row, Level level, int category) {
+        final long bit = 1L << (category * BITS);
+        final var t = types.elements();
+        int result = 0;
+        for (int i = typeOff.getInt(row), end = typeOff.getInt(row + 1); i < end; i++)
+            if ((level.fields(t[i]) & bit) != 0) result++;
+        return result;
+    }
+
+    // Rows that have at least one type for which
+    // 'category' satisfies 'level'.
+    public int[] select(Level level, int category) {
+        final long bit = 1L << (category * BITS);
+        return select(level, bit);
+    }
+
+    // Rows that have at least one type for which
+    // any category satisfies 'level'.
+    public int[] selectAny(Level level) {
+        return select(level, LO);
+    }
+
+    private int[] select(Level level, long mask) {
+        final var result = new IntArrayList();
+        final var t = types.elements();
+        final var off = typeOff.elements();
+        for (int r = 0; r < size(); r++) {
+            for (int i = off[r]; i < off[r + 1]; i++) {
+                if ((level.fields(t[i]) & mask) != 0) {
+                    result.add(r);
+                    break;
+                }
+            }
+        }
+        return result.toIntArray();
+    }
+
+    // Number of types per category that satisfy 'level'
+    // over the whole column: the fields of every word,
+    // then one count per category bit.
+    public int[] histogram(Level level) {
+        final var t = types.elements();
+        final int n = types.size();
+        final var fields = new long[n];
+        for (int i = 0; i < n; i++) fields[i] = level.fields(t[i]);
+        return Kernels.bitCounts(fields, 0, n, BITS, new int[CATEGORIES]);
+    }
+
+    // ----------------------------------------------
+    //  LOAD.
+    // ----------------------------------------------
+
+    // Reads the filtered edge list: i,j,contacts[,...],[t1,t2,...]
+    // The type list is the last column and may be empty. Blank
+    // lines are skipped, a line with fewer columns than the
+    // header is rejected.
+    public static Labels read(Path file) throws IOException {
+        var result = new Labels();
+        try (var reader = newBufferedReader(file)) {
+            final var first = reader.readLine();
+            if (first == null) throw new IllegalArgumentException("NO HEADER IN " + file);
+            var header = first.split(",");
+            final int typesCol = header.length - 1;
+            if (typesCol < 3 || !header[typesCol].equals("types"))
+                throw new IllegalArgumentException("NO i,j,contacts,...,types HEADER IN " + file + ": " + first);
+            final var buf = new LongArrayList();
+            String line;
+            long lineNo = 1;
+            while ((line = reader.readLine()) != null) {
+                lineNo++;
+                if (line.isBlank()) continue;
+                int pos = 0;
+                final var cols = new String[typesCol];
+                for (int c = 0; c < typesCol; c++) {
+                    final int end = line.indexOf(',', pos);
+                    if (end < 0)
+                        throw new IllegalArgumentException("SHORT LINE " + lineNo + " IN " + file + ": " + line);
+                    cols[c] = line.substring(pos, end);
+                    pos = end + 1;
+                }
+                buf.clear();
+                long val = 0L;
+                boolean digit = false;
+                for (int i = pos; i < line.length(); i++) {
+                    final char ch = line.charAt(i);
+                    if (ch >= '0' && ch <= '9') {
+                        val = val * 10 + (ch - '0');
+                        digit = true;
+                    }
+                    else if (digit) {
+                        buf.add(val);
+                        val = 0L;
+                        digit = false;
+                    }
+                }
+                if (digit) buf.add(val);
+                result.add(Long.parseLong(cols[0]),
+                           Long.parseLong(cols[1]),
+                           Integer.parseInt(cols[2]),
+                           buf.toLongArray());
+            }
+        }
+        Log.info("LABELS: " + result.size() + " ROWS, " + result.types.size() + " TYPES");
+        return result;
+    }
+
+    // ----------------------------------------------
+    //  SPLIT.
+    // ----------------------------------------------
+
+    // Writes cat_XX_<level>.csv for every category and
+    // cat_all_<level>.csv for every level in one scan.
+    // Replaces filtered_file_to_separate(_Only_2).py.
+    public void writeSplits(Path dir) throws IOException {
+        final var levels = new Level[] { Level.EQ_3, Level.GE_2, Level.EQ_2 };
+        final var suffix = new String[] { "only_3", "only_2_or_3", "only_2" };
+        final int L = levels.length;
+        for (int l = 0; l < L; l++)
+            Log.info("LABELS " + suffix[l] + ": " + Arrays.toString(histogram(levels[l])));
+        final var writers = new BufferedWriter[L][CATEGORIES + 1];
+        try {
+            for (int l = 0; l < L; l++) {
+                for (int k = 0; k <= CATEGORIES; k++) {
+                    var name = (k == CATEGORIES ? "all" : String.format("%02d", k + 1));
+                    var file = dir.resolve("cat_" + name + "_" + suffix[l] + ".csv");
+                    Files.deleteIfExists(file);
+                    writers[l][k] = newBufferedWriter(newFile(file), false);
+                    writers[l][k].write("i,j,contacts\n");
+                }
+            }
+            final var t = types.elements();
+            final var off = typeOff.elements();
+            final var cnt = new int[L][CATEGORIES + 1];
+            for (int r = 0; r < size(); r++) {
+                for (int l = 0; l < L; l++) Arrays.fill(cnt[l], 0);
+                for (int i = off[r]; i < off[r + 1]; i++) {
+                    for (int l = 0; l < L; l++) {
+                        long fields = levels[l].fields(t[i]);
+                        if (fields == 0) continue;
+                        cnt[l][CATEGORIES]++;
+                        while (fields != 0) {
+                            cnt[l][Long.numberOfTrailingZeros(fields) / BITS]++;
+                            fields &= fields - 1;
+                        }
+                    }
+                }
+                final var prefix = src.getLong(r) + "," + tgt.getLong(r) + ",";
+                for (int l = 0; l < L; l++) {
+                    for (int k = 0; k <= CATEGORIES; k++) {
+                        if (cnt[l][k] == 0) continue;
+                        writers[l][k].write(prefix);
+                        writers[l][k].write(Integer.toString(cnt[l][k]));
+                        writers[l][k].write('\n');
+                    }
+                }
+            }
+        }
+        finally {
+            for (var row : writers)
+                for (var writer : row)
+                    if (writer != null) writer.close();
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package model;
 
-import io.netty.util.internal.ConcurrentSet;
 import magma.system.Executor;
 import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
 import org.bson.RawBsonDocument;
@@ -11,27 +10,26 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.file.Path;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.nio.file.Files.isDirectory;
 import static magma.exa.base.contract.Require.isTrue;
 import static magma.utils.FileUtils.recursiveFiles;
 
-// This is only to give an example
-// to Dip and will be deleted later
-// on.
-// What we want to do here is we
-// want to connect the new Loader
-// (old transformer) to the store.
-// Thus, we have to get rid of the
-// model the Transformer is using
-// right now and inject the RawBson
-// directly to our store.
+// Connects the new Loader (old
+// transformer) to the Store: the
+// RawBson of the xz dumps goes
+// directly into a raw and a min
+// Store, so the dumps are read
+// once and the analysis reads the
+// tweets from the min Store.
 public class Loader {
 
     private final AtomicInteger count;
@@ -45,7 +43,7 @@ public class Loader {
     // THIS READS THE FILE (ONLY ONE!!!)
     private CompletableFuture<List<RawBsonDocument>>
     loadMichaelBatch(Path _path) {
-        System.out.println("DEBUG: LOAD PATH " + _path);
+        Log.debug(() -> "LOAD PATH " + _path);
         return CompletableFuture.supplyAsync(() -> {
             final var docs = new ArrayList<RawBsonDocument>(1_000_000);
             int cnt = 0;
@@ -72,39 +70,54 @@ public class Loader {
         }, Executor.fixed);
     }
 
-//    // LOAD INTO STORE
-//    public Loader loadXzDump(Path folder) throws InterruptedException {
-//        isTrue(isDirectory(folder)); Log.info("LOAD XZ");
-//        xzFiles.addAll(recursiveFiles(folder, "xz"));
-//        final var futures = new ConcurrentSet<CompletableFuture>();
-//        final var bson = Collections.synchronizedList(new ArrayList<RawBsonDocument>(100_000_000));
-//        for (var path : xzFiles) {
-//            System.out.println("THIS IS A ANOTHER TEST");
-//            int err = 0;
-//            RETRY:
-//            if (futures.size() < 100) {
-//                var f = loadMichaelBatch(path);
-//                futures.add(f);
-//                f.thenAccept(bson::addAll);
-//                f.thenRun(() -> futures.remove(f));
-//            }
-//            else {
-//                System.out.println("WAIT " + futures.size() + " ERROR: " + err++);
-//                Thread.sleep(10_000);
-//                break RETRY;
-//            }
-//        }
-//        System.out.println("FUTURES SET UP");
-//        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
-//        System.out.println("START TO LOAD STUFF INTO STORE " + bson.size());
-//        for (var rawBsonDocument : bson) {
-//            Store.get.store(rawBsonDocument);
-//        }
-//        System.out.println("===============================");
-//        System.out.println(Store.get);
-//        System.out.println("===============================");
-//        return this;
-//    }
+    // Files read at the same time, like loadXzJson.
+    static final int MAX_IN_FLIGHT = 100;
+
+    // LOAD INTO STORE
+    // Every tweet of the xz files goes to 'raw' as it is and
+    // to 'min' as its minimized tweet, both by tweet id, a
+    // task per file, at most MAX_IN_FLIGHT of them queued or
+    // running. The hashtag dictionary is written next to the
+    // minimized tweets, like next to the lz4 files.
+    public Loader loadXzDump(Path folder, Store raw, Store min) throws IOException {
+        isTrue(isDirectory(folder)); Log.info("LOAD XZ INTO STORE");
+        xzFiles.addAll(recursiveFiles(folder, "xz"));
+        final var futures = new ArrayList<CompletableFuture<Void>>();
+        final var inFlight = new Semaphore(MAX_IN_FLIGHT);
+        for (var path : xzFiles) {
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            futures.add(CompletableFuture.runAsync(() -> {
+                final var format = new SimpleDateFormat("EEE MMM dd HH:mm:ss Z yyyy");
+                int cnt = 0;
+                try (var reader = new BufferedReader(new InputStreamReader(
+                        new XZCompressorInputStream(new FileInputStream(path.toFile()), false)))) {
+                    for (var line = reader.readLine(); line != null; line = reader.readLine()) {
+                        final var doc = RawBsonDocument.parse(line);
+                        final var status = Transformer.toMinTweet(doc, format);
+                        raw.store(status.twtId, doc);
+                        min.store(status.twtId, RawBsonDocument.parse(status.toJson().toJSONString()));
+                        cnt++;
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                final int all = count.addAndGet(cnt);
+                Log.progress("xz-store", () -> "STORED " + all + " TWEETS");
+            }, Executor.fixed).whenComplete((v, e) -> inFlight.release()));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        raw.flush();
+        min.flush();
+        TagDictionary.HASHTAGS.write(min.dir().resolve(Transformer.HASHTAG_DICTIONARY));
+        Log.info(raw);
+        Log.info(min);
+        return this;
+    }
 
     public List<RawBsonDocument> loadXzJson(Path folder) throws InterruptedException {
         isTrue(isDirectory(folder)); Log.info("LOAD XZ");
@@ -112,7 +125,6 @@ public class Loader {
         final var futures = ConcurrentHashMap.newKeySet();
         final var bson = Collections.synchronizedList(new ArrayList<RawBsonDocument>(100_000_000));
         for (var path : xzFiles) {
-            System.out.println("THIS IS A ANOTHER TEST");
             int err = 0;
             RETRY:
             if (futures.size() < 100) {
@@ -122,7 +134,7 @@ public class Loader {
                 f.thenRun(() -> futures.remove(f));
             }
             else {
-                System.out.println("WAIT " + futures.size() + " ERROR: " + err++);
+                Log.info("WAIT " + futures.size() + " ERROR: " + err++);
                 Thread.sleep(10_000);
                 break RETRY;
             }
@@ -1,8 +1,9 @@
 package model;
 
-import magma.concurrent.NBHashMap;
+import magma.concurrent.NBHashMapUtf8;
 import magma.exa.value.tuple.Tuple;
 import magma.exa.value.tuple.Tuple2;
+import magma.system.Metrics;
 import magma.utils.FileUtils;
 import org.bson.BsonDocument;
 import org.json.simple.JSONObject;
@@ -10,6 +11,7 @@ import org.json.simple.JSONObject;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -28,7 +30,8 @@ public enum Locator {
 
     private final Map<String, Location> locations = new HashMap<>();
 
-    private final NBHashMap<String, Integer> unresolvedLocations = new NBHashMap<>();
+    // Counts per unresolved location, kept off heap.
+    private final NBHashMapUtf8 unresolvedLocations = new NBHashMapUtf8();
 
     public static class Location {
         public final Optional<String> countryCode;
@@ -83,27 +86,30 @@ public enum Locator {
         }
     }
 
+    // Only counted, the time of resolve is part of the
+    // "transform" histogram of the ingest.
+    private static final Metrics.Stage LOCATE = Metrics.stage("locate");
+    private static final Metrics.Counter HIT = LOCATE.counter("resolved");
+    private static final Metrics.Counter MISS = LOCATE.counter("unresolved");
+
     public Optional<Location> resolve(String writtenLocationFromUser) {
         var location = locations.get(writtenLocationFromUser.toLowerCase());
         if (isNull(location)) {
-            if (!unresolvedLocations.containsKey(writtenLocationFromUser)) {
-                unresolvedLocations.put(writtenLocationFromUser, 1);
-            }
-            else {
-                unresolvedLocations.computeIfPresent(writtenLocationFromUser, (key, val) -> val + 1);
-            }
+            unresolvedLocations.addTo(writtenLocationFromUser, 1);
+            MISS.increment();
             return Optional.empty();
         }
         else {
+            HIT.increment();
             return Optional.of(location);
         }
     }
 
     public List<Tuple2<String, Integer>> unresolvedLocations() {
-        return unresolvedLocations.entrySet().stream()
-                .sorted((e1, e2) -> Integer.compare(e2.getValue(), e1.getValue()))
-                .map(e -> Tuple.of(e.getKey(), e.getValue()))
-                .collect(Collectors.toList());
+        final var result = new ArrayList<Tuple2<String, Integer>>(unresolvedLocations.size());
+        unresolvedLocations.forEach((key, cnt) -> result.add(Tuple.of(key, (int) cnt)));
+        result.sort((e1, e2) -> Integer.compare(e2._2, e1._2));
+        return result;
     }
 
     public void exportUnresolvedLocations() throws IOException {
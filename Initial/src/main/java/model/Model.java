@@ -17,6 +17,8 @@ public enum Model {
         public final static Location emptyLoc = new Location("","", "", "");
         public boolean isRetweet = false;
         public Set<String> hashtags;
+        // sorted TagDictionary.HASHTAGS ids of hashtags
+        public int[] tags = TagDictionary.EMPTY;
         public long twtId, usrId;
         public long rtwId, rtuId;
         public int retweetCnt;
@@ -0,0 +1,734 @@
+package model;
+
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import magma.system.Executor;
+import magma.system.Log;
+import magma.system.Metrics;
+import org.bson.RawBsonDocument;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static magma.exa.base.contract.Require.isTrue;
+import static magma.utils.BsonUtils.int64;
+
+// An embedded, append-only store of bson documents by tweet
+// id in one folder, so that the xz dumps are read and parsed
+// once and the analysis reads the documents from here.
+//
+// Records are appended to the active segment seg-N.dat
+//
+//     int:length long:id int:crc32 bytes
+//
+// which is sealed at SEGMENT_BYTES: its index seg-N.idx
+//
+//     long:segment bytes int:records { long:id long:offset }
+//
+// is written and a new segment started. store() only queues
+// the document, the committer thread of the store writes
+// what is queued as one batch, forces it to disk once and then
+// completes the futures of the batch (group commit). A later
+// record of an id replaces the earlier one.
+//
+// The primary index id -> (segment, offset) is in memory,
+// rebuilt on open() from the .idx files of the sealed and by
+// a scan of the other segments, a torn record at the end of
+// a segment is cut off. Sealed segments with less than half
+// of their records live are rewritten by the compaction
+// thread of the store, under the same number, so the order of the segments stays
+// the order of the writes.
+//
+//     try (var store = Store.open(folder)) {
+//         for (var doc : docs) store.store(doc);
+//         store.flush();
+//         var doc = store.get(id);
+//     }
+//
+public final class Store implements Closeable {
+
+    // ----------------------------------------------
+    //  CONSTANTS.
+    // ----------------------------------------------
+    //
+    public static final long SEGMENT_BYTES = 1L << 28;
+    // Queued records, store() blocks beyond.
+    static final int QUEUE = 1 << 16;
+    // Records per commit at most.
+    static final int BATCH = 1 << 12;
+    static final int HEADER = 16;
+    // Sealed segments below are compacted.
+    static final double LIVE_RATIO = 0.5;
+
+    // Location of a record: segment << 40 | offset.
+    static final int OFFSET_BITS = 40;
+    static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+    static final long NONE = -1;
+
+    private static final Metrics.Stage STORE = Metrics.stage("store");
+    private static final Metrics.Histogram COMMIT = STORE.histogram("commit");
+    private static final Metrics.Meter RECORDS = STORE.meter("records");
+    private static final Metrics.Meter BYTES = STORE.meter("bytes");
+
+    // ----------------------------------------------
+    //  STATE.
+    // ----------------------------------------------
+    //
+    // A queued record, a flush marker if doc is null.
+    record Pending(long id, RawBsonDocument doc, CompletableFuture<Void> done) {}
+
+    static final class Segment {
+        final int number;
+        FileChannel channel;
+        long size;
+        int records, live;
+        boolean sealed;
+
+        Segment(int number, FileChannel channel) {
+            this.number = number;
+            this.channel = channel;
+        }
+    }
+
+    final Path dir;
+    // Guards index and segments, readers share it.
+    final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    final Long2LongOpenHashMap index = new Long2LongOpenHashMap();
+    final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    // The ids and offsets of the active segment, for its .idx.
+    final LongArrayList activeIds = new LongArrayList(), activeOffsets = new LongArrayList();
+    Segment active;
+
+    final BlockingQueue<Pending> queue = new ArrayBlockingQueue<>(QUEUE);
+    // Own threads, so that a store never holds a worker of
+    // Executor for its lifetime.
+    final Thread committer;
+    final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        final var thread = new Thread(r, "store-compaction");
+        thread.setDaemon(true);
+        return thread;
+    });
+    final AtomicBoolean compacting = new AtomicBoolean();
+    volatile Future<?> compaction;
+    volatile IOException failure;
+    volatile boolean closed;
+
+    // ----------------------------------------------
+    //  OPEN.
+    // ----------------------------------------------
+    //
+    // The folder is created if missing.
+    public static Store open(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        return new Store(dir);
+    }
+
+    private Store(Path dir) throws IOException {
+        this.dir = dir;
+        index.defaultReturnValue(NONE);
+        recover();
+        committer = new Thread(this::commit, "store-committer");
+        committer.setDaemon(true);
+        committer.start();
+        Log.info("STORE " + this);
+    }
+
+    static String name(int number, String ext) { return String.format("seg-%06d.%s", number, ext); }
+
+    private Path file(int number, String ext) { return dir.resolve(name(number, ext)); }
+
+    private void recover() throws IOException {
+        try (var files = Files.list(dir)) {
+            for (var path : (Iterable<Path>) files::iterator) {
+                final var name = path.getFileName().toString();
+                if (name.endsWith(".tmp")) Files.delete(path);
+                else if (name.startsWith("seg-") && name.endsWith(".dat")) {
+                    final int number = Integer.parseInt(name.substring(4, name.length() - 4));
+                    segments.put(number, new Segment(number, FileChannel.open(path, READ, WRITE)));
+                }
+            }
+        }
+        Segment last = null;
+        for (var seg : segments.values()) {
+            seg.size = seg.channel.size();
+            if (!readIndex(seg)) scan(seg);
+            last = seg;
+        }
+        // Index files of deleted segments.
+        try (var files = Files.list(dir)) {
+            for (var path : (Iterable<Path>) files::iterator) {
+                final var name = path.getFileName().toString();
+                if (name.startsWith("seg-") && name.endsWith(".idx")
+                        && !segments.containsKey(Integer.parseInt(name.substring(4, name.length() - 4)))) {
+                    Files.delete(path);
+                }
+            }
+        }
+        if (last != null && !last.sealed) active = last;
+        else roll(last == null ? 0 : last.number + 1);
+        for (var seg : new ArrayList<>(segments.values())) {
+            if (seg.sealed && seg.live == 0) delete(seg);
+        }
+    }
+
+    // Indexes a sealed segment from its .idx, false if there
+    // is none or it does not match the segment.
+    private boolean readIndex(Segment seg) throws IOException {
+        final var buf = indexOf(seg);
+        if (buf == null) return false;
+        while (buf.hasRemaining()) put(buf.getLong(), seg, buf.getLong());
+        seg.sealed = true;
+        return true;
+    }
+
+    // The { id offset } of the .idx of a segment, null if it
+    // is missing or does not match.
+    private ByteBuffer indexOf(Segment seg) throws IOException {
+        final var idx = file(seg.number, "idx");
+        if (!Files.isRegularFile(idx)) return null;
+        final var buf = ByteBuffer.wrap(Files.readAllBytes(idx));
+        if (buf.remaining() < 12 || buf.getLong() != seg.size) return null;
+        final int n = buf.getInt();
+        return buf.remaining() == n * 16L ? buf : null;
+    }
+
+    // Indexes the records of a segment without .idx and cuts
+    // off the first one that is torn or fails its checksum.
+    private void scan(Segment seg) throws IOException {
+        final var header = ByteBuffer.allocate(HEADER);
+        final var crc = new CRC32();
+        final var ids = new LongArrayList();
+        final var offsets = new LongArrayList();
+        long at = 0;
+        while (at + HEADER <= seg.size) {
+            readFully(seg.channel, header.clear(), at);
+            final int length = header.getInt(0);
+            if (length < 0 || at + HEADER + length > seg.size) break;
+            final var bytes = ByteBuffer.allocate(length);
+            readFully(seg.channel, bytes, at + HEADER);
+            crc.reset();
+            crc.update(bytes.flip());
+            if ((int) crc.getValue() != header.getInt(12)) break;
+            final long id = header.getLong(4);
+            put(id, seg, at);
+            ids.add(id);
+            offsets.add(at);
+            at += HEADER + length;
+        }
+        if (at < seg.size) {
+            Log.warn("STORE CUT " + name(seg.number, "dat") + " AT " + at + " OF " + seg.size);
+            seg.channel.truncate(at);
+            seg.size = at;
+        }
+        // Only the last segment may still be active.
+        if (seg == segments.lastEntry().getValue()) {
+            activeIds.addAll(ids);
+            activeOffsets.addAll(offsets);
+        } else {
+            writeIndex(seg.number, seg.size, ids.toLongArray(), offsets.toLongArray());
+            seg.sealed = true;
+        }
+    }
+
+    // ----------------------------------------------
+    //  WRITE.
+    // ----------------------------------------------
+    //
+    // Completes when the document is on disk.
+    public CompletableFuture<Void> store(RawBsonDocument doc) {
+        return store(int64(doc, "id"), doc);
+    }
+
+    public CompletableFuture<Void> store(long id, RawBsonDocument doc) {
+        isTrue(doc != null);
+        return enqueue(new Pending(id, doc, new CompletableFuture<>()));
+    }
+
+    // Waits until everything stored before is on disk.
+    public void flush() throws IOException {
+        try {
+            enqueue(new Pending(0, null, new CompletableFuture<>())).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        }
+    }
+
+    private CompletableFuture<Void> enqueue(Pending p) {
+        if (closed) throw new IllegalStateException("STORE CLOSED");
+        if (failure != null) return CompletableFuture.failedFuture(failure);
+        try {
+            queue.put(p);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+        return p.done;
+    }
+
+    // The committer: a batch per loop until closed and empty.
+    private void commit() {
+        final var batch = new ArrayList<Pending>(BATCH);
+        var buf = ByteBuffer.allocateDirect(1 << 20);
+        final var crc = new CRC32();
+        final var offsets = new long[BATCH];
+        while (!closed || !queue.isEmpty()) {
+            try {
+                final var first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, BATCH - 1);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            final long start = System.nanoTime();
+            try {
+                if (failure != null) throw failure;
+                buf.clear();
+                long at = active.size;
+                for (int i = 0; i < batch.size(); i++) {
+                    final var doc = batch.get(i).doc;
+                    if (doc == null) continue;
+                    final var bytes = doc.getByteBuffer().asNIO();
+                    final int length = bytes.remaining();
+                    if (buf.remaining() < HEADER + length) buf = grow(buf, HEADER + length);
+                    crc.reset();
+                    crc.update(bytes.duplicate());
+                    offsets[i] = at + buf.position();
+                    buf.putInt(length).putLong(batch.get(i).id).putInt((int) crc.getValue()).put(bytes);
+                }
+                final int bytes = buf.position();
+                writeFully(active.channel, buf.flip(), at);
+                active.channel.force(false);
+                int records = 0;
+                lock.writeLock().lock();
+                try {
+                    for (int i = 0; i < batch.size(); i++) {
+                        final var p = batch.get(i);
+                        if (p.doc == null) continue;
+                        put(p.id, active, offsets[i]);
+                        activeIds.add(p.id);
+                        activeOffsets.add(offsets[i]);
+                        ++records;
+                    }
+                    active.size = at + bytes;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                if (active.size >= SEGMENT_BYTES) {
+                    writeIndex(active.number, active.size, activeIds.toLongArray(), activeOffsets.toLongArray());
+                    lock.writeLock().lock();
+                    try {
+                        active.sealed = true;
+                        roll(active.number + 1);
+                    } finally {
+                        lock.writeLock().unlock();
+                    }
+                }
+                COMMIT.since(start);
+                RECORDS.mark(records);
+                BYTES.mark(bytes);
+                for (var p : batch) p.done.complete(null);
+                compactIfDue();
+            } catch (Throwable e) {
+                // Fails this and every later batch, but keeps
+                // draining the queue so no caller waits forever.
+                if (failure == null) {
+                    failure = e instanceof IOException io ? io : new IOException(e);
+                    Log.error("STORE FAILED", e);
+                }
+                for (var p : batch) p.done.completeExceptionally(failure);
+            }
+            batch.clear();
+        }
+    }
+
+    private static ByteBuffer grow(ByteBuffer buf, int k) {
+        final var grown = ByteBuffer.allocateDirect(Math.max(buf.capacity() << 1, buf.position() + k));
+        return grown.put(buf.flip());
+    }
+
+    // Points 'id' to the record at 'offset' of 'seg', the record
+    // it pointed to before is dead.
+    private void put(long id, Segment seg, long offset) {
+        final long old = index.put(id, (long) seg.number << OFFSET_BITS | offset);
+        if (old != NONE) --segments.get((int) (old >>> OFFSET_BITS)).live;
+        ++seg.records;
+        ++seg.live;
+    }
+
+    // Writes the .idx of a segment, all its records in order.
+    private void writeIndex(int number, long size, long[] ids, long[] offsets) throws IOException {
+        final var buf = ByteBuffer.allocate(12 + ids.length * 16);
+        buf.putLong(size).putInt(ids.length);
+        for (int i = 0; i < ids.length; i++) buf.putLong(ids[i]).putLong(offsets[i]);
+        final var tmp = file(number, "idx.tmp");
+        Files.write(tmp, buf.array());
+        Files.move(tmp, file(number, "idx"), ATOMIC_MOVE, REPLACE_EXISTING);
+    }
+
+    private void roll(int number) throws IOException {
+        active = new Segment(number, FileChannel.open(file(number, "dat"), CREATE, READ, WRITE));
+        segments.put(number, active);
+        activeIds.clear();
+        activeOffsets.clear();
+    }
+
+    // ----------------------------------------------
+    //  READ.
+    // ----------------------------------------------
+    //
+    // The document last stored under 'id' or null.
+    public RawBsonDocument get(long id) throws IOException {
+        lock.readLock().lock();
+        try {
+            final long at = index.get(id);
+            if (at == NONE) return null;
+            return read(segments.get((int) (at >>> OFFSET_BITS)), at & OFFSET_MASK);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(long id) {
+        lock.readLock().lock();
+        try { return index.containsKey(id); }
+        finally { lock.readLock().unlock(); }
+    }
+
+    // Number of ids.
+    public long size() {
+        lock.readLock().lock();
+        try { return index.size(); }
+        finally { lock.readLock().unlock(); }
+    }
+
+    public Path dir() { return dir; }
+
+    private static RawBsonDocument read(Segment seg, long offset) throws IOException {
+        final var header = ByteBuffer.allocate(HEADER);
+        readFully(seg.channel, header, offset);
+        final var bytes = new byte[header.getInt(0)];
+        readFully(seg.channel, ByteBuffer.wrap(bytes), offset + HEADER);
+        return new RawBsonDocument(bytes);
+    }
+
+    // All live documents, segment by segment in the order
+    // they were stored.
+    public void forEach(Consumer<RawBsonDocument> action) throws IOException {
+        for (var number : numbers()) each(number, (id, doc) -> action.accept(doc));
+    }
+
+    // 'f' of all live documents, a task per segment on
+    // Executor, the results in the order of forEach.
+    public <T> List<T> map(Function<RawBsonDocument, T> f) throws IOException {
+        final var futures = new ArrayList<CompletableFuture<List<T>>>();
+        for (var number : numbers()) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                final var res = new ArrayList<T>();
+                try { each(number, (id, doc) -> res.add(f.apply(doc))); }
+                catch (IOException e) { throw new RuntimeException(e); }
+                return res;
+            }, Executor.fixed));
+        }
+        final var res = new ArrayList<T>();
+        try {
+            for (var f1 : futures) res.addAll(f1.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw e.getCause().getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        }
+        return res;
+    }
+
+    interface Visitor { void accept(long id, RawBsonDocument doc) throws IOException; }
+
+    private List<Integer> numbers() {
+        lock.readLock().lock();
+        try { return new ArrayList<>(segments.keySet()); }
+        finally { lock.readLock().unlock(); }
+    }
+
+    // The live records of a segment, read sequentially. Holds
+    // the read lock, so the segment is not swapped meanwhile
+    // and commits wait for the scan.
+    private void each(int number, Visitor visitor) throws IOException {
+        lock.readLock().lock();
+        try {
+            final var seg = segments.get(number);
+            if (seg == null) return;
+            final long base = (long) number << OFFSET_BITS;
+            // buf holds the segment from 'pos', the record is at 'at'.
+            var buf = ByteBuffer.allocate(1 << 20).limit(0);
+            long pos = 0, at = 0;
+            while (at < seg.size) {
+                final int off = (int) (at - pos), left = buf.limit() - off;
+                if (left < HEADER || left < HEADER + buf.getInt(off)) {
+                    buf.position(off).compact();
+                    pos = at;
+                    if (left >= HEADER && HEADER + buf.getInt(0) > buf.capacity()) {
+                        buf = ByteBuffer.allocate(HEADER + buf.getInt(0)).put(buf.flip());
+                    }
+                    final int had = buf.position();
+                    readSome(seg.channel, buf, pos + had, seg.size);
+                    if (buf.position() == had) throw new IOException("STORE EOF AT " + (pos + had));
+                    buf.flip();
+                    continue;
+                }
+                final int length = buf.getInt(off);
+                final long id = buf.getLong(off + 4);
+                if (index.get(id) == (base | at)) {
+                    final var bytes = new byte[length];
+                    buf.get(off + HEADER, bytes);
+                    visitor.accept(id, new RawBsonDocument(bytes));
+                }
+                at += HEADER + length;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ----------------------------------------------
+    //  COMPACT.
+    // ----------------------------------------------
+    //
+    // Starts a compaction of the sealed segment with the least
+    // live ratio below LIVE_RATIO, one at a time.
+    private void compactIfDue() {
+        if (compacting.get()) return;
+        Segment worst = null;
+        lock.readLock().lock();
+        try {
+            for (var seg : segments.values()) {
+                if (!seg.sealed || seg.live >= seg.records * LIVE_RATIO) continue;
+                if (worst == null || seg.live * (long) worst.records < worst.live * (long) seg.records) worst = seg;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (worst == null || !compacting.compareAndSet(false, true)) return;
+        final int number = worst.number;
+        compaction = compactor.submit(() -> {
+            try { compact(number); }
+            catch (IOException e) { Log.error("STORE COMPACTION OF " + name(number, "dat"), e); }
+            finally { compacting.set(false); }
+        });
+    }
+
+    // Compacts all sealed segments below LIVE_RATIO now, after
+    // a running background compaction, one segment at a time.
+    public void compact() throws IOException {
+        final var due = new ArrayList<Integer>();
+        lock.readLock().lock();
+        try {
+            for (var seg : segments.values()) {
+                if (seg.sealed && seg.live < seg.records * LIVE_RATIO) due.add(seg.number);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        for (var number : due) {
+            while (!compacting.compareAndSet(false, true)) {
+                awaitCompaction();
+                Thread.onSpinWait();
+            }
+            try { compact(number); }
+            finally { compacting.set(false); }
+        }
+    }
+
+    // Copies the live records of a sealed segment to a new
+    // file and swaps it in. The sealed segment does not change
+    // until then, so it is read without the lock. Records that
+    // die meanwhile are dead in the copy as well. Only called
+    // by the holder of 'compacting'.
+    private void compact(int number) throws IOException {
+        final Segment seg;
+        lock.readLock().lock();
+        try {
+            seg = segments.get(number);
+            if (seg == null || !seg.sealed || seg.live >= seg.records * LIVE_RATIO) return;
+        } finally {
+            lock.readLock().unlock();
+        }
+        final var entries = indexOf(seg);
+        if (entries == null) throw new IOException("STORE NO INDEX OF " + name(number, "dat"));
+        final long base = (long) number << OFFSET_BITS;
+        final var ids = new LongArrayList();
+        final var from = new LongArrayList();
+        lock.readLock().lock();
+        try {
+            while (entries.hasRemaining()) {
+                final long id = entries.getLong(), offset = entries.getLong();
+                if (index.get(id) == (base | offset)) {
+                    ids.add(id);
+                    from.add(offset);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        final var to = new long[ids.size()];
+        final var tmp = file(number, "dat.tmp");
+        long size = 0;
+        try (var out = FileChannel.open(tmp, CREATE, TRUNCATE_EXISTING, WRITE)) {
+            final var header = ByteBuffer.allocate(HEADER);
+            for (int i = 0; i < ids.size(); i++) {
+                readFully(seg.channel, header.clear(), from.getLong(i));
+                final var record = ByteBuffer.allocate(HEADER + header.getInt(0));
+                readFully(seg.channel, record, from.getLong(i));
+                to[i] = size;
+                writeFully(out, record.flip(), size);
+                size += record.capacity();
+            }
+            out.force(false);
+        }
+        // Index first: a crash before the move leaves an .idx
+        // that does not match, the old .dat is scanned then.
+        if (!ids.isEmpty()) writeIndex(number, size, ids.toLongArray(), to);
+        final long before = seg.size;
+        lock.writeLock().lock();
+        try {
+            if (ids.isEmpty()) {
+                delete(seg);
+                Files.delete(tmp);
+            } else {
+                seg.channel.close();
+                Files.move(tmp, file(number, "dat"), ATOMIC_MOVE, REPLACE_EXISTING);
+                seg.channel = FileChannel.open(file(number, "dat"), READ, WRITE);
+                seg.size = size;
+                seg.records = ids.size();
+                seg.live = 0;
+                for (int i = 0; i < ids.size(); i++) {
+                    final long id = ids.getLong(i);
+                    if (index.get(id) == (base | from.getLong(i))) {
+                        index.put(id, base | to[i]);
+                        ++seg.live;
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        Log.debug(() -> "STORE COMPACTED " + name(number, "dat") + " " + before + " -> " + seg.size);
+    }
+
+    private void delete(Segment seg) throws IOException {
+        seg.channel.close();
+        segments.remove(seg.number);
+        Files.deleteIfExists(file(seg.number, "dat"));
+        Files.deleteIfExists(file(seg.number, "idx"));
+    }
+
+    private void awaitCompaction() throws IOException {
+        final var f = compaction;
+        if (f == null) return;
+        try {
+            f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    // ----------------------------------------------
+    //  CLOSE.
+    // ----------------------------------------------
+    //
+    // Commits the queue and waits for the background tasks,
+    // the active segment stays unsealed.
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        awaitCompaction();
+        compactor.shutdown();
+        lock.writeLock().lock();
+        try {
+            for (var seg : segments.values()) seg.channel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (failure != null) throw failure;
+    }
+
+    @Override
+    public String toString() {
+        lock.readLock().lock();
+        try {
+            long bytes = 0, records = 0;
+            for (var seg : segments.values()) {
+                bytes += seg.size;
+                records += seg.records;
+            }
+            return dir + " " + index.size() + " IDS IN " + segments.size() + " SEGMENTS ("
+                    + records + " RECORDS, " + bytes + " BYTES)";
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ----------------------------------------------
+    //  IO.
+    // ----------------------------------------------
+    //
+    static void readFully(FileChannel channel, ByteBuffer buf, long at) throws IOException {
+        while (buf.hasRemaining()) {
+            final int n = channel.read(buf, at);
+            if (n < 0) throw new IOException("STORE EOF AT " + at);
+            at += n;
+        }
+    }
+
+    // Reads into buf from 'at' until buf is full or 'end'.
+    static void readSome(FileChannel channel, ByteBuffer buf, long at, long end) throws IOException {
+        while (buf.hasRemaining() && at < end) {
+            final int n = channel.read(buf, at);
+            if (n < 0) break;
+            at += n;
+        }
+    }
+
+    static void writeFully(FileChannel channel, ByteBuffer buf, long at) throws IOException {
+        while (buf.hasRemaining()) at += channel.write(buf, at);
+    }
+}
@@ -0,0 +1,220 @@
+package model;
+
+import magma.concurrent.NBHashMapUtf8;
+import magma.system.Log;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static magma.exa.base.contract.Require.isTrue;
+import static magma.utils.FileUtils.newFile;
+
+// Maps normalized hashtags, mentions or urls to dense
+// int ids 0, 1, 2, ... in order of first appearance.
+// Interning is lock-free and can run from all ingest
+// threads: the normalized UTF-8 bytes are looked up in
+// an off-heap NBHashMapUtf8, a new key is claimed with
+// putIfAbsent(PENDING) and the winner takes the next id,
+// stores the name and publishes the id. Threads racing
+// for the same key spin until the id is published, so
+// ids have no gaps. Tweets keep their tags as a sorted
+// int[] (see encode), analyses count into int[] indexed
+// by id and only look names up for the output.
+public class TagDictionary {
+
+    public enum Kind {
+        HASHTAG('#'), MENTION('@'), URL((char) 0);
+
+        final char prefix;
+
+        Kind(char prefix) { this.prefix = prefix; }
+    }
+
+    public static final TagDictionary HASHTAGS = new TagDictionary(Kind.HASHTAG);
+
+    public static final int[] EMPTY = new int[0];
+
+    private static final long ABSENT = -1L;
+    private static final long PENDING = -2L;
+
+    // names of ids [c << CHUNK_BITS, (c + 1) << CHUNK_BITS)
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK = 1 << CHUNK_BITS;
+
+    private static final ThreadLocal<byte[]> UTF8 = ThreadLocal.withInitial(() -> new byte[256]);
+
+    public final Kind kind;
+    private final NBHashMapUtf8 ids = new NBHashMapUtf8(1 << 16);
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicReferenceArray<AtomicReferenceArray<String>> names =
+            new AtomicReferenceArray<>(1 << (31 - CHUNK_BITS));
+
+    public TagDictionary(Kind kind) {
+        this.kind = kind;
+        ids.defaultReturnValue(ABSENT);
+    }
+
+    // Number of ids handed out so far, every id
+    // below size() has a name once interning is done.
+    public int size() { return next.get(); }
+
+    public boolean isEmpty() { return size() == 0; }
+
+    // ----------------------------------------------
+    //  ENCODING.
+    // ----------------------------------------------
+
+    // Id of the normalized tag, a new tag gets the next id.
+    public int id(String tag) {
+        final int len = normalize(tag);
+        return intern(UTF8.get(), len);
+    }
+
+    private int intern(byte[] b, int len) {
+        long v = ids.get(b, 0, len);
+        if (v == ABSENT) {
+            v = ids.putIfAbsent(b, 0, len, PENDING);
+            if (v == ABSENT) {
+                final int id = next.getAndIncrement();
+                name(id, new String(b, 0, len, StandardCharsets.UTF_8));
+                ids.put(b, 0, len, id);
+                return id;
+            }
+        }
+        while (v == PENDING) {
+            Thread.onSpinWait();
+            v = ids.get(b, 0, len);
+        }
+        return (int) v;
+    }
+
+    // Id of the normalized tag or -1, never interns.
+    public int find(String tag) {
+        final int len = normalize(tag);
+        final long v = ids.get(UTF8.get(), 0, len);
+        return v < 0 ? -1 : (int) v;
+    }
+
+    // Sorted distinct ids of all tags.
+    public int[] encode(Collection<String> tags) {
+        if (tags.isEmpty()) return EMPTY;
+        final var result = new int[tags.size()];
+        int n = 0;
+        for (var tag : tags) result[n++] = id(tag);
+        Arrays.sort(result);
+        int m = 1;
+        for (int i = 1; i < n; i++)
+            if (result[i] != result[m - 1]) result[m++] = result[i];
+        return m == n ? result : Arrays.copyOf(result, m);
+    }
+
+    // Whether the sorted ids contain 'id'.
+    public static boolean contains(int[] ids, int id) {
+        return Arrays.binarySearch(ids, id) >= 0;
+    }
+
+    public String name(int id) {
+        isTrue(id >= 0 && id < size());
+        // Stored before the id is published, but ids
+        // below size() may still be in flight.
+        AtomicReferenceArray<String> chunk;
+        String name;
+        while ((chunk = names.get(id >>> CHUNK_BITS)) == null
+                || (name = chunk.get(id & (CHUNK - 1))) == null)
+            Thread.onSpinWait();
+        return name;
+    }
+
+    private void name(int id, String name) {
+        final int c = id >>> CHUNK_BITS;
+        var chunk = names.get(c);
+        if (chunk == null) {
+            names.compareAndSet(c, null, new AtomicReferenceArray<>(CHUNK));
+            chunk = names.get(c);
+        }
+        chunk.set(id & (CHUNK - 1), name);
+    }
+
+    // Writes the normalized UTF-8 bytes of 'tag' into the
+    // thread local buffer: no prefix, no surrounding blanks,
+    // lower case except for the path of an url. Plain ascii
+    // is lower cased in place without creating a String.
+    private int normalize(String tag) {
+        int from = 0, to = tag.length();
+        while (from < to && tag.charAt(from) <= ' ') from++;
+        while (to > from && tag.charAt(to - 1) <= ' ') to--;
+        if (kind.prefix != 0 && from < to && tag.charAt(from) == kind.prefix) from++;
+        if (kind == Kind.URL && to > from && tag.charAt(to - 1) == '/') to--;
+        // urls only lower case scheme and host
+        int lower = to;
+        if (kind == Kind.URL) {
+            final int scheme = tag.indexOf("://", from);
+            final int path = scheme < 0 ? -1 : tag.indexOf('/', scheme + 3);
+            lower = path < 0 || path > to ? to : path;
+        }
+        byte[] b = UTF8.get();
+        if (b.length < 3 * (to - from)) {
+            b = new byte[3 * (to - from)];
+            UTF8.set(b);
+        }
+        int len = 0;
+        for (int i = from; i < to; i++) {
+            char ch = tag.charAt(i);
+            if (ch >= 0x80) {
+                final var lo = tag.substring(from, lower).toLowerCase(Locale.ROOT) + tag.substring(lower, to);
+                final var utf8 = lo.getBytes(StandardCharsets.UTF_8);
+                isTrue(utf8.length <= NBHashMapUtf8.MAX_KEY_BYTES);
+                if (b.length < utf8.length) UTF8.set(utf8);
+                else System.arraycopy(utf8, 0, b, 0, utf8.length);
+                return utf8.length;
+            }
+            if (i < lower && ch >= 'A' && ch <= 'Z') ch += 'a' - 'A';
+            b[len++] = (byte) ch;
+        }
+        return len;
+    }
+
+    // ----------------------------------------------
+    //  PERSISTENCE.
+    // ----------------------------------------------
+
+    // One name per line in UTF-8, the line number is the id.
+    public void write(Path file) throws IOException {
+        Files.deleteIfExists(file);
+        try (var writer = Files.newBufferedWriter(newFile(file), StandardCharsets.UTF_8)) {
+            final int size = size();
+            for (int id = 0; id < size; id++) {
+                writer.write(name(id));
+                writer.write('\n');
+            }
+        }
+        Log.info(kind + " DICTIONARY: " + size() + " IDS -> " + file);
+    }
+
+    // Restores the ids of a written dictionary, must
+    // run before anything else is interned. Names are
+    // already normalized and are interned as they are.
+    public void read(Path file) throws IOException {
+        isTrue(isEmpty());
+        try (var reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int id = 0;
+            while ((line = reader.readLine()) != null) {
+                final var utf8 = line.getBytes(StandardCharsets.UTF_8);
+                isTrue(intern(utf8, utf8.length) == id++);
+            }
+        }
+        Log.info(kind + " DICTIONARY: " + size() + " IDS <- " + file);
+    }
+
+    public String toString() {
+        return "TagDictionary{" + kind + ", ids=" + size() + ", arena=" + ids.arenaBytes() + '}';
+    }
+}
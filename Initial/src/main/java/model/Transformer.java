@@ -1,15 +1,17 @@
 package model;
 
-import com.google.common.collect.Lists;
 import model.Model.Status;
 import magma.concurrent.NBHashMap;
 import magma.system.Executor;
 import magma.system.Log;
+import magma.system.Metrics;
+import magma.system.Profiler;
 import magma.utils.Utils;
 import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorInputStream;
 import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorOutputStream;
 import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
 import org.bson.BsonArray;
+import org.bson.BsonDocument;
 import org.bson.BsonValue;
 import org.bson.RawBsonDocument;
 
@@ -21,6 +23,7 @@ import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import static java.nio.file.Files.isDirectory;
@@ -47,15 +50,8 @@ public class Transformer {
         } else if (bson.get("user").isInt64()) {
             res.usrId = extractLong(bson, "user");
         }
-        var hashtags = entities("hashtags", bson);
-        for (var tag : hashtags) {
-            if (tag.isDocument()) {
-                var doc = tag.asDocument();
-                if (doc.containsKey("text")) {
-                    res.hashtags.add(Utils.extractString(doc, "text"));
-                }
-            }
-        }
+        addHashtags(bson, res.hashtags);
+        res.tags = TagDictionary.HASHTAGS.encode(res.hashtags);
         res.date = extractCreatedAt(bson, format);
         res.isRetweet = isRetweet(bson);
         if (!res.isRetweet) {
@@ -63,24 +59,68 @@ public class Transformer {
         }
         else {
             var rtw = bson.getDocument("retweeted_status");
-            long rspTwtId = int64(rtw, "id");
-            long rspUsrId;
-            if (rtw.get("user").isDocument()) {
-                var usrBson = bson.getDocument("user");
-                rspUsrId = extractIdStr(usrBson);
-            } else if (bson.get("user").isInt64()) {
-                rspUsrId = extractLong(rtw, "user");
-            } else {
-                throw new IllegalStateException("SOMETHING WRONG WITH RT");
-            }
-            res.rtwId = rspTwtId;
-            res.rtuId = rspUsrId;
+            res.rtwId = int64(rtw, "id");
+            res.rtuId = retweetedUser(bson, rtw);
         }
         return res;
     }
 
+    // toMinTweet straight into the columns of 'docs',
+    // without a Status per tweet.
+    static void appendMinTweet(Columns docs, RawBsonDocument bson, SimpleDateFormat format) {
+        final long twtId = int64(bson, "id");
+        final String txt = extractString(bson, "full_text");
+        long usrId = 0;
+        Locator.Location loc = null;
+        if (bson.get("user").isDocument()) {
+            var userBson = bson.getDocument("user");
+            usrId = extractIdStr(userBson);
+            loc = Locator.get.resolve(extractString(userBson, "location")).orElse(null);
+        } else if (bson.get("user").isInt64()) {
+            usrId = extractLong(bson, "user");
+        }
+        final var hashtags = new HashSet<String>();
+        addHashtags(bson, hashtags);
+        final var date = extractCreatedAt(bson, format);
+        final boolean isRetweet = isRetweet(bson);
+        int retweetCnt = 0;
+        long rtwId = 0, rtuId = 0;
+        if (!isRetweet) {
+            retweetCnt = extractInt(bson, "retweet_count");
+        }
+        else {
+            var rtw = bson.getDocument("retweeted_status");
+            rtwId = int64(rtw, "id");
+            rtuId = retweetedUser(bson, rtw);
+        }
+        docs.add(twtId, usrId, rtwId, rtuId, date == null ? Columns.NO_DATE : date.getTime(), retweetCnt,
+                isRetweet, txt, hashtags, TagDictionary.HASHTAGS.encode(hashtags), loc);
+    }
+
+    private static void addHashtags(RawBsonDocument bson, Set<String> hashtags) {
+        for (var tag : entities("hashtags", bson)) {
+            if (tag.isDocument()) {
+                var doc = tag.asDocument();
+                if (doc.containsKey("text")) {
+                    hashtags.add(Utils.extractString(doc, "text"));
+                }
+            }
+        }
+    }
+
+    private static long retweetedUser(RawBsonDocument bson, BsonDocument rtw) {
+        if (rtw.get("user").isDocument()) {
+            var usrBson = bson.getDocument("user");
+            return extractIdStr(usrBson);
+        } else if (bson.get("user").isInt64()) {
+            return extractLong(rtw, "user");
+        } else {
+            throw new IllegalStateException("SOMETHING WRONG WITH RT");
+        }
+    }
+
 
-    private static List<Status> readMinTweets(Path dtaFolder) throws InterruptedException {
+    private static Columns readMinTweets(Path dtaFolder) throws InterruptedException {
         Log.info("READ MIN TWEETS");
         return loadJson(dtaFolder);
     }
@@ -94,120 +134,173 @@ public class Transformer {
         return entities.getArray(field);
     }
 
+    // Per xz file, summed over its lines: read (xz and utf-8
+    // decoding), parse (bson) and transform (appendMinTweet
+    // incl. Locator). One record per file keeps the histograms
+    // off the per tweet path.
+    private static final Metrics.Stage INGEST = Metrics.stage("ingest");
+    private static final Metrics.Histogram READ = INGEST.histogram("read");
+    private static final Metrics.Histogram PARSE = INGEST.histogram("parse");
+    private static final Metrics.Histogram TRANSFORM = INGEST.histogram("transform");
+    private static final Metrics.Histogram FILE = INGEST.histogram("file");
+    private static final Metrics.Meter TWEETS = INGEST.meter("tweets");
+
+    // Appends the tweets of one xz file to the Columns
+    // of the worker, returns their number.
     private static final AtomicInteger count = new AtomicInteger();
-    private static CompletableFuture<List<Status>>
+    private static CompletableFuture<Integer>
     loadBatch(Path _path) {
-        System.out.println("DEBUG: LOAD PATH " + _path);
+        Log.debug(() -> "LOAD PATH " + _path);
         return CompletableFuture.supplyAsync(() -> {
-            final var docs = new ArrayList<Status>(1_000_000);
+            final var docs = Columns.local();
             int cnt = 0;
+            final long start = System.nanoTime();
             try {
                 final var format = new SimpleDateFormat("EEE MMM dd HH:mm:ss Z yyyy");
                 final var fileIs = new FileInputStream(_path.toFile());
                 final var stream = new XZCompressorInputStream(fileIs, false);
                 final var reader = new BufferedReader(new InputStreamReader(stream));
+                long read = 0, parse = 0, transform = 0;
+                long t0 = System.nanoTime();
                 var cuLine = reader.readLine();
                 while (cuLine != null) {
+                    final long t1 = System.nanoTime();
                     var bson = RawBsonDocument.parse(cuLine);
-                    docs.add(toMinTweet(bson, format));
+                    final long t2 = System.nanoTime();
+                    appendMinTweet(docs, bson, format);
+                    final long t3 = System.nanoTime();
+                    read += t1 - t0;
+                    parse += t2 - t1;
+                    transform += t3 - t2;
                     cnt++;
+                    t0 = t3;
                     cuLine = reader.readLine();
                 }
                 reader.close();
                 stream.close();
                 fileIs.close();
+                READ.record(read);
+                PARSE.record(parse);
+                TRANSFORM.record(transform);
             } catch (IOException e) {
                 e.printStackTrace();
             }
             count.addAndGet(cnt);
-            return docs;
+            TWEETS.mark(cnt);
+            FILE.since(start);
+            return cnt;
         }, Executor.fixed);
     }
 
-    private static List<Status> loadJson(Path tgtFolder) throws InterruptedException {
+    private static Columns loadJson(Path tgtFolder) throws InterruptedException {
         isTrue(isDirectory(tgtFolder));
         Log.info("LOAD XZ");
         List<Path> xzFiles = new ArrayList<>();
         xzFiles.addAll(recursiveFiles(tgtFolder, "xz"));
         final var futures = ConcurrentHashMap.newKeySet();
-        final var bson = Collections.synchronizedList(new ArrayList<Status>(100_000_000));
+        final var loaded = new AtomicLong();
         for (var path : xzFiles) {
-            System.out.println("THIS IS A ANOTHER TEST");
             int err = 0;
             RETRY:
             if (futures.size() < 100) {
                 var f = loadBatch(path);
                 futures.add(f);
                 f.thenAccept(twts -> {
-                    System.out.println("-===========> ADD " + twts.size() + " CAPACITY: " + bson.size());
-                    bson.addAll(twts);
+                    final long all = loaded.addAndGet(twts);
+                    Log.progress("xz-add", () -> "ADD " + twts + " TWEETS: " + all);
                 });
-//                f.thenAccept(bson::addAll);
                 f.thenRun(() -> futures.remove(f));
             }
             else {
-                System.out.println("WAIT " + futures.size() + " ERROR: " + err++);
+                Log.info("WAIT " + futures.size() + " ERROR: " + err++);
                 Thread.sleep(10_000);
                 break RETRY;
             }
         }
-        System.out.println("TTTT " + futures.size());
+        Log.debug(() -> "PENDING " + futures.size());
         CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
         Thread.sleep(1_000);
-        System.out.println("TTTT " + futures.size());
-        return bson;
+        Log.debug(() -> "PENDING " + futures.size());
+        return Columns.concat();
     }
 
     // From Tweets to csv
     // folder is the target folder
+    // The Profiler sections are only closed, hence "try".
+    @SuppressWarnings("try")
     public static void run(Path dtaFolder, Path tgtFolder) throws InterruptedException, IOException {
         isTrue(Files.isDirectory(tgtFolder));
         isTrue(Files.isDirectory(dtaFolder));
         Locator.get.readJohannesLocations(LOCATIONS_FILE_1_LOC, LOCATIONS_FILE_1_SLV);
 //        Locator.get.readJohannesLocations(LOCATIONS_FILE_2_LOC, LOCATIONS_FILE_2_SLV);
 //        Locator.get.readJohannesLocations(LOCATIONS_FILE_3_LOC, LOCATIONS_FILE_3_SLV);
-        System.out.println(Locator.get);
-        var lst = readMinTweets(dtaFolder);
+        Log.info(Locator.get);
+        final Columns read;
+        try (var ignored = Profiler.section("ingest")) {
+            read = readMinTweets(dtaFolder);
+        }
+        // Each lz4 file holds one run of dates, so the sort
+        // of the Timeline only has to merge them.
+        final Columns lst;
+        try (var ignored = Profiler.section("sort")) {
+            lst = read.sortByDate();
+            read.clear();
+        }
         int G = 140;
-        final var split = Lists.partition(lst, (lst.size() + G - 1) / G);
+        final long size = lst.size(), step = Math.max(1, (size + G - 1) / G);
         final var cnt = new AtomicInteger();
         var futures = ConcurrentHashMap.newKeySet();
-        for (List<Status> minTweets : split) {
-            var f = CompletableFuture.runAsync(() -> {
-                try {
-                    var _cnt = cnt.incrementAndGet();
-                    compress(minTweets, _cnt, tgtFolder);
-                    System.out.println(_cnt + "-----> " + minTweets.size());
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            });
-            futures.add(f);
-            f.thenRun(() -> futures.remove(f));
+        try (var ignored = Profiler.section("compress")) {
+            for (long from = 0; from < size; from += step) {
+                final long _from = from, _to = Math.min(size, from + step);
+                var f = CompletableFuture.runAsync(() -> {
+                    try {
+                        var _cnt = cnt.incrementAndGet();
+                        compress(lst, _from, _to, _cnt, tgtFolder);
+                        Log.progress("compress", () -> _cnt + " COMPRESSED " + (_to - _from));
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                });
+                futures.add(f);
+                f.thenRun(() -> futures.remove(f));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
         }
-        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
-        System.out.println("------->" + lst.size());
-        System.out.println("--------------------->");
-        System.out.println("--------------------->");
-        System.out.println("--------------------->");
-        System.out.println("--------------------->");
+        Log.info("TRANSFORMED " + size + " (" + lst.retweets() + " RETWEETS)");
+        TagDictionary.HASHTAGS.write(tgtFolder.resolve(HASHTAG_DICTIONARY));
         Locator.get.exportUnresolvedLocations();
     }
 
-    static void compress(List<Status> minTweets, int nmn, Path folder) throws IOException {
+    private static final Metrics.Stage COMPRESS = Metrics.stage("compress");
+
+    // Rows [from, to) of 'tweets'.
+    static void compress(Columns tweets, long from, long to, int nmn, Path folder) throws IOException {
+        final long start = System.nanoTime();
+        long bytes = 0;
         OutputStream fout = Files.newOutputStream(folder.resolve("dip_initial_data_short" + String.format("%04d", nmn) +".tar.lz4"));
         BufferedOutputStream out = new BufferedOutputStream(fout);
         FramedLZ4CompressorOutputStream lzOut = new FramedLZ4CompressorOutputStream(out);
-        for (var minTweet : minTweets) {
+        for (long i = from; i < to; i++) {
+            var minTweet = tweets.status(i);
             var str = (minTweet.toJson() + System.lineSeparator()).getBytes();
             lzOut.write(str, 0, str.length);
+            bytes += str.length;
         }
         lzOut.close();
+        COMPRESS.histogram("batch").since(start);
+        COMPRESS.meter("tweets").mark(to - from);
+        COMPRESS.meter("bytes").mark(bytes);
     }
 
+    // Per lz4 file: read (lz4 and bson parsing) and decode
+    // (bson to Status).
+    private static final Metrics.Stage DECOMPRESS = Metrics.stage("decompress");
+
     private static CompletableFuture<List<RawBsonDocument>> loadLz4Batch(Path _path) {
-        System.out.println("DEBUG: LOAD PATH " + _path);
+        Log.debug(() -> "LOAD PATH " + _path);
         return CompletableFuture.supplyAsync(() -> {
+            final long start = System.nanoTime();
             final var docs = new ArrayList<RawBsonDocument>(1_000_000);
             try {
                 InputStream fin = Files.newInputStream(_path);
@@ -222,7 +315,8 @@ public class Transformer {
                     docs.add(dta);
                     cnt++;
                 }
-                System.out.println("------->> " + cnt);
+                Log.debug("LOADED " + cnt + " FROM " + _path);
+                DECOMPRESS.histogram("read").since(start);
                 zIn.close();
                 reader.close();
             } catch (IOException e) {
@@ -232,8 +326,51 @@ public class Transformer {
         });
     }
 
+    // Written next to the compressed tweets, so that
+    // decompress hands out the same ids as the ingest.
+    static final String HASHTAG_DICTIONARY = "hashtags.dict";
+
+    static Status fromMinTweet(BsonDocument bson) {
+        final var minTweet = new Status(
+                extractLong(bson, "tId"),
+                Utils.extractString(bson, "txt")
+        );
+        minTweet.usrId = extractLong(bson, "uId");
+        minTweet.isRetweet = extractBoolean(bson, "rtw");
+        minTweet.date = extractTimestamp(bson, "dte");
+        final var tags = new HashSet<String>();
+        for (BsonValue tag : bson.getArray("tag")) {
+            tags.add(tag.asString().getValue());
+        }
+        minTweet.hashtags = tags;
+        minTweet.tags = TagDictionary.HASHTAGS.encode(tags);
+        minTweet.loc = fromJson(bson.getDocument("loc"));
+        return minTweet;
+    }
+
+    private static void readDictionary(Path folder) {
+        final var dictionary = folder.resolve(HASHTAG_DICTIONARY);
+        if (Files.isRegularFile(dictionary) && TagDictionary.HASHTAGS.isEmpty()) {
+            try { TagDictionary.HASHTAGS.read(dictionary); }
+            catch (IOException e) { e.printStackTrace(); }
+        }
+    }
+
+    // The minimized tweets of a Store (see Loader.loadXzDump),
+    // decoded segment by segment in parallel.
+    public static List<Status> decompress(Store min) throws IOException {
+        readDictionary(min.dir());
+        final long start = System.nanoTime();
+        final var res = min.map(Transformer::fromMinTweet);
+        DECOMPRESS.histogram("store").since(start);
+        DECOMPRESS.meter("tweets").mark(res.size());
+        Log.info("LOADED: " + res.size());
+        return res;
+    }
+
     static AtomicInteger cnt = new AtomicInteger();
     public static List<Status> decompress(Path folder) {
+        readDictionary(folder);
         final var futures = ConcurrentHashMap.newKeySet();
         final var minTweets = new NBHashMap<List<Status>, List<Status>>();
         for (Path lz4 : recursiveFiles(folder, "lz4")) {
@@ -242,37 +379,24 @@ public class Transformer {
             if (futures.size() < 140) {
                 var f = loadLz4Batch(lz4)
                         .thenApplyAsync(bsons -> {
+                                final long start = System.nanoTime();
                                 final var list = new ArrayList<Status>();
-                                System.out.println(bsons.size());
+                                Log.debug(() -> "DECODE " + bsons.size());
                                 for (int i = 0; i < bsons.size(); i++) {
-                                    final var bson = bsons.get(i);
-                                    final var minTweet = new Status(
-                                            extractLong(bson, "tId"),
-                                            Utils.extractString(bson, "txt")
-                                    );
-                                    minTweet.usrId = extractLong(bson, "uId");
-                                    minTweet.isRetweet = extractBoolean(bson, "rtw");
-                                    minTweet.date = extractTimestamp(bson, "dte");
-                                    final var tags = new HashSet<String>();
-                                    for (BsonValue tag : bson.getArray("tag")) {
-                                        tags.add(tag.asString().getValue());
-                                    }
-                                    minTweet.hashtags = tags;
-                                    list.add(minTweet);
-                                    minTweet.loc = fromJson(bson.getDocument("loc"));
+                                    list.add(fromMinTweet(bsons.get(i)));
                                 }
-                                System.out.println("------> " + cnt.incrementAndGet());
+                                DECOMPRESS.histogram("decode").since(start);
+                                DECOMPRESS.meter("tweets").mark(list.size());
+                                final int batches = cnt.incrementAndGet();
+                                Log.progress("lz4-decode", () -> batches + " BATCHES DECODED");
                                 return list;
                             });
-                var f1 = f.thenAccept(l -> {
-                    minTweets.put(l, l);
-                    System.out.println("STORED");
-                });
+                var f1 = f.thenAccept(l -> minTweets.put(l, l));
                 futures.add(f1);
                 f.thenRun(() -> futures.remove(f1));
             }
             else {
-                System.out.println("WAIT " + futures.size() + " ERROR: " + err++);
+                Log.info("WAIT " + futures.size() + " ERROR: " + err++);
                 try { Thread.sleep(10_000); }
                 catch (InterruptedException e) { e.printStackTrace(); }
                 break RETRY;
@@ -280,9 +404,9 @@ public class Transformer {
         }
         CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
 
-        System.out.println("START");
+        Log.info("COLLECT");
         var res = minTweets.values().stream().flatMap(Collection::stream).collect(Collectors.toList());
-        System.out.println("LOADED: " + res.size());
+        Log.info("LOADED: " + res.size());
         return res;
     }
 }
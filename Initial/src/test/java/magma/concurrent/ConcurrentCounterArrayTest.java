@@ -0,0 +1,40 @@
+package magma.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import static magma.concurrent.ConcurrentCounterArray.MAX_STRIPE_LONGS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ConcurrentCounterArrayTest {
+
+    @Test
+    void roundsStripesUpToAPowerOfTwo() {
+        assertEquals(8, new ConcurrentCounterArray(1_000, 5).stripes());
+        assertEquals(64, new ConcurrentCounterArray(1_000, 1_000).stripes());
+    }
+
+    @Test
+    void boundsTheLongsOfAllStripes() {
+        final int length = (int) (MAX_STRIPE_LONGS / 4);
+        final var array = new ConcurrentCounterArray(length, 16);
+        assertEquals(2, array.stripes());
+        assertEquals(1, new ConcurrentCounterArray((int) MAX_STRIPE_LONGS, 16).stripes());
+    }
+
+    @Test
+    void sumsAllStripes() throws InterruptedException {
+        final var array = new ConcurrentCounterArray(10, 4);
+        final var threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int n = 0; n < 1_000; n++) array.increment(n % 10);
+            });
+            threads[t].start();
+        }
+        for (var thread : threads) thread.join();
+        assertEquals(400, array.get(3));
+        assertEquals(4_000, array.sum());
+        assertEquals(400, array.drain()[9]);
+        assertEquals(0, array.sum());
+    }
+}
@@ -0,0 +1,31 @@
+package magma.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import static magma.concurrent.NBHashMapUtf8.MAX_SLOTS;
+import static magma.concurrent.NBHashMapUtf8.grownLength;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class NBHashMapUtf8Test {
+
+    @Test
+    void growsToThePowerOfTwoAboveTwiceTheSize() {
+        assertEquals(32, grownLength(16, 3));
+        assertEquals(256, grownLength(16, 100));
+        assertEquals(1 << 22, grownLength(1 << 16, 1 << 20));
+    }
+
+    @Test
+    void stopsAtMaxSlots() {
+        // Estimates beyond 2^29 keys used to shift the length to 0.
+        assertEquals(MAX_SLOTS, grownLength(1 << 16, 1L << 29));
+        assertEquals(MAX_SLOTS, grownLength(1 << 16, 3L << 30));
+        assertEquals(MAX_SLOTS, grownLength(MAX_SLOTS >> 1, Long.MAX_VALUE >> 1));
+    }
+
+    @Test
+    void refusesToGrowAtMaxSlots() {
+        assertThrows(IllegalStateException.class, () -> grownLength(MAX_SLOTS, 1L << 31));
+    }
+}
@@ -0,0 +1,223 @@
+//     _____
+//    ╱     ╲┌────╭─╭──────╭─────────╮────╭─╮
+//   ╱  ╲ ╱  ╲ ┌──╮ │ ╭──╮ ╮ ┬─╮ ┬─╮ ┌ ┌──╮ │
+//  ╱    Y    ╲└──╰ ╵ ╰──╯ │ │ │ │ │ │ └──╰ │
+//  ╲____│____╱╰──╰─┴╭───╯ ╰─╰─╯ ╰─╰─┴────╰─┴╲╲
+//            ╲╭─────┘─────└────────────────╮╱╱
+//
+// Copyright (C) esentri.magma - All Rights Reserved.
+//
+// Unauthorized copying of this file, via any medium
+// is strictly prohibited. Proprietary and confidential.
+
+package magma.exa.data.misc;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API implementation of the {@link Kernels} on the preferred
+ * species of the platform. Counts are kept per lane by masked adds and
+ * reduced once at the end, selections turn the lane mask into a bit
+ * set and write the index of every set bit. The tails shorter than one
+ * vector run on the {@link ScalarKernels}. Only loaded by {@link Kernels}
+ * if {@code jdk.incubator.vector} is resolved.
+ */
+enum VectorKernels implements Kernels.Impl {
+    kernels;
+
+    static final VectorSpecies<Integer> I32 = IntVector.SPECIES_PREFERRED;
+    static final VectorSpecies<Long> I64 = LongVector.SPECIES_PREFERRED;
+    static final VectorSpecies<Double> F64 = DoubleVector.SPECIES_PREFERRED;
+
+    /** Widest domain of bincount that is counted bin by bin in vectors. */
+    static final int VECTOR_BINS = 16;
+
+    /** Values per block of the bin by bin passes, a multiple of any species length. */
+    static final int BLOCK = 1 << 12;
+
+    // ----------------------------------------------------------
+    //  COUNT.
+    // ----------------------------------------------------------
+
+    @Override
+    public int countIn(final int[] a, final int from, final int to, final int lo, final int hi) {
+        final int span = hi - lo;
+        final int bound = from + I32.loopBound(to - from);
+        var acc = IntVector.zero(I32);
+        int i = from;
+        for (; i < bound; i += I32.length()) {
+            final var v = IntVector.fromArray(I32, a, i);
+            acc = acc.add(1, v.sub(lo).compare(VectorOperators.UNSIGNED_LE, span));
+        }
+        return acc.reduceLanes(VectorOperators.ADD) + ScalarKernels.kernels.countIn(a, i, to, lo, hi);
+    }
+
+    @Override
+    public int countIn(final long[] a, final int from, final int to, final long lo, final long hi) {
+        final long span = hi - lo;
+        final int bound = from + I64.loopBound(to - from);
+        var acc = LongVector.zero(I64);
+        int i = from;
+        for (; i < bound; i += I64.length()) {
+            final var v = LongVector.fromArray(I64, a, i);
+            acc = acc.add(1, v.sub(lo).compare(VectorOperators.UNSIGNED_LE, span));
+        }
+        return (int) acc.reduceLanes(VectorOperators.ADD) + ScalarKernels.kernels.countIn(a, i, to, lo, hi);
+    }
+
+    @Override
+    public int countBits(final int[] a, final int from, final int to, final int mask) {
+        final int bound = from + I32.loopBound(to - from);
+        var acc = IntVector.zero(I32);
+        int i = from;
+        for (; i < bound; i += I32.length()) {
+            final var v = IntVector.fromArray(I32, a, i);
+            acc = acc.add(1, v.and(mask).compare(VectorOperators.NE, 0));
+        }
+        return acc.reduceLanes(VectorOperators.ADD) + ScalarKernels.kernels.countBits(a, i, to, mask);
+    }
+
+    // ----------------------------------------------------------
+    //  SELECT.
+    // ----------------------------------------------------------
+
+    @Override
+    public int selectIn(final int[] a, final int from, final int to,
+                        final int lo, final int hi, final boolean out, final int[] dst) {
+        final int span = hi - lo;
+        final int bound = from + I32.loopBound(to - from);
+        int i = from, n = 0;
+        for (; i < bound; i += I32.length()) {
+            final var v = IntVector.fromArray(I32, a, i);
+            final var in = v.sub(lo).compare(VectorOperators.UNSIGNED_LE, span);
+            n = write(out ? in.not() : in, i, dst, n);
+        }
+        return ScalarKernels.selectIn(a, i, to, lo, hi, out, dst, n);
+    }
+
+    @Override
+    public int selectIn(final long[] a, final int from, final int to,
+                        final long lo, final long hi, final boolean out, final int[] dst) {
+        final long span = hi - lo;
+        final int bound = from + I64.loopBound(to - from);
+        int i = from, n = 0;
+        for (; i < bound; i += I64.length()) {
+            final var v = LongVector.fromArray(I64, a, i);
+            final var in = v.sub(lo).compare(VectorOperators.UNSIGNED_LE, span);
+            n = write(out ? in.not() : in, i, dst, n);
+        }
+        return ScalarKernels.selectIn(a, i, to, lo, hi, out, dst, n);
+    }
+
+    @Override
+    public int selectBits(final int[] a, final int from, final int to, final int mask, final int[] dst) {
+        final int bound = from + I32.loopBound(to - from);
+        int i = from, n = 0;
+        for (; i < bound; i += I32.length()) {
+            final var v = IntVector.fromArray(I32, a, i);
+            n = write(v.and(mask).compare(VectorOperators.NE, 0), i, dst, n);
+        }
+        return ScalarKernels.selectBits(a, i, to, mask, dst, n);
+    }
+
+    /** Writes the index of every set lane of 'm' starting at dst[n]. */
+    private static int write(final VectorMask<?> m, final int i, final int[] dst, int n) {
+        long bits = m.toLong();
+        while (bits != 0) {
+            dst[n++] = i + Long.numberOfTrailingZeros(bits);
+            bits &= bits - 1;
+        }
+        return n;
+    }
+
+    // ----------------------------------------------------------
+    //  HISTOGRAM.
+    // ----------------------------------------------------------
+
+    @Override
+    public void bincount(final int[] a, final int from, final int to, final int[] bins) {
+        final int k = bins.length;
+        if (k > VECTOR_BINS) {
+            ScalarKernels.kernels.bincount(a, from, to, bins);
+            return;
+        }
+        // Bin by bin over cache sized blocks, one accumulator each.
+        final int bound = from + I32.loopBound(to - from);
+        for (int lo = from; lo < bound; lo += BLOCK) {
+            final int hi = Math.min(lo + BLOCK, bound);
+            for (int b = 0; b < k; ++b) {
+                var acc = IntVector.zero(I32);
+                for (int i = lo; i < hi; i += I32.length()) {
+                    acc = acc.add(1, IntVector.fromArray(I32, a, i).compare(VectorOperators.EQ, b));
+                }
+                bins[b] += acc.reduceLanes(VectorOperators.ADD);
+            }
+        }
+        ScalarKernels.kernels.bincount(a, bound, to, bins);
+    }
+
+    @Override
+    public void bitCounts(final long[] a, final int from, final int to, final int stride, final int[] counts) {
+        final int k = counts.length;
+        final int bound = from + I64.loopBound(to - from);
+        for (int lo = from; lo < bound; lo += BLOCK) {
+            final int hi = Math.min(lo + BLOCK, bound);
+            for (int b = 0; b < k; ++b) {
+                final long bit = 1L << (b * stride);
+                var acc = LongVector.zero(I64);
+                for (int i = lo; i < hi; i += I64.length()) {
+                    acc = acc.add(1, LongVector.fromArray(I64, a, i).and(bit).compare(VectorOperators.NE, 0));
+                }
+                counts[b] += (int) acc.reduceLanes(VectorOperators.ADD);
+            }
+        }
+        ScalarKernels.kernels.bitCounts(a, bound, to, stride, counts);
+    }
+
+    // ----------------------------------------------------------
+    //  SUM.
+    // ----------------------------------------------------------
+
+    @Override
+    public long sum(final int[] a, final int from, final int to) {
+        // Pairs of ints as long lanes, the low int sign extended
+        // by a shift left and back, the high int by a shift.
+        final int bound = from + I32.loopBound(to - from);
+        var lo = LongVector.zero(I64);
+        var hi = LongVector.zero(I64);
+        int i = from;
+        for (; i < bound; i += I32.length()) {
+            final var v = IntVector.fromArray(I32, a, i).reinterpretAsLongs();
+            lo = lo.add(v.lanewise(VectorOperators.LSHL, 32).lanewise(VectorOperators.ASHR, 32));
+            hi = hi.add(v.lanewise(VectorOperators.ASHR, 32));
+        }
+        return lo.add(hi).reduceLanes(VectorOperators.ADD) + ScalarKernels.kernels.sum(a, i, to);
+    }
+
+    @Override
+    public long sum(final long[] a, final int from, final int to) {
+        final int bound = from + I64.loopBound(to - from);
+        var acc = LongVector.zero(I64);
+        int i = from;
+        for (; i < bound; i += I64.length()) {
+            acc = acc.add(LongVector.fromArray(I64, a, i));
+        }
+        return acc.reduceLanes(VectorOperators.ADD) + ScalarKernels.kernels.sum(a, i, to);
+    }
+
+    @Override
+    public double sum(final double[] a, final int from, final int to) {
+        final int bound = from + F64.loopBound(to - from);
+        var acc = DoubleVector.zero(F64);
+        int i = from;
+        for (; i < bound; i += F64.length()) {
+            acc = acc.add(DoubleVector.fromArray(F64, a, i));
+        }
+        return acc.reduceLanes(VectorOperators.ADD) + ScalarKernels.kernels.sum(a, i, to);
+    }
+}
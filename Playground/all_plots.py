@@ -1,12 +1,16 @@
+import sys
+sys.path.insert(0, '/home/dipp/Github/Master-Thesis-dipp/scripts')
+
 import matplotlib.pyplot as plt
 import pandas as pd
+from results import read_result
 
 data_url = "/global/D1/projects/umod/dipp/playground/result_csv/urls.csv"
 data_text = "/global/D1/projects/umod/dipp/playground/result_csv/texts.csv"
 data_symbols = "/global/D1/projects/umod/dipp/playground/result_csv/symbols.csv"
 
 
-url = pd.read_csv(data_url)
+url = read_result(data_url)
 for_plot_df_1 = pd.DataFrame(url)
 df = for_plot_df_1.head(50)
 X = list(df.iloc[:, 0])
@@ -32,7 +36,7 @@ plt.savefig('/home/dipp/Results/URL_line.pdf',bbox_inches='tight', dpi=150)
 #plt.show()
 
 
-text = pd.read_csv(data_text)
+text = read_result(data_text)
 for_plot_df_3 = pd.DataFrame(text)
 df = for_plot_df_3.head(50)
 Y = list(df.iloc[:, 0])
@@ -55,7 +59,7 @@ plt.xticks(rotation='90')
 plt.savefig('/home/dipp/Results/text_line.pdf',bbox_inches='tight', dpi=150)
 
 
-symbols = pd.read_csv(data_symbols)
+symbols = read_result(data_symbols)
 for_plot_df_5 = pd.DataFrame(symbols)
 df = for_plot_df_5.head(50)
 X = list(df.iloc[:, 0])
@@ -0,0 +1,16 @@
+# Loads a result table of the Java experiments: the .parquet
+# or the .csv file, whichever was written last, so that an old
+# run in the other format (-Dmagma.results) never shadows it.
+# From parquet only 'columns' are read, csv_args go to read_csv.
+import os
+
+import pandas as pd
+
+
+def read_result(path, columns=None, **csv_args):
+    base, _ = os.path.splitext(path)
+    parquet, csv = base + '.parquet', base + '.csv'
+    if os.path.exists(parquet) and (not os.path.exists(csv)
+                                    or os.path.getmtime(parquet) >= os.path.getmtime(csv)):
+        return pd.read_parquet(parquet, columns=columns)
+    return pd.read_csv(csv, usecols=columns, **csv_args)